@@ -16,6 +16,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.sql.DataSource;
 
@@ -23,6 +24,7 @@ import javax.sql.DataSource;
 @Theme(value = "aiwizard")
 @PWA(name = "Aiwizard", shortName = "Aiwizard", offline = false)
 @SpringBootApplication
+@EnableScheduling
 public class AiwizardApplication implements AppShellConfigurator {
 
     @Autowired
@@ -8,12 +8,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.DefaultResponseErrorHandler;
 
 /**
  * Configuration for AI provider ChatClient beans.
  * Each provider is built manually and conditionally created only if its API key is configured.
  * Spring AI auto-configuration is excluded via application.properties so a missing
  * API key does not break application startup.
+ * Both clients share one HTTP transport (AIWizardHttpTransport), so connections are reused.
+ * Spring AI's own retries are disabled and HTTP errors are raised with their status and headers,
+ * so that AIWizardRetryPolicy can classify them and honor Retry-After.
  * Required configuration:
  * - spring.ai.openai.api-key: OpenAI API key (for OpenAI provider)
  * - spring.ai.gemini.api-key: Google AI Studio API key (for Gemini provider)
@@ -26,10 +31,14 @@ public class AIWizardClientConfiguration {
     public ChatClient openAiChatClient(
             @Value("${spring.ai.openai.api-key}") String apiKey,
             @Value("${spring.ai.openai.chat.options.model:gpt-4o-mini}") String model,
-            @Value("${spring.ai.openai.chat.options.temperature:0.1}") Double temperature) {
+            @Value("${spring.ai.openai.chat.options.temperature:0.1}") Double temperature,
+            AIWizardHttpTransport httpTransport) {
 
         OpenAiApi openAiApi = OpenAiApi.builder()
                 .apiKey(apiKey)
+                .restClientBuilder(httpTransport.restClientBuilder())
+                .webClientBuilder(httpTransport.webClientBuilder())
+                .responseErrorHandler(new DefaultResponseErrorHandler())
                 .build();
 
         OpenAiChatModel openAiModel = OpenAiChatModel.builder()
@@ -37,7 +46,10 @@ public class AIWizardClientConfiguration {
                 .defaultOptions(OpenAiChatOptions.builder()
                         .model(model)
                         .temperature(temperature)
+                        // report token usage in the last chunk of streamed responses (for metrics)
+                        .streamUsage(true)
                         .build())
+                .retryTemplate(singleAttempt())
                 .build();
 
         return ChatClient.builder(openAiModel).build();
@@ -53,21 +65,34 @@ public class AIWizardClientConfiguration {
     @ConditionalOnProperty(name = "spring.ai.gemini.api-key")
     public ChatClient geminiChatClient(
             @Value("${spring.ai.gemini.api-key}") String apiKey,
-            @Value("${spring.ai.gemini.model:gemini-2.0-flash}") String model) {
+            @Value("${spring.ai.gemini.model:gemini-2.0-flash}") String model,
+            @Value("${spring.ai.gemini.temperature:0.1}") Double temperature,
+            AIWizardHttpTransport httpTransport) {
 
         OpenAiApi geminiApi = OpenAiApi.builder()
                 .apiKey(apiKey)
                 .baseUrl("https://generativelanguage.googleapis.com/v1beta/openai")
+                .restClientBuilder(httpTransport.restClientBuilder())
+                .webClientBuilder(httpTransport.webClientBuilder())
+                .responseErrorHandler(new DefaultResponseErrorHandler())
                 .build();
 
         OpenAiChatModel geminiModel = OpenAiChatModel.builder()
                 .openAiApi(geminiApi)
                 .defaultOptions(OpenAiChatOptions.builder()
                         .model(model)
-                        .temperature(0.1)
+                        .temperature(temperature)
                         .build())
+                .retryTemplate(singleAttempt())
                 .build();
 
         return ChatClient.builder(geminiModel).build();
     }
+
+    /**
+     * Retry template that makes a single attempt; retries are done by AIWizardRetryPolicy.
+     */
+    private static RetryTemplate singleAttempt() {
+        return RetryTemplate.builder().maxAttempts(1).build();
+    }
 }
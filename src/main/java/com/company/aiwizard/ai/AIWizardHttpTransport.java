@@ -0,0 +1,133 @@
+package com.company.aiwizard.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared HTTP transport for the LLM provider clients.
+ * A single JDK HttpClient serves all Spring AI ChatClients (blocking RestClient and streaming WebClient),
+ * so connections to each provider host are kept alive and reused across wizard calls
+ * instead of paying a TCP + TLS handshake per request. HTTP/2 multiplexes concurrent
+ * requests to the same host over one connection.
+ *
+ * The openai-java and google-genai SDK clients (OpenAIService, GeminiService) manage their own
+ * connection pools and cannot take an external one; they use the timeouts configured here.
+ *
+ * Configuration:
+ * - aiwizard.http.http2: prefer HTTP/2, falls back to HTTP/1.1 per host (default true)
+ * - aiwizard.http.connect-timeout: TCP/TLS connect timeout (default PT10S)
+ * - aiwizard.http.read-timeout: time to wait for a response (default PT120S)
+ * - aiwizard.http.io-threads: threads of the client's I/O executor (default 20)
+ *
+ * Connection pool size and keep-alive of idle connections are JVM-wide settings of the JDK
+ * HttpClient, read once when its connection pool is first used, so they are JVM options
+ * rather than application properties, e.g.:
+ * -Djdk.httpclient.connectionPoolSize=20 -Djdk.httpclient.keepalive.timeout=300
+ */
+@Component("aiwizard_AIWizardHttpTransport")
+public class AIWizardHttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardHttpTransport.class);
+
+    @Value("${aiwizard.http.http2:true}")
+    private boolean http2;
+
+    @Value("${aiwizard.http.connect-timeout:PT10S}")
+    private Duration connectTimeout;
+
+    @Value("${aiwizard.http.read-timeout:PT120S}")
+    private Duration readTimeout;
+
+    @Value("${aiwizard.http.io-threads:20}")
+    private int ioThreads;
+
+    /** Shared client, initialized in init(). */
+    private HttpClient httpClient;
+
+    /** I/O threads of the shared client. */
+    private ExecutorService executor;
+
+    /**
+     * Creates the shared client after properties are injected.
+     */
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            Thread thread = new Thread(runnable, "aiwizard-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+
+        log.info("AI Wizard HTTP transport: http2={}, connectTimeout={}, readTimeout={}, ioThreads={}, "
+                        + "connectionPoolSize={}, keepAliveTimeout={}",
+                http2, connectTimeout, readTimeout, ioThreads,
+                System.getProperty("jdk.httpclient.connectionPoolSize", "unlimited"),
+                System.getProperty("jdk.httpclient.keepalive.timeout", "default"));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the shared HTTP client.
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the connect timeout.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the read timeout.
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Returns a new RestClient builder backed by the shared client, for blocking calls.
+     */
+    public RestClient.Builder restClientBuilder() {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return RestClient.builder().requestFactory(requestFactory);
+    }
+
+    /**
+     * Returns a new WebClient builder backed by the shared client, for streaming calls.
+     */
+    public WebClient.Builder webClientBuilder() {
+        JdkClientHttpConnector connector = new JdkClientHttpConnector(httpClient);
+        connector.setReadTimeout(readTimeout);
+        return WebClient.builder().clientConnector(connector);
+    }
+}
@@ -0,0 +1,33 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.metamodel.datatype.EnumClass;
+
+import org.springframework.lang.Nullable;
+
+
+public enum AIWizardApprovalStatus implements EnumClass<String> {
+
+    PENDING("PENDING"),
+    APPROVED("APPROVED"),
+    REJECTED("REJECTED");
+
+    private final String id;
+
+    AIWizardApprovalStatus(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public static AIWizardApprovalStatus fromId(String id) {
+        for (AIWizardApprovalStatus at : AIWizardApprovalStatus.values()) {
+            if (at.getId().equals(id)) {
+                return at;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.DeletePolicy;
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.entity.annotation.OnDeleteInverse;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.UUID;
+
+@JmixEntity
+@Table(name = "AI_WIZARD_BATCH_ITEM", indexes = {
+        @Index(name = "IDX_AI_WIZARD_BATCH_ITEM_JOB", columnList = "JOB_ID, STATUS"),
+        @Index(name = "IDX_AI_WIZARD_BATCH_ITEM_HISTORY", columnList = "HISTORY_ID")
+})
+@Entity
+public class AIWizardBatchItem {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @NotNull
+    @JoinColumn(name = "JOB_ID", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    private AIWizardBatchJob job;
+
+    @NotNull
+    @Column(name = "REPORT_ID", nullable = false)
+    private UUID reportId;
+
+    @Column(name = "REPORT_NAME")
+    private String reportName;
+
+    @NotNull
+    @Column(name = "BAND_NAME", nullable = false)
+    private String bandName;
+
+    @NotNull
+    @InstanceName
+    @Column(name = "DATA_SET_NAME", nullable = false)
+    private String dataSetName;
+
+    @Column(name = "STATUS")
+    private String status = AIWizardBatchItemStatus.PENDING.getId();
+
+    @Column(name = "ATTEMPTS")
+    private Integer attempts = 0;
+
+    @Column(name = "ERROR_MESSAGE", length = 1000)
+    private String errorMessage;
+
+    @OnDeleteInverse(DeletePolicy.UNLINK)
+    @JoinColumn(name = "HISTORY_ID")
+    @ManyToOne(fetch = FetchType.LAZY)
+    private AIWizardHistory history;
+
+    public AIWizardHistory getHistory() {
+        return history;
+    }
+
+    public void setHistory(AIWizardHistory history) {
+        this.history = history;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public AIWizardBatchItemStatus getStatus() {
+        return status == null ? null : AIWizardBatchItemStatus.fromId(status);
+    }
+
+    public void setStatus(AIWizardBatchItemStatus status) {
+        this.status = status == null ? null : status.getId();
+    }
+
+    public String getDataSetName() {
+        return dataSetName;
+    }
+
+    public void setDataSetName(String dataSetName) {
+        this.dataSetName = dataSetName;
+    }
+
+    public String getBandName() {
+        return bandName;
+    }
+
+    public void setBandName(String bandName) {
+        this.bandName = bandName;
+    }
+
+    public String getReportName() {
+        return reportName;
+    }
+
+    public void setReportName(String reportName) {
+        this.reportName = reportName;
+    }
+
+    public UUID getReportId() {
+        return reportId;
+    }
+
+    public void setReportId(UUID reportId) {
+        this.reportId = reportId;
+    }
+
+    public AIWizardBatchJob getJob() {
+        return job;
+    }
+
+    public void setJob(AIWizardBatchJob job) {
+        this.job = job;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+}
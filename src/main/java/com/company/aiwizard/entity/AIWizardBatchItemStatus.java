@@ -0,0 +1,34 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.metamodel.datatype.EnumClass;
+
+import org.springframework.lang.Nullable;
+
+
+public enum AIWizardBatchItemStatus implements EnumClass<String> {
+
+    PENDING("PENDING"),
+    RUNNING("RUNNING"),
+    DONE("DONE"),
+    FAILED("FAILED");
+
+    private final String id;
+
+    AIWizardBatchItemStatus(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public static AIWizardBatchItemStatus fromId(String id) {
+        for (AIWizardBatchItemStatus at : AIWizardBatchItemStatus.values()) {
+            if (at.getId().equals(id)) {
+                return at;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,229 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.DeletePolicy;
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.entity.annotation.OnDelete;
+import io.jmix.core.entity.annotation.OnDeleteInverse;
+import io.jmix.core.metamodel.annotation.Composition;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@JmixEntity
+@Table(name = "AI_WIZARD_BATCH_JOB", indexes = {
+        @Index(name = "IDX_AI_WIZARD_BATCH_JOB_TEMPLATE", columnList = "TEMPLATE_ID")
+})
+@Entity
+public class AIWizardBatchJob {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @NotNull
+    @InstanceName
+    @Column(name = "NAME", nullable = false)
+    private String name;
+
+    @NotNull
+    @OnDeleteInverse(DeletePolicy.DENY)
+    @JoinColumn(name = "TEMPLATE_ID", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    private AIWizardTemplate template;
+
+    @Column(name = "PROMPT")
+    @Lob
+    private String prompt;
+
+    @Column(name = "SCHEMA_ITEMS")
+    @Lob
+    private String schemaItems;
+
+    @Column(name = "STATUS")
+    private String status = AIWizardBatchStatus.PENDING.getId();
+
+    @Column(name = "TOTAL_ITEMS")
+    private Integer totalItems;
+
+    @Column(name = "COMPLETED_ITEMS")
+    private Integer completedItems;
+
+    @Column(name = "FAILED_ITEMS")
+    private Integer failedItems;
+
+    @Column(name = "STATUS_MESSAGE", length = 1000)
+    private String statusMessage;
+
+    @Column(name = "STARTED_DATE")
+    private OffsetDateTime startedDate;
+
+    @Column(name = "FINISHED_DATE")
+    private OffsetDateTime finishedDate;
+
+    @OnDelete(DeletePolicy.CASCADE)
+    @Composition
+    @OneToMany(mappedBy = "job")
+    private List<AIWizardBatchItem> items;
+
+    @CreatedBy
+    @Column(name = "CREATED_BY")
+    private String createdBy;
+
+    @CreatedDate
+    @Column(name = "CREATED_DATE")
+    private OffsetDateTime createdDate;
+
+    @LastModifiedBy
+    @Column(name = "LAST_MODIFIED_BY")
+    private String lastModifiedBy;
+
+    @LastModifiedDate
+    @Column(name = "LAST_MODIFIED_DATE")
+    private OffsetDateTime lastModifiedDate;
+
+    public List<AIWizardBatchItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<AIWizardBatchItem> items) {
+        this.items = items;
+    }
+
+    public OffsetDateTime getFinishedDate() {
+        return finishedDate;
+    }
+
+    public void setFinishedDate(OffsetDateTime finishedDate) {
+        this.finishedDate = finishedDate;
+    }
+
+    public OffsetDateTime getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(OffsetDateTime startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public void setStatusMessage(String statusMessage) {
+        this.statusMessage = statusMessage;
+    }
+
+    public Integer getFailedItems() {
+        return failedItems;
+    }
+
+    public void setFailedItems(Integer failedItems) {
+        this.failedItems = failedItems;
+    }
+
+    public Integer getCompletedItems() {
+        return completedItems;
+    }
+
+    public void setCompletedItems(Integer completedItems) {
+        this.completedItems = completedItems;
+    }
+
+    public Integer getTotalItems() {
+        return totalItems;
+    }
+
+    public void setTotalItems(Integer totalItems) {
+        this.totalItems = totalItems;
+    }
+
+    public AIWizardBatchStatus getStatus() {
+        return status == null ? null : AIWizardBatchStatus.fromId(status);
+    }
+
+    public void setStatus(AIWizardBatchStatus status) {
+        this.status = status == null ? null : status.getId();
+    }
+
+    public String getSchemaItems() {
+        return schemaItems;
+    }
+
+    public void setSchemaItems(String schemaItems) {
+        this.schemaItems = schemaItems;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public void setPrompt(String prompt) {
+        this.prompt = prompt;
+    }
+
+    public AIWizardTemplate getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(AIWizardTemplate template) {
+        this.template = template;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public OffsetDateTime getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public void setLastModifiedDate(OffsetDateTime lastModifiedDate) {
+        this.lastModifiedDate = lastModifiedDate;
+    }
+
+    public String getLastModifiedBy() {
+        return lastModifiedBy;
+    }
+
+    public void setLastModifiedBy(String lastModifiedBy) {
+        this.lastModifiedBy = lastModifiedBy;
+    }
+
+    public OffsetDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(OffsetDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.metamodel.datatype.EnumClass;
+
+import org.springframework.lang.Nullable;
+
+
+public enum AIWizardBatchStatus implements EnumClass<String> {
+
+    PENDING("PENDING"),
+    RUNNING("RUNNING"),
+    PAUSED("PAUSED"),
+    COMPLETED("COMPLETED"),
+    FAILED("FAILED"),
+    CANCELLED("CANCELLED");
+
+    private final String id;
+
+    AIWizardBatchStatus(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public static AIWizardBatchStatus fromId(String id) {
+        for (AIWizardBatchStatus at : AIWizardBatchStatus.values()) {
+            if (at.getId().equals(id)) {
+                return at;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -10,12 +10,16 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
 import org.springframework.data.annotation.LastModifiedDate;
 
+import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 import java.util.UUID;
 
 @JmixEntity
 @Table(name = "AI_WIZARD_HISTORY", indexes = {
-        @Index(name = "IDX_AI_WIZARD_HISTORY_AI_WIZARD_PROMPT_TEMPLATE", columnList = "AI_WIZARD_PROMPT_TEMPLATE_ID")
+        @Index(name = "IDX_AI_WIZARD_HISTORY_TEMPLATE_CREATED", columnList = "AI_WIZARD_PROMPT_TEMPLATE_ID, CREATED_DATE"),
+        @Index(name = "IDX_AI_WIZARD_HISTORY_CREATED_BY", columnList = "CREATED_BY, CREATED_DATE"),
+        @Index(name = "IDX_AI_WIZARD_HISTORY_CREATED", columnList = "CREATED_DATE, ID"),
+        @Index(name = "IDX_AI_WIZARD_HISTORY_DATA_SET", columnList = "DATA_SET_ID")
 })
 @Entity
 public class AIWizardHistory {
@@ -41,6 +45,36 @@ public class AIWizardHistory {
     @Lob
     private String response;
 
+    @Column(name = "PROVIDER")
+    private String provider;
+
+    @Column(name = "MODEL")
+    private String model;
+
+    @Column(name = "PROMPT_TOKENS")
+    private Integer promptTokens;
+
+    @Column(name = "COMPLETION_TOKENS")
+    private Integer completionTokens;
+
+    @Column(name = "LATENCY_MS")
+    private Long latencyMs;
+
+    @Column(name = "ESTIMATED_COST", precision = 19, scale = 6)
+    private BigDecimal estimatedCost;
+
+    @Column(name = "CACHED")
+    private Boolean cached;
+
+    @Column(name = "APPROVAL_STATUS")
+    private String approvalStatus;
+
+    @Column(name = "COMPACTED")
+    private Boolean compacted;
+
+    @Column(name = "DATA_SET_ID")
+    private UUID dataSetId;
+
     @CreatedBy
     @Column(name = "CREATED_BY")
     private String createdBy;
@@ -57,6 +91,86 @@ public class AIWizardHistory {
     @Column(name = "LAST_MODIFIED_DATE")
     private OffsetDateTime lastModifiedDate;
 
+    public UUID getDataSetId() {
+        return dataSetId;
+    }
+
+    public void setDataSetId(UUID dataSetId) {
+        this.dataSetId = dataSetId;
+    }
+
+    public Boolean getCompacted() {
+        return compacted;
+    }
+
+    public void setCompacted(Boolean compacted) {
+        this.compacted = compacted;
+    }
+
+    public AIWizardApprovalStatus getApprovalStatus() {
+        return approvalStatus == null ? null : AIWizardApprovalStatus.fromId(approvalStatus);
+    }
+
+    public void setApprovalStatus(AIWizardApprovalStatus approvalStatus) {
+        this.approvalStatus = approvalStatus == null ? null : approvalStatus.getId();
+    }
+
+    public Boolean getCached() {
+        return cached;
+    }
+
+    public void setCached(Boolean cached) {
+        this.cached = cached;
+    }
+
+    public BigDecimal getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    public void setEstimatedCost(BigDecimal estimatedCost) {
+        this.estimatedCost = estimatedCost;
+    }
+
+    public Long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public void setLatencyMs(Long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public Integer getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(Integer completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public Integer getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(Integer promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public AIWizardConnection getProvider() {
+        return provider == null ? null : AIWizardConnection.fromId(provider);
+    }
+
+    public void setProvider(AIWizardConnection provider) {
+        this.provider = provider == null ? null : provider.getId();
+    }
+
     public String getResponse() {
         return response;
     }
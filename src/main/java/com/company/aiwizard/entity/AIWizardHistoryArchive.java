@@ -0,0 +1,135 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.FileRef;
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.metamodel.annotation.InstanceName;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@JmixEntity
+@Table(name = "AI_WIZARD_HISTORY_ARCHIVE", indexes = {
+        @Index(name = "IDX_AI_WIZARD_HISTORY_ARCHIVE_CREATED", columnList = "CREATED_DATE")
+})
+@Entity
+public class AIWizardHistoryArchive {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @InstanceName
+    @Column(name = "TEMPLATE_NAME")
+    private String templateName;
+
+    @Column(name = "FILE_", length = 1024)
+    private FileRef file;
+
+    @Column(name = "ROW_COUNT")
+    private Integer rowCount;
+
+    @Column(name = "FIRST_DATE")
+    private OffsetDateTime firstDate;
+
+    @Column(name = "LAST_DATE")
+    private OffsetDateTime lastDate;
+
+    @Column(name = "ORIGINAL_BYTES")
+    private Long originalBytes;
+
+    @Column(name = "COMPRESSED_BYTES")
+    private Long compressedBytes;
+
+    @CreatedBy
+    @Column(name = "CREATED_BY")
+    private String createdBy;
+
+    @CreatedDate
+    @Column(name = "CREATED_DATE")
+    private OffsetDateTime createdDate;
+
+    public OffsetDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(OffsetDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
+
+    public Long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public void setCompressedBytes(Long compressedBytes) {
+        this.compressedBytes = compressedBytes;
+    }
+
+    public Long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    public void setOriginalBytes(Long originalBytes) {
+        this.originalBytes = originalBytes;
+    }
+
+    public OffsetDateTime getLastDate() {
+        return lastDate;
+    }
+
+    public void setLastDate(OffsetDateTime lastDate) {
+        this.lastDate = lastDate;
+    }
+
+    public OffsetDateTime getFirstDate() {
+        return firstDate;
+    }
+
+    public void setFirstDate(OffsetDateTime firstDate) {
+        this.firstDate = firstDate;
+    }
+
+    public Integer getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(Integer rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public FileRef getFile() {
+        return file;
+    }
+
+    public void setFile(FileRef file) {
+        this.file = file;
+    }
+
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    public void setTemplateName(String templateName) {
+        this.templateName = templateName;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.entity.annotation.SystemLevel;
+import io.jmix.core.metamodel.annotation.JmixEntity;
+import jakarta.persistence.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@SystemLevel
+@JmixEntity
+@Table(name = "AI_WIZARD_RESPONSE_CACHE", indexes = {
+        @Index(name = "IDX_AI_WIZARD_RESPONSE_CACHE_UNQ_CACHE_KEY", columnList = "CACHE_KEY", unique = true),
+        @Index(name = "IDX_AI_WIZARD_RESPONSE_CACHE_EXPIRES_AT", columnList = "EXPIRES_AT")
+})
+@Entity
+public class AIWizardResponseCacheEntry {
+    @JmixGeneratedValue
+    @Column(name = "ID", nullable = false)
+    @Id
+    private UUID id;
+
+    @Column(name = "CACHE_KEY", nullable = false, length = 64)
+    private String cacheKey;
+
+    @Column(name = "PROVIDER")
+    private String provider;
+
+    @Column(name = "MODEL")
+    private String model;
+
+    @Column(name = "RESPONSE")
+    @Lob
+    private String response;
+
+    @Column(name = "CREATED_DATE")
+    private OffsetDateTime createdDate;
+
+    @Column(name = "EXPIRES_AT")
+    private OffsetDateTime expiresAt;
+
+    public OffsetDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public OffsetDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public void setCreatedDate(OffsetDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public AIWizardConnection getProvider() {
+        return provider == null ? null : AIWizardConnection.fromId(provider);
+    }
+
+    public void setProvider(AIWizardConnection provider) {
+        this.provider = provider == null ? null : provider.getId();
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+}
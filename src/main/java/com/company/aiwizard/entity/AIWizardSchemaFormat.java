@@ -0,0 +1,33 @@
+package com.company.aiwizard.entity;
+
+import io.jmix.core.metamodel.datatype.EnumClass;
+
+import org.springframework.lang.Nullable;
+
+
+public enum AIWizardSchemaFormat implements EnumClass<String> {
+
+    VERBOSE("VERBOSE"),
+    COMPACT("COMPACT"),
+    JSON("JSON");
+
+    private final String id;
+
+    AIWizardSchemaFormat(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public static AIWizardSchemaFormat fromId(String id) {
+        for (AIWizardSchemaFormat at : AIWizardSchemaFormat.values()) {
+            if (at.getId().equals(id)) {
+                return at;
+            }
+        }
+        return null;
+    }
+}
@@ -6,6 +6,7 @@ import io.jmix.core.metamodel.annotation.JmixEntity;
 import io.jmix.reports.entity.DataSetType;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedBy;
@@ -47,6 +48,26 @@ public class AIWizardTemplate {
     @Lob
     private String contextPrefix;
 
+    @Column(name = "CACHE_ENABLED")
+    private Boolean cacheEnabled = true;
+
+    @Column(name = "SCHEMA_FORMAT")
+    private String schemaFormat;
+
+    @Column(name = "FALLBACK_CONNECTION")
+    private String fallbackConnection;
+
+    @Column(name = "HEDGING_ENABLED")
+    private Boolean hedgingEnabled;
+
+    @PositiveOrZero
+    @Column(name = "HISTORY_RETENTION_DAYS")
+    private Integer historyRetentionDays;
+
+    @PositiveOrZero
+    @Column(name = "HISTORY_MAX_ROWS")
+    private Integer historyMaxRows;
+
     @CreatedBy
     @Column(name = "CREATED_BY")
     private String createdBy;
@@ -63,6 +84,54 @@ public class AIWizardTemplate {
     @Column(name = "LAST_MODIFIED_DATE")
     private OffsetDateTime lastModifiedDate;
 
+    public Integer getHistoryMaxRows() {
+        return historyMaxRows;
+    }
+
+    public void setHistoryMaxRows(Integer historyMaxRows) {
+        this.historyMaxRows = historyMaxRows;
+    }
+
+    public Integer getHistoryRetentionDays() {
+        return historyRetentionDays;
+    }
+
+    public void setHistoryRetentionDays(Integer historyRetentionDays) {
+        this.historyRetentionDays = historyRetentionDays;
+    }
+
+    public Boolean getHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(Boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    public AIWizardConnection getFallbackConnection() {
+        return fallbackConnection == null ? null : AIWizardConnection.fromId(fallbackConnection);
+    }
+
+    public void setFallbackConnection(AIWizardConnection fallbackConnection) {
+        this.fallbackConnection = fallbackConnection == null ? null : fallbackConnection.getId();
+    }
+
+    public AIWizardSchemaFormat getSchemaFormat() {
+        return schemaFormat == null ? null : AIWizardSchemaFormat.fromId(schemaFormat);
+    }
+
+    public void setSchemaFormat(AIWizardSchemaFormat schemaFormat) {
+        this.schemaFormat = schemaFormat == null ? null : schemaFormat.getId();
+    }
+
+    public Boolean getCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(Boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
     public String getContextPrefix() {
         return contextPrefix;
     }
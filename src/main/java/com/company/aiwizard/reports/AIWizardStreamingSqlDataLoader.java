@@ -0,0 +1,362 @@
+package com.company.aiwizard.reports;
+
+import com.company.aiwizard.service.AIWizardHistoryService;
+import io.jmix.core.Stores;
+import io.jmix.reports.entity.DataSet;
+import io.jmix.reports.yarg.exception.DataLoadingException;
+import io.jmix.reports.yarg.loaders.ReportDataLoader;
+import io.jmix.reports.yarg.loaders.factory.DefaultLoaderFactory;
+import io.jmix.reports.yarg.loaders.factory.ReportLoaderFactory;
+import io.jmix.reports.yarg.loaders.impl.SqlDataLoader;
+import io.jmix.reports.yarg.structure.BandData;
+import io.jmix.reports.yarg.structure.ReportQuery;
+import io.jmix.reports.yarg.util.db.ResultSetHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Low-memory execution of AI generated SQL report bands. Replaces the "sql" loader of the
+ * Jmix Reports engine and handles data sets the AI Wizard generated a script for (recorded
+ * on AIWizardHistory, where retention keeps the newest row of each data set; batch results
+ * count once approved); all other data sets, and those of additional data stores, are passed
+ * to the original loader.
+ *
+ * The engine's loader contract returns a band's rows as a list of maps, and formatters walk
+ * the complete band tree, so rows cannot be handed to the formatter one by one. Instead the
+ * footprint of that list is kept down and bounded:
+ * - Rows are read through a forward-only, read-only cursor with a fetch size, in a read-only
+ *   transaction, so drivers that buffer whole results by default (PostgreSQL, MySQL) stream them
+ * - Each row is a map view over the value array read from the cursor, sharing one column
+ *   index per band, instead of a HashMap per row
+ * - The estimated size of the rows read so far is checked against a memory ceiling while
+ *   reading; above it the band fails with an error naming the data set, before the heap is exhausted
+ *
+ * Sorting is left to the database (ORDER BY), which spills to its own temporary storage;
+ * the engine does not sort SQL bands in memory.
+ *
+ * Configuration:
+ * - aiwizard.streaming.enabled: register the loader (default true)
+ * - aiwizard.streaming.all-sql-data-sets: handle every main-store SQL data set, not only AI generated ones (default false)
+ * - aiwizard.streaming.fetch-size: rows fetched per round trip (default 500)
+ * - aiwizard.streaming.memory-ceiling: estimated memory allowed for the rows of one band (default 256MB)
+ */
+@Component("aiwizard_AIWizardStreamingSqlDataLoader")
+public class AIWizardStreamingSqlDataLoader extends SqlDataLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardStreamingSqlDataLoader.class);
+
+    /** How long a data set is remembered as AI generated or not; a rejected result may revert it. */
+    private static final long CACHE_MILLIS = 60_000;
+
+    /** Remembered data sets above which expired entries are dropped. */
+    private static final int CACHE_PURGE_SIZE = 1000;
+
+    @Value("${aiwizard.streaming.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.streaming.all-sql-data-sets:false}")
+    private boolean allSqlDataSets;
+
+    @Value("${aiwizard.streaming.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${aiwizard.streaming.memory-ceiling:256MB}")
+    private DataSize memoryCeiling;
+
+    private final DataSource dataSource;  // JDBC connection pool of the main store
+    private final ReportLoaderFactory loaderFactory;
+    private final AIWizardHistoryService historyService;
+
+    /** The engine's original "sql" loader, set on registration. */
+    private ReportDataLoader delegate;
+
+    /** Data sets known to be AI generated or not, until the expiry time. */
+    private final Map<UUID, GeneratedFlag> generatedDataSets = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardStreamingSqlDataLoader(DataSource dataSource,
+                                          ReportLoaderFactory loaderFactory,
+                                          AIWizardHistoryService historyService) {
+        super(dataSource);
+        this.dataSource = dataSource;
+        this.loaderFactory = loaderFactory;
+        this.historyService = historyService;
+    }
+
+    /**
+     * Registers this loader for "sql" data sets in place of the engine's loader, which is kept as delegate.
+     */
+    @PostConstruct
+    private void register() {
+        if (!enabled) {
+            return;
+        }
+        if (!(loaderFactory instanceof DefaultLoaderFactory defaultLoaderFactory)) {
+            log.warn("Streaming SQL data loader not registered: unsupported loader factory {}",
+                    loaderFactory.getClass().getName());
+            return;
+        }
+        delegate = defaultLoaderFactory.getDataLoaders().get("sql");
+        defaultLoaderFactory.registerDataLoader("sql", this);
+        log.info("Streaming SQL data loader registered (fetch size {}, memory ceiling {}, {})",
+                fetchSize, memoryCeiling, allSqlDataSets ? "all SQL data sets" : "AI generated data sets");
+    }
+
+    @Override
+    public List<Map<String, Object>> loadData(ReportQuery reportQuery, BandData parentBand, Map<String, Object> params) {
+        if (delegate != null && !handles(reportQuery)) {
+            return delegate.loadData(reportQuery, parentBand, params);
+        }
+        return super.loadData(reportQuery, parentBand, params);
+    }
+
+    /**
+     * Runs the query on a forward-only cursor. The handler of SqlDataLoader reads the rows;
+     * the result set it sees counts them against the memory ceiling.
+     */
+    @Override
+    protected List runQuery(ReportQuery reportQuery, String queryString, Object[] params,
+                            ResultSetHandler<List> handler) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL uses a cursor for the fetch size only outside auto-commit
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (PreparedStatement statement = connection.prepareStatement(queryString,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                String product = connection.getMetaData().getDatabaseProductName();
+                // MySQL Connector/J streams row by row only with this marker value
+                statement.setFetchSize("MySQL".equalsIgnoreCase(product) ? Integer.MIN_VALUE : fetchSize);
+                setParameters(statement, params);
+                try (ResultSet rs = statement.executeQuery()) {
+                    return handler.handle(withMemoryCeiling(rs, reportQuery.getName()));
+                }
+            } finally {
+                connection.rollback();
+                connection.setReadOnly(false);
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Wraps the rows read from the cursor in map views sharing one column index,
+     * instead of copying each row into a HashMap.
+     */
+    @Override
+    protected List<Map<String, Object>> fillOutputData(List resList, List<OutputValue> parametersNames) {
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        for (int i = 0; i < parametersNames.size(); i++) {
+            OutputValue outputValue = parametersNames.get(i);
+            columns.putIfAbsent(outputValue.getValueName(), i);
+            if (outputValue.getSynonym() != null) {
+                columns.putIfAbsent(outputValue.getSynonym(), i);
+            }
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(resList.size());
+        for (Object record : resList) {
+            if (!(record instanceof Object[] values) || values.length != parametersNames.size()) {
+                // Single-column drivers' results and other shapes: keep the engine's conversion
+                return super.fillOutputData(resList, parametersNames);
+            }
+            rows.add(new CompactRow(columns, values));
+        }
+        return rows;
+    }
+
+    /**
+     * Returns true for main-store SQL data sets that are handled here: AI generated ones,
+     * or all of them when configured.
+     */
+    private boolean handles(ReportQuery reportQuery) {
+        if (!(reportQuery instanceof DataSet dataSet)) {
+            return false;
+        }
+        if (dataSet.getDataStore() != null && !Stores.MAIN.equals(dataSet.getDataStore())) {
+            return false;
+        }
+        if (allSqlDataSets) {
+            return true;
+        }
+        UUID id = dataSet.getId();
+        if (id == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        GeneratedFlag flag = generatedDataSets.get(id);
+        if (flag != null && flag.expiresAt() > now) {
+            return flag.generated();
+        }
+        boolean generated = historyService.isGeneratedDataSet(id);
+        if (generatedDataSets.size() >= CACHE_PURGE_SIZE) {
+            generatedDataSets.values().removeIf(cached -> cached.expiresAt() <= now);
+        }
+        generatedDataSets.put(id, new GeneratedFlag(generated, now + CACHE_MILLIS));
+        return generated;
+    }
+
+    /**
+     * Binds parameters; nulls are bound with the type the driver reports, VARCHAR if it reports none.
+     */
+    private void setParameters(PreparedStatement statement, Object[] params) throws SQLException {
+        ParameterMetaData metaData = null;
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] != null) {
+                statement.setObject(i + 1, params[i]);
+                continue;
+            }
+            int sqlType = Types.VARCHAR;
+            try {
+                if (metaData == null) {
+                    metaData = statement.getParameterMetaData();
+                }
+                sqlType = metaData.getParameterType(i + 1);
+            } catch (SQLException e) {
+                // Not supported by the driver
+            }
+            statement.setNull(i + 1, sqlType);
+        }
+    }
+
+    /**
+     * Returns a view of the result set that adds the estimated size of each value read to
+     * a running total and fails once the total exceeds the memory ceiling.
+     */
+    private ResultSet withMemoryCeiling(ResultSet rs, String dataSetName) {
+        long ceiling = memoryCeiling.toBytes();
+        long[] used = {0L};
+        long[] rows = {0L};
+        int[] columnCount = {-1};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(rs, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    String name = method.getName();
+                    if ("next".equals(name) && Boolean.TRUE.equals(result)) {
+                        if (columnCount[0] < 0) {
+                            columnCount[0] = rs.getMetaData().getColumnCount();
+                        }
+                        rows[0]++;
+                        used[0] += CompactRow.OVERHEAD + 8L * columnCount[0];
+                    } else if ("getObject".equals(name)) {
+                        used[0] += estimateSize(result);
+                    }
+                    if (used[0] > ceiling) {
+                        throw new DataLoadingException(String.format(
+                                "Data set [%s] exceeded the memory ceiling of %s after %d rows. "
+                                        + "Add a filter or a row cap to the query.",
+                                dataSetName, memoryCeiling, rows[0]));
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Estimates the heap size of a column value, in bytes.
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String string) {
+            return 40 + 2L * string.length();
+        }
+        if (value instanceof byte[] bytes) {
+            return 16 + bytes.length;
+        }
+        if (value instanceof BigDecimal) {
+            return 64;
+        }
+        return 24;
+    }
+
+    // ==================== Row Representation ====================
+
+    /**
+     * A band row: a map view over the values read for the row, with the column index shared
+     * by all rows of the band. Values put under known columns replace the value in place;
+     * other keys go to a map created on first use.
+     */
+    static final class CompactRow extends AbstractMap<String, Object> {
+
+        /** Estimated bytes per row besides its values and their references. */
+        static final long OVERHEAD = 64;
+
+        private final Map<String, Integer> columns;
+        private final Object[] values;
+        private Map<String, Object> extra;
+
+        CompactRow(Map<String, Integer> columns, Object[] values) {
+            this.columns = columns;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = columns.get(key);
+            if (index != null) {
+                return values[index];
+            }
+            return extra == null ? null : extra.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columns.containsKey(key) || (extra != null && extra.containsKey(key));
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Integer index = columns.get(key);
+            if (index != null) {
+                Object previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            if (extra == null) {
+                extra = new HashMap<>();
+            }
+            return extra.put(key, value);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<Entry<String, Object>> entries = new LinkedHashSet<>();
+            columns.forEach((key, index) -> entries.add(new SimpleEntry<>(key, values[index])));
+            if (extra != null) {
+                entries.addAll(extra.entrySet());
+            }
+            return entries;
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    private record GeneratedFlag(
+            boolean generated,
+            long expiresAt    // Expiration time (epoch millis)
+    ) {}
+}
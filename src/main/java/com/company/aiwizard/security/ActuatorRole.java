@@ -0,0 +1,14 @@
+package com.company.aiwizard.security;
+
+import io.jmix.security.model.SecurityScope;
+import io.jmix.security.role.annotation.ResourceRole;
+import io.jmix.security.role.annotation.SpecificPolicy;
+
+@ResourceRole(name = "Actuator: metrics access", code = ActuatorRole.CODE, scope = SecurityScope.API)
+public interface ActuatorRole {
+
+    String CODE = "actuator";
+
+    @SpecificPolicy(resources = "aiwizard.actuator")
+    void actuator();
+}
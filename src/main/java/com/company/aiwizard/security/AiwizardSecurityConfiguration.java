@@ -1,10 +1,14 @@
 package com.company.aiwizard.security;
 
 import io.jmix.core.JmixSecurityFilterChainOrder;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 
 /**
@@ -46,4 +50,25 @@ public class AiwizardSecurityConfiguration {
 
         return http.build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Actuator endpoints (health, metrics, prometheus) are served on the management port,
+     * which is bound to localhost (see management.server.* properties), so they are not
+     * routed to the UI login. Health stays open for probes; the other endpoints require
+     * HTTP Basic authentication of a user with the actuator or full access role.
+     * Ordered after publicFilterChain, so each request is matched by exactly one of them.
+     */
+    @Bean
+    @Order(JmixSecurityFilterChainOrder.CUSTOM + 1)
+    SecurityFilterChain actuatorFilterChain(HttpSecurity http) throws Exception {
+        http.securityMatcher(EndpointRequest.toAnyEndpoint())
+                .authorizeHttpRequests(authorize -> authorize
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .anyRequest().hasAnyRole(ActuatorRole.CODE, FullAccessRole.CODE)
+                )
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+
+        return http.build();
+    }
+}
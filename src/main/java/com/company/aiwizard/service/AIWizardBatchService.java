@@ -0,0 +1,639 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardApprovalStatus;
+import com.company.aiwizard.entity.AIWizardBatchItem;
+import com.company.aiwizard.entity.AIWizardBatchItemStatus;
+import com.company.aiwizard.entity.AIWizardBatchJob;
+import com.company.aiwizard.entity.AIWizardBatchStatus;
+import com.company.aiwizard.entity.AIWizardHistory;
+import com.company.aiwizard.entity.AIWizardOperation;
+import com.company.aiwizard.entity.AIWizardTemplate;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import com.company.aiwizard.service.UnifiedAIService.Generation;
+import io.jmix.core.DataManager;
+import io.jmix.core.FetchPlan;
+import io.jmix.core.SaveContext;
+import io.jmix.core.TimeSource;
+import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.core.security.SystemAuthenticator;
+import io.jmix.reports.ReportsSerialization;
+import io.jmix.reports.entity.BandDefinition;
+import io.jmix.reports.entity.DataSet;
+import io.jmix.reports.entity.DataSetType;
+import io.jmix.reports.entity.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Regenerates or modifies many report data sets with one AI Wizard template, in the background.
+ * Used when the schema changes and dozens of bands need the same treatment.
+ *
+ * A batch job holds the template, the prompt and the selected tables (SQL) or entities (JPQL)
+ * used as schema context; collectItems() adds one item per data set of the template's type
+ * in the selected reports. Running a job builds the schema context once, then generates each
+ * item on a bounded pool (shared by all jobs) through UnifiedAIService, so routing, retries,
+ * coalescing, rate limits and query validation apply as for interactive requests. Jobs run
+ * as the user who created them, so their quotas are charged.
+ *
+ * Progress is checkpointed per item: each result is saved together with its item as an
+ * AIWizardHistory row pending approval. Items left running by a restart are reset and the
+ * job resumes on application start; starting a finished job again retries its failed items.
+ * Approving a result writes it into the report's data set, unless the data set was changed
+ * after the result was generated.
+ *
+ * A rate limit that clears within the configured wait is waited out; a longer one (e.g. a
+ * used-up daily quota) pauses the job, which can be started again later.
+ *
+ * Provider batch endpoints are not used: their completion window of up to a day does not
+ * suit a wizard whose results are reviewed right after the run.
+ *
+ * Configuration:
+ * - aiwizard.batch.concurrency: items generated in parallel across all jobs (default 2)
+ * - aiwizard.batch.max-rate-limit-wait: longest rate limit waited out before pausing (default PT5M)
+ * - aiwizard.batch.resume-on-startup: resume jobs interrupted by a restart (default true)
+ */
+@Service("aiwizard_AIWizardBatchService")
+public class AIWizardBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardBatchService.class);
+
+    /** Length of the error and status message columns. */
+    private static final int MESSAGE_LENGTH = 1000;
+
+    @Value("${aiwizard.batch.concurrency:2}")
+    private int concurrency;
+
+    @Value("${aiwizard.batch.max-rate-limit-wait:PT5M}")
+    private Duration maxRateLimitWait;
+
+    @Value("${aiwizard.batch.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+
+    private final DataManager dataManager;
+    private final UnifiedAIService unifiedAIService;
+    private final AIWizardProviderRouter providerRouter;
+    private final AIWizardPromptBuilder promptBuilder;
+    private final AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private final AIWizardEntityDefinitionService entityDefinitionService;
+    private final AIWizardUsageService usageService;
+    private final AIWizardQueryValidator queryValidator;
+    private final ReportsSerialization reportsSerialization;
+    private final SystemAuthenticator systemAuthenticator;
+    private final TimeSource timeSource;
+
+    /** Jobs with a coordinator running in this instance. */
+    private final Set<UUID> running = ConcurrentHashMap.newKeySet();
+
+    /** Status requested for running jobs (PAUSED or CANCELLED), applied once in-flight items finish. */
+    private final Map<UUID, StopRequest> stopRequests = new ConcurrentHashMap<>();
+
+    /** One coordinator thread per running job, initialized in init(). */
+    private ExecutorService jobExecutor;
+
+    /** Bounded pool generating the items of all jobs, initialized in init(). */
+    private ExecutorService itemExecutor;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardBatchService(DataManager dataManager,
+                                UnifiedAIService unifiedAIService,
+                                AIWizardProviderRouter providerRouter,
+                                AIWizardPromptBuilder promptBuilder,
+                                AIWizardTableDDLDefinitionService tableDDLDefinitionService,
+                                AIWizardEntityDefinitionService entityDefinitionService,
+                                AIWizardUsageService usageService,
+                                AIWizardQueryValidator queryValidator,
+                                ReportsSerialization reportsSerialization,
+                                SystemAuthenticator systemAuthenticator,
+                                TimeSource timeSource) {
+        this.dataManager = dataManager;
+        this.unifiedAIService = unifiedAIService;
+        this.providerRouter = providerRouter;
+        this.promptBuilder = promptBuilder;
+        this.tableDDLDefinitionService = tableDDLDefinitionService;
+        this.entityDefinitionService = entityDefinitionService;
+        this.usageService = usageService;
+        this.queryValidator = queryValidator;
+        this.reportsSerialization = reportsSerialization;
+        this.systemAuthenticator = systemAuthenticator;
+        this.timeSource = timeSource;
+    }
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger jobThreadNumber = new AtomicInteger();
+        jobExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "aiwizard-batch-job-" + jobThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger itemThreadNumber = new AtomicInteger();
+        itemExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "aiwizard-batch-" + itemThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // Items interrupted here stay RUNNING and are reset when the job resumes
+        jobExecutor.shutdownNow();
+        itemExecutor.shutdownNow();
+    }
+
+    /**
+     * Resumes jobs that were running when the application stopped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        List<AIWizardBatchJob> jobs = systemAuthenticator.withSystem(() ->
+                dataManager.load(AIWizardBatchJob.class)
+                        .query("select e from AIWizardBatchJob e where e.status = :status")
+                        .parameter("status", AIWizardBatchStatus.RUNNING.getId())
+                        .list());
+        for (AIWizardBatchJob job : jobs) {
+            log.info("Resuming AI Wizard batch job '{}'", job.getName());
+            try {
+                if (job.getCreatedBy() != null) {
+                    systemAuthenticator.runWithUser(job.getCreatedBy(), () -> start(job.getId()));
+                } else {
+                    systemAuthenticator.runWithSystem(() -> start(job.getId()));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to resume AI Wizard batch job '{}': {}", job.getName(), e.getMessage());
+            }
+        }
+    }
+
+    // ==================== Job Management ====================
+
+    /**
+     * Creates one item per data set of the template's dataset type in the given reports.
+     * The items are not saved; the caller adds them to the job.
+     *
+     * @param job     the job, with its template set
+     * @param reports the reports whose bands are regenerated
+     * @return new items in report, band and data set order
+     * @throws IllegalArgumentException if the job has no template
+     */
+    public List<AIWizardBatchItem> collectItems(AIWizardBatchJob job, Collection<Report> reports) {
+        if (job.getTemplate() == null) {
+            throw new IllegalArgumentException("Select a template first");
+        }
+        DataSetType dataSetType = job.getTemplate().getDatasetType();
+
+        List<AIWizardBatchItem> items = new ArrayList<>();
+        for (Report report : reports) {
+            Report loaded = dataManager.load(Report.class).id(report.getId()).one();
+            for (BandDefinition band : bandsOf(loaded)) {
+                for (DataSet dataSet : band.getDataSets()) {
+                    if (dataSet.getType() != dataSetType) {
+                        continue;
+                    }
+                    AIWizardBatchItem item = dataManager.create(AIWizardBatchItem.class);
+                    item.setJob(job);
+                    item.setReportId(loaded.getId());
+                    item.setReportName(loaded.getName());
+                    item.setBandName(band.getName());
+                    item.setDataSetName(dataSet.getName());
+                    items.add(item);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Starts or resumes a job on behalf of the current user. Items that are pending, failed,
+     * or were left running by a restart are (re)generated; completed items are kept.
+     *
+     * @param jobId the job to start
+     * @throws IllegalStateException if the job is already running
+     */
+    public void start(UUID jobId) {
+        if (!running.add(jobId)) {
+            throw new IllegalStateException("The batch job is already running");
+        }
+        try {
+            stopRequests.remove(jobId);
+            for (AIWizardBatchItem item : loadItems(jobId,
+                    AIWizardBatchItemStatus.RUNNING, AIWizardBatchItemStatus.FAILED)) {
+                item.setStatus(AIWizardBatchItemStatus.PENDING);
+                dataManager.save(item);
+            }
+
+            AIWizardBatchJob job = loadJob(jobId);
+            job.setStatus(AIWizardBatchStatus.RUNNING);
+            job.setStatusMessage(null);
+            job.setStartedDate(timeSource.now().toOffsetDateTime());
+            job.setFinishedDate(null);
+            dataManager.save(job);
+
+            jobExecutor.execute(secured(() -> run(jobId)));
+        } catch (RuntimeException e) {
+            running.remove(jobId);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops a job: items in flight finish, the remaining items stay pending.
+     *
+     * @param jobId  the job to stop
+     * @param status PAUSED to resume later with start(), or CANCELLED
+     */
+    public void stop(UUID jobId, AIWizardBatchStatus status) {
+        if (running.contains(jobId)) {
+            stopRequests.put(jobId, new StopRequest(status,
+                    (status == AIWizardBatchStatus.CANCELLED ? "Cancelled" : "Paused") + " by the user"));
+            return;
+        }
+        AIWizardBatchJob job = loadJob(jobId);
+        if (job.getStatus() != AIWizardBatchStatus.COMPLETED) {
+            job.setStatus(status);
+            dataManager.save(job);
+        }
+    }
+
+    /**
+     * Returns whether a job has a coordinator running in this instance.
+     */
+    public boolean isRunning(UUID jobId) {
+        return running.contains(jobId);
+    }
+
+    // ==================== Approval ====================
+
+    /**
+     * Writes the generated script of an item into its report's data set and marks the result approved.
+     *
+     * @param itemId a generated item with a result pending approval
+     * @throws IllegalStateException if the result is not pending approval, the data set no longer exists
+     *                               or it was changed after the result was generated
+     */
+    public void approve(UUID itemId) {
+        AIWizardBatchItem item = loadItemWithHistory(itemId);
+        AIWizardHistory history = pendingHistory(item);
+
+        Report report = dataManager.load(Report.class).id(item.getReportId()).one();
+        Report parsed = reportsSerialization.convertToReport(report.getXml());
+        DataSet dataSet = findDataSet(parsed, item.getBandName(), item.getDataSetName())
+                .orElseThrow(() -> new IllegalStateException("Data set " + describe(item) + " no longer exists"));
+        if (!Objects.equals(Objects.toString(dataSet.getText(), ""), Objects.toString(history.getOriginalValue(), ""))) {
+            throw new IllegalStateException("Data set " + describe(item)
+                    + " was changed after the result was generated. Regenerate it or apply the result manually.");
+        }
+
+        dataSet.setText(history.getResponse());
+        report.setXml(reportsSerialization.convertToString(parsed));
+        history.setApprovalStatus(AIWizardApprovalStatus.APPROVED);
+        dataManager.save(new SaveContext().saving(report, history));
+    }
+
+    /**
+     * Marks the result of an item rejected; the report is not changed.
+     *
+     * @param itemId a generated item with a result pending approval
+     * @throws IllegalStateException if the result is not pending approval
+     */
+    public void reject(UUID itemId) {
+        AIWizardHistory history = pendingHistory(loadItemWithHistory(itemId));
+        history.setApprovalStatus(AIWizardApprovalStatus.REJECTED);
+        dataManager.save(history);
+    }
+
+    // ==================== Job Execution ====================
+
+    /**
+     * Coordinates a job run: builds the shared context, generates the pending items on the
+     * item pool and records progress as items complete.
+     */
+    private void run(UUID jobId) {
+        try {
+            AIWizardBatchJob job = loadJob(jobId);
+            JobContext context = createContext(job);
+            List<AIWizardBatchItem> items = loadItems(jobId, AIWizardBatchItemStatus.PENDING);
+            log.info("AI Wizard batch job '{}': generating {} items", job.getName(), items.size());
+
+            CompletionService<Void> completion = new ExecutorCompletionService<>(itemExecutor);
+            for (AIWizardBatchItem item : items) {
+                completion.submit(secured(() -> processItem(context, item.getId())), null);
+            }
+            for (int i = 0; i < items.size(); i++) {
+                completion.take();
+                updateProgress(jobId, null, null);
+            }
+
+            StopRequest stop = stopRequests.remove(jobId);
+            updateProgress(jobId, stop == null ? AIWizardBatchStatus.COMPLETED : stop.status(),
+                    stop == null ? null : stop.message());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("AI Wizard batch job {} failed", jobId, e);
+            stopRequests.remove(jobId);
+            updateProgress(jobId, AIWizardBatchStatus.FAILED, e.getMessage());
+        } finally {
+            running.remove(jobId);
+        }
+    }
+
+    /**
+     * Generates one item and saves the result with the item, or records the failure on the item.
+     */
+    private void processItem(JobContext context, UUID itemId) {
+        if (stopRequests.containsKey(context.jobId())) {
+            return;
+        }
+        AIWizardBatchItem item = dataManager.load(AIWizardBatchItem.class).id(itemId).one();
+        item.setStatus(AIWizardBatchItemStatus.RUNNING);
+        item.setAttempts(item.getAttempts() == null ? 1 : item.getAttempts() + 1);
+        item = dataManager.save(item);
+
+        try {
+            Report report = dataManager.load(Report.class).id(item.getReportId()).one();
+            DataSet dataSet = findDataSet(reportsSerialization.convertToReport(report.getXml()),
+                    item.getBandName(), item.getDataSetName())
+                    .orElseThrow(() -> new IllegalStateException("Data set no longer exists"));
+            String currentScript = dataSet.getText();
+
+            AIWizardTemplate template = context.template();
+            AIWizardPromptBuilder.BuiltPrompt builtPrompt = promptBuilder.build(new AIWizardPromptBuilder.PromptRequest(
+                    template.getConnection(),
+                    template.getContextPrefix(),
+                    context.tables(),
+                    context.entities(),
+                    null,
+                    template.getSchemaFormat(),
+                    List.of(),
+                    template.getOperation() == AIWizardOperation.MODIFY ? currentScript : null,
+                    userPrompt(context, item)));
+
+            Generation generation = generate(context, builtPrompt.userPrompt());
+            if (generation == null) {
+                // Paused by a rate limit: the item is generated when the job is started again
+                item.setStatus(AIWizardBatchItemStatus.PENDING);
+                item.setAttempts(item.getAttempts() - 1);
+                dataManager.save(item);
+                return;
+            }
+            // Same validation and repair rounds as interactive requests; a query that still fails
+            // is kept for review with the error on the item
+            AIWizardQueryValidator.Repaired repaired = queryValidator.validateAndRepair(template.getDatasetType(),
+                    generation, builtPrompt.userPrompt(), template.getContextPrefix(), context.route(), context.useCache());
+            generation = repaired.generation();
+
+            AIWizardHistory history = dataManager.create(AIWizardHistory.class);
+            history.setAiWizardPromptTemplate(template);
+            history.setOriginalValue(currentScript);
+            history.setDataSetId(dataSet.getId());
+            history.setPrompt(builtPrompt.userPrompt());
+            history.setResponse(UnifiedAIService.stripCodeBlockFormatting(generation.text()));
+            history.setApprovalStatus(AIWizardApprovalStatus.PENDING);
+            usageService.applyUsage(history, generation);
+
+            item.setStatus(AIWizardBatchItemStatus.DONE);
+            item.setErrorMessage(repaired.validation().valid() ? null
+                    : truncate("Failed validation: " + repaired.validation().error()));
+            item.setHistory(history);
+            dataManager.save(new SaveContext().saving(history, item));
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;  // shutting down: the item stays RUNNING and is reset when the job resumes
+            }
+            log.warn("AI Wizard batch item {} failed: {}", describe(item), e.getMessage());
+            item.setStatus(AIWizardBatchItemStatus.FAILED);
+            item.setErrorMessage(truncate(e.getMessage()));
+            dataManager.save(item);
+        }
+    }
+
+    /**
+     * Calls the model, waiting out short rate limits.
+     *
+     * @return the generation, or null if the job was paused by a long rate limit or stopped meanwhile
+     */
+    private Generation generate(JobContext context, String prompt) {
+        while (true) {
+            try {
+                return unifiedAIService.generateContent(prompt, context.template().getContextPrefix(),
+                        context.route(), context.useCache());
+            } catch (AIWizardRateLimitException e) {
+                Duration retryAfter = e.getRetryAfter() == null ? Duration.ZERO : e.getRetryAfter();
+                if (retryAfter.compareTo(maxRateLimitWait) > 0) {
+                    stopRequests.putIfAbsent(context.jobId(),
+                            new StopRequest(AIWizardBatchStatus.PAUSED, truncate("Paused: " + e.getMessage())));
+                    return null;
+                }
+                try {
+                    Thread.sleep(Math.max(retryAfter.toMillis(), 100));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("AI Wizard batch interrupted");
+                }
+                if (stopRequests.containsKey(context.jobId())) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the template and the schema definitions shared by all items of a job.
+     */
+    private JobContext createContext(AIWizardBatchJob job) {
+        AIWizardTemplate template = job.getTemplate();
+        if (!unifiedAIService.isProviderAvailable(template.getConnection())) {
+            throw new IllegalStateException("AI provider " + template.getConnection() + " is not configured");
+        }
+
+        List<String> schemaItems = parseSchemaItems(job.getSchemaItems());
+        Map<String, TableDDLDefinition> tables = null;
+        Map<String, EntityDefinition> entities = null;
+        if (!schemaItems.isEmpty()) {
+            if (template.getDatasetType() == DataSetType.SQL) {
+                tables = tableDDLDefinitionService.getTableDDLDefinitions(schemaItems);
+            } else if (template.getDatasetType() == DataSetType.JPQL) {
+                entities = new LinkedHashMap<>();
+                for (String entityName : schemaItems) {
+                    entities.put(entityName, entityDefinitionService.getEntityDefinition(entityName));
+                }
+            }
+        }
+
+        return new JobContext(job.getId(), template, job.getPrompt(),
+                providerRouter.routeFor(template),
+                !Boolean.FALSE.equals(template.getCacheEnabled()),
+                tables, entities);
+    }
+
+    /**
+     * The job's prompt, followed by the data set being generated so that CREATE prompts
+     * produce a query for each band rather than one shared answer.
+     */
+    private String userPrompt(JobContext context, AIWizardBatchItem item) {
+        String prompt = context.prompt() == null ? "" : context.prompt().trim();
+        return prompt + "\n\nReport: " + item.getReportName()
+                + ", band: " + item.getBandName()
+                + ", data set: " + item.getDataSetName();
+    }
+
+    /**
+     * Stores item counts on the job and, when finishing, its final status.
+     * Only the job's coordinator writes the job row while it runs.
+     */
+    private void updateProgress(UUID jobId, AIWizardBatchStatus finalStatus, String message) {
+        List<KeyValueEntity> counts = dataManager.loadValues(
+                        "select e.status, count(e) from AIWizardBatchItem e " +
+                                "where e.job.id = :jobId group by e.status")
+                .properties("status", "count")
+                .parameter("jobId", jobId)
+                .list();
+        int total = 0;
+        int done = 0;
+        int failed = 0;
+        for (KeyValueEntity row : counts) {
+            int count = ((Number) row.getValue("count")).intValue();
+            total += count;
+            if (AIWizardBatchItemStatus.DONE.getId().equals(row.getValue("status"))) {
+                done = count;
+            } else if (AIWizardBatchItemStatus.FAILED.getId().equals(row.getValue("status"))) {
+                failed = count;
+            }
+        }
+
+        AIWizardBatchJob job = loadJob(jobId);
+        job.setTotalItems(total);
+        job.setCompletedItems(done);
+        job.setFailedItems(failed);
+        if (finalStatus != null) {
+            job.setStatus(finalStatus);
+            job.setStatusMessage(truncate(message));
+            job.setFinishedDate(timeSource.now().toOffsetDateTime());
+            log.info("AI Wizard batch job '{}' {}: {} of {} items generated, {} failed",
+                    job.getName(), finalStatus.name().toLowerCase(), done, total, failed);
+        }
+        dataManager.save(job);
+    }
+
+    // ==================== Helper Methods ====================
+
+    private AIWizardBatchJob loadJob(UUID jobId) {
+        return dataManager.load(AIWizardBatchJob.class)
+                .id(jobId)
+                .fetchPlan(fetchPlan -> fetchPlan.addFetchPlan(FetchPlan.BASE).add("template", FetchPlan.BASE))
+                .one();
+    }
+
+    private List<AIWizardBatchItem> loadItems(UUID jobId, AIWizardBatchItemStatus... statuses) {
+        return dataManager.load(AIWizardBatchItem.class)
+                .query("select e from AIWizardBatchItem e where e.job.id = :jobId and e.status in :statuses " +
+                        "order by e.reportName, e.bandName, e.dataSetName")
+                .parameter("jobId", jobId)
+                .parameter("statuses", Arrays.stream(statuses).map(AIWizardBatchItemStatus::getId).toList())
+                .list();
+    }
+
+    private AIWizardBatchItem loadItemWithHistory(UUID itemId) {
+        return dataManager.load(AIWizardBatchItem.class)
+                .id(itemId)
+                .fetchPlan(fetchPlan -> fetchPlan.addFetchPlan(FetchPlan.BASE).add("history", FetchPlan.BASE))
+                .one();
+    }
+
+    private AIWizardHistory pendingHistory(AIWizardBatchItem item) {
+        AIWizardHistory history = item.getHistory();
+        if (history == null || history.getApprovalStatus() != AIWizardApprovalStatus.PENDING) {
+            throw new IllegalStateException("Data set " + describe(item) + " has no result pending approval");
+        }
+        return history;
+    }
+
+    private List<BandDefinition> bandsOf(Report report) {
+        if (report.getXml() == null) {
+            return List.of();
+        }
+        List<BandDefinition> bands = new ArrayList<>(reportsSerialization.convertToReport(report.getXml()).getBands());
+        bands.sort(Comparator.comparing(BandDefinition::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return bands;
+    }
+
+    private Optional<DataSet> findDataSet(Report report, String bandName, String dataSetName) {
+        return report.getBands().stream()
+                .filter(band -> Objects.equals(band.getName(), bandName))
+                .flatMap(band -> band.getDataSets().stream())
+                .filter(dataSet -> Objects.equals(dataSet.getName(), dataSetName))
+                .findFirst();
+    }
+
+    private static List<String> parseSchemaItems(String schemaItems) {
+        if (schemaItems == null) {
+            return List.of();
+        }
+        return Arrays.stream(schemaItems.split("[,;\\s]+"))
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    private static String describe(AIWizardBatchItem item) {
+        return item.getReportName() + " / " + item.getBandName() + " / " + item.getDataSetName();
+    }
+
+    private static String truncate(String message) {
+        return message == null || message.length() <= MESSAGE_LENGTH ? message : message.substring(0, MESSAGE_LENGTH);
+    }
+
+    /**
+     * Runs a task with a copy of the caller's security context. A copy, because SystemAuthenticator
+     * restores the previous authentication on the context object it used once its block ends.
+     */
+    private static Runnable secured(Runnable task) {
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        return new DelegatingSecurityContextRunnable(task, context);
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Inputs shared by all items of a job run.
+     */
+    private record JobContext(
+            UUID jobId,
+            AIWizardTemplate template,
+            String prompt,                            // The job's user prompt
+            AIWizardProviderRouter.Route route,
+            boolean useCache,
+            Map<String, TableDDLDefinition> tables,   // SQL: selected table definitions (nullable)
+            Map<String, EntityDefinition> entities    // JPQL: selected entity definitions (nullable)
+    ) {}
+
+    /**
+     * Status to apply to a running job once its in-flight items finish.
+     */
+    private record StopRequest(
+            AIWizardBatchStatus status,   // PAUSED or CANCELLED
+            String message
+    ) {}
+}
@@ -6,11 +6,18 @@ import io.jmix.core.metamodel.model.MetaClass;
 import io.jmix.core.metamodel.model.MetaProperty;
 import io.jmix.core.metamodel.model.Range;
 import jakarta.persistence.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 /**
@@ -20,13 +27,37 @@ import java.util.stream.Collectors;
  *
  * Useful for AI-powered tools that need to understand the data model,
  * code generators, documentation tools, or admin interfaces.
+ *
+ * Jmix metadata does not change after startup, so each definition (structured and string form)
+ * is computed once per MetaClass and memoized. Reflection results are indexed per class
+ * (field name to Field) so a definition costs one pass over the class hierarchy.
+ *
+ * Configuration:
+ * - aiwizard.entity-definitions.warm-up: precompute all JPA entity definitions in parallel
+ *   on ApplicationReadyEvent (default true)
  */
 @Service("aiwizard_AIWizardEntityDefinitionService")  // Bean name with module prefix
 public class AIWizardEntityDefinitionService {
 
+    private static final Logger log = LoggerFactory.getLogger(AIWizardEntityDefinitionService.class);
+
+    /** JPA annotations already represented by dedicated PropertyDefinition fields. */
+    private static final Set<String> COMMON_ANNOTATIONS = Set.of("Column", "JoinColumn", "ManyToOne", "OneToMany",
+            "OneToOne", "ManyToMany", "Id", "GeneratedValue", "Version", "Enumerated",
+            "Temporal", "Basic", "Transient");
+
+    @Value("${aiwizard.entity-definitions.warm-up:true}")
+    private boolean warmUp;
+
     private final Metadata metadata;           // Jmix metadata registry
     private final MetadataTools metadataTools; // Utility class for metadata operations
 
+    /** Memoized definitions per entity. */
+    private final ConcurrentMap<MetaClass, CachedEntityDefinition> definitions = new ConcurrentHashMap<>();
+
+    /** Field name to field per class, including inherited fields (subclass fields shadow superclass ones). */
+    private final ConcurrentMap<Class<?>, Map<String, Field>> fieldIndex = new ConcurrentHashMap<>();
+
     /**
      * Constructor injection for required dependencies.
      */
@@ -35,6 +66,30 @@ public class AIWizardEntityDefinitionService {
         this.metadataTools = metadataTools;
     }
 
+    /**
+     * Precomputes the definitions of all JPA entities in parallel, so the first AI Wizard run
+     * on a large domain model does not pay for reflection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!warmUp) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<MetaClass> metaClasses = metadata.getClasses().stream()
+                .filter(metadataTools::isJpaEntity)
+                .toList();
+        metaClasses.parallelStream().forEach(metaClass -> {
+            try {
+                getCachedDefinition(metaClass);
+            } catch (RuntimeException e) {
+                log.debug("Could not precompute definition of {}: {}", metaClass.getName(), e.getMessage());
+            }
+        });
+        log.info("Precomputed {} entity definitions in {} ms",
+                metaClasses.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
     /**
      * Returns complete entity definition with all metadata as a structured object.
      * Includes table mapping, properties, relationships, annotations, and inheritance info.
@@ -44,11 +99,50 @@ public class AIWizardEntityDefinitionService {
      * @throws IllegalArgumentException if entity is not found
      */
     public EntityDefinition getEntityDefinition(String entityName) {
+        return getCachedDefinition(entityName).definition();
+    }
+
+    /**
+     * Returns entity definition as a human-readable formatted string.
+     * Useful for debugging, logging, or displaying in UI/console.
+     *
+     * @param entityName Jmix entity name
+     * @return formatted string representation of entity metadata
+     * @throws IllegalArgumentException if entity is not found
+     */
+    public String getEntityDefinitionAsString(String entityName) {
+        return getCachedDefinition(entityName).text();
+    }
+
+    /**
+     * Formats an already built (e.g. pruned) entity definition as a human-readable string.
+     *
+     * @param def entity definition
+     * @return formatted string representation of entity metadata
+     */
+    public String getEntityDefinitionAsString(EntityDefinition def) {
+        return formatEntityDefinition(def);
+    }
+
+    private CachedEntityDefinition getCachedDefinition(String entityName) {
         MetaClass metaClass = metadata.findClass(entityName);
         if (metaClass == null) {
             throw new IllegalArgumentException("Entity not found: " + entityName);
         }
+        return getCachedDefinition(metaClass);
+    }
 
+    private CachedEntityDefinition getCachedDefinition(MetaClass metaClass) {
+        return definitions.computeIfAbsent(metaClass, mc -> {
+            EntityDefinition definition = buildEntityDefinition(mc);
+            return new CachedEntityDefinition(definition, formatEntityDefinition(definition));
+        });
+    }
+
+    /**
+     * Builds the complete entity definition from Jmix metadata and JPA annotations.
+     */
+    private EntityDefinition buildEntityDefinition(MetaClass metaClass) {
         Class<?> javaClass = metaClass.getJavaClass();
 
         // Build comprehensive entity definition from various metadata sources
@@ -63,21 +157,16 @@ public class AIWizardEntityDefinitionService {
                 metadataTools.isSoftDeletable(javaClass),     // Supports soft delete?
                 hasVersionField(javaClass),                   // Has optimistic locking?
                 getPrimaryKeyInfo(metaClass),                 // Primary key details
-                getPropertyDefinitions(metaClass),            // All property definitions
-                getClassAnnotations(javaClass),               // Class-level annotations
+                List.copyOf(getPropertyDefinitions(metaClass)),  // All property definitions
+                List.copyOf(getClassAnnotations(javaClass)),     // Class-level annotations
                 getInheritanceInfo(javaClass)                 // Inheritance mapping info
         );
     }
 
     /**
-     * Returns entity definition as a human-readable formatted string.
-     * Useful for debugging, logging, or displaying in UI/console.
-     *
-     * @param entityName Jmix entity name
-     * @return formatted string representation of entity metadata
+     * Formats an entity definition as a human-readable string.
      */
-    public String getEntityDefinitionAsString(String entityName) {
-        EntityDefinition def = getEntityDefinition(entityName);
+    private String formatEntityDefinition(EntityDefinition def) {
         StringBuilder sb = new StringBuilder();
 
         // === Header section ===
@@ -200,13 +289,18 @@ public class AIWizardEntityDefinitionService {
 
     /**
      * Checks if entity has a @Version field for optimistic locking.
-     * Searches through class hierarchy.
+     * Searches through class hierarchy. Walks every declared field rather than the name index,
+     * which hides a superclass field shadowed by a same-named subclass field.
      */
     private boolean hasVersionField(Class<?> javaClass) {
-        for (Field field : getAllFields(javaClass)) {
-            if (field.isAnnotationPresent(Version.class)) {
-                return true;
+        Class<?> current = javaClass;
+        while (current != null && current != Object.class) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Version.class)) {
+                    return true;
+                }
             }
+            current = current.getSuperclass();
         }
         return false;
     }
@@ -375,7 +469,7 @@ public class AIWizardEntityDefinitionService {
                 cascadeTypes,
                 enumClass,
                 enumType,
-                annotations
+                List.copyOf(annotations)
         );
     }
 
@@ -384,9 +478,7 @@ public class AIWizardEntityDefinitionService {
      * Only non-standard annotations are included in property definitions.
      */
     private boolean isCommonAnnotation(String name) {
-        return Set.of("Column", "JoinColumn", "ManyToOne", "OneToMany", "OneToOne",
-                "ManyToMany", "Id", "GeneratedValue", "Version", "Enumerated",
-                "Temporal", "Basic", "Transient").contains(name);
+        return COMMON_ANNOTATIONS.contains(name);
     }
 
     /**
@@ -425,30 +517,38 @@ public class AIWizardEntityDefinitionService {
      * Finds a field by name in the class or any of its superclasses.
      */
     private Field findField(Class<?> clazz, String fieldName) {
-        for (Field field : getAllFields(clazz)) {
-            if (field.getName().equals(fieldName)) {
-                return field;
-            }
-        }
-        return null;
+        return getFieldIndex(clazz).get(fieldName);
     }
 
     /**
-     * Returns all fields from a class and its entire inheritance hierarchy.
+     * Returns all fields from a class and its entire inheritance hierarchy, indexed by name.
      * Required because getDeclaredFields() only returns fields from the current class.
+     * Built once per class; a field declared in a subclass wins over a same-named superclass field.
      */
-    private List<Field> getAllFields(Class<?> clazz) {
-        List<Field> fields = new ArrayList<>();
-        Class<?> current = clazz;
-        while (current != null && current != Object.class) {
-            fields.addAll(Arrays.asList(current.getDeclaredFields()));
-            current = current.getSuperclass();
-        }
-        return fields;
+    private Map<String, Field> getFieldIndex(Class<?> clazz) {
+        return fieldIndex.computeIfAbsent(clazz, c -> {
+            Map<String, Field> fields = new LinkedHashMap<>();
+            Class<?> current = c;
+            while (current != null && current != Object.class) {
+                for (Field field : current.getDeclaredFields()) {
+                    fields.putIfAbsent(field.getName(), field);
+                }
+                current = current.getSuperclass();
+            }
+            return Collections.unmodifiableMap(fields);
+        });
     }
 
     // ==================== Record Definitions ====================
 
+    /**
+     * Memoized definition with its precomputed string form.
+     */
+    private record CachedEntityDefinition(
+            EntityDefinition definition,  // Structured definition
+            String text                   // Output of getEntityDefinitionAsString
+    ) {}
+
     /**
      * Complete entity metadata definition.
      */
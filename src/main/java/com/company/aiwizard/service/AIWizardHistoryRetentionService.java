@@ -0,0 +1,418 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardApprovalStatus;
+import com.company.aiwizard.entity.AIWizardHistory;
+import com.company.aiwizard.entity.AIWizardHistoryArchive;
+import com.company.aiwizard.entity.AIWizardTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jmix.core.DataManager;
+import io.jmix.core.FileRef;
+import io.jmix.core.FileStorage;
+import io.jmix.core.FileStorageLocator;
+import io.jmix.core.FluentValuesLoader;
+import io.jmix.core.SaveContext;
+import io.jmix.core.TimeSource;
+import io.jmix.core.security.SystemAuthenticator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retention of AI Wizard history. History grows by one row per wizard call and each prompt
+ * carries the full schema context, so old rows are compacted, then archived and deleted.
+ *
+ * Each run, per template (and for rows without a template):
+ * 1. Compaction: prompts older than compact-after-days are reduced to their tail (the user's
+ *    request and current script), dropping the schema context repeated in every prompt.
+ *    Compacted prompts still serve as conversation context.
+ * 2. Age limit: rows older than the template's retention days are removed.
+ * 3. Count limit: rows beyond the template's maximum row count are removed, oldest first.
+ *
+ * The newest applied row of each report data set the AI Wizard generated a script for is never removed:
+ * it marks the data set as AI generated for AIWizardStreamingSqlDataLoader. Such rows are
+ * compacted like others, and are not counted against the count limit. Batch results still
+ * awaiting review (approval status PENDING) are never removed either.
+ *
+ * Removed rows are written to a gzip-compressed JSON-lines file in the default file storage
+ * (local file system by default) and recorded as AIWizardHistoryArchive, unless archiving is
+ * disabled. Rows are processed in chunks, each in its own transaction, so retention never
+ * holds long locks on the history table. Reclaimed bytes (UTF-8 size of the LOB columns)
+ * are published as the aiwizard.history.retention.* metrics. A template whose retention fails
+ * is logged and skipped; the other templates are still processed.
+ *
+ * Templates override the age and count limits; 0 disables a limit.
+ *
+ * Configuration:
+ * - aiwizard.history.retention.enabled: run retention periodically (default true)
+ * - aiwizard.history.retention.interval: delay between runs (default PT6H)
+ * - aiwizard.history.retention.max-age-days: default age limit in days (default 365)
+ * - aiwizard.history.retention.max-rows: default rows kept per template (default 0 = unlimited)
+ * - aiwizard.history.retention.compact-after-days: age in days after which prompts are compacted (default 30, 0 = never)
+ * - aiwizard.history.retention.archive: archive rows before deleting them (default true)
+ * - aiwizard.history.retention.chunk-size: rows per transaction (default 200)
+ */
+@Service("aiwizard_AIWizardHistoryRetentionService")
+public class AIWizardHistoryRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardHistoryRetentionService.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * Excludes the newest applied row (interactive, or approved batch result) of each generated data set
+     * from removal, matching AIWizardHistoryService.isGeneratedDataSet.
+     */
+    private static final String EXCEPT_DATA_SET_MARKERS = "and (e.dataSetId is null "
+            + "or e.approvalStatus = '" + AIWizardApprovalStatus.REJECTED.getId() + "' or exists ("
+            + "select n.id from AIWizardHistory n where n.dataSetId = e.dataSetId and n.createdDate > e.createdDate "
+            + "and (n.approvalStatus is null "
+            + "or n.approvalStatus = '" + AIWizardApprovalStatus.APPROVED.getId() + "'))) ";
+
+    /** Excludes batch results awaiting review from removal. */
+    private static final String EXCEPT_PENDING = "and (e.approvalStatus is null or e.approvalStatus <> '"
+            + AIWizardApprovalStatus.PENDING.getId() + "') ";
+
+    @Value("${aiwizard.history.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.history.retention.max-age-days:365}")
+    private int maxAgeDays;
+
+    @Value("${aiwizard.history.retention.max-rows:0}")
+    private int maxRows;
+
+    @Value("${aiwizard.history.retention.compact-after-days:30}")
+    private int compactAfterDays;
+
+    @Value("${aiwizard.history.retention.archive:true}")
+    private boolean archive;
+
+    @Value("${aiwizard.history.retention.chunk-size:200}")
+    private int chunkSize;
+
+    private final DataManager dataManager;
+    private final FileStorageLocator fileStorageLocator;
+    private final TimeSource timeSource;
+    private final SystemAuthenticator systemAuthenticator;
+    private final AIWizardHistoryService historyService;
+    private final AIWizardMetrics metrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardHistoryRetentionService(DataManager dataManager,
+                                           FileStorageLocator fileStorageLocator,
+                                           TimeSource timeSource,
+                                           SystemAuthenticator systemAuthenticator,
+                                           AIWizardHistoryService historyService,
+                                           AIWizardMetrics metrics) {
+        this.dataManager = dataManager;
+        this.fileStorageLocator = fileStorageLocator;
+        this.timeSource = timeSource;
+        this.systemAuthenticator = systemAuthenticator;
+        this.historyService = historyService;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Periodically applies retention as the system user.
+     */
+    @Scheduled(fixedDelayString = "${aiwizard.history.retention.interval:PT6H}", initialDelayString = "PT10M")
+    public void applyRetentionPeriodically() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            RetentionResult result = systemAuthenticator.withSystem(this::applyRetention);
+            if (result.compactedRows() + result.archivedRows() + result.deletedRows() > 0) {
+                log.info("AI Wizard history retention: {} rows compacted, {} archived, {} deleted, {} bytes reclaimed",
+                        result.compactedRows(), result.archivedRows(), result.deletedRows(), result.reclaimedBytes());
+            }
+        } catch (RuntimeException e) {
+            log.warn("AI Wizard history retention failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compacts, archives and deletes history rows according to the retention limits.
+     *
+     * @return rows processed and bytes reclaimed
+     */
+    public RetentionResult applyRetention() {
+        OffsetDateTime now = timeSource.now().toOffsetDateTime();
+        Totals totals = new Totals();
+
+        List<AIWizardTemplate> templates = dataManager.load(AIWizardTemplate.class)
+                .query("select e from AIWizardTemplate e")
+                .list();
+        for (AIWizardTemplate template : templates) {
+            applyRetention(new Scope(template, template.getName(),
+                    template.getHistoryRetentionDays() != null ? template.getHistoryRetentionDays() : maxAgeDays,
+                    template.getHistoryMaxRows() != null ? template.getHistoryMaxRows() : maxRows), now, totals);
+        }
+        // Rows saved outside a template
+        applyRetention(new Scope(null, null, maxAgeDays, maxRows), now, totals);
+
+        return new RetentionResult(totals.compactedRows, totals.archivedRows, totals.deletedRows, totals.reclaimedBytes);
+    }
+
+    /**
+     * Applies retention to one template; a failure is logged so that the remaining templates are still processed.
+     */
+    private void applyRetention(Scope scope, OffsetDateTime now, Totals totals) {
+        try {
+            applyRetentionLimits(scope, now, totals);
+        } catch (RuntimeException e) {
+            log.warn("AI Wizard history retention failed for template {}: {}",
+                    scope.name() == null ? "(none)" : scope.name(), e.getMessage(), e);
+        }
+    }
+
+    private void applyRetentionLimits(Scope scope, OffsetDateTime now, Totals totals) {
+        if (compactAfterDays > 0) {
+            Map<String, Object> parameters = Map.of(
+                    "cutoff", now.minusDays(compactAfterDays),
+                    "chars", historyService.getPromptChars());
+            List<UUID> ids;
+            while (!(ids = loadIds(scope, "and e.createdDate < :cutoff "
+                    + "and (e.compacted is null or e.compacted = false) "
+                    + "and length(e.prompt) > :chars", "e.createdDate", 0, parameters)).isEmpty()) {
+                compactChunk(ids, totals);
+            }
+        }
+
+        if (scope.maxAgeDays() > 0) {
+            Map<String, Object> parameters = Map.of("cutoff", now.minusDays(scope.maxAgeDays()));
+            List<UUID> ids;
+            while (!(ids = loadIds(scope, "and e.createdDate < :cutoff " + EXCEPT_DATA_SET_MARKERS + EXCEPT_PENDING,
+                    "e.createdDate", 0, parameters)).isEmpty()) {
+                removeChunk(scope, ids, totals);
+            }
+        }
+
+        if (scope.maxRows() > 0) {
+            // Rows past the newest maxRows; the offset stays the same as removed rows disappear
+            List<UUID> ids;
+            while (!(ids = loadIds(scope, EXCEPT_DATA_SET_MARKERS + EXCEPT_PENDING, "e.createdDate desc, e.id desc",
+                    scope.maxRows(), Map.of())).isEmpty()) {
+                removeChunk(scope, ids, totals);
+            }
+        }
+    }
+
+    /**
+     * Loads the ids of one chunk of a template's history rows.
+     */
+    private List<UUID> loadIds(Scope scope, String condition, String orderBy, int offset,
+                               Map<String, Object> parameters) {
+        FluentValuesLoader loader = dataManager.loadValues("select e.id from AIWizardHistory e where "
+                        + (scope.template() == null
+                        ? "e.aiWizardPromptTemplate is null "
+                        : "e.aiWizardPromptTemplate = :template ")
+                        + condition + " order by " + orderBy)
+                .properties("id")
+                .firstResult(offset)
+                .maxResults(chunkSize);
+        if (scope.template() != null) {
+            loader.parameter("template", scope.template());
+        }
+        parameters.forEach(loader::parameter);
+        return loader.list().stream()
+                .map(row -> row.<UUID>getValue("id"))
+                .toList();
+    }
+
+    private void compactChunk(List<UUID> ids, Totals totals) {
+        List<AIWizardHistory> rows = dataManager.load(AIWizardHistory.class)
+                .query("select e from AIWizardHistory e where e.id in :ids")
+                .parameter("ids", ids)
+                .fetchPlan(fetchPlan -> fetchPlan.addAll("prompt", "compacted", "lastModifiedBy", "lastModifiedDate"))
+                .list();
+
+        long bytes = 0;
+        for (AIWizardHistory row : rows) {
+            String compacted = historyService.compactPrompt(row.getPrompt());
+            bytes += utf8Length(row.getPrompt()) - utf8Length(compacted);
+            row.setPrompt(compacted);
+            row.setCompacted(true);
+        }
+        dataManager.save(new SaveContext().saving(rows));
+
+        metrics.recordRetention("compacted", rows.size(), bytes);
+        totals.compactedRows += rows.size();
+        totals.reclaimedBytes += bytes;
+    }
+
+    /**
+     * Deletes a chunk of rows, archiving them first when enabled. The archive file is removed
+     * again when the delete fails, so the next run does not archive the rows twice.
+     */
+    private void removeChunk(Scope scope, List<UUID> ids, Totals totals) {
+        List<AIWizardHistory> rows = dataManager.load(AIWizardHistory.class)
+                .query("select e from AIWizardHistory e where e.id in :ids order by e.createdDate")
+                .parameter("ids", ids)
+                .list();
+        long bytes = rows.stream()
+                .mapToLong(row -> utf8Length(row.getOriginalValue()) + utf8Length(row.getPrompt())
+                        + utf8Length(row.getResponse()))
+                .sum();
+
+        SaveContext saveContext = new SaveContext().removing(rows);
+        AIWizardHistoryArchive archiveEntry = null;
+        if (archive) {
+            archiveEntry = writeArchive(scope, rows, bytes);
+            saveContext.saving(archiveEntry);
+        }
+        try {
+            dataManager.save(saveContext);
+        } catch (RuntimeException e) {
+            if (archiveEntry != null) {
+                removeFileQuietly(archiveEntry.getFile());
+            }
+            throw e;
+        }
+
+        metrics.recordRetention(archive ? "archived" : "deleted", rows.size(), bytes);
+        if (archive) {
+            totals.archivedRows += rows.size();
+        } else {
+            totals.deletedRows += rows.size();
+        }
+        totals.reclaimedBytes += bytes;
+    }
+
+    /**
+     * Writes rows to a gzip-compressed JSON-lines file in the default file storage.
+     * The file is written to a temporary file first, so memory use does not depend on the chunk size.
+     */
+    private AIWizardHistoryArchive writeArchive(Scope scope, List<AIWizardHistory> rows, long originalBytes) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile("aiwizard-history-", ".jsonl.gz");
+            try (Writer writer = new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8)) {
+                for (AIWizardHistory row : rows) {
+                    writer.write(toJson(scope, row));
+                    writer.write('\n');
+                }
+            }
+
+            OffsetDateTime firstDate = rows.get(0).getCreatedDate();
+            OffsetDateTime lastDate = rows.get(rows.size() - 1).getCreatedDate();
+            String fileName = "aiwizard-history-"
+                    + (scope.name() == null ? "unassigned" : scope.name().replaceAll("[^A-Za-z0-9_-]", "_"))
+                    + (firstDate == null ? "" : "-" + FILE_TIMESTAMP.format(firstDate))
+                    + ".jsonl.gz";
+            FileRef file;
+            try (InputStream in = Files.newInputStream(temp)) {
+                file = fileStorageLocator.getDefault().saveStream(fileName, in);
+            }
+
+            AIWizardHistoryArchive archiveEntry = dataManager.create(AIWizardHistoryArchive.class);
+            archiveEntry.setTemplateName(scope.name());
+            archiveEntry.setFile(file);
+            archiveEntry.setRowCount(rows.size());
+            archiveEntry.setFirstDate(firstDate);
+            archiveEntry.setLastDate(lastDate);
+            archiveEntry.setOriginalBytes(originalBytes);
+            archiveEntry.setCompressedBytes(Files.size(temp));
+            return archiveEntry;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive AI Wizard history: " + e.getMessage(), e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.debug("Failed to delete temporary archive file {}", temp, e);
+                }
+            }
+        }
+    }
+
+    private String toJson(Scope scope, AIWizardHistory row) throws JsonProcessingException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", row.getId());
+        json.put("template", scope.name());
+        json.put("createdBy", row.getCreatedBy());
+        json.put("createdDate", row.getCreatedDate() == null ? null : row.getCreatedDate().toString());
+        json.put("provider", row.getProvider());
+        json.put("model", row.getModel());
+        json.put("promptTokens", row.getPromptTokens());
+        json.put("completionTokens", row.getCompletionTokens());
+        json.put("latencyMs", row.getLatencyMs());
+        json.put("estimatedCost", row.getEstimatedCost());
+        json.put("cached", row.getCached());
+        json.put("approvalStatus", row.getApprovalStatus() == null ? null : row.getApprovalStatus().getId());
+        json.put("compacted", row.getCompacted());
+        json.put("originalValue", row.getOriginalValue());
+        json.put("prompt", row.getPrompt());
+        json.put("response", row.getResponse());
+        return objectMapper.writeValueAsString(json);
+    }
+
+    private void removeFileQuietly(FileRef file) {
+        try {
+            FileStorage fileStorage = fileStorageLocator.getByName(file.getStorageName());
+            fileStorage.removeFile(file);
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove AI Wizard history archive {}: {}", file, e.getMessage());
+        }
+    }
+
+    private long utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Running totals of one retention run.
+     */
+    private static class Totals {
+        private int compactedRows;
+        private int archivedRows;
+        private int deletedRows;
+        private long reclaimedBytes;
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * History rows of one template with its effective limits.
+     */
+    private record Scope(
+            AIWizardTemplate template,  // Template, null for rows saved without one
+            String name,                // Template name (nullable)
+            int maxAgeDays,             // Age limit in days, 0 = unlimited
+            int maxRows                 // Rows kept, 0 = unlimited
+    ) {}
+
+    /**
+     * Outcome of a retention run.
+     */
+    public record RetentionResult(
+            int compactedRows,    // Rows whose prompt was compacted
+            int archivedRows,     // Rows archived and deleted
+            int deletedRows,      // Rows deleted without archiving
+            long reclaimedBytes   // UTF-8 bytes of LOB content removed from the history table
+    ) {}
+}
@@ -0,0 +1,167 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardApprovalStatus;
+import com.company.aiwizard.entity.AIWizardTemplate;
+import io.jmix.core.DataManager;
+import io.jmix.core.entity.KeyValueEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Loads previous AI Wizard interactions used as conversation context.
+ * Stored prompts contain the whole schema context sent with the request (and the interactions
+ * before it), so loading history entities would read every LOB in full. Instead, only the tail
+ * of each prompt (the user's request and the current script) and the head of each response are
+ * read as scalar values, truncated in the database. The lookup uses the (template, created date)
+ * index and reads at most the requested number of rows, so its cost does not grow with history.
+ *
+ * Rejected results are never used as context.
+ *
+ * History rows also record the data set they were generated for, which marks the data set
+ * as AI generated for report execution (AIWizardStreamingSqlDataLoader).
+ *
+ * Configuration:
+ * - aiwizard.history.context.prompt-chars: characters kept from the end of each prompt (default 2000)
+ * - aiwizard.history.context.response-chars: characters kept from the start of each response (default 4000)
+ */
+@Service("aiwizard_AIWizardHistoryService")
+public class AIWizardHistoryService {
+
+    private static final String TRUNCATED = "...";
+
+    @Value("${aiwizard.history.context.prompt-chars:2000}")
+    private int promptChars;
+
+    @Value("${aiwizard.history.context.response-chars:4000}")
+    private int responseChars;
+
+    private final DataManager dataManager;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardHistoryService(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Loads the latest interactions of a template with truncated prompt and response.
+     *
+     * @param template template whose history is loaded
+     * @param depth    maximum number of interactions
+     * @return interactions, oldest first
+     */
+    public List<Interaction> loadRecentInteractions(AIWizardTemplate template, int depth) {
+        if (template == null || depth <= 0) {
+            return List.of();
+        }
+
+        List<KeyValueEntity> rows = dataManager.loadValues(
+                        "select e.createdDate, length(e.prompt), "
+                                + "case when length(e.prompt) > :promptChars "
+                                + "then substring(e.prompt, length(e.prompt) - :promptChars + 1, :promptChars) "
+                                + "else e.prompt end, "
+                                + "length(e.response), "
+                                + "case when length(e.response) > :responseChars "
+                                + "then substring(e.response, 1, :responseChars) "
+                                + "else e.response end "
+                                + "from AIWizardHistory e "
+                                + "where e.aiWizardPromptTemplate = :template "
+                                + "and (e.approvalStatus is null or e.approvalStatus <> :rejected) "
+                                + "order by e.createdDate desc")
+                .properties("createdDate", "promptLength", "prompt", "responseLength", "response")
+                .parameter("template", template)
+                .parameter("rejected", AIWizardApprovalStatus.REJECTED.getId())
+                .parameter("promptChars", promptChars)
+                .parameter("responseChars", responseChars)
+                .maxResults(depth)
+                .list();
+
+        List<Interaction> interactions = new ArrayList<>(rows.size());
+        for (KeyValueEntity row : rows) {
+            interactions.add(new Interaction(
+                    row.getValue("createdDate"),
+                    promptTail(row.getValue("prompt"), row.getValue("promptLength")),
+                    responseHead(row.getValue("response"), row.getValue("responseLength"))));
+        }
+        // Reverse to show oldest first (chronological order)
+        Collections.reverse(interactions);
+        return interactions;
+    }
+
+    /**
+     * Returns true if the AI Wizard generated a script for the data set that was applied:
+     * an interactive result, or an approved batch result. Pending and rejected batch results
+     * do not count. Checked without security constraints, as reports run as users without
+     * access to the history.
+     *
+     * @param dataSetId id of a report data set
+     */
+    public boolean isGeneratedDataSet(UUID dataSetId) {
+        return !dataManager.unconstrained()
+                .loadValue("select e.id from AIWizardHistory e where e.dataSetId = :dataSetId "
+                        + "and (e.approvalStatus is null or e.approvalStatus = :approved)", UUID.class)
+                .parameter("dataSetId", dataSetId)
+                .parameter("approved", AIWizardApprovalStatus.APPROVED.getId())
+                .maxResults(1)
+                .list()
+                .isEmpty();
+    }
+
+    /**
+     * Returns the number of characters kept from the end of a prompt.
+     */
+    public int getPromptChars() {
+        return promptChars;
+    }
+
+    /**
+     * Reduces a stored prompt to the tail used as context, dropping the schema context
+     * at its start. Prompts within the limit are returned unchanged.
+     */
+    public String compactPrompt(String prompt) {
+        if (prompt == null || prompt.length() <= promptChars) {
+            return prompt;
+        }
+        return promptTail(prompt.substring(prompt.length() - promptChars), prompt.length());
+    }
+
+    /**
+     * Drops the partial first line of a truncated prompt tail.
+     */
+    private String promptTail(String prompt, Number fullLength) {
+        if (prompt == null || !isTruncated(prompt, fullLength)) {
+            return prompt;
+        }
+        int lineEnd = prompt.indexOf('\n');
+        return TRUNCATED + "\n" + (lineEnd >= 0 ? prompt.substring(lineEnd + 1) : prompt);
+    }
+
+    private String responseHead(String response, Number fullLength) {
+        if (response == null || !isTruncated(response, fullLength)) {
+            return response;
+        }
+        return response + "\n" + TRUNCATED;
+    }
+
+    private boolean isTruncated(String value, Number fullLength) {
+        return fullLength != null && fullLength.longValue() > value.length();
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * A previous interaction used as prompt context.
+     */
+    public record Interaction(
+            OffsetDateTime createdDate,  // When the interaction happened
+            String prompt,               // Tail of the user prompt (nullable)
+            String response              // Head of the response (nullable)
+    ) {}
+}
@@ -0,0 +1,293 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PropertyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Finds the tables (entities) that connect an AI Wizard selection. When a user selects
+ * CUSTOMER and PRODUCT but not CUSTOMER_ORDER, the model gets no join path and guesses one.
+ *
+ * The foreign-key graph is built from the imported keys of all tables (associations of all
+ * entities for JPQL) and treated as undirected. For a selection, the connecting items are
+ * found with the shortest-path Steiner tree heuristic: starting from the first selected item,
+ * the selected item nearest to the tree is repeatedly attached along its shortest path, and
+ * the intermediate items on the path are added. Paths longer than max-hops are not followed,
+ * so unrelated selections are not joined through distant framework tables.
+ *
+ * The added items are only needed for joins; the prompt renders them with key columns only.
+ *
+ * The table graph is rebuilt when the schema snapshot is reloaded; the entity graph is built once.
+ *
+ * Configuration:
+ * - aiwizard.join-paths.enabled: add connecting items to the selection (default true)
+ * - aiwizard.join-paths.max-hops: longest path, in foreign keys, between two selected items (default 3)
+ * - aiwizard.join-paths.max-items: maximum number of items added (default 5)
+ */
+@Service("aiwizard_AIWizardJoinPathService")
+public class AIWizardJoinPathService {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardJoinPathService.class);
+
+    @Value("${aiwizard.join-paths.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.join-paths.max-hops:3}")
+    private int maxHops;
+
+    @Value("${aiwizard.join-paths.max-items:5}")
+    private int maxItems;
+
+    private final AIWizardTableListService tableListService;
+    private final AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private final AIWizardSchemaSnapshotService schemaSnapshotService;
+    private final AIWizardEntityListService entityListService;
+    private final AIWizardEntityDefinitionService entityDefinitionService;
+
+    /** Table graph and the snapshot version it was built from. */
+    private volatile Graph tableGraph;
+
+    private volatile Graph entityGraph;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardJoinPathService(AIWizardTableListService tableListService,
+                                   AIWizardTableDDLDefinitionService tableDDLDefinitionService,
+                                   AIWizardSchemaSnapshotService schemaSnapshotService,
+                                   AIWizardEntityListService entityListService,
+                                   AIWizardEntityDefinitionService entityDefinitionService) {
+        this.tableListService = tableListService;
+        this.tableDDLDefinitionService = tableDDLDefinitionService;
+        this.schemaSnapshotService = schemaSnapshotService;
+        this.entityListService = entityListService;
+        this.entityDefinitionService = entityDefinitionService;
+    }
+
+    /**
+     * Returns the tables connecting the selected tables by foreign keys.
+     *
+     * @param selectedTables selected table names (case-insensitive)
+     * @return tables to add, not including the selected ones; empty if disabled or already connected
+     */
+    public List<String> findConnectingTables(Collection<String> selectedTables) {
+        if (!enabled || selectedTables == null || selectedTables.size() < 2) {
+            return List.of();
+        }
+        return findConnecting(getTableGraph(), selectedTables);
+    }
+
+    /**
+     * Returns the entities connecting the selected entities by associations.
+     *
+     * @param selectedEntities selected entity names (case-insensitive)
+     * @return entities to add, not including the selected ones; empty if disabled or already connected
+     */
+    public List<String> findConnectingEntities(Collection<String> selectedEntities) {
+        if (!enabled || selectedEntities == null || selectedEntities.size() < 2) {
+            return List.of();
+        }
+        return findConnecting(getEntityGraph(), selectedEntities);
+    }
+
+    /**
+     * Attaches the selected items to a growing tree along shortest paths and collects
+     * the intermediate items.
+     */
+    private List<String> findConnecting(Graph graph, Collection<String> selected) {
+        List<String> terminals = new ArrayList<>();
+        for (String name : selected) {
+            String key = name.toUpperCase(Locale.ROOT);
+            if (graph.names().containsKey(key) && !terminals.contains(key)) {
+                terminals.add(key);
+            }
+        }
+        if (terminals.size() < 2) {
+            return List.of();
+        }
+
+        Set<String> tree = new LinkedHashSet<>();
+        tree.add(terminals.get(0));
+        Set<String> remaining = new LinkedHashSet<>(terminals.subList(1, terminals.size()));
+        List<String> added = new ArrayList<>();
+
+        while (!remaining.isEmpty()) {
+            List<String> path = shortestPathToTree(graph, tree, remaining);
+            if (path == null) {
+                break;  // Remaining items are not connected within max-hops
+            }
+            // path = remaining terminal, intermediate items..., tree item
+            List<String> intermediate = path.stream()
+                    .filter(key -> !tree.contains(key) && !terminals.contains(key))
+                    .toList();
+            if (added.size() + intermediate.size() > maxItems) {
+                break;  // Only whole paths are added: a cut path would not connect the selection
+            }
+            remaining.remove(path.get(0));
+            tree.addAll(path);
+            intermediate.forEach(key -> added.add(graph.names().get(key)));
+            // Terminals already on the path are connected too
+            remaining.removeAll(tree);
+        }
+
+        if (!added.isEmpty()) {
+            log.debug("Join path for {}: added {}", selected, added);
+        }
+        return List.copyOf(added);
+    }
+
+    /**
+     * Breadth-first search from all tree items at once.
+     *
+     * @return path from the nearest remaining item to the tree, null if none is within max-hops
+     */
+    private List<String> shortestPathToTree(Graph graph, Set<String> tree, Set<String> targets) {
+        Map<String, String> previous = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        Map<String, Integer> depth = new HashMap<>();
+        for (String key : tree) {
+            depth.put(key, 0);
+            queue.add(key);
+        }
+
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            int currentDepth = depth.get(current);
+            if (currentDepth >= maxHops) {
+                continue;
+            }
+            for (String next : graph.edges().getOrDefault(current, List.of())) {
+                if (depth.containsKey(next)) {
+                    continue;
+                }
+                depth.put(next, currentDepth + 1);
+                previous.put(next, current);
+                if (targets.contains(next)) {
+                    List<String> path = new ArrayList<>();
+                    for (String key = next; key != null; key = previous.get(key)) {
+                        path.add(key);
+                    }
+                    return path;
+                }
+                queue.add(next);
+            }
+        }
+        return null;
+    }
+
+    private Graph getTableGraph() {
+        long version = schemaSnapshotService.getStatus().version();
+        Graph graph = tableGraph;
+        if (graph == null || graph.version() != version) {
+            synchronized (this) {
+                graph = tableGraph;
+                if (graph == null || graph.version() != version) {
+                    graph = buildTableGraph(version);
+                    tableGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    private Graph getEntityGraph() {
+        Graph graph = entityGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = entityGraph;
+                if (graph == null) {
+                    graph = buildEntityGraph();
+                    entityGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    private Graph buildTableGraph(long version) {
+        GraphBuilder builder = new GraphBuilder();
+        Map<String, TableDDLDefinition> tables =
+                tableDDLDefinitionService.getTableDDLDefinitions(tableListService.getAllTableNames());
+        for (TableDDLDefinition table : tables.values()) {
+            builder.node(table.tableName());
+        }
+        for (TableDDLDefinition table : tables.values()) {
+            for (ForeignKeyDefinition foreignKey : table.foreignKeys()) {
+                builder.edge(table.tableName(), foreignKey.pkTableName());
+            }
+        }
+        Graph graph = builder.build(version);
+        log.debug("Foreign key graph built: {} tables", graph.names().size());
+        return graph;
+    }
+
+    private Graph buildEntityGraph() {
+        GraphBuilder builder = new GraphBuilder();
+        List<EntityDefinition> entities = new ArrayList<>();
+        for (String entityName : entityListService.getAllEntityNames()) {
+            try {
+                EntityDefinition entity = entityDefinitionService.getEntityDefinition(entityName);
+                entities.add(entity);
+                builder.node(entity.name());
+            } catch (IllegalArgumentException e) {
+                // Listed but not resolvable, skipped like in the wizard dialog
+            }
+        }
+        for (EntityDefinition entity : entities) {
+            for (PropertyDefinition property : entity.properties()) {
+                if (property.relatedEntityName() != null) {
+                    builder.edge(entity.name(), property.relatedEntityName());
+                }
+            }
+        }
+        Graph graph = builder.build(0);
+        log.debug("Association graph built: {} entities", graph.names().size());
+        return graph;
+    }
+
+    /**
+     * Collects nodes and undirected edges keyed by upper-case name.
+     */
+    private static class GraphBuilder {
+        private final Map<String, String> names = new HashMap<>();
+        private final Map<String, Set<String>> edges = new HashMap<>();
+
+        private void node(String name) {
+            names.put(name.toUpperCase(Locale.ROOT), name);
+        }
+
+        private void edge(String from, String to) {
+            String fromKey = from.toUpperCase(Locale.ROOT);
+            String toKey = to.toUpperCase(Locale.ROOT);
+            if (fromKey.equals(toKey) || !names.containsKey(fromKey) || !names.containsKey(toKey)) {
+                return;
+            }
+            edges.computeIfAbsent(fromKey, k -> new TreeSet<>()).add(toKey);
+            edges.computeIfAbsent(toKey, k -> new TreeSet<>()).add(fromKey);
+        }
+
+        private Graph build(long version) {
+            Map<String, List<String>> adjacency = new HashMap<>();
+            edges.forEach((key, neighbours) -> adjacency.put(key, List.copyOf(neighbours)));
+            return new Graph(version, Map.copyOf(names), Map.copyOf(adjacency));
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Undirected foreign-key (association) graph.
+     */
+    private record Graph(
+            long version,                     // Schema snapshot version (0 for entities)
+            Map<String, String> names,        // Upper-case name -> table/entity name
+            Map<String, List<String>> edges   // Upper-case name -> neighbours, sorted
+    ) {}
+}
@@ -0,0 +1,166 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Micrometer instrumentation of the AI Wizard pipeline, exported via the actuator
+ * metrics and prometheus endpoints.
+ *
+ * Meters:
+ * - aiwizard.llm.latency (timer): provider call duration; tags provider, model, template, outcome
+ * - aiwizard.llm.errors (counter): failed provider calls; tags provider, model, exception
+ * - aiwizard.llm.retries (counter): extra provider attempts; tags provider, reason (failover, hedge, retry)
+ * - aiwizard.cache.requests (counter): response cache lookups; tags provider, result (hit, miss)
+ * - aiwizard.llm.coalesced (counter): requests answered by an identical call in flight; tag provider
+ * - aiwizard.prompt.chars / aiwizard.response.chars (summary): text sizes; tags provider, template
+ * - aiwizard.prompt.tokens / aiwizard.response.tokens (summary): token usage reported by the provider;
+ *   tags provider, model, template
+ * - aiwizard.request.stage (timer): wizard request stages (schema, history, prompt, llm, history-save);
+ *   tags stage, template
+ * - aiwizard.history.retention.rows / aiwizard.history.retention.bytes (counter): history rows processed
+ *   by retention and the LOB bytes reclaimed; tag action (archived, deleted, compacted)
+ *
+ * Template tags use the template name, or "none" for calls made outside a template
+ * (sample views). Timers publish percentiles so slow templates show up at p95/p99.
+ */
+@Component("aiwizard_AIWizardMetrics")
+public class AIWizardMetrics {
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records the duration of one provider call.
+     *
+     * @param outcome success, error or cancelled
+     */
+    public void recordLlmCall(AIWizardConnection provider, String model, String template,
+                              String outcome, Duration duration) {
+        Timer.builder("aiwizard.llm.latency")
+                .description("LLM call latency")
+                .tag("provider", tag(provider))
+                .tag("model", tag(model))
+                .tag("template", tag(template))
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry)
+                .record(duration);
+    }
+
+    /**
+     * Counts a failed provider call.
+     */
+    public void recordLlmError(AIWizardConnection provider, String model, Throwable error) {
+        registry.counter("aiwizard.llm.errors",
+                        "provider", tag(provider),
+                        "model", tag(model),
+                        "exception", error.getClass().getSimpleName())
+                .increment();
+    }
+
+    /**
+     * Counts an attempt beyond the first one of a request.
+     *
+     * @param reason failover, hedge or retry
+     */
+    public void recordRetry(AIWizardConnection provider, String reason) {
+        registry.counter("aiwizard.llm.retries", "provider", tag(provider), "reason", reason).increment();
+    }
+
+    /**
+     * Counts a response cache lookup.
+     */
+    public void recordCacheLookup(AIWizardConnection provider, boolean hit) {
+        registry.counter("aiwizard.cache.requests", "provider", tag(provider), "result", hit ? "hit" : "miss")
+                .increment();
+    }
+
+    /**
+     * Counts a request that attached to an identical provider call in flight.
+     */
+    public void recordCoalesced(AIWizardConnection provider) {
+        registry.counter("aiwizard.llm.coalesced", "provider", tag(provider)).increment();
+    }
+
+    /**
+     * Records prompt and response sizes in characters.
+     */
+    public void recordChars(AIWizardConnection provider, String template, String prompt, String response) {
+        summary("aiwizard.prompt.chars", "Prompt size in characters", provider, null, template)
+                .record(prompt == null ? 0 : prompt.length());
+        if (response != null) {
+            summary("aiwizard.response.chars", "Response size in characters", provider, null, template)
+                    .record(response.length());
+        }
+    }
+
+    /**
+     * Records token usage reported by the provider; null counts are skipped.
+     */
+    public void recordTokens(AIWizardConnection provider, String model, String template,
+                             Integer promptTokens, Integer responseTokens) {
+        if (promptTokens != null) {
+            summary("aiwizard.prompt.tokens", "Prompt tokens reported by the provider", provider, model, template)
+                    .record(promptTokens);
+        }
+        if (responseTokens != null) {
+            summary("aiwizard.response.tokens", "Response tokens reported by the provider", provider, model, template)
+                    .record(responseTokens);
+        }
+    }
+
+    /**
+     * Records the duration of a wizard request stage.
+     *
+     * @param stage schema, history, prompt, llm, validation or history-save
+     */
+    public void recordStage(String stage, String template, Duration duration) {
+        Timer.builder("aiwizard.request.stage")
+                .description("AI Wizard request stage duration")
+                .tag("stage", stage)
+                .tag("template", tag(template))
+                .publishPercentiles(0.5, 0.95)
+                .register(registry)
+                .record(duration);
+    }
+
+    /**
+     * Counts history rows processed by retention and the LOB bytes they reclaimed.
+     *
+     * @param action archived, deleted or compacted
+     */
+    public void recordRetention(String action, long rows, long bytes) {
+        registry.counter("aiwizard.history.retention.rows", "action", action).increment(rows);
+        registry.counter("aiwizard.history.retention.bytes", "action", action).increment(bytes);
+    }
+
+    private DistributionSummary summary(String name, String description, AIWizardConnection provider,
+                                        String model, String template) {
+        DistributionSummary.Builder builder = DistributionSummary.builder(name)
+                .description(description)
+                .tag("provider", tag(provider))
+                .tag("template", tag(template));
+        if (model != null) {
+            builder.tag("model", model);
+        }
+        return builder.register(registry);
+    }
+
+    private static String tag(Object value) {
+        return value == null ? NONE : value.toString();
+    }
+}
@@ -0,0 +1,539 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardSchemaFormat;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PropertyDefinition;
+import com.company.aiwizard.service.AIWizardHistoryService.Interaction;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.UniqueConstraintDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Assembles AI Wizard user prompts within a token budget.
+ * Large table/entity selections and long histories can exceed the model's context window
+ * or cost far more than needed; the builder estimates the prompt size locally and trims
+ * the least relevant context until it fits.
+ *
+ * Prompt sections, in order:
+ * - Schema: table DDL (SQL) or entity definitions (JPQL), one block per selected item
+ * - Previous interactions, oldest first
+ * - Current script (MODIFY operations), never trimmed
+ * - User prompt, never trimmed
+ *
+ * Selected items mentioned in the user prompt or current script are focus items. When some
+ * items are mentioned, the remaining items linked to a focus item by a foreign key (association)
+ * are only needed for joins and are always rendered with key columns only. So are join items:
+ * items not selected by the user but added to connect the selection (AIWizardJoinPathService).
+ * When the estimate still exceeds the budget, context is trimmed in this order until it fits:
+ * 1. Unlinked non-focus items reduced to key columns
+ * 2. Previous interactions dropped, oldest first
+ * 3. Focus items pruned to key columns and columns mentioned in the prompt
+ * 4. Non-focus items omitted, least related first
+ * 5. Focus items reduced to key columns
+ *
+ * Definitions are rendered by AIWizardSchemaFormatter in the format requested by the template
+ * (verbose DDL, compact one-liners or JSON).
+ *
+ * Tokens are estimated from the character count, without a tokenizer round trip.
+ *
+ * Configuration:
+ * - aiwizard.prompt.token-budget.openai: input token budget for OpenAI (default 16000)
+ * - aiwizard.prompt.token-budget.gemini: input token budget for Gemini (default 32000)
+ * - aiwizard.prompt.chars-per-token: characters per token used for estimation (default 3.5)
+ */
+@Service("aiwizard_AIWizardPromptBuilder")
+public class AIWizardPromptBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardPromptBuilder.class);
+
+    /** Identifier-like words in prompts and scripts. */
+    private static final Pattern WORD = Pattern.compile("[A-Za-z0-9_]+");
+
+    @Value("${aiwizard.prompt.token-budget.openai:16000}")
+    private int openAiTokenBudget;
+
+    @Value("${aiwizard.prompt.token-budget.gemini:32000}")
+    private int geminiTokenBudget;
+
+    @Value("${aiwizard.prompt.chars-per-token:3.5}")
+    private double charsPerToken;
+
+    private final AIWizardSchemaFormatter schemaFormatter;
+    private final AIWizardEntityDefinitionService entityDefinitionService;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardPromptBuilder(AIWizardSchemaFormatter schemaFormatter,
+                                 AIWizardEntityDefinitionService entityDefinitionService) {
+        this.schemaFormatter = schemaFormatter;
+        this.entityDefinitionService = entityDefinitionService;
+    }
+
+    /**
+     * Returns the input token budget for a provider.
+     */
+    public int getTokenBudget(AIWizardConnection connection) {
+        return connection == AIWizardConnection.OPENAI ? openAiTokenBudget : geminiTokenBudget;
+    }
+
+    /**
+     * Estimates the number of tokens of a text.
+     */
+    public int estimateTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : (int) Math.ceil(text.length() / charsPerToken);
+    }
+
+    /**
+     * Builds the user prompt for a request, trimming context to the provider's token budget.
+     *
+     * @param request prompt inputs
+     * @return assembled prompt with its estimated size and the trimming applied
+     */
+    public BuiltPrompt build(PromptRequest request) {
+        int budget = getTokenBudget(request.connection());
+        Set<String> words = collectWords(request.userPrompt(), request.currentScript());
+
+        List<SchemaItem> items = createSchemaItems(request, words);
+        List<String> interactions = renderInteractions(request.history());
+        String currentScriptSection = request.currentScript() == null || request.currentScript().isEmpty()
+                ? ""
+                : "=== Current Script ===\n" + request.currentScript() + "\n\n";
+        String userPrompt = request.userPrompt() == null ? "" : request.userPrompt();
+
+        int fixedTokens = estimateTokens(request.systemInstruction())
+                + estimateTokens(currentScriptSection)
+                + estimateTokens(userPrompt);
+        List<String> adjustments = new ArrayList<>();
+
+        // Rank: focus items first, then items linked to them, then the rest (selection order within groups)
+        List<SchemaItem> leastRelevantFirst = new ArrayList<>(items);
+        leastRelevantFirst.sort(Comparator.comparingInt(SchemaItem::rank));
+        Collections.reverse(leastRelevantFirst);
+
+        // Items needed only for joins never need more than their keys
+        for (SchemaItem item : items) {
+            if (item.rank() == 1) {
+                reduce(item, Detail.KEYS_ONLY, adjustments);
+            }
+        }
+
+        int tokens = totalTokens(fixedTokens, items, interactions);
+
+        // 1. Unlinked non-focus items to key columns
+        for (SchemaItem item : leastRelevantFirst) {
+            if (tokens <= budget) {
+                break;
+            }
+            if (item.rank() == 2 && reduce(item, Detail.KEYS_ONLY, adjustments)) {
+                tokens = totalTokens(fixedTokens, items, interactions);
+            }
+        }
+
+        // 2. Previous interactions, oldest first
+        int totalInteractions = interactions.size();
+        while (tokens > budget && !interactions.isEmpty()) {
+            interactions.remove(0);
+            tokens = totalTokens(fixedTokens, items, interactions);
+        }
+        if (interactions.size() < totalInteractions) {
+            adjustments.add("history: dropped " + (totalInteractions - interactions.size())
+                    + " of " + totalInteractions + " interactions");
+        }
+
+        // 3. Focus items to key and mentioned columns
+        for (SchemaItem item : leastRelevantFirst) {
+            if (tokens <= budget) {
+                break;
+            }
+            if (item.rank() == 0 && reduce(item, Detail.PRUNED, adjustments)) {
+                tokens = totalTokens(fixedTokens, items, interactions);
+            }
+        }
+
+        // 4. Non-focus items omitted
+        for (SchemaItem item : leastRelevantFirst) {
+            if (tokens <= budget) {
+                break;
+            }
+            if (item.rank() > 0 && reduce(item, Detail.OMITTED, adjustments)) {
+                tokens = totalTokens(fixedTokens, items, interactions);
+            }
+        }
+
+        // 5. Focus items to key columns
+        for (SchemaItem item : leastRelevantFirst) {
+            if (tokens <= budget) {
+                break;
+            }
+            if (item.rank() == 0 && reduce(item, Detail.KEYS_ONLY, adjustments)) {
+                tokens = totalTokens(fixedTokens, items, interactions);
+            }
+        }
+
+        // -------- Assemble --------
+
+        StringBuilder prompt = new StringBuilder();
+        boolean selfDescribing = schemaFormatter.isSelfDescribing(request.schemaFormat());
+        for (SchemaItem item : items) {
+            if (item.detail == Detail.OMITTED) {
+                continue;
+            }
+            if (selfDescribing) {
+                prompt.append(item.text()).append("\n");  // One line per table/entity
+            } else {
+                prompt.append("=== ").append(item.name()).append(" ===\n");
+                prompt.append(item.text()).append("\n\n");
+            }
+        }
+        if (selfDescribing && !items.isEmpty()) {
+            prompt.append("\n");
+        }
+        if (!interactions.isEmpty()) {
+            prompt.append("=== Previous Interactions ===\n");
+            for (int i = 0; i < interactions.size(); i++) {
+                prompt.append("--- Interaction ").append(i + 1).append(" ---\n");
+                prompt.append(interactions.get(i)).append("\n");
+            }
+            prompt.append("\n");
+        }
+        prompt.append(currentScriptSection);
+        prompt.append(userPrompt);
+
+        String result = prompt.toString();
+        int estimatedTokens = estimateTokens(request.systemInstruction()) + estimateTokens(result);
+        boolean overBudget = estimatedTokens > budget;
+
+        log.debug("Built prompt for {}: ~{} tokens (budget {}), adjustments: {}",
+                request.connection(), estimatedTokens, budget, adjustments);
+        if (overBudget) {
+            log.warn("Prompt for {} exceeds token budget after trimming: ~{} > {}",
+                    request.connection(), estimatedTokens, budget);
+        }
+
+        return new BuiltPrompt(result, estimatedTokens, budget, overBudget, List.copyOf(adjustments));
+    }
+
+    // ==================== Schema Items ====================
+
+    /**
+     * Creates one schema item per selected table or entity and classifies it by relevance.
+     */
+    private List<SchemaItem> createSchemaItems(PromptRequest request, Set<String> words) {
+        List<SchemaItem> items = new ArrayList<>();
+        Map<String, Set<String>> links = new HashMap<>();  // Normalized name -> linked normalized names
+
+        if (request.tables() != null) {
+            request.tables().forEach((name, def) -> {
+                String key = normalize(def.tableName());
+                for (ForeignKeyDefinition fk : def.foreignKeys()) {
+                    link(links, key, normalize(fk.pkTableName()));
+                }
+                boolean join = isJoinItem(request, name);
+                boolean focus = !join && (matches(words, name) || matches(words, def.tableName()));
+                items.add(new SchemaItem(name, key, focus, join,
+                        detail -> renderTable(def, detail, words, request.schemaFormat())));
+            });
+        }
+
+        if (request.entities() != null) {
+            request.entities().forEach((name, def) -> {
+                String key = normalize(def.name());
+                for (PropertyDefinition property : def.properties()) {
+                    if (property.relatedEntityName() != null) {
+                        link(links, key, normalize(property.relatedEntityName()));
+                    }
+                }
+                boolean join = isJoinItem(request, name);
+                boolean focus = !join && (matches(words, name) || matches(words, def.name())
+                        || matches(words, def.simpleName()) || matches(words, def.tableName()));
+                items.add(new SchemaItem(name, key, focus, join,
+                        detail -> renderEntity(def, detail, words, request.schemaFormat())));
+            });
+        }
+
+        // Without any mention every selected item is equally relevant
+        boolean anyFocus = items.stream().anyMatch(item -> item.focus);
+        Set<String> focusKeys = new HashSet<>();
+        for (SchemaItem item : items) {
+            if (!anyFocus && !item.join) {
+                item.focus = true;
+            }
+            if (item.focus) {
+                focusKeys.add(item.key);
+            }
+        }
+        for (SchemaItem item : items) {
+            if (!item.focus) {
+                item.linked = item.join
+                        || links.getOrDefault(item.key, Set.of()).stream().anyMatch(focusKeys::contains);
+            }
+        }
+        return items;
+    }
+
+    private boolean isJoinItem(PromptRequest request, String name) {
+        return request.joinItems() != null && request.joinItems().contains(name);
+    }
+
+    private void link(Map<String, Set<String>> links, String from, String to) {
+        links.computeIfAbsent(from, k -> new HashSet<>()).add(to);
+        links.computeIfAbsent(to, k -> new HashSet<>()).add(from);
+    }
+
+    /**
+     * Lowers the detail of an item and records the adjustment.
+     *
+     * @return true if the detail was lowered
+     */
+    private boolean reduce(SchemaItem item, Detail detail, List<String> adjustments) {
+        if (item.detail.ordinal() >= detail.ordinal()) {
+            return false;
+        }
+        item.detail = detail;
+        adjustments.add(item.name() + ": " + detail.description);
+        return true;
+    }
+
+    private int totalTokens(int fixedTokens, List<SchemaItem> items, List<String> interactions) {
+        int tokens = fixedTokens;
+        for (SchemaItem item : items) {
+            if (item.detail != Detail.OMITTED) {
+                tokens += estimateTokens(item.text());
+            }
+        }
+        for (String interaction : interactions) {
+            tokens += estimateTokens(interaction);
+        }
+        return tokens;
+    }
+
+    /**
+     * Renders a table at the given detail. Pruned forms keep primary and foreign key columns
+     * so joins can still be written.
+     */
+    private String renderTable(TableDDLDefinition def, Detail detail, Set<String> words, AIWizardSchemaFormat format) {
+        if (detail == Detail.FULL) {
+            return schemaFormatter.formatTable(def, format);
+        }
+
+        Set<String> keyColumns = new HashSet<>();
+        if (def.primaryKey() != null) {
+            keyColumns.addAll(def.primaryKey().columns());
+        }
+        def.foreignKeys().forEach(fk -> keyColumns.add(fk.fkColumnName()));
+
+        List<ColumnDefinition> columns = new ArrayList<>();
+        for (ColumnDefinition column : def.columns()) {
+            if (keyColumns.contains(column.columnName())
+                    || (detail == Detail.PRUNED && matches(words, column.columnName()))) {
+                columns.add(column);
+            }
+        }
+        Set<String> keptColumns = new HashSet<>();
+        columns.forEach(column -> keptColumns.add(column.columnName()));
+
+        List<UniqueConstraintDefinition> uniqueConstraints = detail == Detail.PRUNED
+                ? def.uniqueConstraints().stream().filter(uc -> keptColumns.containsAll(uc.columns())).toList()
+                : List.of();
+
+        return schemaFormatter.formatTable(new TableDDLDefinition(
+                def.catalog(),
+                def.schema(),
+                def.tableName(),
+                columns,
+                def.primaryKey(),
+                def.foreignKeys(),
+                List.of(),  // Indexes are rarely needed for query generation
+                uniqueConstraints
+        ), format);
+    }
+
+    /**
+     * Renders an entity at the given detail. Pruned forms keep the primary key and associations
+     * so joins can still be written.
+     */
+    private String renderEntity(EntityDefinition def, Detail detail, Set<String> words, AIWizardSchemaFormat format) {
+        if (detail == Detail.FULL) {
+            return format == null || format == AIWizardSchemaFormat.VERBOSE
+                    ? entityDefinitionService.getEntityDefinitionAsString(def.name())  // Memoized
+                    : schemaFormatter.formatEntity(def, format);
+        }
+
+        String pkName = def.primaryKey() != null ? def.primaryKey().propertyName() : null;
+        List<PropertyDefinition> properties = new ArrayList<>();
+        for (PropertyDefinition property : def.properties()) {
+            if (property.name().equals(pkName)
+                    || property.relationType() != null
+                    || (detail == Detail.PRUNED && matches(words, property.name()))) {
+                properties.add(property);
+            }
+        }
+
+        return schemaFormatter.formatEntity(new EntityDefinition(
+                def.name(),
+                def.simpleName(),
+                def.fullClassName(),
+                def.tableName(),
+                def.schemaName(),
+                def.jpaEntity(),
+                def.embeddable(),
+                def.softDeletable(),
+                def.versioned(),
+                def.primaryKey(),
+                properties,
+                List.of(),  // Class annotations carry no query-relevant information
+                def.inheritanceInfo()
+        ), format);
+    }
+
+    // ==================== Mention Detection ====================
+
+    /**
+     * Collects normalized words of the given texts, including singular forms and
+     * adjacent word pairs, so "customer orders" matches CUSTOMER_ORDER.
+     */
+    private Set<String> collectWords(String... texts) {
+        Set<String> words = new HashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            String previous = null;
+            Matcher matcher = WORD.matcher(text);
+            while (matcher.find()) {
+                String word = normalize(matcher.group());
+                addWithSingular(words, word);
+                if (previous != null) {
+                    addWithSingular(words, previous + word);
+                }
+                previous = word;
+            }
+        }
+        return words;
+    }
+
+    private void addWithSingular(Set<String> words, String word) {
+        words.add(word);
+        if (word.length() > 3 && word.endsWith("s")) {
+            words.add(word.substring(0, word.length() - 1));
+        }
+    }
+
+    private boolean matches(Set<String> words, String name) {
+        return name != null && words.contains(normalize(name));
+    }
+
+    private String normalize(String name) {
+        return name == null ? "" : name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private List<String> renderInteractions(List<Interaction> history) {
+        List<String> interactions = new ArrayList<>();
+        if (history == null) {
+            return interactions;
+        }
+        for (Interaction entry : history) {
+            StringBuilder sb = new StringBuilder();
+            if (entry.prompt() != null) {
+                sb.append("Prompt: ").append(entry.prompt()).append("\n");
+            }
+            if (entry.response() != null) {
+                sb.append("Response: ").append(entry.response()).append("\n");
+            }
+            interactions.add(sb.toString());
+        }
+        return interactions;
+    }
+
+    /**
+     * Level of detail of a schema item, from most to least detailed.
+     */
+    private enum Detail {
+        FULL("full definition"),
+        PRUNED("unreferenced columns dropped"),
+        KEYS_ONLY("key columns only"),
+        OMITTED("omitted");
+
+        private final String description;
+
+        Detail(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * A selected table or entity with its relevance and current level of detail.
+     * Rendered text is memoized per detail level.
+     */
+    private static class SchemaItem {
+        private final String name;
+        private final String key;
+        private final Function<Detail, String> renderer;
+        private final Map<Detail, String> rendered = new EnumMap<>(Detail.class);
+        private final boolean join;
+        private boolean focus;
+        private boolean linked;
+        private Detail detail = Detail.FULL;
+
+        private SchemaItem(String name, String key, boolean focus, boolean join, Function<Detail, String> renderer) {
+            this.name = name;
+            this.key = key;
+            this.focus = focus;
+            this.join = join;
+            this.renderer = renderer;
+        }
+
+        private String name() {
+            return name;
+        }
+
+        /** 0 = focus, 1 = linked to a focus item, 2 = unrelated. */
+        private int rank() {
+            return focus ? 0 : linked ? 1 : 2;
+        }
+
+        private String text() {
+            return rendered.computeIfAbsent(detail, renderer);
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Inputs of a prompt; definitions are fetched by the caller.
+     */
+    public record PromptRequest(
+            AIWizardConnection connection,             // Target provider, selects the token budget
+            String systemInstruction,                  // Sent separately, counted against the budget (nullable)
+            Map<String, TableDDLDefinition> tables,    // SQL: definitions keyed by selected table name (nullable)
+            Map<String, EntityDefinition> entities,    // JPQL: definitions keyed by selected entity name (nullable)
+            Set<String> joinItems,                     // Keys of tables/entities added only to connect the selection (nullable)
+            AIWizardSchemaFormat schemaFormat,         // Rendering of definitions (nullable = VERBOSE)
+            List<Interaction> history,                 // Previous interactions, oldest first (nullable)
+            String currentScript,                      // Script being modified (nullable)
+            String userPrompt                          // The user's request (nullable)
+    ) {}
+
+    /**
+     * Assembled prompt with its size estimate.
+     */
+    public record BuiltPrompt(
+            String userPrompt,          // Assembled user prompt
+            int estimatedTokens,        // Estimated tokens including the system instruction
+            int tokenBudget,            // Budget of the target provider
+            boolean overBudget,         // Still over budget after all trimming
+            List<String> adjustments    // Trimming applied, in order
+    ) {}
+}
@@ -0,0 +1,620 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Routes AI requests across providers: a primary connection plus an optional fallback.
+ *
+ * Features:
+ * - Failover: if the primary fails or does not answer within the timeout, the fallback is called
+ * - Hedging (optional): if the primary has not answered within its observed p95 latency,
+ *   the fallback is called as well and the first answer wins; the slower call is cancelled
+ * - Circuit breakers: a provider whose recent error rate exceeds the threshold is skipped
+ *   for a cool-down period, then probed with a single trial request
+ *
+ * Streaming requests fail over only until the first chunk has been delivered
+ * (partial output may already be on screen) and are never hedged.
+ *
+ * The routing policy comes from the template (fallback connection, hedging flag)
+ * or from the global defaults below when the template does not set it.
+ *
+ * Configuration:
+ * - aiwizard.routing.fallback: global fallback connection, e.g. GEMINI (default none)
+ * - aiwizard.routing.timeout: per-attempt timeout before failing over, counted from when the attempt
+ *   starts running (default PT60S)
+ * - aiwizard.routing.pool-size: threads running routed calls (default 16)
+ * - aiwizard.routing.queue-capacity: calls waiting for a thread before new requests are rejected (default 32)
+ * - aiwizard.routing.hedging.enabled: hedge requests by default (default false)
+ * - aiwizard.routing.hedging.initial-delay: hedge delay until enough latencies are observed (default PT5S)
+ * - aiwizard.routing.hedging.min-samples: latencies needed before the p95 is used (default 20)
+ * - aiwizard.routing.circuit-breaker.window-size: recent calls considered per provider (default 20)
+ * - aiwizard.routing.circuit-breaker.minimum-calls: calls needed before the breaker may open (default 5)
+ * - aiwizard.routing.circuit-breaker.failure-rate-threshold: error rate in percent that opens it (default 50)
+ * - aiwizard.routing.circuit-breaker.open-duration: how long an open breaker rejects calls (default PT30S)
+ */
+@Service("aiwizard_AIWizardProviderRouter")
+public class AIWizardProviderRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardProviderRouter.class);
+
+    /** Successful latencies kept per provider for the p95 estimate. */
+    private static final int LATENCY_WINDOW = 100;
+
+    @Value("${aiwizard.routing.fallback:}")
+    private String defaultFallback;
+
+    @Value("${aiwizard.routing.timeout:PT60S}")
+    private Duration timeout;
+
+    @Value("${aiwizard.routing.pool-size:16}")
+    private int poolSize;
+
+    @Value("${aiwizard.routing.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${aiwizard.routing.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${aiwizard.routing.hedging.initial-delay:PT5S}")
+    private Duration hedgingInitialDelay;
+
+    @Value("${aiwizard.routing.hedging.min-samples:20}")
+    private int hedgingMinSamples;
+
+    @Value("${aiwizard.routing.circuit-breaker.window-size:20}")
+    private int breakerWindowSize;
+
+    @Value("${aiwizard.routing.circuit-breaker.minimum-calls:5}")
+    private int breakerMinimumCalls;
+
+    @Value("${aiwizard.routing.circuit-breaker.failure-rate-threshold:50}")
+    private int breakerFailureRateThreshold;
+
+    @Value("${aiwizard.routing.circuit-breaker.open-duration:PT30S}")
+    private Duration breakerOpenDuration;
+
+    private final Map<AIWizardConnection, CircuitBreaker> breakers = new EnumMap<>(AIWizardConnection.class);
+    private final Map<AIWizardConnection, LatencyWindow> latencies = new EnumMap<>(AIWizardConnection.class);
+
+    private final AIWizardMetrics metrics;
+
+    /** Pool running routed calls, initialized in init(). */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardProviderRouter(AIWizardMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    private void init() {
+        for (AIWizardConnection connection : AIWizardConnection.values()) {
+            breakers.put(connection, new CircuitBreaker(connection));
+            latencies.put(connection, new LatencyWindow());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "aiwizard-route-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        log.info("AI Wizard routing: fallback={}, timeout={}, hedging={}", defaultFallback, timeout, hedgingEnabled);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    // ==================== Routing Policy ====================
+
+    /**
+     * Returns the route for a template: its connection, its fallback connection
+     * (or the global fallback) and its hedging flag (or the global default).
+     */
+    public Route routeFor(AIWizardTemplate template) {
+        AIWizardConnection fallback = template.getFallbackConnection() != null
+                ? template.getFallbackConnection()
+                : getDefaultFallback();
+        boolean hedging = template.getHedgingEnabled() != null ? template.getHedgingEnabled() : hedgingEnabled;
+        return new Route(template.getConnection(), fallback, hedging, template.getName());
+    }
+
+    /**
+     * Returns the route for an explicitly chosen provider using the global fallback and hedging defaults.
+     */
+    public Route routeFor(AIWizardConnection provider) {
+        return new Route(provider, getDefaultFallback(), hedgingEnabled, null);
+    }
+
+    private AIWizardConnection getDefaultFallback() {
+        return defaultFallback == null || defaultFallback.isBlank()
+                ? null
+                : AIWizardConnection.fromId(defaultFallback.trim().toUpperCase());
+    }
+
+    // ==================== Execution ====================
+
+    /**
+     * Executes a blocking call along the route, failing over and hedging as configured.
+     *
+     * @param route the providers to try
+     * @param call  performs the request against one provider
+     * @return the first successful answer
+     * @throws IllegalStateException if every provider's circuit breaker is open or the routing pool is full
+     * @throws RuntimeException      the last provider error if all providers failed
+     */
+    public <T> T execute(Route route, Function<AIWizardConnection, T> call) {
+        RoutedCall<T> routed = new RoutedCall<>(route.providers(), call);
+        if (!routed.startNext(null)) {
+            throw routed.rejected
+                    ? new IllegalStateException("AI Wizard is busy, please try again in a moment")
+                    : unavailable(route);
+        }
+        try {
+            if (route.hedging() && routed.hasNext()) {
+                long delay = getHedgeDelayMillis(route.primary());
+                try {
+                    return routed.result.get(delay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (routed.startNext("hedge")) {
+                        log.debug("{} did not answer within {} ms, hedging", route.primary(), delay);
+                    }
+                }
+            }
+            long wait = timeout.toMillis();
+            while (true) {
+                try {
+                    return routed.result.get(wait, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Attempts that started late (queued, or hedged) get the rest of their own timeout
+                    wait = routed.abandonTimedOut();
+                    if (wait == 0) {
+                        if (!routed.startNext("failover")) {
+                            throw new RuntimeException("No AI provider answered within " + timeout);
+                        }
+                        wait = timeout.toMillis();
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtime ? runtime : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("AI request interrupted");
+        } finally {
+            routed.cancelAll();
+        }
+    }
+
+    /**
+     * Executes a streaming call along the route, blocking until the stream completes.
+     * Fails over if a provider errors or does not deliver its first chunk within the timeout,
+     * as long as nothing has been passed to the consumer yet.
+     *
+     * @param route   the providers to try
+     * @param stream  opens the response stream of one provider
+     * @param onChunk receives each chunk in arrival order
+     * @return the complete response
+     * @throws IllegalStateException if every provider's circuit breaker is open
+     * @throws RuntimeException      the provider error if the stream failed
+     */
+    public String executeStream(Route route, Function<AIWizardConnection, Flux<String>> stream,
+                                Consumer<String> onChunk) {
+        RuntimeException lastError = null;
+        for (AIWizardConnection provider : route.providers()) {
+            CircuitBreaker breaker = breakers.get(provider);
+            if (!breaker.tryAcquire()) {
+                continue;
+            }
+            if (lastError != null) {
+                metrics.recordRetry(provider, "failover");
+            }
+            AtomicBoolean started = new AtomicBoolean();
+            StringBuilder response = new StringBuilder();
+            long start = System.nanoTime();
+            try {
+                stream.apply(provider)
+                        .timeout(Mono.delay(timeout), chunk -> Mono.never())
+                        .doOnNext(chunk -> {
+                            started.set(true);
+                            response.append(chunk);
+                            onChunk.accept(chunk);
+                        })
+                        .blockLast();
+                breaker.record(true);
+                latencies.get(provider).add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return response.toString();
+            } catch (RuntimeException e) {
+                if (Thread.currentThread().isInterrupted() || e.getCause() instanceof InterruptedException) {
+                    breaker.release();
+                    throw e;
+                }
+                if (e instanceof AIWizardRateLimitException) {
+                    // Throttled locally, the provider did not fail
+                    breaker.release();
+                    log.debug("{} is rate limited, failing over: {}", provider, e.getMessage());
+                    lastError = e;
+                    continue;
+                }
+                breaker.record(false);
+                if (started.get()) {
+                    throw e;
+                }
+                log.warn("Streaming with {} failed before the first chunk, failing over: {}", provider, e.getMessage());
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : unavailable(route);
+    }
+
+    private IllegalStateException unavailable(Route route) {
+        return new IllegalStateException("No AI provider available for " + route.providers()
+                + ": circuit breakers are open, try again in a moment");
+    }
+
+    // ==================== Status ====================
+
+    /**
+     * Returns the hedge delay for a provider: its p95 latency once enough answers have been observed,
+     * otherwise the configured initial delay.
+     */
+    public long getHedgeDelayMillis(AIWizardConnection provider) {
+        OptionalLong p95 = latencies.get(provider).percentile(95, hedgingMinSamples);
+        return p95.orElse(hedgingInitialDelay.toMillis());
+    }
+
+    /**
+     * Returns the circuit breaker state of each provider.
+     */
+    public Map<AIWizardConnection, BreakerState> getBreakerStates() {
+        Map<AIWizardConnection, BreakerState> states = new EnumMap<>(AIWizardConnection.class);
+        breakers.forEach((connection, breaker) -> states.put(connection, breaker.getState()));
+        return states;
+    }
+
+    // ==================== Implementation ====================
+
+    /**
+     * One routed request: starts attempts on the providers in order and completes
+     * its result with the first successful answer.
+     */
+    private class RoutedCall<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Deque<AIWizardConnection> remaining;
+        private final Function<AIWizardConnection, T> call;
+        private final List<Attempt> running = new ArrayList<>();
+
+        /** Set when the routing pool rejected an attempt because its queue was full. */
+        private volatile boolean rejected;
+
+        RoutedCall(List<AIWizardConnection> providers, Function<AIWizardConnection, T> call) {
+            this.remaining = new ArrayDeque<>(providers);
+            this.call = call;
+        }
+
+        synchronized boolean hasNext() {
+            return !remaining.isEmpty();
+        }
+
+        /**
+         * Starts the next provider whose circuit breaker admits a call.
+         *
+         * @param reason why an additional provider is called (failover, hedge), null for the first call
+         */
+        synchronized boolean startNext(String reason) {
+            while (!remaining.isEmpty()) {
+                AIWizardConnection provider = remaining.poll();
+                if (!breakers.get(provider).tryAcquire()) {
+                    log.debug("Skipping {}: circuit breaker is open", provider);
+                    continue;
+                }
+                if (reason != null) {
+                    metrics.recordRetry(provider, reason);
+                }
+                Attempt attempt = new Attempt(provider);
+                running.add(attempt);
+                try {
+                    attempt.future = executor.submit(() -> run(attempt));
+                } catch (RejectedExecutionException e) {
+                    // Saturated locally, the provider did not fail; other providers would queue here too
+                    running.remove(attempt);
+                    breakers.get(provider).release();
+                    rejected = true;
+                    log.warn("Routing pool is full, {} not called", provider);
+                    return false;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void run(Attempt attempt) {
+            attempt.begin();
+            try {
+                T value = call.apply(attempt.provider);
+                onSuccess(attempt, value);
+            } catch (Throwable e) {
+                onFailure(attempt, e);
+            }
+        }
+
+        private synchronized void onSuccess(Attempt attempt, T value) {
+            if (attempt.abandoned) {
+                return;
+            }
+            running.remove(attempt);
+            breakers.get(attempt.provider).record(true);
+            latencies.get(attempt.provider).add(attempt.elapsedMillis());
+            if (result.complete(value)) {
+                log.debug("{} answered in {} ms", attempt.provider, attempt.elapsedMillis());
+            }
+        }
+
+        private synchronized void onFailure(Attempt attempt, Throwable error) {
+            if (attempt.abandoned) {
+                return;
+            }
+            running.remove(attempt);
+            if (error instanceof AIWizardRateLimitException) {
+                // Throttled locally, the provider did not fail
+                breakers.get(attempt.provider).release();
+            } else {
+                breakers.get(attempt.provider).record(false);
+            }
+            if (result.isDone() || !running.isEmpty()) {
+                return;
+            }
+            log.warn("{} failed after {} ms: {}", attempt.provider, attempt.elapsedMillis(), error.getMessage());
+            if (!startNext("failover")) {
+                result.completeExceptionally(error);
+            }
+        }
+
+        /**
+         * Gives up on attempts that have run for the full timeout, which count as failures of their provider,
+         * and on attempts still waiting for a pool thread, which do not.
+         *
+         * @return milliseconds until the next remaining attempt times out, 0 if no attempt is left
+         */
+        synchronized long abandonTimedOut() {
+            long wait = 0;
+            Iterator<Attempt> iterator = running.iterator();
+            while (iterator.hasNext()) {
+                Attempt attempt = iterator.next();
+                if (attempt.started) {
+                    long remaining = timeout.toMillis() - attempt.elapsedMillis();
+                    if (remaining > 0) {
+                        wait = wait == 0 ? remaining : Math.min(wait, remaining);
+                        continue;
+                    }
+                    log.warn("{} did not answer within {}", attempt.provider, timeout);
+                    breakers.get(attempt.provider).record(false);
+                } else {
+                    log.warn("{} was not started within {}: routing pool is saturated", attempt.provider, timeout);
+                    breakers.get(attempt.provider).release();
+                }
+                attempt.abandoned = true;
+                attempt.future.cancel(true);
+                iterator.remove();
+            }
+            // Free the queue slots of cancelled attempts that never started
+            executor.purge();
+            return wait;
+        }
+
+        /**
+         * Cancels attempts that are still running once the request is finished;
+         * losing hedged attempts are not counted for or against their provider.
+         */
+        synchronized void cancelAll() {
+            for (Attempt attempt : running) {
+                attempt.abandoned = true;
+                attempt.future.cancel(true);
+                breakers.get(attempt.provider).release();
+            }
+            running.clear();
+        }
+    }
+
+    /**
+     * A call to one provider within a routed request.
+     */
+    private static class Attempt {
+
+        private final AIWizardConnection provider;
+        private volatile long start;
+        private volatile boolean started;
+        private volatile Future<?> future;
+        private volatile boolean abandoned;
+
+        Attempt(AIWizardConnection provider) {
+            this.provider = provider;
+        }
+
+        /**
+         * Marks the attempt as picked up by a pool thread; latency and timeout count from here.
+         */
+        void begin() {
+            start = System.nanoTime();
+            started = true;
+        }
+
+        long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count-based circuit breaker over the last window-size calls of one provider.
+     * Open: calls are rejected until open-duration has passed.
+     * Half-open: a single trial call decides between closing and reopening.
+     */
+    private class CircuitBreaker {
+
+        private final AIWizardConnection provider;
+        private final Deque<Boolean> outcomes = new ArrayDeque<>();
+        private BreakerState state = BreakerState.CLOSED;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(AIWizardConnection provider) {
+            this.provider = provider;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == BreakerState.OPEN) {
+                if (System.currentTimeMillis() - openedAt < breakerOpenDuration.toMillis()) {
+                    return false;
+                }
+                state = BreakerState.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == BreakerState.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        /**
+         * Releases an acquired call without an outcome (cancelled or interrupted).
+         */
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void record(boolean success) {
+            if (state == BreakerState.HALF_OPEN) {
+                trialInFlight = false;
+                if (success) {
+                    log.info("Circuit breaker for {} closed", provider);
+                    state = BreakerState.CLOSED;
+                    outcomes.clear();
+                } else {
+                    open();
+                }
+                return;
+            }
+            if (state == BreakerState.OPEN) {
+                return;
+            }
+            outcomes.addLast(success);
+            while (outcomes.size() > breakerWindowSize) {
+                outcomes.removeFirst();
+            }
+            long failures = outcomes.stream().filter(outcome -> !outcome).count();
+            if (outcomes.size() >= breakerMinimumCalls
+                    && failures * 100 >= (long) breakerFailureRateThreshold * outcomes.size()) {
+                open();
+            }
+        }
+
+        private void open() {
+            log.warn("Circuit breaker for {} opened for {}", provider, breakerOpenDuration);
+            state = BreakerState.OPEN;
+            openedAt = System.currentTimeMillis();
+            outcomes.clear();
+        }
+
+        synchronized BreakerState getState() {
+            return state;
+        }
+    }
+
+    /**
+     * Latencies of the last successful calls of one provider.
+     */
+    private static class LatencyWindow {
+
+        private final long[] values = new long[LATENCY_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % values.length;
+            count = Math.min(count + 1, values.length);
+        }
+
+        synchronized OptionalLong percentile(int percentile, int minSamples) {
+            if (count < Math.max(1, minSamples)) {
+                return OptionalLong.empty();
+            }
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return OptionalLong.of(sorted[Math.max(0, index)]);
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Providers to use for a request, in order, and whether to hedge.
+     */
+    public record Route(
+            AIWizardConnection primary,   // Provider tried first
+            AIWizardConnection fallback,  // Provider used on failure, timeout or hedging (nullable)
+            boolean hedging,              // Call the fallback as well once the primary exceeds its p95
+            String template               // Template name for metrics (nullable)
+    ) {
+
+        /**
+         * Distinct providers in order: primary, then fallback.
+         */
+        public List<AIWizardConnection> providers() {
+            List<AIWizardConnection> providers = new ArrayList<>(2);
+            providers.add(primary);
+            if (fallback != null && fallback != primary) {
+                providers.add(fallback);
+            }
+            return providers;
+        }
+
+        /**
+         * Returns this route with a different fallback (e.g. null when the fallback is not configured).
+         */
+        public Route withFallback(AIWizardConnection fallback) {
+            return new Route(primary, fallback, hedging, template);
+        }
+    }
+
+    /**
+     * Circuit breaker state of a provider.
+     */
+    public enum BreakerState {
+        CLOSED,     // Calls pass, outcomes are counted
+        OPEN,       // Calls are rejected until the open duration has passed
+        HALF_OPEN   // A single trial call is let through
+    }
+}
@@ -0,0 +1,402 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardQueryValidator.Validation;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import io.jmix.reports.entity.DataSetType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Guards report data sets against unbounded queries. A band query without a filter or row
+ * cap over a large table is loaded completely into the memory of the Jmix Reports engine.
+ *
+ * A query is assessed from its shape and its plan (AIWizardQueryValidator):
+ * - Shape: top-level WHERE, row cap (LIMIT, FETCH FIRST, TOP, ROWNUM) and whether the
+ *   select list consists of aggregates only, which returns a single row
+ * - Plan: tables read by a full scan and the estimated rows
+ *
+ * A query is unbounded when it has neither a row cap nor a filter and is not a single-row
+ * aggregate; it exceeds the threshold when the plan estimates more rows than
+ * max-estimated-rows, filtered or not.
+ *
+ * Remedies:
+ * - Predicates: for each scanned table, a condition on a report parameter over an indexed
+ *   column, preferring dates (e.g. CREATED_DATE >= ${createdDateFrom}). These are suggestions
+ *   only, as they need a report parameter
+ * - Row cap: LIMIT (HSQLDB, PostgreSQL, MySQL/MariaDB, H2) or FETCH FIRST (others) appended
+ *   to SQL; JPQL has no row cap syntax and is not capped
+ *
+ * Configuration:
+ * - aiwizard.guard.enabled: assess generated queries and warn before save (default true)
+ * - aiwizard.guard.max-estimated-rows: estimated rows above which a query is reported (default 100000)
+ * - aiwizard.guard.row-cap: rows of the injected row cap (default 10000)
+ * - aiwizard.guard.inject-row-cap: cap unbounded SQL automatically instead of suggesting it (default false)
+ */
+@Service("aiwizard_AIWizardQueryGuard")
+public class AIWizardQueryGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardQueryGuard.class);
+
+    private static final Set<String> AGGREGATES = Set.of("count", "sum", "avg", "min", "max");
+
+    @Value("${aiwizard.guard.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.guard.max-estimated-rows:100000}")
+    private long maxEstimatedRows;
+
+    @Value("${aiwizard.guard.row-cap:10000}")
+    private int rowCap;
+
+    @Value("${aiwizard.guard.inject-row-cap:false}")
+    private boolean injectRowCap;
+
+    private final AIWizardQueryValidator queryValidator;
+    private final AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private final DataSource dataSource;  // JDBC connection pool, for the database product name
+
+    /** Database product name, read on first use. */
+    private volatile String databaseProduct;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardQueryGuard(AIWizardQueryValidator queryValidator,
+                              AIWizardTableDDLDefinitionService tableDDLDefinitionService,
+                              DataSource dataSource) {
+        this.queryValidator = queryValidator;
+        this.tableDDLDefinitionService = tableDDLDefinitionService;
+        this.dataSource = dataSource;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isInjectRowCap() {
+        return injectRowCap;
+    }
+
+    /**
+     * Validates and assesses a data set script, e.g. before the report is saved.
+     *
+     * @param dataSetType the data set type
+     * @param script      the script, with report parameters
+     * @return the assessment; queries that fail validation are not assessed
+     */
+    public Assessment check(DataSetType dataSetType, String script) {
+        if (!enabled || (dataSetType != DataSetType.SQL && dataSetType != DataSetType.JPQL)) {
+            return Assessment.bounded();
+        }
+        return assess(dataSetType, script, queryValidator.validate(dataSetType, script));
+    }
+
+    /**
+     * Assesses a validated data set script.
+     *
+     * @param dataSetType the data set type
+     * @param script      the script, with report parameters
+     * @param validation  the validation of the script, with its plan when available
+     * @return the assessment with suggested predicates and the capped script
+     */
+    public Assessment assess(DataSetType dataSetType, String script, Validation validation) {
+        if (!enabled || script == null || script.isBlank() || !validation.valid()
+                || (dataSetType != DataSetType.SQL && dataSetType != DataSetType.JPQL)) {
+            return Assessment.bounded();
+        }
+        QueryShape shape = analyze(script);
+        boolean unbounded = !shape.rowCapped() && !shape.filtered() && !shape.singleRow();
+        boolean overThreshold = !shape.rowCapped() && !shape.singleRow()
+                && validation.estimatedRows() != null && validation.estimatedRows() > maxEstimatedRows;
+        if (!unbounded && !overThreshold) {
+            return Assessment.bounded();
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        String cappedScript = null;
+        if (dataSetType == DataSetType.SQL) {
+            Set<String> tables = new LinkedHashSet<>(validation.fullScans());
+            if (tables.isEmpty()) {
+                tables.addAll(shape.tables());
+            }
+            suggestions.addAll(suggestPredicates(tables));
+            cappedScript = appendRowCap(script, getDatabaseProduct(), rowCap);
+        }
+
+        List<String> reasons = new ArrayList<>();
+        if (unbounded) {
+            reasons.add("no WHERE clause or row cap");
+        }
+        if (!validation.fullScans().isEmpty()) {
+            reasons.add("full scan of " + String.join(", ", validation.fullScans()));
+        }
+        if (validation.estimatedRows() != null) {
+            reasons.add("~" + validation.estimatedRows() + " estimated rows"
+                    + (overThreshold ? " (limit " + maxEstimatedRows + ")" : ""));
+        }
+        return new Assessment(unbounded, overThreshold, String.join(", ", reasons), suggestions,
+                cappedScript, cappedScript == null ? 0 : rowCap);
+    }
+
+    /**
+     * Suggests a parameterized condition per table on an indexed column, preferring dates.
+     * Tables without a usable column, or unknown to the schema snapshot, get no suggestion.
+     */
+    private List<String> suggestPredicates(Collection<String> tables) {
+        List<String> suggestions = new ArrayList<>();
+        for (String table : tables) {
+            TableDDLDefinition definition;
+            try {
+                definition = tableDDLDefinitionService.getTableDDLDefinition(table);
+            } catch (RuntimeException e) {
+                log.debug("No definition for scanned table {}: {}", table, e.getMessage());
+                continue;
+            }
+            String predicate = suggestPredicate(definition);
+            if (predicate != null) {
+                suggestions.add(definition.tableName() + ": " + predicate);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Picks a column for a filter: an indexed date column, else another indexed column that
+     * is not the primary key, else an unindexed date column.
+     *
+     * @return the condition with a report parameter, or null if no column qualifies
+     */
+    static String suggestPredicate(TableDDLDefinition definition) {
+        Set<String> keyColumns = new HashSet<>(definition.primaryKey() == null
+                ? List.of() : definition.primaryKey().columns());
+        Map<String, ColumnDefinition> columns = new LinkedHashMap<>();
+        for (ColumnDefinition column : definition.columns()) {
+            columns.put(column.columnName(), column);
+        }
+
+        List<ColumnDefinition> indexed = new ArrayList<>();
+        for (IndexDefinition index : definition.indexes()) {
+            ColumnDefinition leading = index.columns().isEmpty() ? null : columns.get(index.columns().get(0));
+            if (leading != null && !keyColumns.contains(leading.columnName()) && !indexed.contains(leading)) {
+                indexed.add(leading);
+            }
+        }
+        for (ColumnDefinition column : indexed) {
+            if (isDate(column)) {
+                return column.columnName() + " >= ${" + parameterName(column.columnName()) + "From}";
+            }
+        }
+        if (!indexed.isEmpty()) {
+            String name = indexed.get(0).columnName();
+            return name + " = ${" + parameterName(name) + "}";
+        }
+        for (ColumnDefinition column : definition.columns()) {
+            if (isDate(column)) {
+                return column.columnName() + " >= ${" + parameterName(column.columnName()) + "From}";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends a row cap to a SQL script in the syntax of the database.
+     *
+     * @return the capped script, or null if the database has no row cap usable without ORDER BY (SQL Server)
+     */
+    static String appendRowCap(String script, String product, int rows) {
+        String body = AIWizardQueryValidator.stripTrailingSemicolon(script);
+        String name = product == null ? "" : product.toLowerCase(Locale.ROOT);
+        if (name.contains("hsql") || name.contains("postgres") || name.contains("mysql")
+                || name.contains("mariadb") || name.equals("h2")) {
+            return body + "\nLIMIT " + rows;
+        }
+        if (name.contains("microsoft")) {
+            return analyze(body).ordered() ? body + "\nOFFSET 0 ROWS FETCH NEXT " + rows + " ROWS ONLY" : null;
+        }
+        return body + "\nFETCH FIRST " + rows + " ROWS ONLY";
+    }
+
+    /**
+     * Reads the top-level structure of a SQL or JPQL query. Subqueries, CTE bodies, string
+     * literals, quoted identifiers and comments are skipped.
+     */
+    static QueryShape analyze(String script) {
+        List<String> words = new ArrayList<>();        // top-level words, lower case
+        List<Integer> wordEnds = new ArrayList<>();
+        List<String> originals = new ArrayList<>();
+        int depth = 0;
+        for (int i = 0; i < script.length(); i++) {
+            char c = script.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = script.indexOf(c, i + 1);
+                i = end < 0 ? script.length() : end;
+            } else if (c == '-' && script.startsWith("--", i)) {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? script.length() : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? script.length() : end + 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i + 1 < script.length() && isWordPart(script.charAt(i + 1))) {
+                    i++;
+                }
+                if (depth == 0) {
+                    String word = script.substring(start, i + 1);
+                    words.add(word.toLowerCase(Locale.ROOT));
+                    originals.add(word);
+                    wordEnds.add(i + 1);
+                }
+            }
+        }
+
+        boolean filtered = words.contains("where");
+        boolean ordered = false;
+        boolean rowCapped = words.contains("limit") || words.contains("rownum");
+        List<String> tables = new ArrayList<>();
+        int selectIndex = words.indexOf("select");
+        int fromIndex = -1;
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            String next = w + 1 < words.size() ? words.get(w + 1) : "";
+            if ("fetch".equals(word) && ("first".equals(next) || "next".equals(next))) {
+                rowCapped = true;
+            } else if ("top".equals(word) && w == selectIndex + 1) {
+                rowCapped = true;
+            } else if ("order".equals(word) && "by".equals(next)) {
+                ordered = true;
+            } else if (("from".equals(word) || "join".equals(word)) && w > selectIndex && selectIndex >= 0
+                    && w + 1 < words.size() && !isKeyword(next)) {
+                tables.add(originals.get(w + 1));
+                if ("from".equals(word) && fromIndex < 0) {
+                    fromIndex = w;
+                }
+            }
+        }
+        boolean singleRow = !words.contains("group") && selectIndex >= 0 && fromIndex > selectIndex
+                && isAggregateList(script.substring(wordEnds.get(selectIndex),
+                wordEnds.get(fromIndex) - "from".length()));
+        return new QueryShape(filtered, rowCapped, singleRow, ordered, tables);
+    }
+
+    /**
+     * Returns true if every item of a select list is an aggregate call, e.g. count(*), sum(o.AMOUNT).
+     */
+    private static boolean isAggregateList(String selectList) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < selectList.length(); i++) {
+            char c = selectList.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items.add(selectList.substring(start, i));
+                start = i + 1;
+            }
+        }
+        items.add(selectList.substring(start));
+        for (String item : items) {
+            String trimmed = item.strip().toLowerCase(Locale.ROOT);
+            int paren = trimmed.indexOf('(');
+            if (paren < 0 || !AGGREGATES.contains(trimmed.substring(0, paren).strip())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
+
+    private static boolean isKeyword(String word) {
+        return Set.of("select", "lateral", "where", "on", "join", "inner", "left", "right", "full", "cross")
+                .contains(word);
+    }
+
+    private static boolean isDate(ColumnDefinition column) {
+        return switch (column.dataType()) {
+            case Types.DATE, Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Converts a column name to a report parameter name, e.g. CREATED_DATE to createdDate.
+     */
+    private static String parameterName(String columnName) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : columnName.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = name.length() > 0;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private String getDatabaseProduct() {
+        if (databaseProduct == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                databaseProduct = connection.getMetaData().getDatabaseProductName();
+            } catch (SQLException e) {
+                log.warn("Cannot read the database product name: {}", e.getMessage());
+                return null;
+            }
+        }
+        return databaseProduct;
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Top-level structure of a query.
+     */
+    record QueryShape(
+            boolean filtered,           // has a WHERE clause
+            boolean rowCapped,          // has LIMIT, FETCH FIRST/NEXT, TOP or ROWNUM
+            boolean singleRow,          // aggregates only, without GROUP BY
+            boolean ordered,            // has ORDER BY
+            List<String> tables         // tables (entities) after FROM and JOIN, as written
+    ) {}
+
+    /**
+     * Result of assessing a query.
+     */
+    public record Assessment(
+            boolean unbounded,          // neither a filter nor a row cap limits the rows
+            boolean overThreshold,      // the plan estimates more rows than max-estimated-rows
+            String reason,              // why the query was reported
+            List<String> suggestedPredicates,  // "TABLE: condition" per scanned table
+            String cappedScript,        // the script with a row cap, null if it cannot be capped
+            int rowCap                  // rows of the cap in cappedScript
+    ) {
+        static Assessment bounded() {
+            return new Assessment(false, false, null, List.of(), null, 0);
+        }
+
+        public boolean needsAttention() {
+            return unbounded || overThreshold;
+        }
+    }
+}
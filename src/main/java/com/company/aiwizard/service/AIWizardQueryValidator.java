@@ -0,0 +1,514 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.UnifiedAIService.Generation;
+import io.jmix.core.Stores;
+import io.jmix.data.StoreAwareLocator;
+import io.jmix.reports.entity.DataSetType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.DatabaseRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Validates generated data set queries before they are accepted, and lets the model repair
+ * the ones that fail. Nothing is executed: SQL is prepared and explained, JPQL is compiled
+ * by EclipseLink and the SQL it translates to is explained.
+ *
+ * Validation of a SQL script:
+ * - Report parameters (${name}) are replaced with JDBC parameters
+ * - Only a single SELECT (or WITH ... SELECT) statement is accepted
+ * - The statement is prepared in a read-only transaction that is rolled back
+ * - EXPLAIN is run where the dialect has a side-effect free form (HSQLDB, PostgreSQL,
+ *   MySQL/MariaDB, H2); parameters are bound as NULL
+ *
+ * The plan is reduced to an estimate: total cost (PostgreSQL), estimated rows and the tables
+ * read by a full scan. A plan without a supported EXPLAIN is reported as not available;
+ * the query is still valid if it could be prepared.
+ *
+ * On a parse or plan error, the error is sent back to the model together with the original
+ * prompt and the failed query, for a bounded number of repair rounds. The last answer is
+ * returned with its validation, valid or not; the caller decides what to show.
+ *
+ * Configuration:
+ * - aiwizard.validation.enabled: validate generated SQL and JPQL (default true)
+ * - aiwizard.validation.max-repair-rounds: corrections requested from the model per generation (default 2)
+ * - aiwizard.validation.timeout-seconds: statement timeout for EXPLAIN (default 10)
+ */
+@Service("aiwizard_AIWizardQueryValidator")
+public class AIWizardQueryValidator {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardQueryValidator.class);
+
+    /** Report parameter placeholder, e.g. ${customer} */
+    private static final Pattern REPORT_PARAMETER = Pattern.compile("\\$\\{([^}]*)}");
+
+    private static final Pattern LEADING_COMMENTS = Pattern.compile("\\A(\\s*(--[^\\n]*(\\n|\\z)|/\\*.*?\\*/))*\\s*",
+            Pattern.DOTALL);
+
+    private static final Pattern QUERY_START = Pattern.compile("(?i)(select|with)\\b");
+
+    private static final Pattern HSQLDB_TABLE = Pattern.compile("^\\s*table=(\\S+)");
+    private static final Pattern HSQLDB_CARDINALITY = Pattern.compile("^\\s*cardinality=(\\d+)");
+    private static final Pattern POSTGRES_COST = Pattern.compile("cost=[\\d.]+\\.\\.([\\d.]+) rows=(\\d+)");
+    private static final Pattern POSTGRES_SEQ_SCAN = Pattern.compile("Seq Scan on (\\S+)");
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\* (\\S+)\\.tableScan");
+
+    @Value("${aiwizard.validation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.validation.max-repair-rounds:2}")
+    private int maxRepairRounds;
+
+    @Value("${aiwizard.validation.timeout-seconds:10}")
+    private int timeoutSeconds;
+
+    private final DataSource dataSource;  // JDBC connection pool
+    private final StoreAwareLocator storeAwareLocator;
+    private final UnifiedAIService unifiedAIService;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardQueryValidator(DataSource dataSource,
+                                  StoreAwareLocator storeAwareLocator,
+                                  UnifiedAIService unifiedAIService) {
+        this.dataSource = dataSource;
+        this.storeAwareLocator = storeAwareLocator;
+        this.unifiedAIService = unifiedAIService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validates a generated script and asks the model to correct it while it fails, up to
+     * max-repair-rounds times. Token counts and latency of the repair calls are added to
+     * the returned generation. Repairs stop early on a rate limit.
+     *
+     * @param dataSetType       the data set type of the script
+     * @param generation        the model's answer
+     * @param prompt            the user prompt the answer was generated for
+     * @param systemInstruction the system instruction of the template
+     * @param route             provider route of the template
+     * @param useCache          whether repair calls may be served from the response cache
+     * @return the last answer with its validation
+     * @throws CancellationException if the thread is interrupted between rounds
+     */
+    public Repaired validateAndRepair(DataSetType dataSetType,
+                                      Generation generation,
+                                      String prompt,
+                                      String systemInstruction,
+                                      AIWizardProviderRouter.Route route,
+                                      boolean useCache) {
+        String script = UnifiedAIService.stripCodeBlockFormatting(generation.text());
+        Validation validation = validate(dataSetType, script);
+        int rounds = 0;
+        while (!validation.valid() && rounds < maxRepairRounds) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("AI Wizard validation interrupted");
+            }
+            rounds++;
+            log.info("AI Wizard query failed validation, repair round {} of {}: {}",
+                    rounds, maxRepairRounds, validation.error());
+            Generation repair;
+            try {
+                repair = unifiedAIService.generateContent(buildRepairPrompt(prompt, script, validation.error()),
+                        systemInstruction, route, useCache);
+            } catch (AIWizardRateLimitException e) {
+                log.info("AI Wizard repair stopped by rate limit: {}", e.getMessage());
+                break;
+            }
+            generation = combine(generation, repair);
+            script = UnifiedAIService.stripCodeBlockFormatting(repair.text());
+            validation = validate(dataSetType, script);
+        }
+        return new Repaired(generation, validation, rounds);
+    }
+
+    /**
+     * Validates a SQL or JPQL data set script without executing it.
+     * Other data set types, blank scripts and a disabled validator are valid without a plan.
+     *
+     * @param dataSetType the data set type
+     * @param script      the script, with report parameters
+     * @return the validation result with the plan estimate when available
+     */
+    public Validation validate(DataSetType dataSetType, String script) {
+        if (!enabled || script == null || script.isBlank()
+                || (dataSetType != DataSetType.SQL && dataSetType != DataSetType.JPQL)) {
+            return Validation.withoutPlan(null);
+        }
+        String statementError = checkSingleQuery(script);
+        if (statementError != null) {
+            return Validation.failed(statementError);
+        }
+        if (dataSetType == DataSetType.JPQL) {
+            return validateJpql(script);
+        }
+        return validateSql(toJdbcSql(script));
+    }
+
+    /**
+     * Builds the follow-up prompt asking the model to fix a query that failed validation.
+     */
+    public String buildRepairPrompt(String prompt, String script, String error) {
+        return prompt
+                + "\n\n=== Previous Answer ===\n" + script
+                + "\n\n=== Validation Error ===\n" + error
+                + "\n\nThe previous answer failed validation against the database. "
+                + "Return only the corrected query.";
+    }
+
+    /**
+     * Replaces report parameters with JDBC parameters and removes a trailing semicolon.
+     */
+    static String toJdbcSql(String script) {
+        return stripTrailingSemicolon(REPORT_PARAMETER.matcher(script).replaceAll("?"));
+    }
+
+    /**
+     * Replaces report parameters with JPQL named parameters and removes a trailing semicolon.
+     */
+    static String toJpql(String script) {
+        Matcher matcher = REPORT_PARAMETER.matcher(script);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String name = matcher.group(1).replaceAll("\\W", "_");
+            matcher.appendReplacement(result, Matcher.quoteReplacement(":" + (name.isEmpty() ? "p" : name)));
+        }
+        matcher.appendTail(result);
+        return stripTrailingSemicolon(result.toString());
+    }
+
+    /**
+     * Checks that the script is a single SELECT statement, so that EXPLAIN cannot run
+     * anything else. Semicolons inside string literals, quoted identifiers and comments are ignored.
+     *
+     * @return an error message, or null if the script is a single query
+     */
+    static String checkSingleQuery(String script) {
+        String body = stripTrailingSemicolon(script);
+        Matcher comments = LEADING_COMMENTS.matcher(body);
+        int start = comments.lookingAt() ? comments.end() : 0;
+        if (!QUERY_START.matcher(body).region(start, body.length()).lookingAt()) {
+            return "Only SELECT queries are allowed in a report data set";
+        }
+        char quote = 0;
+        for (int i = start; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '-' && body.startsWith("--", i)) {
+                int end = body.indexOf('\n', i);
+                i = end < 0 ? body.length() : end;
+            } else if (c == '/' && body.startsWith("/*", i)) {
+                int end = body.indexOf("*/", i + 2);
+                i = end < 0 ? body.length() : end + 1;
+            } else if (c == ';') {
+                return "Only a single statement is allowed in a report data set";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares the SQL and explains it in a rolled back read-only transaction.
+     */
+    private Validation validateSql(String sql) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try {
+                // Drivers that parse on prepare (HSQLDB, H2, Oracle) report syntax and name errors here
+                connection.prepareStatement(sql).close();
+
+                String product = connection.getMetaData().getDatabaseProductName();
+                String explainPrefix = explainPrefix(product);
+                if (explainPrefix == null) {
+                    return Validation.withoutPlan(sql);
+                }
+                String planText = explain(connection, explainPrefix + sql);
+                return parsePlan(product, sql, planText);
+            } finally {
+                connection.rollback();
+                connection.setReadOnly(false);
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            return Validation.failed(e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles the JPQL with EclipseLink and explains the translated SQL.
+     * The query is created on the EclipseLink entity manager directly, which parses it
+     * immediately; the Jmix query wrapper defers that until execution.
+     */
+    private Validation validateJpql(String script) {
+        String jpql = toJpql(script);
+        String sql;
+        try {
+            sql = storeAwareLocator.getTransactionTemplate(Stores.MAIN).execute(status -> {
+                status.setRollbackOnly();
+                EntityManager entityManager = storeAwareLocator.getEntityManager(Stores.MAIN);
+                JpaEntityManager eclipseLinkManager = entityManager.unwrap(JpaEntityManager.class);
+                Query query = eclipseLinkManager.createQuery(jpql);
+                return translate(eclipseLinkManager, query);
+            });
+        } catch (RuntimeException e) {
+            // Syntax errors and unknown entities or attributes (IllegalArgumentException from createQuery)
+            return Validation.failed(e.getMessage());
+        }
+        if (sql == null) {
+            return Validation.withoutPlan(null);
+        }
+        Validation sqlValidation = validateSql(sql);
+        if (!sqlValidation.valid()) {
+            // Compiles but the database rejects the translation, e.g. a function the dialect lacks
+            return Validation.failed("Translated SQL failed: " + sqlValidation.error());
+        }
+        return sqlValidation;
+    }
+
+    /**
+     * Returns the SQL EclipseLink generates for a compiled query, or null if it cannot be
+     * prepared without parameter values (e.g. collection-valued parameters).
+     */
+    private String translate(JpaEntityManager entityManager, Query query) {
+        try {
+            DatabaseQuery databaseQuery = query.unwrap(JpaQuery.class).getDatabaseQuery();
+            databaseQuery.prepareCall(entityManager.getActiveSession(), new DatabaseRecord());
+            return databaseQuery.getSQLString();
+        } catch (RuntimeException e) {
+            log.debug("Cannot translate JPQL for EXPLAIN: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs EXPLAIN with all parameters bound as NULL and returns the plan as text,
+     * one line per row; multi-column plans (MySQL) are written as name=value pairs.
+     */
+    private String explain(Connection connection, String explainSql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(explainSql)) {
+            statement.setQueryTimeout(timeoutSeconds);
+            int parameterCount = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameterCount; i++) {
+                statement.setNull(i, Types.NULL);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = statement.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                while (rs.next()) {
+                    if (columnCount == 1) {
+                        plan.append(rs.getString(1));
+                    } else {
+                        StringJoiner row = new StringJoiner(" ");
+                        for (int i = 1; i <= columnCount; i++) {
+                            row.add(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT) + "=" + rs.getString(i));
+                        }
+                        plan.append(row);
+                    }
+                    plan.append('\n');
+                }
+            }
+            return plan.toString();
+        }
+    }
+
+    /**
+     * Returns the side-effect free EXPLAIN prefix of a database product, or null if there is none
+     * (Oracle writes plans into PLAN_TABLE, SQL Server needs session options).
+     */
+    static String explainPrefix(String product) {
+        String name = product == null ? "" : product.toLowerCase(Locale.ROOT);
+        if (name.contains("hsql")) {
+            return "EXPLAIN PLAN FOR ";
+        } else if (name.contains("postgres")) {
+            return "EXPLAIN ";
+        } else if (name.contains("mysql") || name.contains("mariadb") || name.equals("h2")) {
+            return "EXPLAIN ";
+        }
+        return null;
+    }
+
+    /**
+     * Reduces the EXPLAIN output of a product to a plan estimate.
+     *
+     * - HSQLDB: tables with access=FULL SCAN; rows are the largest cardinality of those tables
+     * - PostgreSQL: total cost and rows of the top node; tables under Seq Scan nodes
+     * - MySQL/MariaDB: tables with type=ALL; rows are the largest per-table estimate
+     * - H2: tables read by tableScan; no row estimate
+     */
+    static Validation parsePlan(String product, String sql, String planText) {
+        String name = product == null ? "" : product.toLowerCase(Locale.ROOT);
+        Set<String> fullScans = new LinkedHashSet<>();
+        Double cost = null;
+        Long rows = null;
+        String[] lines = planText.split("\n");
+
+        if (name.contains("hsql")) {
+            String table = null;
+            long cardinality = -1;
+            for (String line : lines) {
+                Matcher tableMatcher = HSQLDB_TABLE.matcher(line);
+                Matcher cardinalityMatcher = HSQLDB_CARDINALITY.matcher(line);
+                if (tableMatcher.find()) {
+                    table = tableMatcher.group(1);
+                    cardinality = -1;
+                } else if (cardinalityMatcher.find()) {
+                    cardinality = Long.parseLong(cardinalityMatcher.group(1));
+                } else if (table != null && line.trim().equals("access=FULL SCAN")) {
+                    fullScans.add(table);
+                    if (cardinality >= 0) {
+                        rows = rows == null ? cardinality : Math.max(rows, cardinality);
+                    }
+                }
+            }
+        } else if (name.contains("postgres")) {
+            if (lines.length > 0) {
+                Matcher costMatcher = POSTGRES_COST.matcher(lines[0]);
+                if (costMatcher.find()) {
+                    cost = Double.parseDouble(costMatcher.group(1));
+                    rows = Long.parseLong(costMatcher.group(2));
+                }
+            }
+            Matcher scanMatcher = POSTGRES_SEQ_SCAN.matcher(planText);
+            while (scanMatcher.find()) {
+                fullScans.add(scanMatcher.group(1));
+            }
+        } else if (name.contains("mysql") || name.contains("mariadb")) {
+            for (String line : lines) {
+                Map<String, String> columns = new HashMap<>();
+                for (String pair : line.split(" ")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) {
+                        columns.put(pair.substring(0, eq), pair.substring(eq + 1));
+                    }
+                }
+                if ("ALL".equals(columns.get("type")) && columns.get("table") != null) {
+                    fullScans.add(columns.get("table"));
+                }
+                String rowEstimate = columns.get("rows");
+                if (rowEstimate != null && rowEstimate.matches("\\d+")) {
+                    long value = Long.parseLong(rowEstimate);
+                    rows = rows == null ? value : Math.max(rows, value);
+                }
+            }
+        } else {
+            Matcher scanMatcher = H2_TABLE_SCAN.matcher(planText);
+            while (scanMatcher.find()) {
+                fullScans.add(scanMatcher.group(1));
+            }
+        }
+        return new Validation(true, true, null, sql, planText.strip(), cost, rows, List.copyOf(fullScans));
+    }
+
+    /**
+     * Adds the usage of a repair call to the generation it repairs.
+     */
+    private Generation combine(Generation previous, Generation repair) {
+        return new Generation(
+                repair.text(),
+                repair.provider(),
+                repair.model(),
+                sum(previous.promptTokens(), repair.promptTokens()),
+                sum(previous.completionTokens(), repair.completionTokens()),
+                previous.latencyMillis() + repair.latencyMillis(),
+                previous.cached() && repair.cached());
+    }
+
+    private Integer sum(Integer a, Integer b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null ? a : a + b;
+    }
+
+    /**
+     * Removes trailing semicolons, which JDBC drivers and EXPLAIN reject.
+     */
+    static String stripTrailingSemicolon(String script) {
+        String trimmed = script.strip();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).stripTrailing();
+        }
+        return trimmed;
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Result of validating a query.
+     */
+    public record Validation(
+            boolean valid,              // prepared (compiled) and explained without error, or not checked
+            boolean planAvailable,      // EXPLAIN was run and parsed
+            String error,               // parser or planner message when not valid
+            String sql,                 // the statement that was explained; for JPQL the translated SQL
+            String plan,                // EXPLAIN output as text
+            Double cost,                // planner's total cost, null if the dialect reports none
+            Long estimatedRows,         // rows the plan expects to return (PostgreSQL) or to read (others)
+            List<String> fullScans      // tables read without an index or predicate
+    ) {
+        static Validation withoutPlan(String sql) {
+            return new Validation(true, false, null, sql, null, null, null, List.of());
+        }
+
+        static Validation failed(String error) {
+            return new Validation(false, false, error, null, null, null, null, List.of());
+        }
+
+        /**
+         * One-line plan summary for notifications, e.g. "cost 35.5, ~2550 rows, full scan of CUSTOMER_ORDER".
+         */
+        public String summary() {
+            if (!planAvailable) {
+                return "no query plan available";
+            }
+            List<String> parts = new ArrayList<>();
+            if (cost != null) {
+                parts.add("cost " + cost);
+            }
+            if (estimatedRows != null) {
+                parts.add("~" + estimatedRows + " rows");
+            }
+            parts.add(fullScans.isEmpty() ? "no full scans" : "full scan of " + String.join(", ", fullScans));
+            return String.join(", ", parts);
+        }
+    }
+
+    /**
+     * The last answer of a validation loop.
+     */
+    public record Repaired(
+            Generation generation,      // with token counts and latency of all rounds
+            Validation validation,      // validation of the generation's text
+            int repairRounds            // corrections requested from the model
+    ) {}
+}
@@ -0,0 +1,24 @@
+package com.company.aiwizard.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an AI request is rejected by AIWizardRateLimiter: a rate limit would not
+ * admit the request within the maximum wait, or a daily quota is used up.
+ */
+public class AIWizardRateLimitException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public AIWizardRateLimitException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns when the request would be admitted; for daily quotas, the time until midnight.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,407 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import io.jmix.core.DataManager;
+import io.jmix.core.entity.KeyValueEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter and daily quotas for LLM calls, enforced by UnifiedAIService
+ * before the network call. Keeps one user from pushing the whole installation into
+ * provider 429 responses by clicking "OK" repeatedly.
+ *
+ * Limits:
+ * - per user: requests per minute, plus daily request and token quotas
+ * - per provider (AIWizardConnection): requests and tokens per minute, shared by all users
+ *
+ * A request that exceeds a per-minute limit is queued: the caller waits until the buckets
+ * have refilled, up to the maximum wait. A request that would wait longer, or whose user
+ * has used up a daily quota, is rejected with AIWizardRateLimitException.
+ * Tokens are reserved from the prompt size estimate and corrected with the usage the
+ * provider reports, or returned if the call fails without an answer. Daily usage is counted in memory, starting from the user's
+ * AIWizardHistory rows of the day so that quotas survive a restart.
+ * Responses served from the cache are not limited.
+ *
+ * Configuration (0 disables a limit):
+ * - aiwizard.rate-limit.enabled: master switch (default true)
+ * - aiwizard.rate-limit.max-wait: how long a request may be queued (default PT10S)
+ * - aiwizard.rate-limit.user.requests-per-minute: per user (default 10)
+ * - aiwizard.rate-limit.user.daily-requests: per user and day (default 500)
+ * - aiwizard.rate-limit.user.daily-tokens: prompt + completion tokens per user and day (default 2000000)
+ * - aiwizard.rate-limit.provider.requests-per-minute: per provider (default 60)
+ * - aiwizard.rate-limit.provider.tokens-per-minute: per provider (default 200000)
+ */
+@Service("aiwizard_AIWizardRateLimiter")
+public class AIWizardRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardRateLimiter.class);
+
+    @Value("${aiwizard.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.rate-limit.max-wait:PT10S}")
+    private Duration maxWait;
+
+    @Value("${aiwizard.rate-limit.user.requests-per-minute:10}")
+    private long userRequestsPerMinute;
+
+    @Value("${aiwizard.rate-limit.user.daily-requests:500}")
+    private long userDailyRequests;
+
+    @Value("${aiwizard.rate-limit.user.daily-tokens:2000000}")
+    private long userDailyTokens;
+
+    @Value("${aiwizard.rate-limit.provider.requests-per-minute:60}")
+    private long providerRequestsPerMinute;
+
+    @Value("${aiwizard.rate-limit.provider.tokens-per-minute:200000}")
+    private long providerTokensPerMinute;
+
+    private final DataManager dataManager;
+    private final AIWizardPromptBuilder promptBuilder;
+    private final Clock clock;
+
+    private final Map<String, TokenBucket> userRequestBuckets = new ConcurrentHashMap<>();
+    private final Map<String, DailyUsage> dailyUsage = new ConcurrentHashMap<>();
+    private final Map<AIWizardConnection, TokenBucket> providerRequestBuckets = new EnumMap<>(AIWizardConnection.class);
+    private final Map<AIWizardConnection, TokenBucket> providerTokenBuckets = new EnumMap<>(AIWizardConnection.class);
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardRateLimiter(DataManager dataManager, AIWizardPromptBuilder promptBuilder) {
+        this(dataManager, promptBuilder, Clock.systemDefaultZone());
+    }
+
+    AIWizardRateLimiter(DataManager dataManager, AIWizardPromptBuilder promptBuilder, Clock clock) {
+        this.dataManager = dataManager;
+        this.promptBuilder = promptBuilder;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns true if rate limiting is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Estimates the tokens of a request's system instruction and prompt.
+     */
+    public int estimateTokens(String prompt, String systemInstruction) {
+        return promptBuilder.estimateTokens(systemInstruction) + promptBuilder.estimateTokens(prompt);
+    }
+
+    /**
+     * Estimates the tokens of a text.
+     */
+    public int estimateTokens(String text) {
+        return promptBuilder.estimateTokens(text);
+    }
+
+    // ==================== Enforcement ====================
+
+    /**
+     * Admits a request of a user, waiting for the user's per-minute limit if needed.
+     * Counts the request against the user's daily request quota.
+     *
+     * @param username        the requesting user, null for calls without an authenticated user (not limited)
+     * @param estimatedTokens estimated prompt tokens, checked against the daily token quota
+     * @throws AIWizardRateLimitException if a daily quota is used up or the wait would exceed the maximum
+     */
+    public void acquireUser(String username, int estimatedTokens) {
+        if (!enabled || username == null) {
+            return;
+        }
+        DailyUsage usage = dailyUsage(username);
+        synchronized (usage) {
+            if (userDailyRequests > 0 && usage.requests >= userDailyRequests) {
+                throw quotaExceeded("Daily AI request quota of " + userDailyRequests + " requests is used up");
+            }
+            if (userDailyTokens > 0 && usage.tokens + estimatedTokens > userDailyTokens) {
+                throw quotaExceeded("Daily AI token quota of " + userDailyTokens + " tokens is used up ("
+                        + usage.tokens + " used)");
+            }
+            // Reserved under the same lock as the check, so concurrent requests cannot overrun the quota
+            usage.requests++;
+        }
+
+        if (userRequestsPerMinute > 0) {
+            TokenBucket bucket = userRequestBuckets.computeIfAbsent(username,
+                    k -> new TokenBucket(userRequestsPerMinute, clock));
+            try {
+                await(List.of(new Reservation(bucket, 1)), "user " + username + ": "
+                        + userRequestsPerMinute + " AI requests per minute");
+            } catch (RuntimeException e) {
+                synchronized (usage) {
+                    usage.requests--;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Admits a call to a provider, waiting for the provider's per-minute limits if needed.
+     *
+     * @param provider        the provider about to be called
+     * @param estimatedTokens estimated prompt tokens, reserved from the provider's token bucket
+     * @throws AIWizardRateLimitException if the wait would exceed the maximum
+     */
+    public void acquireProvider(AIWizardConnection provider, int estimatedTokens) {
+        if (!enabled) {
+            return;
+        }
+        List<Reservation> reservations = new ArrayList<>(2);
+        synchronized (this) {
+            if (providerRequestsPerMinute > 0) {
+                reservations.add(new Reservation(providerRequestBuckets.computeIfAbsent(provider,
+                        k -> new TokenBucket(providerRequestsPerMinute, clock)), 1));
+            }
+            if (providerTokensPerMinute > 0) {
+                reservations.add(new Reservation(providerTokenBuckets.computeIfAbsent(provider,
+                        k -> new TokenBucket(providerTokensPerMinute, clock)), estimatedTokens));
+            }
+        }
+        await(reservations, provider + ": " + providerRequestsPerMinute + " requests / "
+                + providerTokensPerMinute + " tokens per minute");
+    }
+
+    /**
+     * Returns the tokens reserved by acquireProvider for a call that failed without an answer,
+     * e.g. a connection error or a 429 response. The provider reports no usage for it, so the
+     * reservation would otherwise stay taken until the bucket refills.
+     * The request itself stays counted: a failed call may still have reached the provider,
+     * which counts it against its request limit.
+     *
+     * @param provider       the provider that was called
+     * @param reservedTokens tokens reserved by acquireProvider
+     */
+    public void releaseProvider(AIWizardConnection provider, int reservedTokens) {
+        recordUsage(null, provider, reservedTokens, 0);
+    }
+
+    /**
+     * Records the tokens a call actually used: corrects the provider's token bucket
+     * by the difference to the reservation and adds them to the user's daily usage.
+     *
+     * @param username       the requesting user, null if not authenticated
+     * @param provider       the provider that answered
+     * @param reservedTokens tokens reserved by acquireProvider
+     * @param usedTokens     prompt + completion tokens reported by the provider, or estimated
+     */
+    public void recordUsage(String username, AIWizardConnection provider, int reservedTokens, int usedTokens) {
+        if (!enabled) {
+            return;
+        }
+        if (providerTokensPerMinute > 0) {
+            synchronized (this) {
+                TokenBucket bucket = providerTokenBuckets.get(provider);
+                if (bucket != null) {
+                    bucket.take(usedTokens - reservedTokens);
+                }
+            }
+        }
+        if (username != null) {
+            DailyUsage usage = dailyUsage(username);
+            synchronized (usage) {
+                usage.tokens += usedTokens;
+            }
+        }
+    }
+
+    /**
+     * Returns the current quota of a user, for display.
+     */
+    public QuotaStatus getQuotaStatus(String username) {
+        DailyUsage usage = dailyUsage(username);
+        long requestsAvailable;
+        synchronized (this) {
+            TokenBucket bucket = userRequestBuckets.get(username);
+            requestsAvailable = bucket == null ? userRequestsPerMinute : Math.max(0, bucket.available());
+        }
+        synchronized (usage) {
+            return new QuotaStatus(enabled, userRequestsPerMinute, requestsAvailable,
+                    userDailyRequests, usage.requests, userDailyTokens, usage.tokens);
+        }
+    }
+
+    /**
+     * Reserves from all buckets once they can serve the request within the maximum wait,
+     * then waits until the reservation is due. Later callers queue behind the reservation.
+     */
+    private void await(List<Reservation> reservations, String limit) {
+        long waitNanos = 0;
+        synchronized (this) {
+            for (Reservation reservation : reservations) {
+                waitNanos = Math.max(waitNanos, reservation.bucket().waitNanos(reservation.amount()));
+            }
+            if (waitNanos > maxWait.toNanos()) {
+                Duration retryAfter = Duration.ofNanos(waitNanos);
+                log.info("AI request rejected, rate limit of {} (retry in {} s)", limit, retryAfter.toSeconds());
+                throw new AIWizardRateLimitException("AI rate limit reached (" + limit + "), try again in "
+                        + Math.max(1, retryAfter.toSeconds()) + " s", retryAfter);
+            }
+            for (Reservation reservation : reservations) {
+                reservation.bucket().take(reservation.amount());
+            }
+        }
+        if (waitNanos > 0) {
+            log.debug("AI request queued for {} ms by rate limit of {}", TimeUnit.NANOSECONDS.toMillis(waitNanos), limit);
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("AI request interrupted");
+            }
+        }
+    }
+
+    private AIWizardRateLimitException quotaExceeded(String message) {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        Duration untilMidnight = Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay(now.getZone()));
+        log.info("AI request rejected: {}", message);
+        return new AIWizardRateLimitException(message, untilMidnight);
+    }
+
+    /**
+     * Returns today's usage of a user, loading it from the history on the first request of the day.
+     * The history query runs outside the map's lock; if two requests load concurrently, the first stored wins.
+     */
+    private DailyUsage dailyUsage(String username) {
+        LocalDate today = LocalDate.now(clock);
+        DailyUsage usage = dailyUsage.get(username);
+        if (usage != null && usage.day.equals(today)) {
+            return usage;
+        }
+        DailyUsage loaded = loadDailyUsage(username, today);
+        return dailyUsage.merge(username, loaded, (current, fresh) -> current.day.equals(today) ? current : fresh);
+    }
+
+    private DailyUsage loadDailyUsage(String username, LocalDate day) {
+        DailyUsage usage = new DailyUsage(day);
+        if (userDailyRequests <= 0 && userDailyTokens <= 0) {
+            return usage;
+        }
+        List<KeyValueEntity> rows = dataManager.unconstrained().loadValues(
+                        "select count(h), sum(h.promptTokens), sum(h.completionTokens) from AIWizardHistory h "
+                                + "where h.createdBy = :username and h.createdDate >= :start "
+                                + "and (h.cached is null or h.cached = false)")
+                .properties("requests", "promptTokens", "completionTokens")
+                .parameter("username", username)
+                .parameter("start", day.atStartOfDay(clock.getZone()).toOffsetDateTime())
+                .list();
+        if (!rows.isEmpty()) {
+            KeyValueEntity row = rows.get(0);
+            usage.requests = longValue(row.getValue("requests"));
+            usage.tokens = longValue(row.getValue("promptTokens")) + longValue(row.getValue("completionTokens"));
+        }
+        return usage;
+    }
+
+    private static long longValue(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+
+    // ==================== Implementation ====================
+
+    /**
+     * Token bucket refilled continuously at its per-minute rate, holding at most one minute's worth.
+     * The balance may go negative: reservations are taken in full and later callers wait for the debt.
+     * Guarded by the limiter's monitor.
+     */
+    private static class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNano;
+        private final Clock clock;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(long perMinute, Clock clock) {
+            this.capacity = perMinute;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.clock = clock;
+            this.tokens = perMinute;
+            this.lastRefill = nanoTime();
+        }
+
+        /**
+         * Returns how long until the amount is available; amounts above the capacity wait for a full bucket.
+         */
+        long waitNanos(double amount) {
+            refill();
+            double missing = Math.min(amount, capacity) - tokens;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+        }
+
+        void take(double amount) {
+            refill();
+            tokens = Math.min(capacity, tokens - amount);
+        }
+
+        long available() {
+            refill();
+            return (long) Math.floor(tokens);
+        }
+
+        private void refill() {
+            long now = nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+        }
+
+        private long nanoTime() {
+            return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+        }
+    }
+
+    /**
+     * Requests and tokens of one user on one day; guarded by its own monitor.
+     */
+    private static class DailyUsage {
+        final LocalDate day;
+        long requests;
+        long tokens;
+
+        DailyUsage(LocalDate day) {
+            this.day = day;
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    private record Reservation(
+            TokenBucket bucket,
+            double amount
+    ) {}
+
+    /**
+     * Quota of a user; limits of 0 are unlimited.
+     */
+    public record QuotaStatus(
+            boolean enabled,
+            long requestsPerMinute,
+            long requestsAvailable,   // Requests the user can make right now without queueing
+            long dailyRequestQuota,
+            long dailyRequestsUsed,
+            long dailyTokenQuota,
+            long dailyTokensUsed
+    ) {}
+}
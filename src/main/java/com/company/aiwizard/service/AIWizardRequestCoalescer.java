@@ -0,0 +1,200 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Single-flight deduplication of identical concurrent LLM calls, e.g. several designers
+ * running the same template on the same report at once. The first request for a key
+ * (provider, model, temperature, system instruction, prompt) makes the provider call;
+ * requests with the same key that arrive while it is in flight attach to it and get its
+ * result instead of calling the provider again.
+ *
+ * Independent of AIWizardResponseCache: only calls that are in flight are shared, nothing
+ * is kept after they complete, so this also applies with caching disabled or bypassed.
+ * Streaming followers first receive the text streamed so far, then the remaining chunks
+ * as the leading call receives them. If the leading call is cancelled by its user, or
+ * rejected by AIWizardRateLimiter, before a follower received anything, the follower makes
+ * the call itself: a rate limit of the leading request is not another request's failure.
+ *
+ * Configuration:
+ * - aiwizard.coalescing.enabled: master switch (default true)
+ */
+@Component("aiwizard_AIWizardRequestCoalescer")
+public class AIWizardRequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardRequestCoalescer.class);
+
+    private final Map<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final AIWizardMetrics metrics;
+
+    @Value("${aiwizard.coalescing.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardRequestCoalescer(AIWizardMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs a call as the single flight for its key, or waits for the identical call in flight.
+     *
+     * @param provider provider the key was built for (metrics tag)
+     * @param key      request key, see AIWizardResponseCache.key
+     * @param onChunk  receives the streamed text (nullable for blocking calls)
+     * @param call     the provider call; gets the chunk consumer to stream to
+     * @return the result, and whether it was shared from another request's call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Shared<T> execute(AIWizardConnection provider, String key, Consumer<String> onChunk,
+                                 Function<Consumer<String>, T> call) {
+        if (!enabled || key == null) {
+            return new Shared<>(call.apply(onChunk), false);
+        }
+
+        while (true) {
+            Flight<T> flight = new Flight<>();
+            Flight<T> existing = (Flight<T>) inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return new Shared<>(lead(key, flight, onChunk, call), false);
+            }
+
+            metrics.recordCoalesced(provider);
+            log.debug("Attaching to identical {} request in flight", provider);
+            T result = follow(existing, onChunk);
+            if (result != null) {
+                return new Shared<>(result, true);
+            }
+            // The leading call was cancelled or rate limited before anything reached this request: make it ourselves
+        }
+    }
+
+    /**
+     * Returns the number of distinct calls in flight.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private <T> T lead(String key, Flight<T> flight, Consumer<String> onChunk, Function<Consumer<String>, T> call) {
+        try {
+            T result = call.apply(chunk -> {
+                if (onChunk != null) {
+                    onChunk.accept(chunk);
+                }
+                flight.publish(chunk);
+            });
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            if (Thread.currentThread().isInterrupted() || e instanceof CancellationException
+                    || e instanceof AIWizardRateLimitException) {
+                flight.result.cancel(false);
+            } else {
+                flight.result.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Waits for the leading call. Returns null if it was cancelled or rate limited
+     * and this request may retry.
+     */
+    private <T> T follow(Flight<T> flight, Consumer<String> onChunk) {
+        AtomicBoolean received = new AtomicBoolean();
+        Consumer<String> listener = onChunk == null ? null : chunk -> {
+            received.set(true);
+            onChunk.accept(chunk);
+        };
+        if (listener != null) {
+            flight.attach(listener);
+        }
+        try {
+            return flight.result.get();
+        } catch (CancellationException e) {
+            if (received.get()) {
+                throw new RuntimeException("The identical AI request this one was waiting for was cancelled");
+            }
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("AI request cancelled");
+        } finally {
+            if (listener != null) {
+                flight.detach(listener);
+            }
+        }
+    }
+
+    /**
+     * A call in flight: its result and the text streamed so far, replayed to late followers.
+     */
+    private static class Flight<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final StringBuilder streamed = new StringBuilder();
+        private final List<Consumer<String>> listeners = new ArrayList<>();
+
+        synchronized void publish(String chunk) {
+            streamed.append(chunk);
+            for (Consumer<String> listener : listeners) {
+                try {
+                    listener.accept(chunk);
+                } catch (RuntimeException e) {
+                    // A follower's UI went away: do not fail the leading call
+                    log.debug("Failed to pass chunk to coalesced request: {}", e.getMessage());
+                }
+            }
+        }
+
+        synchronized void attach(Consumer<String> listener) {
+            if (!streamed.isEmpty()) {
+                listener.accept(streamed.toString());
+            }
+            listeners.add(listener);
+        }
+
+        synchronized void detach(Consumer<String> listener) {
+            listeners.remove(listener);
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Result of a coalesced call.
+     */
+    public record Shared<T>(
+            T value,
+            boolean coalesced    // answered by another request's call in flight
+    ) {}
+}
@@ -0,0 +1,214 @@
+package com.company.aiwizard.service;
+
+import io.jmix.core.security.CurrentAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs long AI Wizard requests (LLM round trips) off the Vaadin request thread.
+ * Uses a bounded thread pool so a burst of wizard calls cannot exhaust the servlet
+ * container, and limits how many requests a single user may have in flight.
+ *
+ * The caller's security context is propagated to the worker thread, so services
+ * invoked by the task (DataManager, UnifiedAIService) see the same user.
+ *
+ * A second, smaller pool runs the context fetches of a wizard request (definitions,
+ * history) in parallel via fork(). Each forked stage is timed and logged. When that
+ * pool is saturated the stage runs on the calling thread, so a busy server degrades
+ * to sequential fetching instead of failing the request. Stages are forked from the
+ * request's task on the LLM pool, so that thread is never a Vaadin request thread.
+ *
+ * Configuration:
+ * - aiwizard.async.pool-size: worker threads (default 8)
+ * - aiwizard.async.queue-capacity: queued tasks before rejecting (default 32)
+ * - aiwizard.async.max-in-flight-per-user: concurrent requests per user (default 1)
+ * - aiwizard.async.context-pool-size: worker threads for context fetches (default 4)
+ */
+@Service("aiwizard_AIWizardRequestExecutor")
+public class AIWizardRequestExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardRequestExecutor.class);
+
+    @Value("${aiwizard.async.pool-size:8}")
+    private int poolSize;
+
+    @Value("${aiwizard.async.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${aiwizard.async.max-in-flight-per-user:1}")
+    private int maxInFlightPerUser;
+
+    @Value("${aiwizard.async.context-pool-size:4}")
+    private int contextPoolSize;
+
+    private final CurrentAuthentication currentAuthentication;
+
+    /** Number of running or queued requests per username. */
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    /** Bounded pool for LLM calls, initialized in init(). */
+    private ThreadPoolExecutor executor;
+
+    /** Bounded pool for context fetches, initialized in init(). */
+    private ThreadPoolExecutor contextExecutor;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardRequestExecutor(CurrentAuthentication currentAuthentication) {
+        this.currentAuthentication = currentAuthentication;
+    }
+
+    /**
+     * Creates the worker pool after properties are injected.
+     * Idle threads time out so the pool costs nothing while the wizard is unused.
+     */
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "aiwizard-llm-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        AtomicInteger contextThreadNumber = new AtomicInteger();
+        contextExecutor = new ThreadPoolExecutor(
+                contextPoolSize, contextPoolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "aiwizard-context-" + contextThreadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        contextExecutor.allowCoreThreadTimeOut(true);
+
+        log.info("AI Wizard executor started: poolSize={}, queueCapacity={}, maxInFlightPerUser={}, contextPoolSize={}",
+                poolSize, queueCapacity, maxInFlightPerUser, contextPoolSize);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+        contextExecutor.shutdownNow();
+    }
+
+    /**
+     * Submits a task on behalf of the current user.
+     * Cancelling the returned future interrupts the worker thread and frees the user's slot immediately.
+     *
+     * @param task the work to run, typically an LLM call
+     * @return future completed with the task result
+     * @throws IllegalStateException if the user already has the maximum number of requests in flight
+     *                               or the pool queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        String username = currentAuthentication.getUser().getUsername();
+
+        AtomicInteger counter = inFlight.computeIfAbsent(username, k -> new AtomicInteger());
+        if (counter.incrementAndGet() > maxInFlightPerUser) {
+            counter.decrementAndGet();
+            throw new IllegalStateException("You already have " + maxInFlightPerUser +
+                    " AI Wizard request(s) in progress. Wait for it to finish or cancel it.");
+        }
+
+        InterruptibleFuture<T> future = new InterruptibleFuture<>();
+        // Release exactly once, on success, failure or cancellation
+        future.whenComplete((result, error) -> counter.decrementAndGet());
+
+        Callable<T> securedTask = DelegatingSecurityContextCallable.create(task, SecurityContextHolder.getContext());
+        try {
+            future.task = executor.submit(() -> {
+                try {
+                    future.complete(securedTask.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            throw new IllegalStateException("AI Wizard is busy, please try again in a moment", e);
+        }
+        // Cancelled before the task was assigned: cancel() could not interrupt the worker
+        if (future.isCancelled()) {
+            future.task.cancel(true);
+        }
+        return future;
+    }
+
+    /**
+     * Runs one context-fetching stage of a wizard request on the context pool.
+     * The stage runs as the current user; its duration is logged at debug level
+     * and also attached to the result, so the caller can report per-stage timings.
+     * Does not count against the user's in-flight limit.
+     *
+     * @param stage name of the stage used in logs, e.g. "history"
+     * @param task  the fetch to run
+     * @return future completed with the timed task result
+     */
+    public <T> CompletableFuture<StageResult<T>> fork(String stage, Callable<T> task) {
+        Callable<T> securedTask = DelegatingSecurityContextCallable.create(task, SecurityContextHolder.getContext());
+        CompletableFuture<StageResult<T>> future = new CompletableFuture<>();
+        contextExecutor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                T value = securedTask.call();
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                log.debug("AI Wizard context stage '{}' finished in {} ms", stage, millis);
+                future.complete(new StageResult<>(stage, value, millis));
+            } catch (Throwable e) {
+                log.debug("AI Wizard context stage '{}' failed after {} ms",
+                        stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * CompletableFuture whose cancellation also interrupts the underlying pool task.
+     * Plain CompletableFuture.cancel() does not stop the thread executing the work.
+     */
+    private static class InterruptibleFuture<T> extends CompletableFuture<T> {
+
+        private volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> current = task;
+            if (cancelled && current != null) {
+                current.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Result of a forked context stage together with its duration.
+     */
+    public record StageResult<T>(
+            String stage,   // Stage name
+            T value,        // Value returned by the stage
+            long millis     // Wall-clock duration of the stage
+    ) {}
+}
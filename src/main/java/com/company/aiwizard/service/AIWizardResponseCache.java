@@ -0,0 +1,320 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardResponseCacheEntry;
+import io.jmix.core.DataManager;
+import io.jmix.core.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache for LLM responses.
+ * Designers often re-run the same template over the same table selection; a cache hit
+ * returns in milliseconds instead of a paid, multi-second LLM round trip.
+ *
+ * The key is a SHA-256 hash of everything that determines the response:
+ * provider, model, temperature, system instruction and user prompt.
+ *
+ * Two tiers:
+ * - In-memory LRU with size and TTL eviction (always on when the cache is enabled)
+ * - Optional persistent tier in the main datasource (AI_WIZARD_RESPONSE_CACHE table),
+ *   which survives restarts and is shared between cluster nodes
+ *
+ * Configuration:
+ * - aiwizard.cache.enabled: master switch (default true)
+ * - aiwizard.cache.max-entries: in-memory entries before LRU eviction (default 500)
+ * - aiwizard.cache.ttl: entry time to live (default 24h)
+ * - aiwizard.cache.persistent: enable the database tier (default false)
+ */
+@Service("aiwizard_AIWizardResponseCache")
+public class AIWizardResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardResponseCache.class);
+
+    @Value("${aiwizard.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${aiwizard.cache.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${aiwizard.cache.persistent:false}")
+    private boolean persistent;
+
+    private final DataManager dataManager;
+    private final TimeSource timeSource;
+
+    /** Access-ordered map acting as LRU; guarded by its own monitor. */
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardResponseCache(DataManager dataManager, TimeSource timeSource) {
+        this.dataManager = dataManager;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Returns true if caching is globally enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds the cache key for a request.
+     * Fields are length-prefixed before hashing so that different field splits
+     * (e.g. text moved from system instruction to prompt) never collide.
+     *
+     * @param provider          the AI provider
+     * @param model             model name used by the provider
+     * @param temperature       sampling temperature (nullable)
+     * @param systemInstruction system instruction (nullable)
+     * @param prompt            user prompt
+     * @return 64 character hex SHA-256 digest
+     */
+    public static String key(AIWizardConnection provider,
+                             String model,
+                             Double temperature,
+                             String systemInstruction,
+                             String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{
+                    provider == null ? null : provider.getId(),
+                    model,
+                    temperature == null ? null : temperature.toString(),
+                    systemInstruction,
+                    prompt}) {
+                if (part == null) {
+                    digest.update((byte) 0);
+                    continue;
+                }
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                digest.update((byte) 1);
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Looks up a cached response, checking memory first and then the persistent tier.
+     * A persistent hit is promoted to memory.
+     *
+     * @param key cache key built by {@link #key}
+     * @return cached response text, or empty on miss
+     */
+    public Optional<String> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        long now = timeSource.currentTimeMillis();
+        synchronized (entries) {
+            CachedResponse cached = entries.get(key);
+            if (cached != null) {
+                if (cached.expiresAt() > now) {
+                    hits.incrementAndGet();
+                    return Optional.of(cached.response());
+                }
+                entries.remove(key);
+            }
+        }
+
+        if (persistent) {
+            Optional<AIWizardResponseCacheEntry> stored = loadPersistent(key);
+            if (stored.isPresent()) {
+                AIWizardResponseCacheEntry entry = stored.get();
+                if (entry.getExpiresAt() != null && entry.getExpiresAt().toInstant().toEpochMilli() > now) {
+                    persistentHits.incrementAndGet();
+                    hits.incrementAndGet();
+                    synchronized (entries) {
+                        entries.put(key, new CachedResponse(entry.getResponse(),
+                                entry.getExpiresAt().toInstant().toEpochMilli()));
+                    }
+                    return Optional.of(entry.getResponse());
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Stores a response in memory and, if enabled, in the persistent tier.
+     *
+     * @param key      cache key built by {@link #key}
+     * @param provider the AI provider that produced the response
+     * @param model    model name that produced the response
+     * @param response the response text
+     */
+    public void put(String key, AIWizardConnection provider, String model, String response) {
+        if (!enabled || response == null) {
+            return;
+        }
+
+        long expiresAt = timeSource.currentTimeMillis() + ttl.toMillis();
+        synchronized (entries) {
+            entries.put(key, new CachedResponse(response, expiresAt));
+        }
+
+        if (persistent) {
+            try {
+                OffsetDateTime now = timeSource.now().toOffsetDateTime();
+                AIWizardResponseCacheEntry entry = loadPersistent(key)
+                        .orElseGet(() -> dataManager.create(AIWizardResponseCacheEntry.class));
+                entry.setCacheKey(key);
+                entry.setProvider(provider);
+                entry.setModel(model);
+                entry.setResponse(response);
+                entry.setCreatedDate(now);
+                entry.setExpiresAt(now.plus(ttl));
+                dataManager.unconstrained().save(entry);
+            } catch (RuntimeException e) {
+                if (isUniqueConstraintViolation(e)) {
+                    // A concurrent put of the same key hit the unique index; the other write wins
+                    log.debug("Cache entry {} was persisted concurrently", key);
+                } else {
+                    log.warn("Could not persist cache entry {}", key, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from both tiers.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (persistent) {
+            List<AIWizardResponseCacheEntry> stored = dataManager.unconstrained()
+                    .load(AIWizardResponseCacheEntry.class)
+                    .all()
+                    .list();
+            dataManager.unconstrained().remove(stored);
+        }
+    }
+
+    /**
+     * Returns hit/miss counters and the current in-memory size.
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(hits.get(), persistentHits.get(), misses.get(), evictions.get(), size);
+    }
+
+    /**
+     * Periodically drops expired entries from both tiers.
+     */
+    @Scheduled(fixedDelayString = "${aiwizard.cache.purge-interval:PT1H}", initialDelayString = "PT5M")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+
+        long now = timeSource.currentTimeMillis();
+        synchronized (entries) {
+            entries.values().removeIf(cached -> cached.expiresAt() <= now);
+        }
+
+        if (persistent) {
+            List<AIWizardResponseCacheEntry> expired = dataManager.unconstrained()
+                    .load(AIWizardResponseCacheEntry.class)
+                    .query("select e from AIWizardResponseCacheEntry e where e.expiresAt <= :now")
+                    .parameter("now", timeSource.now().toOffsetDateTime())
+                    .list();
+            if (!expired.isEmpty()) {
+                dataManager.unconstrained().remove(expired);
+                log.debug("Purged {} expired persistent cache entries", expired.size());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the exception was caused by a unique constraint violation: SQLState 23505
+     * (PostgreSQL, HSQLDB, H2) or the driver's integrity constraint exception (MySQL, Oracle).
+     */
+    private static boolean isUniqueConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLIntegrityConstraintViolationException
+                    || (cause instanceof SQLException sqlException && "23505".equals(sqlException.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Optional<AIWizardResponseCacheEntry> loadPersistent(String key) {
+        return dataManager.unconstrained()
+                .load(AIWizardResponseCacheEntry.class)
+                .query("select e from AIWizardResponseCacheEntry e where e.cacheKey = :key")
+                .parameter("key", key)
+                .optional();
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * In-memory cache value.
+     */
+    private record CachedResponse(
+            String response,  // Response text
+            long expiresAt    // Expiration time (epoch millis)
+    ) {}
+
+    /**
+     * Cache statistics snapshot.
+     */
+    public record CacheStats(
+            long hits,            // Lookups served from any tier
+            long persistentHits,  // Lookups served from the database tier
+            long misses,          // Lookups that required an LLM call
+            long evictions,       // Entries dropped by the LRU size limit
+            int size              // Current in-memory entries
+    ) {}
+}
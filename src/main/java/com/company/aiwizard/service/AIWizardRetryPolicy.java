@@ -0,0 +1,392 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.google.genai.errors.ApiException;
+import com.google.genai.errors.GenAiIOException;
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retry policy for LLM provider calls, shared by UnifiedAIService (Spring AI clients)
+ * and the direct OpenAIService / GeminiService SDK clients. The built-in retries of
+ * Spring AI and openai-java are disabled so that only this policy retries.
+ *
+ * Errors are classified before retrying:
+ * - RATE_LIMITED (429) and SERVER (5xx, 408): retried; a Retry-After (or retry-after-ms) header
+ *   from the provider sets the delay
+ * - NETWORK (I/O errors, connect and read timeouts): retried
+ * - CLIENT (other 4xx: bad request, authentication, unknown model) and anything else: not retried
+ *
+ * Without Retry-After, the delay grows exponentially with "equal jitter": half of the backoff
+ * plus a random part of the other half, so that clients throttled together do not retry together.
+ * A retry is only made if it can start before the request's deadline, and only while the
+ * global retry budget allows it: within a sliding minute, retries may not exceed the
+ * configured share of requests (plus a small floor for low traffic), so retries cannot
+ * multiply load while a provider is struggling.
+ *
+ * Configuration:
+ * - aiwizard.retry.enabled: master switch (default true)
+ * - aiwizard.retry.max-attempts: attempts per provider call, including the first (default 3)
+ * - aiwizard.retry.initial-backoff: backoff before the first retry (default PT0.5S)
+ * - aiwizard.retry.max-backoff: backoff cap; a longer Retry-After is not waited for (default PT10S)
+ * - aiwizard.retry.multiplier: backoff growth per retry (default 2.0)
+ * - aiwizard.retry.deadline: time budget of a call including retries (default PT60S)
+ * - aiwizard.retry.budget-ratio: retries allowed per request within a minute (default 0.1)
+ * - aiwizard.retry.budget-min-retries: retries per minute always allowed (default 10)
+ */
+@Component("aiwizard_AIWizardRetryPolicy")
+public class AIWizardRetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardRetryPolicy.class);
+
+    /** Leading status code of Spring AI error messages ("429 - {...}"). */
+    private static final Pattern STATUS_PREFIX = Pattern.compile("^(\\d{3})\\b");
+
+    @Value("${aiwizard.retry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${aiwizard.retry.initial-backoff:PT0.5S}")
+    private Duration initialBackoff;
+
+    @Value("${aiwizard.retry.max-backoff:PT10S}")
+    private Duration maxBackoff;
+
+    @Value("${aiwizard.retry.multiplier:2.0}")
+    private double multiplier;
+
+    @Value("${aiwizard.retry.deadline:PT60S}")
+    private Duration deadline;
+
+    @Value("${aiwizard.retry.budget-ratio:0.1}")
+    private double budgetRatio;
+
+    @Value("${aiwizard.retry.budget-min-retries:10}")
+    private int budgetMinRetries;
+
+    private final AIWizardMetrics metrics;
+    private final RetryBudget budget = new RetryBudget();
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardRetryPolicy(AIWizardMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // ==================== Execution ====================
+
+    /**
+     * Runs a blocking provider call, retrying transient failures.
+     *
+     * @param provider the provider called, for logs and metrics
+     * @param call     the provider call
+     * @return the call's result
+     * @throws RuntimeException the last failure when the call is not retried (further)
+     */
+    public <T> T execute(AIWizardConnection provider, Callable<T> call) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        budget.recordRequest();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                Duration delay = nextDelay(provider, attempt, deadlineNanos, e);
+                if (delay == null) {
+                    throw e instanceof RuntimeException runtime ? runtime : new RuntimeException(e);
+                }
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Wraps a provider response stream so that transient failures are retried by re-subscribing,
+     * as long as no element has been emitted yet; a stream that fails midway is not restarted.
+     *
+     * @param provider the provider called, for logs and metrics
+     * @param stream   opens the stream; called again for each retry
+     */
+    public <T> Flux<T> retryStream(AIWizardConnection provider, Supplier<Flux<T>> stream) {
+        return Flux.defer(() -> {
+            long deadlineNanos = System.nanoTime() + deadline.toNanos();
+            budget.recordRequest();
+            AtomicBoolean emitted = new AtomicBoolean();
+            return Flux.defer(stream)
+                    .doOnNext(element -> emitted.set(true))
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Duration delay = emitted.get()
+                                ? null
+                                : nextDelay(provider, (int) signal.totalRetries() + 1, deadlineNanos, signal.failure());
+                        return delay == null ? Mono.error(signal.failure()) : Mono.delay(delay);
+                    })));
+        });
+    }
+
+    /**
+     * Returns the delay before retrying a failed attempt, or null if it is not retried:
+     * not retryable, out of attempts, past the deadline, or over the retry budget.
+     */
+    Duration nextDelay(AIWizardConnection provider, int attempt, long deadlineNanos, Throwable error) {
+        if (!enabled || attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        ErrorClass errorClass = classify(error);
+        if (!errorClass.isRetryable()) {
+            return null;
+        }
+
+        Duration retryAfter = retryAfter(error);
+        if (retryAfter != null && retryAfter.compareTo(maxBackoff) > 0) {
+            log.debug("Not retrying {}: provider asks to retry after {} s", provider, retryAfter.toSeconds());
+            return null;
+        }
+        Duration delay = retryAfter != null ? retryAfter : backoff(attempt);
+        if (System.nanoTime() + delay.toNanos() >= deadlineNanos) {
+            log.debug("Not retrying {}: next attempt in {} ms would pass the deadline", provider, delay.toMillis());
+            return null;
+        }
+        if (!budget.tryAcquireRetry(budgetRatio, budgetMinRetries)) {
+            log.warn("Not retrying {}: retry budget exhausted ({} of requests)", provider, budgetRatio);
+            return null;
+        }
+
+        metrics.recordRetry(provider, "retry");
+        log.info("{} failed ({}: {}), retry {} of {} in {} ms{}", provider, errorClass, error.getMessage(),
+                attempt, maxAttempts - 1, delay.toMillis(), retryAfter != null ? " (Retry-After)" : "");
+        return delay;
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half the backoff plus a random share of the other half.
+     */
+    Duration backoff(int attempt) {
+        double exponential = initialBackoff.toMillis() * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(exponential, maxBackoff.toMillis());
+        long half = capped / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(capped - half + 1));
+    }
+
+    private void sleep(Duration delay) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("AI request interrupted");
+        }
+    }
+
+    // ==================== Classification ====================
+
+    /**
+     * Classifies a provider failure by walking its cause chain.
+     */
+    public static ErrorClass classify(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof CancellationException || e instanceof InterruptedException
+                    || e instanceof AIWizardRateLimitException || e instanceof IllegalStateException) {
+                return ErrorClass.NON_RETRYABLE;
+            }
+            Integer status = statusCode(e);
+            if (status != null) {
+                return classifyStatus(status);
+            }
+            if (e instanceof TransientAiException) {
+                return ErrorClass.SERVER;
+            }
+            if (e instanceof IOException || e instanceof TimeoutException || e instanceof ResourceAccessException
+                    || e instanceof WebClientRequestException || e instanceof OpenAIIoException
+                    || e instanceof GenAiIOException) {
+                return ErrorClass.NETWORK;
+            }
+        }
+        return ErrorClass.NON_RETRYABLE;
+    }
+
+    private static ErrorClass classifyStatus(int status) {
+        if (status == 429) {
+            return ErrorClass.RATE_LIMITED;
+        }
+        if (status >= 500 || status == 408) {
+            return ErrorClass.SERVER;
+        }
+        return status >= 400 ? ErrorClass.CLIENT : ErrorClass.NON_RETRYABLE;
+    }
+
+    private static Integer statusCode(Throwable e) {
+        if (e instanceof RestClientResponseException rest) {
+            return rest.getStatusCode().value();
+        }
+        if (e instanceof WebClientResponseException web) {
+            return web.getStatusCode().value();
+        }
+        if (e instanceof OpenAIServiceException openAi) {
+            return openAi.statusCode();
+        }
+        if (e instanceof ApiException genAi) {
+            return genAi.code();
+        }
+        if (e instanceof NonTransientAiException || e instanceof TransientAiException) {
+            // Spring AI's default error handler keeps only the status in the message
+            Matcher matcher = STATUS_PREFIX.matcher(String.valueOf(e.getMessage()));
+            return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the delay requested by the provider's Retry-After or retry-after-ms header, if any.
+     * The Gemini SDK does not expose response headers.
+     */
+    public static Duration retryAfter(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof RestClientResponseException rest && rest.getResponseHeaders() != null) {
+                return retryAfter(rest.getResponseHeaders().get("retry-after-ms"),
+                        rest.getResponseHeaders().get(HttpHeaders.RETRY_AFTER));
+            }
+            if (e instanceof WebClientResponseException web) {
+                return retryAfter(web.getHeaders().get("retry-after-ms"), web.getHeaders().get(HttpHeaders.RETRY_AFTER));
+            }
+            if (e instanceof OpenAIServiceException openAi) {
+                return retryAfter(openAi.headers().values("retry-after-ms"), openAi.headers().values("retry-after"));
+            }
+        }
+        return null;
+    }
+
+    private static Duration retryAfter(List<String> millisValues, List<String> values) {
+        if (millisValues != null && !millisValues.isEmpty()) {
+            try {
+                return Duration.ofMillis((long) Double.parseDouble(millisValues.get(0).trim()));
+            } catch (NumberFormatException e) {
+                // fall back to Retry-After
+            }
+        }
+        return values == null || values.isEmpty() ? null : parseRetryAfter(values.get(0));
+    }
+
+    /**
+     * Parses a Retry-After value: delay in seconds or an HTTP date.
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofMillis((long) (Double.parseDouble(trimmed) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    // ==================== Implementation ====================
+
+    /**
+     * Requests and retries counted in six 10-second slots, i.e. over the last minute.
+     */
+    private static class RetryBudget {
+
+        private static final int SLOTS = 6;
+        private static final long SLOT_MILLIS = 10_000;
+
+        private final long[] slotStart = new long[SLOTS];
+        private final long[] requests = new long[SLOTS];
+        private final long[] retries = new long[SLOTS];
+
+        synchronized void recordRequest() {
+            requests[slot()]++;
+        }
+
+        synchronized boolean tryAcquireRetry(double ratio, int minRetries) {
+            int current = slot();
+            long oldest = slotStart[current] - SLOTS;
+            long windowRequests = 0;
+            long windowRetries = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                if (slotStart[i] > oldest) {
+                    windowRequests += requests[i];
+                    windowRetries += retries[i];
+                }
+            }
+            if (windowRetries >= minRetries + ratio * windowRequests) {
+                return false;
+            }
+            retries[current]++;
+            return true;
+        }
+
+        /**
+         * Returns the slot of the current time, clearing slots that have left the window.
+         */
+        private int slot() {
+            long now = System.currentTimeMillis() / SLOT_MILLIS;
+            int index = (int) (now % SLOTS);
+            if (slotStart[index] != now) {
+                slotStart[index] = now;
+                requests[index] = 0;
+                retries[index] = 0;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Failure classes of provider calls.
+     */
+    public enum ErrorClass {
+        RATE_LIMITED(true),
+        SERVER(true),
+        NETWORK(true),
+        CLIENT(false),
+        NON_RETRYABLE(false);
+
+        private final boolean retryable;
+
+        ErrorClass(boolean retryable) {
+            this.retryable = retryable;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardSchemaFormat;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PropertyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.UniqueConstraintDefinition;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Renders table and entity definitions for LLM context in the format selected by the template.
+ *
+ * Formats:
+ * - VERBOSE: CREATE TABLE statements / human-readable entity definitions (default)
+ * - COMPACT: one line per table or entity, e.g.
+ *   {@code CUSTOMER_ORDER(ID:UUID pk, CUSTOMER_ID:UUID! ->CUSTOMER.ID, QUANTITY:INTEGER!)}
+ * - JSON: one minified JSON object per table or entity
+ *
+ * Dense formats keep everything needed to write a query (names, types, nullability,
+ * keys and references) and drop what the model rarely needs: index definitions,
+ * constraint names, default annotations and "false" flags.
+ *
+ * Compact notation: {@code !} = NOT NULL / mandatory, {@code pk} = primary key,
+ * {@code ->T.C} = foreign key to table T column C, {@code ->E} / {@code ->E*} = to-one / to-many
+ * association with entity E.
+ */
+@Service("aiwizard_AIWizardSchemaFormatter")
+public class AIWizardSchemaFormatter {
+
+    private final AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private final AIWizardEntityDefinitionService entityDefinitionService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardSchemaFormatter(AIWizardTableDDLDefinitionService tableDDLDefinitionService,
+                                   AIWizardEntityDefinitionService entityDefinitionService) {
+        this.tableDDLDefinitionService = tableDDLDefinitionService;
+        this.entityDefinitionService = entityDefinitionService;
+    }
+
+    /**
+     * Returns true if definitions in this format carry their own name,
+     * so no "=== name ===" header is needed in the prompt.
+     */
+    public boolean isSelfDescribing(AIWizardSchemaFormat format) {
+        return format == AIWizardSchemaFormat.COMPACT || format == AIWizardSchemaFormat.JSON;
+    }
+
+    /**
+     * Renders a table definition.
+     *
+     * @param def    table definition
+     * @param format output format, null means VERBOSE
+     * @return rendered definition
+     */
+    public String formatTable(TableDDLDefinition def, AIWizardSchemaFormat format) {
+        if (format == AIWizardSchemaFormat.COMPACT) {
+            return formatTableCompact(def);
+        }
+        if (format == AIWizardSchemaFormat.JSON) {
+            return formatTableJson(def);
+        }
+        return tableDDLDefinitionService.getTableDDLAsString(def);
+    }
+
+    /**
+     * Renders an entity definition.
+     *
+     * @param def    entity definition
+     * @param format output format, null means VERBOSE
+     * @return rendered definition
+     */
+    public String formatEntity(EntityDefinition def, AIWizardSchemaFormat format) {
+        if (format == AIWizardSchemaFormat.COMPACT) {
+            return formatEntityCompact(def);
+        }
+        if (format == AIWizardSchemaFormat.JSON) {
+            return formatEntityJson(def);
+        }
+        return entityDefinitionService.getEntityDefinitionAsString(def);
+    }
+
+    // ==================== Tables ====================
+
+    private String formatTableCompact(TableDDLDefinition def) {
+        Set<String> pkColumns = primaryKeyColumns(def);
+        Map<String, ForeignKeyDefinition> foreignKeys = foreignKeysByColumn(def);
+
+        List<String> parts = new ArrayList<>();
+        for (ColumnDefinition col : def.columns()) {
+            StringBuilder part = new StringBuilder();
+            part.append(col.columnName()).append(':').append(columnType(col));
+            if (pkColumns.contains(col.columnName())) {
+                part.append(" pk");
+            } else if (!col.nullable()) {
+                part.append('!');
+            }
+            ForeignKeyDefinition fk = foreignKeys.get(col.columnName());
+            if (fk != null) {
+                part.append(" ->").append(fk.pkTableName()).append('.').append(fk.pkColumnName());
+            }
+            parts.add(part.toString());
+        }
+        for (UniqueConstraintDefinition uc : def.uniqueConstraints()) {
+            parts.add("unique(" + String.join(",", uc.columns()) + ")");
+        }
+
+        return def.tableName() + "(" + String.join(", ", parts) + ")";
+    }
+
+    private String formatTableJson(TableDDLDefinition def) {
+        Set<String> pkColumns = primaryKeyColumns(def);
+
+        Map<String, Object> columns = new LinkedHashMap<>();
+        for (ColumnDefinition col : def.columns()) {
+            boolean notNull = !col.nullable() && !pkColumns.contains(col.columnName());
+            columns.put(col.columnName(), columnType(col) + (notNull ? "!" : ""));
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("table", def.tableName());
+        json.put("pk", new ArrayList<>(pkColumns));
+        json.put("columns", columns);
+        if (!def.foreignKeys().isEmpty()) {
+            Map<String, Object> fks = new LinkedHashMap<>();
+            for (ForeignKeyDefinition fk : def.foreignKeys()) {
+                fks.put(fk.fkColumnName(), fk.pkTableName() + "." + fk.pkColumnName());
+            }
+            json.put("fk", fks);
+        }
+        if (!def.uniqueConstraints().isEmpty()) {
+            json.put("unique", def.uniqueConstraints().stream().map(UniqueConstraintDefinition::columns).toList());
+        }
+        return toJson(json);
+    }
+
+    private Set<String> primaryKeyColumns(TableDDLDefinition def) {
+        return def.primaryKey() == null
+                ? Set.of()
+                : new LinkedHashSet<>(def.primaryKey().columns());
+    }
+
+    private Map<String, ForeignKeyDefinition> foreignKeysByColumn(TableDDLDefinition def) {
+        Map<String, ForeignKeyDefinition> foreignKeys = new HashMap<>();
+        def.foreignKeys().forEach(fk -> foreignKeys.put(fk.fkColumnName(), fk));
+        return foreignKeys;
+    }
+
+    /**
+     * Column type with size/precision where it matters, e.g. VARCHAR(255), NUMERIC(19,2).
+     */
+    private String columnType(ColumnDefinition col) {
+        if (col.columnSize() == null || !AIWizardTableDDLDefinitionService.needsSize(col.typeName())) {
+            return col.typeName();
+        }
+        if (col.decimalDigits() != null && col.decimalDigits() > 0) {
+            return col.typeName() + "(" + col.columnSize() + "," + col.decimalDigits() + ")";
+        }
+        return col.typeName() + "(" + col.columnSize() + ")";
+    }
+
+    // ==================== Entities ====================
+
+    private String formatEntityCompact(EntityDefinition def) {
+        String pkName = def.primaryKey() != null ? def.primaryKey().propertyName() : null;
+
+        List<String> parts = new ArrayList<>();
+        for (PropertyDefinition prop : def.properties()) {
+            StringBuilder part = new StringBuilder();
+            part.append(prop.name()).append(':').append(prop.javaType());
+            if (prop.name().equals(pkName)) {
+                part.append(" pk");
+            } else if (prop.mandatory()) {
+                part.append('!');
+            }
+            if (prop.relatedEntityName() != null) {
+                part.append(" ->").append(prop.relatedEntityName());
+                if (isToMany(prop)) {
+                    part.append('*');
+                }
+            }
+            parts.add(part.toString());
+        }
+
+        return def.name() + "(" + String.join(", ", parts) + ")";
+    }
+
+    private String formatEntityJson(EntityDefinition def) {
+        String pkName = def.primaryKey() != null ? def.primaryKey().propertyName() : null;
+
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        Map<String, Object> references = new LinkedHashMap<>();
+        for (PropertyDefinition prop : def.properties()) {
+            boolean mandatory = prop.mandatory() && !prop.name().equals(pkName);
+            attributes.put(prop.name(), prop.javaType() + (mandatory ? "!" : ""));
+            if (prop.relatedEntityName() != null) {
+                references.put(prop.name(), prop.relatedEntityName() + (isToMany(prop) ? "*" : ""));
+            }
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("entity", def.name());
+        json.put("id", pkName);
+        json.put("attributes", attributes);
+        if (!references.isEmpty()) {
+            json.put("references", references);
+        }
+        return toJson(json);
+    }
+
+    private boolean isToMany(PropertyDefinition prop) {
+        return "OneToMany".equals(prop.relationType()) || "ManyToMany".equals(prop.relationType());
+    }
+
+    // ==================== JSON ====================
+
+    private String toJson(Map<String, Object> json) {
+        try {
+            return objectMapper.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            // Maps of strings, lists and nested maps always serialize
+            throw new IllegalStateException("Could not serialize schema definition", e);
+        }
+    }
+}
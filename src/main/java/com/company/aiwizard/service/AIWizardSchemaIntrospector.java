@@ -0,0 +1,409 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.PrimaryKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.UniqueConstraintDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Low-level JDBC introspection of table structure, shared by the DDL definition service
+ * and the schema snapshot. Reads columns, primary keys, foreign keys, indexes and unique
+ * constraints via DatabaseMetaData and returns them as TableDDLDefinition records.
+ *
+ * Two access modes:
+ * - Single table: one connection and a handful of metadata queries for one table
+ * - Batch: all requested tables on one connection with schema-wide metadata queries
+ *   (table name null / "%"), results grouped by table in memory. Four queries in total
+ *   instead of six per table. Drivers that reject schema-wide calls fall back to
+ *   per-table queries on the same connection.
+ */
+@Service("aiwizard_AIWizardSchemaIntrospector")  // Bean name with module prefix
+public class AIWizardSchemaIntrospector {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardSchemaIntrospector.class);
+
+    private final DataSource dataSource;  // JDBC connection pool
+
+    /**
+     * Constructor injection for the configured DataSource.
+     */
+    public AIWizardSchemaIntrospector(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Reads the complete DDL definition of a single table.
+     *
+     * @param tableName table name (case-insensitive search)
+     * @return TableDDLDefinition containing all structural metadata
+     * @throws IllegalArgumentException if table is not found
+     * @throws RuntimeException if database access fails
+     */
+    public TableDDLDefinition loadTable(String tableName) {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String catalog = connection.getCatalog();  // Database name (MySQL) or null (PostgreSQL)
+            String schema = connection.getSchema();    // Schema name (e.g., "public" in PostgreSQL)
+
+            // Find actual table name with case-insensitive search
+            String actualTableName = findActualTableName(metaData, catalog, schema, tableName);
+            if (actualTableName == null) {
+                throw new IllegalArgumentException("Table not found: " + tableName);
+            }
+
+            return readTables(metaData, catalog, schema, List.of(actualTableName)).get(actualTableName);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to retrieve DDL for table: " + tableName, e);
+        }
+    }
+
+    /**
+     * Reads the DDL definitions of several tables in one metadata pass on a single connection.
+     *
+     * @param tableNames table names (case-insensitive search)
+     * @return definitions keyed by the requested name, in request order
+     * @throws IllegalArgumentException if any table is not found
+     * @throws RuntimeException if database access fails
+     */
+    public Map<String, TableDDLDefinition> loadTables(Collection<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return Map.of();
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String catalog = connection.getCatalog();
+            String schema = connection.getSchema();
+
+            // Resolve requested names against one table listing instead of up to three probes per table
+            Map<String, String> actualNames = new HashMap<>();
+            for (String actualName : listTableNames(metaData, catalog, schema)) {
+                actualNames.put(actualName, actualName);
+                actualNames.putIfAbsent(actualName.toUpperCase(Locale.ROOT), actualName);
+            }
+            Map<String, String> resolved = new LinkedHashMap<>();
+            for (String tableName : tableNames) {
+                String actualName = actualNames.getOrDefault(tableName,
+                        actualNames.get(tableName.toUpperCase(Locale.ROOT)));
+                if (actualName == null) {
+                    throw new IllegalArgumentException("Table not found: " + tableName);
+                }
+                resolved.put(tableName, actualName);
+            }
+
+            Map<String, TableDDLDefinition> definitions =
+                    readTables(metaData, catalog, schema, new LinkedHashSet<>(resolved.values()));
+
+            Map<String, TableDDLDefinition> result = new LinkedHashMap<>();
+            resolved.forEach((requested, actual) -> result.put(requested, definitions.get(actual)));
+            return result;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to retrieve DDL for tables: " + tableNames, e);
+        }
+    }
+
+    /**
+     * Reads the DDL definitions of all tables in the current catalog/schema in one pass.
+     *
+     * @return definitions keyed by actual table name, in table name order
+     * @throws RuntimeException if database access fails
+     */
+    public Map<String, TableDDLDefinition> loadAllTables() {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String catalog = connection.getCatalog();
+            String schema = connection.getSchema();
+
+            Map<String, TableDDLDefinition> tables = new TreeMap<>();
+            tables.putAll(readTables(metaData, catalog, schema, listTableNames(metaData, catalog, schema)));
+            return tables;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to retrieve schema definitions", e);
+        }
+    }
+
+    /**
+     * Returns a cheap fingerprint of the applied Liquibase changesets (count and last execution order).
+     * Changes whenever a new changeset is applied, so it can be polled to detect schema changes.
+     *
+     * @return fingerprint string, or null if the DATABASECHANGELOG table is not available
+     */
+    public String getChangelogFingerprint() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*), max(ORDEREXECUTED) from DATABASECHANGELOG")) {
+            return rs.next() ? rs.getLong(1) + ":" + rs.getLong(2) : null;
+        } catch (SQLException e) {
+            return null;  // Liquibase not used or table not accessible
+        }
+    }
+
+    /**
+     * Finds actual table name with case-insensitive search.
+     * Tries exact match, then uppercase, then lowercase.
+     * Handles databases with different case sensitivity (PostgreSQL vs MySQL vs Oracle).
+     */
+    private String findActualTableName(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
+        // Try exact match first
+        try (ResultSet rs = metaData.getTables(catalog, schema, tableName, new String[]{"TABLE"})) {
+            if (rs.next()) {
+                return rs.getString("TABLE_NAME");
+            }
+        }
+
+        // Try uppercase (Oracle, H2 default)
+        try (ResultSet rs = metaData.getTables(catalog, schema, tableName.toUpperCase(), new String[]{"TABLE"})) {
+            if (rs.next()) {
+                return rs.getString("TABLE_NAME");
+            }
+        }
+
+        // Try lowercase (PostgreSQL default)
+        try (ResultSet rs = metaData.getTables(catalog, schema, tableName.toLowerCase(), new String[]{"TABLE"})) {
+            if (rs.next()) {
+                return rs.getString("TABLE_NAME");
+            }
+        }
+
+        return null;  // Table not found
+    }
+
+    /**
+     * Lists the names of all tables in the given catalog/schema.
+     */
+    private List<String> listTableNames(DatabaseMetaData metaData, String catalog, String schema) throws SQLException {
+        List<String> tableNames = new ArrayList<>();
+        try (ResultSet rs = metaData.getTables(catalog, schema, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                tableNames.add(rs.getString("TABLE_NAME"));
+            }
+        }
+        return tableNames;
+    }
+
+    /**
+     * Reads columns, keys, foreign keys and indexes of the given tables (actual names).
+     * More than one table is read with schema-wide queries, one table with targeted queries.
+     */
+    private Map<String, TableDDLDefinition> readTables(DatabaseMetaData metaData, String catalog, String schema,
+                                                       Collection<String> tableNames) throws SQLException {
+        long start = System.nanoTime();
+        Map<String, TableParts> parts = new LinkedHashMap<>();
+        tableNames.forEach(tableName -> parts.put(tableName, new TableParts()));
+
+        boolean schemaWide = tableNames.size() > 1 && readSchemaWide(metaData, catalog, schema, parts);
+        if (!schemaWide) {
+            for (String tableName : tableNames) {
+                readColumns(metaData.getColumns(catalog, schema, tableName, "%"), schema, parts);
+                readPrimaryKeys(metaData.getPrimaryKeys(catalog, schema, tableName), schema, parts);
+                readForeignKeys(metaData.getImportedKeys(catalog, schema, tableName), schema, parts);
+                readIndexes(metaData.getIndexInfo(catalog, schema, tableName, false, false), schema, parts);
+            }
+        }
+
+        Map<String, TableDDLDefinition> definitions = new LinkedHashMap<>();
+        parts.forEach((tableName, tableParts) -> definitions.put(tableName, tableParts.toDefinition(catalog, schema, tableName)));
+
+        log.debug("Read metadata of {} table(s) in {} ms ({})", tableNames.size(),
+                (System.nanoTime() - start) / 1_000_000, schemaWide ? "schema-wide" : "per table");
+        return definitions;
+    }
+
+    /**
+     * Reads metadata of all tables with one query per metadata kind.
+     * JDBC declares the table argument of getPrimaryKeys/getImportedKeys/getIndexInfo as a plain name;
+     * most drivers treat null as "all tables", others reject it.
+     *
+     * @return true on success, false if the driver does not support schema-wide calls (parts are reset)
+     */
+    private boolean readSchemaWide(DatabaseMetaData metaData, String catalog, String schema,
+                                   Map<String, TableParts> parts) {
+        try {
+            readColumns(metaData.getColumns(catalog, schema, "%", "%"), schema, parts);
+            readPrimaryKeys(metaData.getPrimaryKeys(catalog, schema, null), schema, parts);
+            readForeignKeys(metaData.getImportedKeys(catalog, schema, null), schema, parts);
+            readIndexes(metaData.getIndexInfo(catalog, schema, null, false, false), schema, parts);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            log.debug("Schema-wide metadata queries not supported, reading per table: {}", e.getMessage());
+            parts.replaceAll((tableName, tableParts) -> new TableParts());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the accumulator of the table a metadata row belongs to,
+     * or null if the table was not requested (or lives in another schema matched by the pattern).
+     */
+    private TableParts partsOf(ResultSet rs, String schemaColumn, String tableColumn, String schema,
+                               Map<String, TableParts> parts) throws SQLException {
+        if (schema != null && !schema.equals(rs.getString(schemaColumn))) {
+            return null;
+        }
+        return parts.get(rs.getString(tableColumn));
+    }
+
+    /**
+     * Extracts column definitions from a getColumns result.
+     * Columns are sorted by ordinal position when the definition is built.
+     */
+    private void readColumns(ResultSet columnsRs, String schema, Map<String, TableParts> parts) throws SQLException {
+        try (ResultSet rs = columnsRs) {
+            while (rs.next()) {
+                TableParts tableParts = partsOf(rs, "TABLE_SCHEM", "TABLE_NAME", schema, parts);
+                if (tableParts == null) {
+                    continue;
+                }
+                tableParts.columns.add(new ColumnDefinition(
+                        rs.getString("COLUMN_NAME"),
+                        rs.getString("TYPE_NAME"),                               // SQL type name (VARCHAR, INTEGER, etc.)
+                        rs.getInt("DATA_TYPE"),                                  // java.sql.Types constant
+                        getIntOrNull(rs, "COLUMN_SIZE"),                         // Length/precision
+                        getIntOrNull(rs, "DECIMAL_DIGITS"),                      // Scale for decimals
+                        rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable,
+                        rs.getString("COLUMN_DEF"),                              // Default value expression
+                        rs.getInt("ORDINAL_POSITION"),                           // Column order in table
+                        rs.getString("REMARKS"),                                 // Column comment
+                        "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"))
+                ));
+            }
+        }
+    }
+
+    /**
+     * Extracts primary key columns including composite keys from a getPrimaryKeys result.
+     */
+    private void readPrimaryKeys(ResultSet primaryKeysRs, String schema, Map<String, TableParts> parts) throws SQLException {
+        try (ResultSet rs = primaryKeysRs) {
+            while (rs.next()) {
+                TableParts tableParts = partsOf(rs, "TABLE_SCHEM", "TABLE_NAME", schema, parts);
+                if (tableParts == null) {
+                    continue;
+                }
+                tableParts.pkName = rs.getString("PK_NAME");
+                int keySeq = rs.getInt("KEY_SEQ");      // Position in composite key (1-based)
+                tableParts.pkColumns.put(keySeq, rs.getString("COLUMN_NAME"));
+            }
+        }
+    }
+
+    /**
+     * Extracts foreign key definitions (imported keys = FK columns in the child table).
+     */
+    private void readForeignKeys(ResultSet importedKeysRs, String schema, Map<String, TableParts> parts) throws SQLException {
+        try (ResultSet rs = importedKeysRs) {
+            while (rs.next()) {
+                TableParts tableParts = partsOf(rs, "FKTABLE_SCHEM", "FKTABLE_NAME", schema, parts);
+                if (tableParts == null) {
+                    continue;
+                }
+                tableParts.foreignKeys.add(new ForeignKeyDefinition(
+                        rs.getString("FK_NAME"),           // Constraint name
+                        rs.getString("FKCOLUMN_NAME"),     // Column in this table
+                        rs.getString("PKTABLE_SCHEM"),     // Referenced table's schema
+                        rs.getString("PKTABLE_NAME"),      // Referenced table
+                        rs.getString("PKCOLUMN_NAME"),     // Referenced column
+                        mapReferentialAction(rs.getInt("DELETE_RULE")),  // ON DELETE action
+                        mapReferentialAction(rs.getInt("UPDATE_RULE"))   // ON UPDATE action
+                ));
+            }
+        }
+    }
+
+    /**
+     * Extracts index definitions including composite indexes from a getIndexInfo result.
+     * Unique constraints (excluding primary key) are derived from the unique indexes of the
+     * same result, which saves the second getIndexInfo(unique=true) round trip.
+     */
+    private void readIndexes(ResultSet indexInfoRs, String schema, Map<String, TableParts> parts) throws SQLException {
+        try (ResultSet rs = indexInfoRs) {
+            while (rs.next()) {
+                TableParts tableParts = partsOf(rs, "TABLE_SCHEM", "TABLE_NAME", schema, parts);
+                String indexName = rs.getString("INDEX_NAME");
+                if (tableParts == null || indexName == null) {
+                    continue;  // Other table or table statistics row
+                }
+
+                String columnName = rs.getString("COLUMN_NAME");
+                boolean unique = !rs.getBoolean("NON_UNIQUE");  // Note: inverted logic
+                String ascDesc = rs.getString("ASC_OR_DESC");   // A=ascending, D=descending, null=unsorted
+
+                // Handle composite indexes (multiple columns per index)
+                tableParts.indexes
+                        .computeIfAbsent(indexName, name -> new IndexDefinition(name, new ArrayList<>(), unique, ascDesc))
+                        .columns().add(columnName);
+
+                // Skip primary key indexes (naming convention varies by database)
+                String lowerName = indexName.toLowerCase();
+                if (unique && !lowerName.contains("pkey") && !lowerName.contains("pk_")) {
+                    tableParts.uniqueConstraints
+                            .computeIfAbsent(indexName, name -> new UniqueConstraintDefinition(name, new ArrayList<>()))
+                            .columns().add(columnName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps JDBC referential action constants to SQL keywords.
+     */
+    private String mapReferentialAction(int action) {
+        return switch (action) {
+            case DatabaseMetaData.importedKeyCascade -> "CASCADE";
+            case DatabaseMetaData.importedKeySetNull -> "SET NULL";
+            case DatabaseMetaData.importedKeySetDefault -> "SET DEFAULT";
+            case DatabaseMetaData.importedKeyRestrict -> "RESTRICT";
+            default -> "NO ACTION";
+        };
+    }
+
+    /**
+     * Safely reads integer column, returning null if database value was NULL.
+     */
+    private Integer getIntOrNull(ResultSet rs, String columnName) throws SQLException {
+        int value = rs.getInt(columnName);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Mutable accumulator for the metadata rows of one table.
+     */
+    private static class TableParts {
+        private final List<ColumnDefinition> columns = new ArrayList<>();
+        private final Map<Integer, String> pkColumns = new TreeMap<>();  // KEY_SEQ -> column, keeps key order
+        private String pkName;
+        private final List<ForeignKeyDefinition> foreignKeys = new ArrayList<>();
+        private final Map<String, IndexDefinition> indexes = new LinkedHashMap<>();  // Preserves discovery order
+        private final Map<String, UniqueConstraintDefinition> uniqueConstraints = new LinkedHashMap<>();
+
+        private TableDDLDefinition toDefinition(String catalog, String schema, String tableName) {
+            // Sort by ordinal position to match table definition order
+            columns.sort(Comparator.comparing(ColumnDefinition::ordinalPosition));
+            PrimaryKeyDefinition primaryKey = pkColumns.isEmpty()
+                    ? null
+                    : new PrimaryKeyDefinition(pkName, new ArrayList<>(pkColumns.values()));
+            return new TableDDLDefinition(
+                    catalog,
+                    schema,
+                    tableName,
+                    columns,
+                    primaryKey,
+                    foreignKeys,
+                    new ArrayList<>(indexes.values()),
+                    new ArrayList<>(uniqueConstraints.values())
+            );
+        }
+    }
+}
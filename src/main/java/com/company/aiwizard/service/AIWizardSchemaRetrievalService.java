@@ -0,0 +1,382 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PropertyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Suggests the tables (SQL) or entities (JPQL) relevant to an AI Wizard prompt, so users do not
+ * have to pick the schema context by hand. Picking too many items bloats the prompt, missing
+ * join tables produces bad queries.
+ *
+ * Each table or entity is indexed as a document built from its definition: name, column or
+ * property names, column comments and referenced tables/entities. Names are split on camel case
+ * and underscores, so "CustomerOrder", "CUSTOMER_ORDER" and "customer orders" share terms.
+ * The prompt is scored against the documents with BM25 in process, without an embedding model
+ * or external service. The best matches are returned with their foreign-key (association)
+ * neighbours, ranked by their own score.
+ *
+ * The table index is rebuilt when the schema snapshot is reloaded; the entity index is built once,
+ * entity metadata does not change at runtime. Lookups only touch the posting lists of the prompt's
+ * terms and take well under a millisecond for schemas of a few hundred tables.
+ *
+ * Configuration:
+ * - aiwizard.schema-retrieval.top-k: best matches returned (default 5)
+ * - aiwizard.schema-retrieval.min-relative-score: matches scoring below this share of the best score are dropped (default 0.25)
+ * - aiwizard.schema-retrieval.max-neighbours: foreign-key neighbours added to the matches (default 5)
+ */
+@Service("aiwizard_AIWizardSchemaRetrievalService")
+public class AIWizardSchemaRetrievalService {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardSchemaRetrievalService.class);
+
+    /** BM25 term frequency saturation. */
+    private static final double K1 = 1.2;
+
+    /** BM25 document length normalization. */
+    private static final double B = 0.75;
+
+    /** Weight of name terms relative to column/property terms. */
+    private static final int NAME_WEIGHT = 3;
+
+    private static final Pattern CAMEL_CASE = Pattern.compile("([a-z0-9])([A-Z])");
+    private static final Pattern NON_WORD = Pattern.compile("[^A-Za-z0-9]+");
+
+    /** Words common in wizard prompts that say nothing about the schema. */
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "all", "any", "are", "as", "at", "band", "base", "based", "be", "by", "create",
+            "data", "definition", "each", "for", "from", "get", "give", "id", "in", "into", "is", "it", "list",
+            "me", "modify", "new", "of", "on", "or", "per", "query", "report", "return", "select", "show",
+            "that", "the", "their", "them", "this", "to", "use", "using", "where", "which", "with");
+
+    @Value("${aiwizard.schema-retrieval.top-k:5}")
+    private int topK;
+
+    @Value("${aiwizard.schema-retrieval.min-relative-score:0.25}")
+    private double minRelativeScore;
+
+    @Value("${aiwizard.schema-retrieval.max-neighbours:5}")
+    private int maxNeighbours;
+
+    private final AIWizardTableListService tableListService;
+    private final AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private final AIWizardSchemaSnapshotService schemaSnapshotService;
+    private final AIWizardEntityListService entityListService;
+    private final AIWizardEntityDefinitionService entityDefinitionService;
+
+    /** Table index and the snapshot version it was built from. */
+    private volatile SchemaIndex tableIndex;
+
+    private volatile SchemaIndex entityIndex;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardSchemaRetrievalService(AIWizardTableListService tableListService,
+                                          AIWizardTableDDLDefinitionService tableDDLDefinitionService,
+                                          AIWizardSchemaSnapshotService schemaSnapshotService,
+                                          AIWizardEntityListService entityListService,
+                                          AIWizardEntityDefinitionService entityDefinitionService) {
+        this.tableListService = tableListService;
+        this.tableDDLDefinitionService = tableDDLDefinitionService;
+        this.schemaSnapshotService = schemaSnapshotService;
+        this.entityListService = entityListService;
+        this.entityDefinitionService = entityDefinitionService;
+    }
+
+    /**
+     * Suggests the database tables relevant to a prompt.
+     *
+     * @param prompt user's prompt
+     * @return matching tables and their foreign-key neighbours, empty if nothing matched
+     */
+    public Suggestion suggestTables(String prompt) {
+        return suggest(getTableIndex(), prompt);
+    }
+
+    /**
+     * Suggests the JPA entities relevant to a prompt.
+     *
+     * @param prompt user's prompt
+     * @return matching entities and their associated entities, empty if nothing matched
+     */
+    public Suggestion suggestEntities(String prompt) {
+        return suggest(getEntityIndex(), prompt);
+    }
+
+    private Suggestion suggest(SchemaIndex index, String prompt) {
+        long start = System.nanoTime();
+        double[] scores = index.score(tokenize(prompt));
+
+        Integer[] ranked = new Integer[scores.length];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = i;
+        }
+        Arrays.sort(ranked, Comparator.<Integer>comparingDouble(doc -> -scores[doc])
+                .thenComparing(doc -> index.names().get(doc)));
+
+        List<String> matches = new ArrayList<>();
+        Set<Integer> selected = new LinkedHashSet<>();
+        double best = ranked.length == 0 ? 0 : scores[ranked[0]];
+        for (int doc : ranked) {
+            if (matches.size() >= topK || scores[doc] <= 0 || scores[doc] < best * minRelativeScore) {
+                break;
+            }
+            matches.add(index.names().get(doc));
+            selected.add(doc);
+        }
+
+        // Neighbours of all matches, best scoring first
+        List<Integer> candidates = new ArrayList<>();
+        for (int doc : selected) {
+            for (int neighbour : index.neighbours().get(doc)) {
+                if (!selected.contains(neighbour) && !candidates.contains(neighbour)) {
+                    candidates.add(neighbour);
+                }
+            }
+        }
+        candidates.sort(Comparator.<Integer>comparingDouble(doc -> -scores[doc])
+                .thenComparing(doc -> index.names().get(doc)));
+        List<String> neighbours = candidates.stream()
+                .limit(maxNeighbours)
+                .map(doc -> index.names().get(doc))
+                .toList();
+
+        log.debug("Schema retrieval: {} matches, {} neighbours in {} us",
+                matches.size(), neighbours.size(), (System.nanoTime() - start) / 1000);
+        return new Suggestion(List.copyOf(matches), neighbours);
+    }
+
+    private SchemaIndex getTableIndex() {
+        long version = schemaSnapshotService.getStatus().version();
+        SchemaIndex index = tableIndex;
+        if (index == null || index.version() != version) {
+            synchronized (this) {
+                index = tableIndex;
+                if (index == null || index.version() != version) {
+                    index = buildTableIndex(version);
+                    tableIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private SchemaIndex getEntityIndex() {
+        SchemaIndex index = entityIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = entityIndex;
+                if (index == null) {
+                    index = buildEntityIndex();
+                    entityIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private SchemaIndex buildTableIndex(long version) {
+        long start = System.nanoTime();
+        Map<String, TableDDLDefinition> tables =
+                tableDDLDefinitionService.getTableDDLDefinitions(tableListService.getAllTableNames());
+
+        IndexBuilder builder = new IndexBuilder();
+        for (TableDDLDefinition table : tables.values()) {
+            List<String> terms = new ArrayList<>();
+            addTerms(terms, table.tableName(), NAME_WEIGHT);
+            for (ColumnDefinition column : table.columns()) {
+                addTerms(terms, column.columnName(), 1);
+                addTerms(terms, column.remarks(), 1);
+            }
+            List<String> related = new ArrayList<>();
+            for (ForeignKeyDefinition foreignKey : table.foreignKeys()) {
+                addTerms(terms, foreignKey.pkTableName(), 1);
+                related.add(foreignKey.pkTableName());
+            }
+            builder.add(table.tableName(), terms, related);
+        }
+
+        SchemaIndex index = builder.build(version);
+        log.info("Schema retrieval index built: {} tables in {} ms",
+                index.names().size(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private SchemaIndex buildEntityIndex() {
+        long start = System.nanoTime();
+        IndexBuilder builder = new IndexBuilder();
+        for (String entityName : entityListService.getAllEntityNames()) {
+            EntityDefinition entity;
+            try {
+                entity = entityDefinitionService.getEntityDefinition(entityName);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            List<String> terms = new ArrayList<>();
+            addTerms(terms, entity.name(), NAME_WEIGHT);
+            addTerms(terms, entity.tableName(), 1);
+            List<String> related = new ArrayList<>();
+            for (PropertyDefinition property : entity.properties()) {
+                addTerms(terms, property.name(), 1);
+                if (property.relatedEntityName() != null) {
+                    addTerms(terms, property.relatedEntityName(), 1);
+                    related.add(property.relatedEntityName());
+                }
+            }
+            builder.add(entity.name(), terms, related);
+        }
+
+        SchemaIndex index = builder.build(0);
+        log.info("Schema retrieval index built: {} entities in {} ms",
+                index.names().size(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private static void addTerms(List<String> terms, String text, int weight) {
+        List<String> tokens = tokenize(text);
+        for (int i = 0; i < weight; i++) {
+            terms.addAll(tokens);
+        }
+    }
+
+    /**
+     * Splits text into lower-case terms: camel case and non-alphanumeric characters separate words,
+     * stop words are dropped and plurals reduced to the singular.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String word : NON_WORD.split(CAMEL_CASE.matcher(text).replaceAll("$1 $2"))) {
+            String term = singular(word.toLowerCase(Locale.ROOT));
+            if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static String singular(String word) {
+        if (word.length() > 4 && word.endsWith("ies")) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    /**
+     * Collects documents and resolves neighbour names to document ids.
+     */
+    private static class IndexBuilder {
+        private final List<String> names = new ArrayList<>();
+        private final List<List<String>> terms = new ArrayList<>();
+        private final List<List<String>> related = new ArrayList<>();
+
+        private void add(String name, List<String> documentTerms, List<String> relatedNames) {
+            names.add(name);
+            terms.add(documentTerms);
+            related.add(relatedNames);
+        }
+
+        private SchemaIndex build(long version) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int doc = 0; doc < names.size(); doc++) {
+                ids.put(names.get(doc).toUpperCase(Locale.ROOT), doc);
+            }
+
+            // Neighbours in both directions: referenced and referencing items
+            List<Set<Integer>> neighbours = new ArrayList<>();
+            for (int doc = 0; doc < names.size(); doc++) {
+                neighbours.add(new TreeSet<>());
+            }
+            for (int doc = 0; doc < names.size(); doc++) {
+                for (String relatedName : related.get(doc)) {
+                    Integer other = ids.get(relatedName.toUpperCase(Locale.ROOT));
+                    if (other != null && other != doc) {
+                        neighbours.get(doc).add(other);
+                        neighbours.get(other).add(doc);
+                    }
+                }
+            }
+
+            Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+            int[] lengths = new int[names.size()];
+            long totalLength = 0;
+            for (int doc = 0; doc < names.size(); doc++) {
+                for (String term : terms.get(doc)) {
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).merge(doc, 1, Integer::sum);
+                }
+                lengths[doc] = terms.get(doc).size();
+                totalLength += lengths[doc];
+            }
+            double averageLength = names.isEmpty() ? 0 : (double) totalLength / names.size();
+
+            return new SchemaIndex(version, List.copyOf(names),
+                    neighbours.stream().map(List::copyOf).toList(),
+                    postings, lengths, averageLength);
+        }
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * BM25 index over table or entity documents.
+     */
+    private record SchemaIndex(
+            long version,                                // Schema snapshot version (0 for entities)
+            List<String> names,                          // Document id -> table/entity name
+            List<List<Integer>> neighbours,              // Document id -> related document ids
+            Map<String, Map<Integer, Integer>> postings, // Term -> document id -> term frequency
+            int[] lengths,                               // Document id -> number of terms
+            double averageLength                         // Average number of terms per document
+    ) {
+        private double[] score(List<String> queryTerms) {
+            double[] scores = new double[names.size()];
+            int documents = names.size();
+            for (String term : new LinkedHashSet<>(queryTerms)) {
+                Map<Integer, Integer> termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                int df = termPostings.size();
+                double idf = Math.log(1 + (documents - df + 0.5) / (df + 0.5));
+                for (Map.Entry<Integer, Integer> posting : termPostings.entrySet()) {
+                    int tf = posting.getValue();
+                    double norm = K1 * (1 - B + B * lengths[posting.getKey()] / averageLength);
+                    scores[posting.getKey()] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+            return scores;
+        }
+    }
+
+    /**
+     * Tables or entities suggested for a prompt.
+     */
+    public record Suggestion(
+            List<String> matches,    // Best matches, most relevant first
+            List<String> neighbours  // Foreign-key neighbours of the matches, not matched themselves
+    ) {
+        /**
+         * Returns matches followed by neighbours.
+         */
+        public List<String> items() {
+            List<String> items = new ArrayList<>(matches);
+            items.addAll(neighbours);
+            return items;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.PrimaryKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.UniqueConstraintDefinition;
+import io.jmix.core.TimeSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * In-memory snapshot of the database schema used by the AI Wizard.
+ * Per-table introspection opens a connection and issues several DatabaseMetaData
+ * round trips, which takes seconds on a remote database with many tables. The snapshot
+ * loads all tables in one pass and serves definitions from memory afterwards.
+ *
+ * Refresh triggers:
+ * - Application start (ApplicationReadyEvent)
+ * - A new Liquibase changeset applied (DATABASECHANGELOG fingerprint changed, polled)
+ * - Snapshot older than the configured maximum age
+ * - Explicit call to refresh()
+ *
+ * The snapshot (including the column, key and index lists of every definition) is immutable
+ * and replaced atomically, so readers never see a partial load.
+ *
+ * Tables are keyed by their actual name. Lookups match the exact name first and fall back to
+ * a case-insensitive match only when it is unambiguous, so tables whose names differ only in
+ * case (quoted identifiers on case-sensitive databases) are kept apart.
+ *
+ * Configuration:
+ * - aiwizard.schema-snapshot.enabled: serve definitions from the snapshot (default true)
+ * - aiwizard.schema-snapshot.check-interval: how often the changelog is polled (default 1m)
+ * - aiwizard.schema-snapshot.max-age: age after which the snapshot is reloaded (default 1h)
+ */
+@Service("aiwizard_AIWizardSchemaSnapshotService")
+public class AIWizardSchemaSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(AIWizardSchemaSnapshotService.class);
+
+    @Value("${aiwizard.schema-snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aiwizard.schema-snapshot.max-age:1h}")
+    private Duration maxAge;
+
+    private final AIWizardSchemaIntrospector schemaIntrospector;
+    private final TimeSource timeSource;
+
+    /** Current snapshot, null until the first load. */
+    private volatile SchemaSnapshot snapshot;
+
+    /** Set when a change was detected but the reload failed, so the snapshot is known to be outdated. */
+    private volatile boolean stale;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardSchemaSnapshotService(AIWizardSchemaIntrospector schemaIntrospector, TimeSource timeSource) {
+        this.schemaIntrospector = schemaIntrospector;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Loads the initial snapshot once the application (and Liquibase) is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Initial schema snapshot load failed, tables will be introspected on demand: {}",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the definition of a table from the snapshot.
+     * Loads the snapshot on first use if the startup load did not happen.
+     *
+     * @param tableName table name; matched exactly, or case-insensitively if no other table
+     *                  differs from it only in case
+     * @return table definition, or empty if the snapshot is disabled or does not contain the table
+     */
+    public Optional<TableDDLDefinition> findTable(String tableName) {
+        if (!enabled || tableName == null) {
+            return Optional.empty();
+        }
+        SchemaSnapshot current = snapshot;
+        if (current == null) {
+            try {
+                current = refresh();
+            } catch (RuntimeException e) {
+                log.warn("Schema snapshot load failed: {}", e.getMessage());
+                return Optional.empty();
+            }
+        }
+        TableDDLDefinition definition = current.tables().get(tableName);
+        if (definition == null) {
+            String actualName = current.namesByUpperCase().get(tableName.toUpperCase(Locale.ROOT));
+            definition = actualName == null ? null : current.tables().get(actualName);
+        }
+        return Optional.ofNullable(definition);
+    }
+
+    /**
+     * Reloads all table definitions and replaces the snapshot.
+     *
+     * @return the new snapshot
+     * @throws RuntimeException if database access fails (the previous snapshot is kept)
+     */
+    public synchronized SchemaSnapshot refresh() {
+        long start = System.nanoTime();
+        String fingerprint = schemaIntrospector.getChangelogFingerprint();
+        Map<String, TableDDLDefinition> loaded = schemaIntrospector.loadAllTables();
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Map<String, TableDDLDefinition> tables = new HashMap<>(loaded.size() * 2);
+        Map<String, String> namesByUpperCase = new HashMap<>(loaded.size() * 2);
+        Set<String> ambiguousNames = new HashSet<>();
+        loaded.forEach((name, definition) -> {
+            tables.put(name, immutableCopy(definition));
+            String upperName = name.toUpperCase(Locale.ROOT);
+            if (namesByUpperCase.putIfAbsent(upperName, name) != null) {
+                ambiguousNames.add(upperName);  // Differs from another table only in case
+            }
+        });
+        namesByUpperCase.keySet().removeAll(ambiguousNames);
+
+        SchemaSnapshot previous = snapshot;
+        SchemaSnapshot current = new SchemaSnapshot(
+                Collections.unmodifiableMap(tables),
+                Collections.unmodifiableMap(namesByUpperCase),
+                timeSource.now().toInstant(),
+                loadMillis,
+                fingerprint,
+                previous == null ? 1 : previous.version() + 1);
+        snapshot = current;
+        stale = false;
+
+        log.info("Schema snapshot v{} loaded: {} tables in {} ms", current.version(), tables.size(), loadMillis);
+        return current;
+    }
+
+    /**
+     * Periodically checks whether the snapshot must be reloaded:
+     * when a Liquibase changeset was applied since the last load or the snapshot is too old.
+     */
+    @Scheduled(fixedDelayString = "${aiwizard.schema-snapshot.check-interval:PT1M}", initialDelayString = "PT1M")
+    public void checkForChanges() {
+        SchemaSnapshot current = snapshot;
+        if (!enabled || current == null) {
+            return;
+        }
+
+        String reason = null;
+        if (!Objects.equals(current.fingerprint(), schemaIntrospector.getChangelogFingerprint())) {
+            reason = "changelog changed";
+        } else if (getAge(current).compareTo(maxAge) > 0) {
+            reason = "max age exceeded";
+        }
+
+        if (reason != null) {
+            log.debug("Reloading schema snapshot: {}", reason);
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                stale = true;
+                log.warn("Schema snapshot reload failed, serving stale snapshot v{}: {}",
+                        current.version(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns load statistics and staleness of the current snapshot.
+     */
+    public SnapshotStatus getStatus() {
+        SchemaSnapshot current = snapshot;
+        if (current == null) {
+            return new SnapshotStatus(enabled, false, 0, null, null, 0, 0, false);
+        }
+        Duration age = getAge(current);
+        return new SnapshotStatus(
+                enabled,
+                true,
+                current.tables().size(),
+                current.loadedAt(),
+                age,
+                current.loadMillis(),
+                current.version(),
+                stale || age.compareTo(maxAge) > 0);
+    }
+
+    private Duration getAge(SchemaSnapshot current) {
+        return Duration.between(current.loadedAt(), timeSource.now().toInstant());
+    }
+
+    /**
+     * Copies a definition with unmodifiable lists, so that callers cannot alter the shared snapshot.
+     * The introspector builds key and index column lists incrementally, hence the copy here
+     * rather than in the record constructors.
+     */
+    private static TableDDLDefinition immutableCopy(TableDDLDefinition definition) {
+        PrimaryKeyDefinition primaryKey = definition.primaryKey();
+        return new TableDDLDefinition(
+                definition.catalog(),
+                definition.schema(),
+                definition.tableName(),
+                unmodifiableCopy(definition.columns()),
+                primaryKey == null
+                        ? null
+                        : new PrimaryKeyDefinition(primaryKey.constraintName(), unmodifiableCopy(primaryKey.columns())),
+                unmodifiableCopy(definition.foreignKeys()),
+                definition.indexes().stream()
+                        .map(index -> new IndexDefinition(index.indexName(), unmodifiableCopy(index.columns()),
+                                index.unique(), index.sortOrder()))
+                        .toList(),
+                definition.uniqueConstraints().stream()
+                        .map(constraint -> new UniqueConstraintDefinition(constraint.constraintName(),
+                                unmodifiableCopy(constraint.columns())))
+                        .toList());
+    }
+
+    /**
+     * Unlike List.copyOf, keeps null elements (e.g. the column of an expression index).
+     */
+    private static <T> List<T> unmodifiableCopy(List<T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Immutable set of table definitions loaded in one pass.
+     */
+    public record SchemaSnapshot(
+            Map<String, TableDDLDefinition> tables,  // Definitions keyed by actual table name
+            Map<String, String> namesByUpperCase,    // Upper-case name -> actual name, unambiguous names only
+            Instant loadedAt,                        // When the load finished
+            long loadMillis,                         // Load duration
+            String fingerprint,                      // Liquibase changelog fingerprint at load time
+            long version                             // Incremented on every successful load
+    ) {}
+
+    /**
+     * Snapshot status for monitoring and UI display.
+     */
+    public record SnapshotStatus(
+            boolean enabled,   // Snapshot serving is enabled
+            boolean loaded,    // A snapshot is available
+            int tableCount,    // Number of tables in the snapshot
+            Instant loadedAt,  // When the snapshot was loaded (nullable)
+            Duration age,      // Time since load (nullable)
+            long loadMillis,   // Last load duration
+            long version,      // Snapshot version
+            boolean stale      // Reload failed or snapshot exceeded max age
+    ) {}
+}
@@ -2,11 +2,6 @@ package com.company.aiwizard.service;
 
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -20,17 +15,23 @@ import java.util.*;
  *
  * Useful for schema documentation, migration tools, AI-powered database analysis,
  * or reverse-engineering database structures.
+ *
+ * Definitions are served from the in-memory schema snapshot (AIWizardSchemaSnapshotService);
+ * tables missing from the snapshot are introspected directly via AIWizardSchemaIntrospector.
  */
 @Service("aiwizard_AIWizardTableDDLDefinitionService")  // Bean name with module prefix
 public class AIWizardTableDDLDefinitionService {
 
-    private final DataSource dataSource;  // JDBC connection pool
+    private final AIWizardSchemaSnapshotService schemaSnapshotService;  // Cached schema metadata
+    private final AIWizardSchemaIntrospector schemaIntrospector;         // Direct JDBC introspection
 
     /**
-     * Constructor injection for the configured DataSource.
+     * Constructor injection for required dependencies.
      */
-    public AIWizardTableDDLDefinitionService(DataSource dataSource) {
-        this.dataSource = dataSource;
+    public AIWizardTableDDLDefinitionService(AIWizardSchemaSnapshotService schemaSnapshotService,
+                                             AIWizardSchemaIntrospector schemaIntrospector) {
+        this.schemaSnapshotService = schemaSnapshotService;
+        this.schemaIntrospector = schemaIntrospector;
     }
 
     /**
@@ -43,37 +44,35 @@ public class AIWizardTableDDLDefinitionService {
      * @throws RuntimeException if database access fails
      */
     public TableDDLDefinition getTableDDLDefinition(String tableName) {
-        try (Connection connection = dataSource.getConnection()) {
-            DatabaseMetaData metaData = connection.getMetaData();
-            String catalog = connection.getCatalog();  // Database name (MySQL) or null (PostgreSQL)
-            String schema = connection.getSchema();    // Schema name (e.g., "public" in PostgreSQL)
-
-            // Find actual table name with case-insensitive search
-            String actualTableName = findActualTableName(metaData, catalog, schema, tableName);
-            if (actualTableName == null) {
-                throw new IllegalArgumentException("Table not found: " + tableName);
+        return schemaSnapshotService.findTable(tableName)
+                .orElseGet(() -> schemaIntrospector.loadTable(tableName));
+    }
+
+    /**
+     * Returns DDL definitions for several tables at once.
+     * Tables found in the schema snapshot are served from memory; the remaining ones are
+     * introspected together in one metadata pass on a single connection.
+     *
+     * @param tableNames table names (case-insensitive search)
+     * @return definitions keyed by the requested table name, in request order
+     * @throws IllegalArgumentException if any table is not found
+     * @throws RuntimeException if database access fails
+     */
+    public Map<String, TableDDLDefinition> getTableDDLDefinitions(Collection<String> tableNames) {
+        Map<String, TableDDLDefinition> definitions = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String tableName : tableNames) {
+            Optional<TableDDLDefinition> cached = schemaSnapshotService.findTable(tableName);
+            definitions.put(tableName, cached.orElse(null));  // Placeholder keeps request order
+            if (cached.isEmpty()) {
+                missing.add(tableName);
             }
+        }
 
-            // Extract all metadata components
-            List<ColumnDefinition> columns = getColumns(metaData, catalog, schema, actualTableName);
-            PrimaryKeyDefinition primaryKey = getPrimaryKey(metaData, catalog, schema, actualTableName);
-            List<ForeignKeyDefinition> foreignKeys = getForeignKeys(metaData, catalog, schema, actualTableName);
-            List<IndexDefinition> indexes = getIndexes(metaData, catalog, schema, actualTableName);
-            List<UniqueConstraintDefinition> uniqueConstraints = getUniqueConstraints(metaData, catalog, schema, actualTableName);
-
-            return new TableDDLDefinition(
-                    catalog,
-                    schema,
-                    actualTableName,
-                    columns,
-                    primaryKey,
-                    foreignKeys,
-                    indexes,
-                    uniqueConstraints
-            );
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to retrieve DDL for table: " + tableName, e);
+        if (!missing.isEmpty()) {
+            definitions.putAll(schemaIntrospector.loadTables(missing));
         }
+        return definitions;
     }
 
     /**
@@ -84,7 +83,16 @@ public class AIWizardTableDDLDefinitionService {
      * @return SQL CREATE TABLE statement with constraints and CREATE INDEX statements
      */
     public String getTableDDLAsString(String tableName) {
-        TableDDLDefinition def = getTableDDLDefinition(tableName);
+        return getTableDDLAsString(getTableDDLDefinition(tableName));
+    }
+
+    /**
+     * Returns an already loaded table definition as a SQL CREATE TABLE statement.
+     *
+     * @param def table definition, e.g. from getTableDDLDefinitions
+     * @return SQL CREATE TABLE statement with constraints and CREATE INDEX statements
+     */
+    public String getTableDDLAsString(TableDDLDefinition def) {
         StringBuilder sb = new StringBuilder();
 
         // === CREATE TABLE header ===
@@ -204,7 +212,16 @@ public class AIWizardTableDDLDefinitionService {
      * @return formatted string with all table metadata
      */
     public String getTableMetadataAsString(String tableName) {
-        TableDDLDefinition def = getTableDDLDefinition(tableName);
+        return getTableMetadataAsString(getTableDDLDefinition(tableName));
+    }
+
+    /**
+     * Returns an already loaded table definition as a human-readable formatted string.
+     *
+     * @param def table definition, e.g. from getTableDDLDefinitions
+     * @return formatted string with all table metadata
+     */
+    public String getTableMetadataAsString(TableDDLDefinition def) {
         StringBuilder sb = new StringBuilder();
 
         // === Header section ===
@@ -284,220 +301,17 @@ public class AIWizardTableDDLDefinitionService {
         return sb.toString();
     }
 
-    /**
-     * Finds actual table name with case-insensitive search.
-     * Tries exact match, then uppercase, then lowercase.
-     * Handles databases with different case sensitivity (PostgreSQL vs MySQL vs Oracle).
-     */
-    private String findActualTableName(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        // Try exact match first
-        try (ResultSet rs = metaData.getTables(catalog, schema, tableName, new String[]{"TABLE"})) {
-            if (rs.next()) {
-                return rs.getString("TABLE_NAME");
-            }
-        }
-
-        // Try uppercase (Oracle, H2 default)
-        try (ResultSet rs = metaData.getTables(catalog, schema, tableName.toUpperCase(), new String[]{"TABLE"})) {
-            if (rs.next()) {
-                return rs.getString("TABLE_NAME");
-            }
-        }
-
-        // Try lowercase (PostgreSQL default)
-        try (ResultSet rs = metaData.getTables(catalog, schema, tableName.toLowerCase(), new String[]{"TABLE"})) {
-            if (rs.next()) {
-                return rs.getString("TABLE_NAME");
-            }
-        }
-
-        return null;  // Table not found
-    }
-
-    /**
-     * Extracts column definitions from table metadata.
-     * Returns columns sorted by ordinal position (as defined in table).
-     */
-    private List<ColumnDefinition> getColumns(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        List<ColumnDefinition> columns = new ArrayList<>();
-
-        // Query all columns (% = wildcard for column name)
-        try (ResultSet rs = metaData.getColumns(catalog, schema, tableName, "%")) {
-            while (rs.next()) {
-                columns.add(new ColumnDefinition(
-                        rs.getString("COLUMN_NAME"),
-                        rs.getString("TYPE_NAME"),                               // SQL type name (VARCHAR, INTEGER, etc.)
-                        rs.getInt("DATA_TYPE"),                                  // java.sql.Types constant
-                        getIntOrNull(rs, "COLUMN_SIZE"),                         // Length/precision
-                        getIntOrNull(rs, "DECIMAL_DIGITS"),                      // Scale for decimals
-                        rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable,
-                        rs.getString("COLUMN_DEF"),                              // Default value expression
-                        rs.getInt("ORDINAL_POSITION"),                           // Column order in table
-                        rs.getString("REMARKS"),                                 // Column comment
-                        "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"))
-                ));
-            }
-        }
-
-        // Sort by ordinal position to match table definition order
-        columns.sort(Comparator.comparing(ColumnDefinition::ordinalPosition));
-        return columns;
-    }
-
-    /**
-     * Extracts primary key definition including composite keys.
-     * Returns null if table has no primary key.
-     */
-    private PrimaryKeyDefinition getPrimaryKey(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        List<String> columns = new ArrayList<>();
-        String pkName = null;
-
-        try (ResultSet rs = metaData.getPrimaryKeys(catalog, schema, tableName)) {
-            // Use TreeMap to maintain column order for composite keys
-            Map<Integer, String> orderedColumns = new TreeMap<>();
-            while (rs.next()) {
-                pkName = rs.getString("PK_NAME");
-                int keySeq = rs.getInt("KEY_SEQ");      // Position in composite key (1-based)
-                String columnName = rs.getString("COLUMN_NAME");
-                orderedColumns.put(keySeq, columnName);
-            }
-            columns.addAll(orderedColumns.values());
-        }
-
-        if (columns.isEmpty()) {
-            return null;
-        }
-
-        return new PrimaryKeyDefinition(pkName, columns);
-    }
-
-    /**
-     * Extracts foreign key definitions (imported keys = FK columns in this table).
-     */
-    private List<ForeignKeyDefinition> getForeignKeys(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        List<ForeignKeyDefinition> foreignKeys = new ArrayList<>();
-
-        // getImportedKeys returns FKs where this table is the child (referencing) table
-        try (ResultSet rs = metaData.getImportedKeys(catalog, schema, tableName)) {
-            while (rs.next()) {
-                foreignKeys.add(new ForeignKeyDefinition(
-                        rs.getString("FK_NAME"),           // Constraint name
-                        rs.getString("FKCOLUMN_NAME"),     // Column in this table
-                        rs.getString("PKTABLE_SCHEM"),     // Referenced table's schema
-                        rs.getString("PKTABLE_NAME"),      // Referenced table
-                        rs.getString("PKCOLUMN_NAME"),     // Referenced column
-                        mapReferentialAction(rs.getInt("DELETE_RULE")),  // ON DELETE action
-                        mapReferentialAction(rs.getInt("UPDATE_RULE"))   // ON UPDATE action
-                ));
-            }
-        }
-
-        return foreignKeys;
-    }
-
-    /**
-     * Extracts all index definitions including composite indexes.
-     * Uses LinkedHashMap to preserve index discovery order.
-     */
-    private List<IndexDefinition> getIndexes(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        Map<String, IndexDefinition> indexMap = new LinkedHashMap<>();
-
-        // Parameters: unique=false (get all indexes), approximate=false (accurate stats)
-        try (ResultSet rs = metaData.getIndexInfo(catalog, schema, tableName, false, false)) {
-            while (rs.next()) {
-                String indexName = rs.getString("INDEX_NAME");
-                if (indexName == null) {
-                    continue;  // Skip table statistics rows
-                }
-
-                String columnName = rs.getString("COLUMN_NAME");
-                boolean unique = !rs.getBoolean("NON_UNIQUE");  // Note: inverted logic
-                String ascDesc = rs.getString("ASC_OR_DESC");   // A=ascending, D=descending, null=unsorted
-
-                // Handle composite indexes (multiple columns per index)
-                IndexDefinition existing = indexMap.get(indexName);
-                if (existing != null) {
-                    existing.columns().add(columnName);  // Add column to existing index
-                } else {
-                    List<String> columns = new ArrayList<>();
-                    columns.add(columnName);
-                    indexMap.put(indexName, new IndexDefinition(indexName, columns, unique, ascDesc));
-                }
-            }
-        }
-
-        return new ArrayList<>(indexMap.values());
-    }
-
-    /**
-     * Extracts unique constraints (excluding primary key).
-     * Derived from unique indexes, filtering out PK-related indexes.
-     */
-    private List<UniqueConstraintDefinition> getUniqueConstraints(DatabaseMetaData metaData, String catalog, String schema, String tableName) throws SQLException {
-        Map<String, UniqueConstraintDefinition> constraintMap = new LinkedHashMap<>();
-
-        // Query unique indexes only
-        try (ResultSet rs = metaData.getIndexInfo(catalog, schema, tableName, true, false)) {
-            while (rs.next()) {
-                String indexName = rs.getString("INDEX_NAME");
-                if (indexName == null) {
-                    continue;
-                }
-
-                // Skip primary key indexes (naming convention varies by database)
-                if (indexName.toLowerCase().contains("pkey") || indexName.toLowerCase().contains("pk_")) {
-                    continue;
-                }
-
-                String columnName = rs.getString("COLUMN_NAME");
-
-                // Handle composite unique constraints
-                UniqueConstraintDefinition existing = constraintMap.get(indexName);
-                if (existing != null) {
-                    existing.columns().add(columnName);
-                } else {
-                    List<String> columns = new ArrayList<>();
-                    columns.add(columnName);
-                    constraintMap.put(indexName, new UniqueConstraintDefinition(indexName, columns));
-                }
-            }
-        }
-
-        return new ArrayList<>(constraintMap.values());
-    }
-
-    /**
-     * Maps JDBC referential action constants to SQL keywords.
-     */
-    private String mapReferentialAction(int action) {
-        return switch (action) {
-            case DatabaseMetaData.importedKeyCascade -> "CASCADE";
-            case DatabaseMetaData.importedKeySetNull -> "SET NULL";
-            case DatabaseMetaData.importedKeySetDefault -> "SET DEFAULT";
-            case DatabaseMetaData.importedKeyRestrict -> "RESTRICT";
-            default -> "NO ACTION";
-        };
-    }
-
     /**
      * Determines if a SQL type needs size specification in DDL.
      * Returns true for character types, numeric types with precision, and binary types.
      */
-    private boolean needsSize(String typeName) {
+    static boolean needsSize(String typeName) {
         String upper = typeName.toUpperCase();
         return upper.contains("CHAR") || upper.contains("VARCHAR") ||
                 upper.contains("NUMERIC") || upper.contains("DECIMAL") ||
                 upper.contains("BINARY") || upper.contains("VARBINARY");
     }
 
-    /**
-     * Safely reads integer column, returning null if database value was NULL.
-     */
-    private Integer getIntOrNull(ResultSet rs, String columnName) throws SQLException {
-        int value = rs.getInt(columnName);
-        return rs.wasNull() ? null : value;
-    }
-
     // ==================== Record Definitions ====================
 
     /**
@@ -0,0 +1,179 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardHistory;
+import io.jmix.core.DataManager;
+import io.jmix.core.entity.KeyValueEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Token usage and cost accounting for AI Wizard requests.
+ * Each AIWizardHistory row stores the provider, model, token counts, latency and estimated cost
+ * of the call that produced it; this service fills those columns and aggregates them
+ * per day, user and template for the AI Wizard usage view.
+ *
+ * Cost is an estimate from the configured list prices. Responses served from the cache
+ * cost nothing; rows without reported token counts have no cost.
+ *
+ * Configuration (USD per million tokens):
+ * - aiwizard.usage.openai.input-price: OpenAI prompt token price (default 0.15, gpt-4o-mini)
+ * - aiwizard.usage.openai.output-price: OpenAI completion token price (default 0.60)
+ * - aiwizard.usage.gemini.input-price: Gemini prompt token price (default 0.10, gemini-2.0-flash)
+ * - aiwizard.usage.gemini.output-price: Gemini completion token price (default 0.40)
+ */
+@Service("aiwizard_AIWizardUsageService")
+public class AIWizardUsageService {
+
+    private static final BigDecimal MILLION = BigDecimal.valueOf(1_000_000);
+
+    @Value("${aiwizard.usage.openai.input-price:0.15}")
+    private BigDecimal openAiInputPrice;
+
+    @Value("${aiwizard.usage.openai.output-price:0.60}")
+    private BigDecimal openAiOutputPrice;
+
+    @Value("${aiwizard.usage.gemini.input-price:0.10}")
+    private BigDecimal geminiInputPrice;
+
+    @Value("${aiwizard.usage.gemini.output-price:0.40}")
+    private BigDecimal geminiOutputPrice;
+
+    private final DataManager dataManager;
+
+    /**
+     * Constructor injection for required dependencies.
+     */
+    public AIWizardUsageService(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Copies provider, model, token usage, latency and estimated cost of a generation to a history row.
+     */
+    public void applyUsage(AIWizardHistory history, UnifiedAIService.Generation generation) {
+        history.setProvider(generation.provider());
+        history.setModel(generation.model());
+        history.setPromptTokens(generation.promptTokens());
+        history.setCompletionTokens(generation.completionTokens());
+        history.setLatencyMs(generation.latencyMillis());
+        history.setCached(generation.cached());
+        history.setEstimatedCost(estimateCost(generation));
+    }
+
+    /**
+     * Estimates the cost of a generation in USD.
+     *
+     * @return zero for cached responses, null when the provider reported no token counts
+     */
+    public BigDecimal estimateCost(UnifiedAIService.Generation generation) {
+        if (generation.cached()) {
+            return BigDecimal.ZERO;
+        }
+        return estimateCost(generation.provider(), generation.promptTokens(), generation.completionTokens());
+    }
+
+    /**
+     * Estimates the cost of a provider call in USD.
+     *
+     * @return the estimated cost, or null when both token counts are unknown
+     */
+    public BigDecimal estimateCost(AIWizardConnection provider, Integer promptTokens, Integer completionTokens) {
+        if (provider == null || (promptTokens == null && completionTokens == null)) {
+            return null;
+        }
+        boolean openAi = provider == AIWizardConnection.OPENAI;
+        BigDecimal input = price(openAi ? openAiInputPrice : geminiInputPrice, promptTokens);
+        BigDecimal output = price(openAi ? openAiOutputPrice : geminiOutputPrice, completionTokens);
+        return input.add(output).setScale(6, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal price(BigDecimal pricePerMillion, Integer tokens) {
+        if (tokens == null) {
+            return BigDecimal.ZERO;
+        }
+        return pricePerMillion.multiply(BigDecimal.valueOf(tokens)).divide(MILLION, 9, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Aggregates history usage per day, user and template in the database.
+     * Runs one grouped query per calendar day, so that days are counted in the given zone
+     * rather than in the database's time zone.
+     *
+     * @param from first day, inclusive
+     * @param to   last day, inclusive
+     * @param zone zone in which calendar days are counted
+     * @return one row per day, user and template; newest day first, then by cost
+     */
+    public List<UsageSummary> summarize(LocalDate from, LocalDate to, ZoneId zone) {
+        List<UsageSummary> result = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            result.addAll(summarizeDay(day, zone));
+        }
+        result.sort(Comparator.comparing(UsageSummary::day).reversed()
+                .thenComparing(UsageSummary::estimatedCost, Comparator.reverseOrder()));
+        return result;
+    }
+
+    private List<UsageSummary> summarizeDay(LocalDate day, ZoneId zone) {
+        List<KeyValueEntity> rows = dataManager.loadValues(
+                        "select h.createdBy, t.name, count(h), "
+                                + "sum(case when h.cached = true then 1 else 0 end), "
+                                + "sum(h.promptTokens), sum(h.completionTokens), sum(h.estimatedCost), sum(h.latencyMs) "
+                                + "from AIWizardHistory h left join h.aiWizardPromptTemplate t "
+                                + "where h.createdDate >= :start and h.createdDate < :end "
+                                + "group by h.createdBy, t.name")
+                .properties("createdBy", "template", "requests", "cachedRequests", "promptTokens",
+                        "completionTokens", "estimatedCost", "latencyMs")
+                .parameter("start", day.atStartOfDay(zone).toOffsetDateTime())
+                .parameter("end", day.plusDays(1).atStartOfDay(zone).toOffsetDateTime())
+                .list();
+
+        List<UsageSummary> summaries = new ArrayList<>(rows.size());
+        for (KeyValueEntity row : rows) {
+            long requests = valueOrZero(row.getValue("requests"));
+            BigDecimal cost = row.getValue("estimatedCost");
+            summaries.add(new UsageSummary(
+                    day,
+                    Objects.requireNonNullElse(row.getValue("createdBy"), ""),
+                    Objects.requireNonNullElse(row.getValue("template"), ""),
+                    requests,
+                    valueOrZero(row.getValue("cachedRequests")),
+                    valueOrZero(row.getValue("promptTokens")),
+                    valueOrZero(row.getValue("completionTokens")),
+                    cost == null ? BigDecimal.ZERO : cost,
+                    requests == 0 ? 0 : valueOrZero(row.getValue("latencyMs")) / requests));
+        }
+        return summaries;
+    }
+
+    private static long valueOrZero(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Usage of one user with one template on one day.
+     */
+    public record UsageSummary(
+            LocalDate day,
+            String username,
+            String template,             // Template name, empty for rows without a template
+            long requests,
+            long cachedRequests,         // Requests answered from the response cache
+            long promptTokens,
+            long completionTokens,
+            BigDecimal estimatedCost,    // USD, see AIWizardUsageService.estimateCost
+            long averageLatencyMs
+    ) {}
+}
@@ -1,10 +1,14 @@
 package com.company.aiwizard.service;
 
+import com.company.aiwizard.ai.AIWizardHttpTransport;
+import com.company.aiwizard.entity.AIWizardConnection;
 import com.google.genai.Client;
 import com.google.genai.types.Content;
 import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.HttpOptions;
 import com.google.genai.types.Part;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -12,6 +16,7 @@ import javax.annotation.PostConstruct;
 
 /**
  * Service for interacting with Google's Gemini AI API.
+ * Transient failures are retried by AIWizardRetryPolicy.
  *
  * Required configuration:
  * - gemini.api-key: Your Google Gemini API key
@@ -28,6 +33,14 @@ public class GeminiService {
     @Value("${gemini.model:gemini-2.5-flash-lite}")
     private String modelName;
 
+    /** Shared transport settings (timeouts). */
+    @Autowired
+    private AIWizardHttpTransport httpTransport;
+
+    /** Retries rate limited and failed calls. */
+    @Autowired
+    private AIWizardRetryPolicy retryPolicy;
+
     /** Gemini API client, initialized in init(). */
     private Client client;
 
@@ -40,6 +53,9 @@ public class GeminiService {
         if (apiKey != null && !apiKey.isBlank()) {
             client = Client.builder()
                     .apiKey(apiKey)
+                    .httpOptions(HttpOptions.builder()
+                            .timeout(Math.toIntExact(httpTransport.getReadTimeout().toMillis()))
+                            .build())
                     .build();
         }
     }
@@ -57,7 +73,8 @@ public class GeminiService {
         }
 
         // Pass null for config since no additional options are needed
-        GenerateContentResponse response = client.models.generateContent(modelName, prompt, null);
+        GenerateContentResponse response = retryPolicy.execute(AIWizardConnection.GEMINI,
+                () -> client.models.generateContent(modelName, prompt, null));
         return response.text();
     }
 
@@ -83,7 +100,8 @@ public class GeminiService {
                 .systemInstruction(sysContent)
                 .build();
 
-        GenerateContentResponse response = client.models.generateContent(modelName, prompt, config);
+        GenerateContentResponse response = retryPolicy.execute(AIWizardConnection.GEMINI,
+                () -> client.models.generateContent(modelName, prompt, config));
         return response.text();
     }
 }
\ No newline at end of file
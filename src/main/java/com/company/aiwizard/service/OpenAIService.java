@@ -1,9 +1,12 @@
 package com.company.aiwizard.service;
 
+import com.company.aiwizard.ai.AIWizardHttpTransport;
+import com.company.aiwizard.entity.AIWizardConnection;
 import com.openai.client.OpenAIClient;
 import com.openai.client.okhttp.OpenAIOkHttpClient;
 import com.openai.models.chat.completions.ChatCompletion;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -11,6 +14,7 @@ import javax.annotation.PostConstruct;
 
 /**
  * Service for interacting with OpenAI's Chat Completions API.
+ * Transient failures are retried by AIWizardRetryPolicy (the SDK's own retries are disabled).
  *
  * Required configuration:
  * - openai.api-key: Your OpenAI API key
@@ -27,6 +31,14 @@ public class OpenAIService {
     @Value("${openai.model:gpt-4o-mini}")
     private String modelName;
 
+    /** Shared transport settings (timeouts). */
+    @Autowired
+    private AIWizardHttpTransport httpTransport;
+
+    /** Retries rate limited and failed calls. */
+    @Autowired
+    private AIWizardRetryPolicy retryPolicy;
+
     /** OpenAI API client, initialized in init(). */
     private OpenAIClient client;
 
@@ -39,6 +51,8 @@ public class OpenAIService {
         if (apiKey != null && !apiKey.isBlank()) {
             client = OpenAIOkHttpClient.builder()
                     .apiKey(apiKey)
+                    .timeout(httpTransport.getReadTimeout())
+                    .maxRetries(0)
                     .build();
         }
     }
@@ -61,7 +75,8 @@ public class OpenAIService {
                 .model(modelName)
                 .build();
 
-        ChatCompletion completion = client.chat().completions().create(params);
+        ChatCompletion completion = retryPolicy.execute(AIWizardConnection.OPENAI,
+                () -> client.chat().completions().create(params));
 
         // Extract text from the first choice, or return fallback message
         return completion.choices().stream()
@@ -91,7 +106,8 @@ public class OpenAIService {
                 .model(modelName)
                 .build();
 
-        ChatCompletion completion = client.chat().completions().create(params);
+        ChatCompletion completion = retryPolicy.execute(AIWizardConnection.OPENAI,
+                () -> client.chat().completions().create(params));
 
         // Extract text from the first choice, or return fallback message
         return completion.choices().stream()
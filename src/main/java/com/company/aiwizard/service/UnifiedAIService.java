@@ -1,18 +1,43 @@
 package com.company.aiwizard.service;
 
 import com.company.aiwizard.entity.AIWizardConnection;
+import io.jmix.core.security.CurrentAuthentication;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Unified AI service that supports multiple providers via Spring AI.
+ * Responses are served from AIWizardResponseCache when an identical request
+ * (provider, model, temperature, system instruction, prompt) was answered before.
+ * Calls are routed through AIWizardProviderRouter, which fails over to the fallback
+ * provider, hedges slow requests and skips providers whose circuit breaker is open.
+ * Latency, errors, cache lookups, text sizes and token usage are recorded in AIWizardMetrics.
+ * Identical requests made while one is in flight share its provider call (AIWizardRequestCoalescer).
+ * Calls that are not served from the cache pass AIWizardRateLimiter first: every caller its own user
+ * limit, also when it shares a call in flight, and the call that reaches a provider that provider's limit.
+ * Transient provider failures (429, 5xx, network) are retried by AIWizardRetryPolicy before failing over.
+ * Route based calls return a Generation with the answering provider, model, token usage and
+ * latency, which the AI Wizard stores on the AIWizardHistory row.
+ *
  * Required configuration (set Gemini at least):
  * - spring.ai.gemini.api-key: Google Gemini API key
  * - spring.ai.openai.api-key: OpenAI API key
@@ -32,6 +57,40 @@ public class UnifiedAIService {
     @Qualifier("geminiChatClient")
     private ChatClient geminiClient;
 
+    @Autowired
+    private AIWizardResponseCache responseCache;
+
+    @Autowired
+    private AIWizardProviderRouter providerRouter;
+
+    @Autowired
+    private AIWizardMetrics metrics;
+
+    @Autowired
+    private AIWizardRequestCoalescer coalescer;
+
+    @Autowired
+    private AIWizardRateLimiter rateLimiter;
+
+    @Autowired
+    private AIWizardRetryPolicy retryPolicy;
+
+    @Autowired
+    private CurrentAuthentication currentAuthentication;
+
+    /** Model names and temperatures, part of the cache key (same properties as AIWizardClientConfiguration). */
+    @Value("${spring.ai.openai.chat.options.model:gpt-4o-mini}")
+    private String openAiModel;
+
+    @Value("${spring.ai.openai.chat.options.temperature:0.1}")
+    private Double openAiTemperature;
+
+    @Value("${spring.ai.gemini.model:gemini-2.0-flash}")
+    private String geminiModel;
+
+    @Value("${spring.ai.gemini.temperature:0.1}")
+    private Double geminiTemperature;
+
     @PostConstruct
     private void init() {
         if (openAiClient != null) {
@@ -71,6 +130,13 @@ public class UnifiedAIService {
         return chatClients.keySet().stream().findFirst();
     }
 
+    /**
+     * Returns the model name configured for a provider.
+     */
+    public String getModelName(AIWizardConnection provider) {
+        return provider == AIWizardConnection.OPENAI ? openAiModel : geminiModel;
+    }
+
     /**
      * Generates content using a simple prompt.
      *
@@ -80,19 +146,7 @@ public class UnifiedAIService {
      * @throws IllegalStateException if provider not configured
      */
     public String generateContent(String prompt, AIWizardConnection provider) {
-        ChatClient client = getClientOrThrow(provider);
-
-        log.debug("Generating content with {}", provider);
-
-        try {
-            return client.prompt()
-                    .user(prompt)
-                    .call()
-                    .content();
-        } catch (Exception e) {
-            log.error("Error generating content with {}: {}", provider, e.getMessage());
-            throw new RuntimeException("Failed to generate content: " + e.getMessage(), e);
-        }
+        return generateContent(prompt, null, provider, true);
     }
 
     /**
@@ -106,20 +160,109 @@ public class UnifiedAIService {
      * @throws IllegalStateException if provider not configured
      */
     public String generateContent(String prompt, String systemInstruction, AIWizardConnection provider) {
-        ChatClient client = getClientOrThrow(provider);
+        return generateContent(prompt, systemInstruction, provider, true);
+    }
 
-        log.debug("Generating content with {} using system instruction", provider);
+    /**
+     * Generates content with a prompt and optional system instruction,
+     * optionally bypassing the response cache (e.g. for templates that opted out).
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param provider          the AI provider to use
+     * @param useCache          false to always call the model and not store the response
+     * @return the generated text response
+     * @throws IllegalStateException if provider not configured
+     */
+    public String generateContent(String prompt, String systemInstruction, AIWizardConnection provider,
+                                  boolean useCache) {
+        return generateContent(prompt, systemInstruction, providerRouter.routeFor(provider), useCache).text();
+    }
 
-        try {
-            return client.prompt()
-                    .system(systemInstruction)
-                    .user(prompt)
-                    .call()
-                    .content();
-        } catch (Exception e) {
-            log.error("Error generating content with {}: {}", provider, e.getMessage());
-            throw new RuntimeException("Failed to generate content: " + e.getMessage(), e);
+    /**
+     * Generates content along a route: the primary provider, with failover and optional
+     * hedging to the fallback provider. The response is cached under the provider that answered.
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param route             primary and fallback providers, see AIWizardProviderRouter.routeFor
+     * @param useCache          false to always call the model and not store the response
+     * @return the generated response with the provider that answered and its usage
+     * @throws IllegalStateException      if the primary provider is not configured
+     * @throws AIWizardRateLimitException if a rate limit or quota rejects the request
+     */
+    public Generation generateContent(String prompt, String systemInstruction, AIWizardProviderRouter.Route route,
+                                      boolean useCache) {
+        getClientOrThrow(route.primary());
+
+        long start = System.nanoTime();
+        String cacheKey = useCache ? cacheKey(prompt, systemInstruction, route.primary()) : null;
+        if (cacheKey != null) {
+            Optional<String> cached = responseCache.get(cacheKey);
+            metrics.recordCacheLookup(route.primary(), cached.isPresent());
+            if (cached.isPresent()) {
+                log.debug("Cache hit for {} request", route.primary());
+                return cachedGeneration(cached.get(), route.primary(), start);
+            }
         }
+
+        // Each caller passes its own user limit, also when it then joins an identical call in flight
+        String username = currentUsername();
+        int estimatedTokens = rateLimiter.estimateTokens(prompt, systemInstruction);
+        rateLimiter.acquireUser(username, estimatedTokens);
+
+        AIWizardRequestCoalescer.Shared<Generation> shared = coalescer.execute(route.primary(),
+                requestKey(prompt, systemInstruction, route.primary()), null,
+                chunks -> callProviders(prompt, systemInstruction, route, useCache, start, username, estimatedTokens));
+        return shared.coalesced() ? coalescedGeneration(shared.value(), start) : shared.value();
+    }
+
+    /**
+     * Makes the provider call of a request: provider rate limits, routing, retries, usage and cache store.
+     * The user limit was acquired by the caller.
+     */
+    private Generation callProviders(String prompt, String systemInstruction, AIWizardProviderRouter.Route route,
+                                     boolean useCache, long start, String username, int estimatedTokens) {
+        return providerRouter.execute(availableRoute(route), provider -> {
+            log.debug("Generating content with {}", provider);
+
+            String result;
+            Usage usage;
+            try {
+                ChatResponse response = retryPolicy.execute(provider, () -> {
+                    // Every attempt, retries included, is a provider request
+                    rateLimiter.acquireProvider(provider, estimatedTokens);
+                    try {
+                        return createRequest(getClientOrThrow(provider), prompt, systemInstruction)
+                                .call()
+                                .chatResponse();
+                    } catch (RuntimeException e) {
+                        rateLimiter.releaseProvider(provider, estimatedTokens);
+                        throw e;
+                    }
+                });
+                result = textOf(response);
+                usage = usageOf(response);
+                recordCompleted(provider, route.template(), start, prompt, result, usage);
+                rateLimiter.recordUsage(username, provider, estimatedTokens,
+                        usedTokens(usage, estimatedTokens, result));
+            } catch (AIWizardRateLimitException e) {
+                // Throttled locally, the router fails over without counting a provider failure
+                throw e;
+            } catch (Exception e) {
+                recordFailed(provider, route.template(), start, e);
+                log.error("Error generating content with {}: {}", provider, e.getMessage());
+                throw new RuntimeException("Failed to generate content: " + e.getMessage(), e);
+            }
+
+            if (useCache) {
+                String providerCacheKey = cacheKey(prompt, systemInstruction, provider);
+                if (providerCacheKey != null) {
+                    responseCache.put(providerCacheKey, provider, getModelName(provider), result);
+                }
+            }
+            return generation(result, provider, usage, start);
+        });
     }
 
     /**
@@ -148,6 +291,311 @@ public class UnifiedAIService {
         return generateContent(prompt, systemInstruction, provider);
     }
 
+    /**
+     * Streams generated content as it is produced by the model.
+     * Each emitted element is the next chunk (a few tokens) of the response.
+     * The request is sent when the returned Flux is subscribed to.
+     * Streaming bypasses the response cache; use generateContentStream for cached streaming.
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param provider          the AI provider to use
+     * @return flux of response chunks in arrival order
+     * @throws IllegalStateException if provider not configured
+     */
+    public Flux<String> streamContent(String prompt, String systemInstruction, AIWizardConnection provider) {
+        return streamContent(prompt, systemInstruction, provider, null, new AtomicReference<>(), null);
+    }
+
+    /**
+     * Streams generated content, recording latency, sizes and token usage when the stream ends.
+     *
+     * @param template       template name for metrics (nullable)
+     * @param usage          receives the token usage reported with the stream
+     * @param reservedTokens tokens each attempt, retries included, reserves from the provider rate limit;
+     *                       null if the stream is not rate limited
+     */
+    private Flux<String> streamContent(String prompt, String systemInstruction, AIWizardConnection provider,
+                                       String template, AtomicReference<Usage> usage, Integer reservedTokens) {
+        ChatClient client = getClientOrThrow(provider);
+
+        log.debug("Streaming content with {}", provider);
+
+        AtomicLong start = new AtomicLong();
+        StringBuilder response = new StringBuilder();
+        return retryPolicy.retryStream(provider, () -> rateLimited(provider, reservedTokens,
+                        Flux.defer(() -> createRequest(client, prompt, systemInstruction)
+                                .stream()
+                                .chatResponse())))
+                .doOnSubscribe(subscription -> start.set(System.nanoTime()))
+                .doOnNext(chunk -> {
+                    Usage chunkUsage = usageOf(chunk);
+                    if (chunkUsage != null && chunkUsage.getPromptTokens() != null
+                            && chunkUsage.getPromptTokens() > 0) {
+                        usage.set(chunkUsage);
+                    }
+                })
+                .mapNotNull(this::textOf)
+                .filter(text -> !text.isEmpty())
+                .doOnNext(response::append)
+                .doOnComplete(() -> recordCompleted(provider, template, start.get(), prompt,
+                        response.toString(), usage.get()))
+                .doOnCancel(() -> metrics.recordLlmCall(provider, getModelName(provider), template, "cancelled",
+                        Duration.ofNanos(System.nanoTime() - start.get())))
+                .doOnError(e -> !(e instanceof AIWizardRateLimitException), e -> {
+                    recordFailed(provider, template, start.get(), e);
+                    log.error("Error streaming content with {}: {}", provider, e.getMessage());
+                });
+    }
+
+    /**
+     * Acquires the provider rate limit before subscribing to one stream attempt.
+     * The reservation is returned if the attempt fails before its first chunk.
+     * The limiter may wait, and retries are resubscribed on a timer thread that must not block,
+     * so the limit is acquired on a bounded elastic thread.
+     */
+    private Flux<ChatResponse> rateLimited(AIWizardConnection provider, Integer reservedTokens,
+                                           Flux<ChatResponse> attempt) {
+        if (reservedTokens == null) {
+            return attempt;
+        }
+        AtomicBoolean answered = new AtomicBoolean();
+        return Mono.fromRunnable(() -> rateLimiter.acquireProvider(provider, reservedTokens))
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenMany(attempt
+                        .doOnNext(chunk -> answered.set(true))
+                        .doOnError(e -> {
+                            if (!answered.get()) {
+                                rateLimiter.releaseProvider(provider, reservedTokens);
+                            }
+                        }));
+    }
+
+    /**
+     * Generates content while passing each response chunk to a consumer as soon as it arrives.
+     * Blocks the calling thread until the response is complete, so call it from a background thread.
+     * Lets the UI render partial output: time to first token is much shorter than total latency.
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param provider          the AI provider to use
+     * @param onChunk           receives each chunk in arrival order, called on a reactor thread
+     * @return the complete generated text response
+     * @throws IllegalStateException if provider not configured
+     */
+    public String generateContentStream(String prompt,
+                                        String systemInstruction,
+                                        AIWizardConnection provider,
+                                        Consumer<String> onChunk) {
+        return generateContentStream(prompt, systemInstruction, provider, true, onChunk);
+    }
+
+    /**
+     * Streaming variant of {@link #generateContent(String, String, AIWizardConnection, boolean)}.
+     * On a cache hit the whole cached response is passed to the consumer as a single chunk.
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param provider          the AI provider to use
+     * @param useCache          false to always call the model and not store the response
+     * @param onChunk           receives each chunk in arrival order
+     * @return the complete generated text response
+     * @throws IllegalStateException if provider not configured
+     */
+    public String generateContentStream(String prompt,
+                                        String systemInstruction,
+                                        AIWizardConnection provider,
+                                        boolean useCache,
+                                        Consumer<String> onChunk) {
+        return generateContentStream(prompt, systemInstruction, providerRouter.routeFor(provider), useCache, onChunk)
+                .text();
+    }
+
+    /**
+     * Streaming variant of {@link #generateContent(String, String, AIWizardProviderRouter.Route, boolean)}.
+     * Fails over to the fallback provider only while no chunk has been delivered; never hedged.
+     *
+     * @param prompt            the user prompt to send to the model
+     * @param systemInstruction behavioral guidelines for the model (nullable)
+     * @param route             primary and fallback providers, see AIWizardProviderRouter.routeFor
+     * @param useCache          false to always call the model and not store the response
+     * @param onChunk           receives each chunk in arrival order
+     * @return the complete generated response with the provider that answered and its usage
+     * @throws IllegalStateException      if the primary provider is not configured
+     * @throws AIWizardRateLimitException if a rate limit or quota rejects the request
+     */
+    public Generation generateContentStream(String prompt,
+                                            String systemInstruction,
+                                            AIWizardProviderRouter.Route route,
+                                            boolean useCache,
+                                            Consumer<String> onChunk) {
+        getClientOrThrow(route.primary());
+
+        long start = System.nanoTime();
+        String cacheKey = useCache ? cacheKey(prompt, systemInstruction, route.primary()) : null;
+        if (cacheKey != null) {
+            Optional<String> cached = responseCache.get(cacheKey);
+            metrics.recordCacheLookup(route.primary(), cached.isPresent());
+            if (cached.isPresent()) {
+                log.debug("Cache hit for {} streaming request", route.primary());
+                onChunk.accept(cached.get());
+                return cachedGeneration(cached.get(), route.primary(), start);
+            }
+        }
+
+        String username = currentUsername();
+        int estimatedTokens = rateLimiter.estimateTokens(prompt, systemInstruction);
+        rateLimiter.acquireUser(username, estimatedTokens);
+
+        AIWizardRequestCoalescer.Shared<Generation> shared = coalescer.execute(route.primary(),
+                requestKey(prompt, systemInstruction, route.primary()), onChunk,
+                chunks -> streamProviders(prompt, systemInstruction, route, useCache, start, username,
+                        estimatedTokens, chunks));
+        return shared.coalesced() ? coalescedGeneration(shared.value(), start) : shared.value();
+    }
+
+    /**
+     * Makes the streaming provider call of a request, see callProviders.
+     */
+    private Generation streamProviders(String prompt, String systemInstruction, AIWizardProviderRouter.Route route,
+                                       boolean useCache, long start, String username, int estimatedTokens,
+                                       Consumer<String> onChunk) {
+        AIWizardConnection[] answeredBy = new AIWizardConnection[1];
+        AtomicReference<Usage> usage = new AtomicReference<>();
+        String result;
+        try {
+            result = providerRouter.executeStream(availableRoute(route), provider -> {
+                answeredBy[0] = provider;
+                usage.set(null);
+                return streamContent(prompt, systemInstruction, provider, route.template(), usage,
+                        estimatedTokens);
+            }, onChunk);
+        } catch (IllegalStateException | AIWizardRateLimitException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to generate content: " + e.getMessage(), e);
+        }
+        rateLimiter.recordUsage(username, answeredBy[0], estimatedTokens,
+                usedTokens(usage.get(), estimatedTokens, result));
+
+        if (useCache) {
+            String providerCacheKey = cacheKey(prompt, systemInstruction, answeredBy[0]);
+            if (providerCacheKey != null) {
+                responseCache.put(providerCacheKey, answeredBy[0], getModelName(answeredBy[0]), result);
+            }
+        }
+        return generation(result, answeredBy[0], usage.get(), start);
+    }
+
+    /**
+     * Drops the fallback from a route when that provider is not configured.
+     */
+    private AIWizardProviderRouter.Route availableRoute(AIWizardProviderRouter.Route route) {
+        return route.fallback() == null || isProviderAvailable(route.fallback())
+                ? route
+                : route.withFallback(null);
+    }
+
+    /**
+     * Returns the tokens a call used: as reported by the provider, or estimated from the texts.
+     */
+    private int usedTokens(Usage usage, int promptTokens, String response) {
+        if (usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0) {
+            return usage.getTotalTokens();
+        }
+        return promptTokens + rateLimiter.estimateTokens(response);
+    }
+
+    private String currentUsername() {
+        return currentAuthentication.isSet() ? currentAuthentication.getUser().getUsername() : null;
+    }
+
+    /**
+     * Records metrics of a completed provider call.
+     */
+    private void recordCompleted(AIWizardConnection provider, String template, long startNanos,
+                                 String prompt, String response, Usage usage) {
+        String model = getModelName(provider);
+        metrics.recordLlmCall(provider, model, template, "success", Duration.ofNanos(System.nanoTime() - startNanos));
+        metrics.recordChars(provider, template, prompt, response);
+        if (usage != null) {
+            metrics.recordTokens(provider, model, template, usage.getPromptTokens(), usage.getCompletionTokens());
+        }
+    }
+
+    /**
+     * Records metrics of a failed provider call; calls interrupted by hedging or cancellation
+     * are recorded as cancelled, not as errors.
+     */
+    private void recordFailed(AIWizardConnection provider, String template, long startNanos, Throwable error) {
+        String model = getModelName(provider);
+        boolean cancelled = Thread.currentThread().isInterrupted() || error instanceof InterruptedException
+                || error.getCause() instanceof InterruptedException;
+        metrics.recordLlmCall(provider, model, template, cancelled ? "cancelled" : "error",
+                Duration.ofNanos(System.nanoTime() - startNanos));
+        if (!cancelled) {
+            metrics.recordLlmError(provider, model, error);
+        }
+    }
+
+    private Generation generation(String text, AIWizardConnection provider, Usage usage, long startNanos) {
+        return new Generation(text, provider, getModelName(provider),
+                usage == null ? null : usage.getPromptTokens(),
+                usage == null ? null : usage.getCompletionTokens(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                false);
+    }
+
+    private Generation cachedGeneration(String text, AIWizardConnection provider, long startNanos) {
+        return new Generation(text, provider, getModelName(provider), null, null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), true);
+    }
+
+    /**
+     * A follower's copy of a shared call: the tokens were paid for by the request that made it.
+     */
+    private Generation coalescedGeneration(Generation shared, long startNanos) {
+        return new Generation(shared.text(), shared.provider(), shared.model(), null, null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), true);
+    }
+
+    private String textOf(ChatResponse response) {
+        return response == null || response.getResult() == null || response.getResult().getOutput() == null
+                ? null
+                : response.getResult().getOutput().getText();
+    }
+
+    private Usage usageOf(ChatResponse response) {
+        return response == null || response.getMetadata() == null ? null : response.getMetadata().getUsage();
+    }
+
+    /**
+     * Builds the request spec, adding the system instruction only when present.
+     */
+    private ChatClient.ChatClientRequestSpec createRequest(ChatClient client, String prompt, String systemInstruction) {
+        ChatClient.ChatClientRequestSpec request = client.prompt();
+        if (systemInstruction != null && !systemInstruction.isBlank()) {
+            request = request.system(systemInstruction);
+        }
+        return request.user(prompt);
+    }
+
+    /**
+     * Builds the response cache key for a request, or null if caching is disabled globally.
+     */
+    private String cacheKey(String prompt, String systemInstruction, AIWizardConnection provider) {
+        return responseCache.isEnabled() ? requestKey(prompt, systemInstruction, provider) : null;
+    }
+
+    /**
+     * Builds the key identifying a request: provider, model, temperature, system instruction and prompt.
+     */
+    private String requestKey(String prompt, String systemInstruction, AIWizardConnection provider) {
+        Double temperature = provider == AIWizardConnection.OPENAI ? openAiTemperature : geminiTemperature;
+        String system = systemInstruction == null || systemInstruction.isBlank() ? null : systemInstruction;
+        return AIWizardResponseCache.key(provider, getModelName(provider), temperature, system, prompt);
+    }
+
     private ChatClient getClientOrThrow(AIWizardConnection provider) {
         ChatClient client = chatClients.get(provider);
         if (client == null) {
@@ -157,4 +605,66 @@ public class UnifiedAIService {
         }
         return client;
     }
+
+    // ==================== Utility Methods ====================
+
+    /**
+     * Strips markdown code block formatting from LLM responses.
+     * LLMs often wrap code in markdown fences like:
+     *
+     * ```sql
+     * SELECT * FROM table
+     * ```
+     *
+     * This method removes the opening fence (```sql, ```jpql, ```groovy, etc.)
+     * and the closing fence (```) to extract clean code suitable for
+     * direct insertion into the code editor.
+     *
+     * @param text The raw LLM response potentially containing markdown formatting
+     * @return Clean code without markdown code block wrappers,
+     *         or original text if no formatting found
+     */
+    public static String stripCodeBlockFormatting(String text) {
+        if (text == null || text.isBlank()) {
+            return text;
+        }
+
+        String result = text.trim();
+
+        // Remove opening code fence with optional language identifier
+        // Matches patterns like: ```sql, ```jpql, ```groovy, ```java, ``` (plain)
+        if (result.startsWith("```")) {
+            int firstNewline = result.indexOf('\n');
+            if (firstNewline != -1) {
+                // Remove everything from start to first newline (inclusive)
+                result = result.substring(firstNewline + 1);
+            } else {
+                // No newline found - edge case, just remove the opening fence using regex
+                result = result.replaceFirst("^```\\w*\\s*", "");
+            }
+        }
+
+        // Remove closing code fence if present at the end
+        if (result.endsWith("```")) {
+            result = result.substring(0, result.length() - 3);
+        }
+
+        return result.trim();
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * A generated response with the provider that produced it and what it cost.
+     */
+    public record Generation(
+            String text,
+            AIWizardConnection provider,  // provider that answered (primary unless failed over or hedged)
+            String model,
+            Integer promptTokens,         // as reported by the provider, null if not reported or cached
+            Integer completionTokens,
+            long latencyMillis,           // wall time of the call including failover, or of the cache lookup
+            boolean cached                // no provider call of its own: served from AIWizardResponseCache
+                                          // or shared from an identical call in flight
+    ) {}
 }
\ No newline at end of file
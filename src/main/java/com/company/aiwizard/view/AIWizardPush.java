@@ -0,0 +1,57 @@
+package com.company.aiwizard.view;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+
+import java.util.function.Consumer;
+
+/**
+ * Pushes results of background AI requests to the browser via Vaadin @Push.
+ * Shared by the views that stream LLM output (report AI Wizard, Unified AI sample).
+ */
+public final class AIWizardPush {
+
+    /** Minimum interval between pushes of streamed partial output to the browser */
+    public static final long STREAM_PUSH_INTERVAL_MS = 150;
+
+    private AIWizardPush() {
+    }
+
+    /**
+     * Runs a command on the UI thread with the session lock held and pushes the changes.
+     * Silently skips the update if the user has already navigated away or closed the browser tab.
+     *
+     * @param ui      the UI captured when the request was started
+     * @param command the UI update to perform
+     */
+    public static void access(UI ui, Runnable command) {
+        try {
+            ui.access(command::run);
+        } catch (UIDetachedException e) {
+            // UI is gone, nothing to update
+        }
+    }
+
+    /**
+     * Returns a chunk consumer that collects streamed output and shows the text received so far,
+     * at most once per STREAM_PUSH_INTERVAL_MS, so that a fast token stream does not flood
+     * the browser with pushes. The final text is expected to be set when the request completes.
+     *
+     * @param ui        the UI captured when the request was started
+     * @param onPartial receives the text received so far, on the UI thread
+     * @return consumer to pass to UnifiedAIService.generateContentStream
+     */
+    public static Consumer<String> throttledStream(UI ui, Consumer<String> onPartial) {
+        StringBuilder partialResult = new StringBuilder();
+        long[] lastPush = {0L};
+        return chunk -> {
+            partialResult.append(chunk);
+            long now = System.currentTimeMillis();
+            if (now - lastPush[0] >= STREAM_PUSH_INTERVAL_MS) {
+                lastPush[0] = now;
+                String snapshot = partialResult.toString();
+                access(ui, () -> onPartial.accept(snapshot));
+            }
+        };
+    }
+}
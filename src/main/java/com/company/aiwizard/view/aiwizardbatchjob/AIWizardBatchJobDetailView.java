@@ -0,0 +1,154 @@
+package com.company.aiwizard.view.aiwizardbatchjob;
+
+import com.company.aiwizard.entity.AIWizardBatchItem;
+import com.company.aiwizard.entity.AIWizardBatchJob;
+import com.company.aiwizard.service.AIWizardBatchService;
+import com.company.aiwizard.view.main.MainView;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.router.Route;
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.component.combobox.JmixMultiSelectComboBox;
+import io.jmix.flowui.component.grid.DataGrid;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionPropertyContainer;
+import io.jmix.flowui.model.DataContext;
+import io.jmix.flowui.model.InstanceLoader;
+import io.jmix.flowui.view.*;
+import io.jmix.reports.entity.Report;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Edits an AI Wizard batch job: template, prompt, schema context and the report data sets
+ * to generate. Generated results are approved (written into the report) or rejected here.
+ */
+@Route(value = "ai-wizard-batch-jobs/:id", layout = MainView.class)
+@ViewController(id = "AIWizardBatchJob.detail")
+@ViewDescriptor(path = "ai-wizard-batch-job-detail-view.xml")
+@EditedEntityContainer("aIWizardBatchJobDc")
+public class AIWizardBatchJobDetailView extends StandardDetailView<AIWizardBatchJob> {
+
+    @Autowired
+    private AIWizardBatchService aiWizardBatchService;
+
+    @Autowired
+    private Notifications notifications;
+
+    @ViewComponent
+    private DataContext dataContext;
+
+    @ViewComponent
+    private InstanceLoader<AIWizardBatchJob> aIWizardBatchJobDl;
+
+    @ViewComponent
+    private CollectionPropertyContainer<AIWizardBatchItem> itemsDc;
+
+    @ViewComponent
+    private DataGrid<AIWizardBatchItem> itemsDataGrid;
+
+    @ViewComponent
+    private JmixMultiSelectComboBox<Report> reportsField;
+
+    /**
+     * Adds the data sets of the selected reports that match the template's dataset type.
+     * Data sets already in the job are skipped.
+     */
+    @Subscribe(id = "addDataSetsBtn", subject = "clickListener")
+    public void onAddDataSetsBtnClick(final ClickEvent<JmixButton> event) {
+        Set<Report> reports = reportsField.getValue();
+        if (reports == null || reports.isEmpty()) {
+            notifications.create("Select the reports to add")
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
+        List<AIWizardBatchItem> collected;
+        try {
+            collected = aiWizardBatchService.collectItems(getEditedEntity(), reports);
+        } catch (IllegalArgumentException e) {
+            notifications.create(e.getMessage())
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
+        Set<String> existing = itemsDc.getItems().stream()
+                .map(this::itemKey)
+                .collect(Collectors.toSet());
+        int added = 0;
+        for (AIWizardBatchItem item : collected) {
+            if (existing.add(itemKey(item))) {
+                itemsDc.getMutableItems().add(dataContext.merge(item));
+                added++;
+            }
+        }
+        reportsField.clear();
+
+        notifications.create("Added " + added + " data sets")
+                .withType(Notifications.Type.DEFAULT)
+                .show();
+    }
+
+    @Subscribe
+    public void onBeforeSave(final BeforeSaveEvent event) {
+        getEditedEntity().setTotalItems(itemsDc.getItems().size());
+    }
+
+    @Subscribe(id = "approveBtn", subject = "clickListener")
+    public void onApproveBtnClick(final ClickEvent<JmixButton> event) {
+        review(true);
+    }
+
+    @Subscribe(id = "rejectBtn", subject = "clickListener")
+    public void onRejectBtnClick(final ClickEvent<JmixButton> event) {
+        review(false);
+    }
+
+    /**
+     * Approves or rejects the generated results of the selected data sets.
+     *
+     * @param approve true to write the results into the reports, false to reject them
+     */
+    private void review(boolean approve) {
+        Set<AIWizardBatchItem> selected = itemsDataGrid.getSelectedItems();
+        if (selected.isEmpty()) {
+            return;
+        }
+        if (hasUnsavedChanges()) {
+            notifications.create("Save the batch job before reviewing results")
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
+        int reviewed = 0;
+        List<String> errors = new ArrayList<>();
+        for (AIWizardBatchItem item : selected) {
+            try {
+                if (approve) {
+                    aiWizardBatchService.approve(item.getId());
+                } else {
+                    aiWizardBatchService.reject(item.getId());
+                }
+                reviewed++;
+            } catch (IllegalStateException e) {
+                errors.add(e.getMessage());
+            }
+        }
+        aIWizardBatchJobDl.load();
+
+        notifications.create((approve ? "Approved " : "Rejected ") + reviewed + " results"
+                        + (errors.isEmpty() ? "" : ". " + String.join(" ", errors)))
+                .withType(errors.isEmpty() ? Notifications.Type.SUCCESS : Notifications.Type.WARNING)
+                .show();
+    }
+
+    private String itemKey(AIWizardBatchItem item) {
+        return item.getReportId() + "/" + item.getBandName() + "/" + item.getDataSetName();
+    }
+}
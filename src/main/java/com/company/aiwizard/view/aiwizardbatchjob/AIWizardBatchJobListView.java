@@ -0,0 +1,92 @@
+package com.company.aiwizard.view.aiwizardbatchjob;
+
+import com.company.aiwizard.entity.AIWizardBatchJob;
+import com.company.aiwizard.entity.AIWizardBatchStatus;
+import com.company.aiwizard.service.AIWizardBatchService;
+import com.company.aiwizard.view.main.MainView;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.router.Route;
+import io.jmix.flowui.Notifications;
+import io.jmix.flowui.component.grid.DataGrid;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+
+/**
+ * AI Wizard batch jobs with their progress. Jobs are started, paused and cancelled here;
+ * their results are reviewed in the detail view.
+ */
+@Route(value = "ai-wizard-batch-jobs", layout = MainView.class)
+@ViewController(id = "AIWizardBatchJob.list")
+@ViewDescriptor(path = "ai-wizard-batch-job-list-view.xml")
+@LookupComponent("aIWizardBatchJobsDataGrid")
+@DialogMode(width = "64em")
+public class AIWizardBatchJobListView extends StandardListView<AIWizardBatchJob> {
+
+    @Autowired
+    private AIWizardBatchService aiWizardBatchService;
+
+    @Autowired
+    private Notifications notifications;
+
+    @ViewComponent
+    private DataGrid<AIWizardBatchJob> aIWizardBatchJobsDataGrid;
+
+    @ViewComponent
+    private CollectionLoader<AIWizardBatchJob> aIWizardBatchJobsDl;
+
+    @Subscribe(id = "startBtn", subject = "clickListener")
+    public void onStartBtnClick(final ClickEvent<JmixButton> event) {
+        AIWizardBatchJob job = aIWizardBatchJobsDataGrid.getSingleSelectedItem();
+        if (job == null) {
+            return;
+        }
+        try {
+            aiWizardBatchService.start(job.getId());
+            notifications.create("Batch job '" + job.getName() + "' started")
+                    .withType(Notifications.Type.SUCCESS)
+                    .show();
+        } catch (IllegalStateException e) {
+            notifications.create(e.getMessage())
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+        }
+        aIWizardBatchJobsDl.load();
+    }
+
+    @Subscribe(id = "pauseBtn", subject = "clickListener")
+    public void onPauseBtnClick(final ClickEvent<JmixButton> event) {
+        stopSelected(AIWizardBatchStatus.PAUSED);
+    }
+
+    @Subscribe(id = "cancelBtn", subject = "clickListener")
+    public void onCancelBtnClick(final ClickEvent<JmixButton> event) {
+        stopSelected(AIWizardBatchStatus.CANCELLED);
+    }
+
+    @Subscribe(id = "refreshBtn", subject = "clickListener")
+    public void onRefreshBtnClick(final ClickEvent<JmixButton> event) {
+        aIWizardBatchJobsDl.load();
+    }
+
+    /**
+     * Stops the selected job; items in flight finish first.
+     *
+     * @param status PAUSED or CANCELLED
+     */
+    private void stopSelected(AIWizardBatchStatus status) {
+        AIWizardBatchJob job = aIWizardBatchJobsDataGrid.getSingleSelectedItem();
+        if (job == null) {
+            return;
+        }
+        aiWizardBatchService.stop(job.getId(), status);
+        notifications.create(aiWizardBatchService.isRunning(job.getId())
+                        ? "Batch job '" + job.getName() + "' stops after the data sets in progress"
+                        : "Batch job '" + job.getName() + "' stopped")
+                .withType(Notifications.Type.DEFAULT)
+                .show();
+        aIWizardBatchJobsDl.load();
+    }
+}
@@ -2,14 +2,156 @@ package com.company.aiwizard.view.aiwizardhistory;
 
 import com.company.aiwizard.entity.AIWizardHistory;
 import com.company.aiwizard.view.main.MainView;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.router.Route;
+import io.jmix.core.DataManager;
+import io.jmix.core.LoadContext;
+import io.jmix.core.Sort;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.JpqlCondition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.CollectionLoader;
 import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * AI Wizard history, newest first. The table grows with every wizard call, so rows are paged
+ * by keyset on (createdDate, id) instead of offset and count, and the list loads no LOBs;
+ * prompt and response are loaded when a row is opened in the detail view.
+ */
 @Route(value = "ai-wizard-histories", layout = MainView.class)
 @ViewController(id = "AIWizardHistory.list")
 @ViewDescriptor(path = "ai-wizard-history-list-view.xml")
 @LookupComponent("aIWizardHistoriesDataGrid")
 @DialogMode(width = "64em")
 public class AIWizardHistoryListView extends StandardListView<AIWizardHistory> {
-}
\ No newline at end of file
+
+    private static final int PAGE_SIZE = 50;
+
+    @Autowired
+    private DataManager dataManager;
+
+    @ViewComponent
+    private CollectionLoader<AIWizardHistory> aIWizardHistoriesDl;
+
+    @ViewComponent
+    private Span pageInfo;
+
+    @ViewComponent
+    private JmixButton firstPageBtn;
+
+    @ViewComponent
+    private JmixButton previousPageBtn;
+
+    @ViewComponent
+    private JmixButton nextPageBtn;
+
+    // Cursors of the pages before the current one, for going back
+    private final Deque<Cursor> previousCursors = new ArrayDeque<>();
+
+    // Last row of the previous page; null on the first page
+    private Cursor currentCursor;
+
+    // Last row of the current page; null when there is no next page
+    private Cursor nextCursor;
+
+    // Set by the page buttons; any other load (filter, refresh, save) starts from the first page
+    private boolean pageNavigation;
+
+    @Install(to = "aIWizardHistoriesDl", target = Target.DATA_LOADER)
+    private List<AIWizardHistory> aIWizardHistoriesDlLoadDelegate(final LoadContext<AIWizardHistory> loadContext) {
+        if (!pageNavigation) {
+            previousCursors.clear();
+            currentCursor = null;
+        }
+        pageNavigation = false;
+
+        // Keep the filter's conditions and add the keyset condition on top of them
+        LoadContext.Query query = loadContext.getQuery();
+        if (currentCursor != null) {
+            Condition keyset = JpqlCondition.create("(e.createdDate < :keysetDate"
+                    + " or (e.createdDate = :keysetDate and e.id < :keysetId))", null);
+            query.setCondition(query.getCondition() == null
+                    ? keyset
+                    : LogicalCondition.and(query.getCondition(), keyset));
+            query.setParameter("keysetDate", currentCursor.createdDate());
+            query.setParameter("keysetId", currentCursor.id());
+        }
+        query.setSort(Sort.by(Sort.Direction.DESC, "createdDate", "id"));
+        query.setFirstResult(0);
+        // One extra row tells whether there is a next page without a count query
+        query.setMaxResults(PAGE_SIZE + 1);
+
+        List<AIWizardHistory> rows = new ArrayList<>(dataManager.loadList(loadContext));
+        if (rows.size() > PAGE_SIZE) {
+            rows.remove(PAGE_SIZE);
+            AIWizardHistory last = rows.get(PAGE_SIZE - 1);
+            nextCursor = new Cursor(last.getCreatedDate(), last.getId());
+        } else {
+            nextCursor = null;
+        }
+
+        updatePageControls(rows.size());
+        return rows;
+    }
+
+    @Subscribe(id = "firstPageBtn", subject = "clickListener")
+    public void onFirstPageBtnClick(final ClickEvent<JmixButton> event) {
+        aIWizardHistoriesDl.load();
+    }
+
+    @Subscribe(id = "previousPageBtn", subject = "clickListener")
+    public void onPreviousPageBtnClick(final ClickEvent<JmixButton> event) {
+        if (currentCursor == null) {
+            return;
+        }
+        currentCursor = previousCursors.isEmpty() ? null : previousCursors.pop();
+        loadPage();
+    }
+
+    @Subscribe(id = "nextPageBtn", subject = "clickListener")
+    public void onNextPageBtnClick(final ClickEvent<JmixButton> event) {
+        if (nextCursor == null) {
+            return;
+        }
+        if (currentCursor != null) {
+            previousCursors.push(currentCursor);
+        }
+        currentCursor = nextCursor;
+        loadPage();
+    }
+
+    private void loadPage() {
+        pageNavigation = true;
+        aIWizardHistoriesDl.load();
+    }
+
+    private void updatePageControls(int rowCount) {
+        int pageIndex = currentCursor == null ? 0 : previousCursors.size() + 1;
+        int first = pageIndex * PAGE_SIZE;
+        pageInfo.setText(rowCount == 0 ? "" : (first + 1) + " - " + (first + rowCount));
+
+        firstPageBtn.setEnabled(currentCursor != null);
+        previousPageBtn.setEnabled(currentCursor != null);
+        nextPageBtn.setEnabled(nextCursor != null);
+    }
+
+    // ==================== Record Definitions ====================
+
+    /**
+     * Position after which a page starts.
+     */
+    private record Cursor(
+            OffsetDateTime createdDate,  // Created date of the last row of the previous page
+            UUID id                      // Id of that row, to break ties between equal dates
+    ) {}
+}
@@ -0,0 +1,108 @@
+package com.company.aiwizard.view.aiwizardusage;
+
+import com.company.aiwizard.service.AIWizardUsageService;
+import com.company.aiwizard.service.AIWizardUsageService.UsageSummary;
+import com.company.aiwizard.view.main.MainView;
+import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.html.Span;
+import com.vaadin.flow.router.Route;
+import io.jmix.core.ValueLoadContext;
+import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.core.security.CurrentAuthentication;
+import io.jmix.flowui.component.datepicker.TypedDatePicker;
+import io.jmix.flowui.kit.component.button.JmixButton;
+import io.jmix.flowui.model.KeyValueCollectionLoader;
+import io.jmix.flowui.view.*;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AI Wizard usage per day, user and template: requests, cache hits, tokens,
+ * estimated cost and average latency, aggregated from AIWizardHistory.
+ * Shows which templates spend the most tokens, as a basis for budgets.
+ */
+@Route(value = "ai-wizard-usage", layout = MainView.class)
+@ViewController(id = "AIWizardUsageView")
+@ViewDescriptor(path = "ai-wizard-usage-view.xml")
+public class AIWizardUsageView extends StandardView {
+
+    /** Days shown when the view is opened. */
+    private static final int DEFAULT_DAYS = 30;
+
+    @Autowired
+    private AIWizardUsageService aiWizardUsageService;
+
+    @Autowired
+    private CurrentAuthentication currentAuthentication;
+
+    @ViewComponent
+    private KeyValueCollectionLoader usageDl;
+
+    @ViewComponent
+    private TypedDatePicker<LocalDate> fromField;
+
+    @ViewComponent
+    private TypedDatePicker<LocalDate> toField;
+
+    @ViewComponent
+    private Span totalsText;
+
+    @Subscribe
+    public void onInit(final InitEvent event) {
+        LocalDate today = LocalDate.now(zone());
+        fromField.setTypedValue(today.minusDays(DEFAULT_DAYS - 1));
+        toField.setTypedValue(today);
+    }
+
+    @Subscribe(id = "refreshBtn", subject = "clickListener")
+    public void onRefreshBtnClick(final ClickEvent<JmixButton> event) {
+        usageDl.load();
+    }
+
+    /**
+     * Loads the aggregated usage of the selected date range.
+     */
+    @Install(to = "usageDl", target = Target.DATA_LOADER)
+    private List<KeyValueEntity> usageDlLoadDelegate(final ValueLoadContext loadContext) {
+        LocalDate to = toField.getTypedValue() != null ? toField.getTypedValue() : LocalDate.now(zone());
+        LocalDate from = fromField.getTypedValue() != null ? fromField.getTypedValue() : to.minusDays(DEFAULT_DAYS - 1);
+
+        List<UsageSummary> summaries = aiWizardUsageService.summarize(from, to, zone());
+
+        List<KeyValueEntity> rows = new ArrayList<>(summaries.size());
+        long requests = 0;
+        long tokens = 0;
+        BigDecimal cost = BigDecimal.ZERO;
+        for (UsageSummary summary : summaries) {
+            KeyValueEntity row = new KeyValueEntity();
+            row.setId(summary.day() + "/" + summary.username() + "/" + summary.template());
+            row.setValue("day", summary.day());
+            row.setValue("username", summary.username());
+            row.setValue("template", summary.template());
+            row.setValue("requests", summary.requests());
+            row.setValue("cachedRequests", summary.cachedRequests());
+            row.setValue("promptTokens", summary.promptTokens());
+            row.setValue("completionTokens", summary.completionTokens());
+            row.setValue("estimatedCost", summary.estimatedCost());
+            row.setValue("averageLatencyMs", summary.averageLatencyMs());
+            rows.add(row);
+
+            requests += summary.requests();
+            tokens += summary.promptTokens() + summary.completionTokens();
+            cost = cost.add(summary.estimatedCost());
+        }
+
+        totalsText.setText(String.format("Total: %d requests, %d tokens, $%s", requests, tokens,
+                cost.stripTrailingZeros().toPlainString()));
+        return rows;
+    }
+
+    private ZoneId zone() {
+        return currentAuthentication.getTimeZone().toZoneId();
+    }
+}
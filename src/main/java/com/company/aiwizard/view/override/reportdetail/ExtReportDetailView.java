@@ -5,15 +5,23 @@ import com.company.aiwizard.entity.AIWizardHistory;
 import com.company.aiwizard.entity.AIWizardOperation;
 import com.company.aiwizard.entity.AIWizardTemplate;
 import com.company.aiwizard.service.*;
+import com.company.aiwizard.service.AIWizardQueryGuard.Assessment;
+import com.company.aiwizard.service.AIWizardQueryValidator.Repaired;
+import com.company.aiwizard.service.AIWizardQueryValidator.Validation;
+import com.company.aiwizard.service.AIWizardRequestExecutor.StageResult;
+import com.company.aiwizard.service.UnifiedAIService.Generation;
+import com.company.aiwizard.view.AIWizardPush;
 import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.Route;
 import io.jmix.core.DataManager;
+import io.jmix.core.security.CurrentAuthentication;
 import io.jmix.flowui.Notifications;
 import io.jmix.flowui.UiComponents;
 import io.jmix.flowui.action.DialogAction;
-import io.jmix.flowui.component.codeeditor.CodeEditor;
 import io.jmix.flowui.component.select.JmixSelect;
 import io.jmix.flowui.component.textarea.JmixTextArea;
 import io.jmix.flowui.component.textfield.TypedTextField;
@@ -21,15 +29,36 @@ import io.jmix.flowui.component.twincolumn.TwinColumn;
 import io.jmix.flowui.kit.component.button.JmixButton;
 import io.jmix.flowui.model.CollectionContainer;
 import io.jmix.flowui.model.CollectionLoader;
+import io.jmix.flowui.model.CollectionPropertyContainer;
 import io.jmix.flowui.model.DataComponents;
 import io.jmix.flowui.view.*;
+import io.jmix.reports.entity.BandDefinition;
+import io.jmix.reports.entity.DataSet;
 import io.jmix.reports.entity.DataSetType;
 import io.jmix.reportsflowui.view.report.ReportDetailView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -44,6 +73,14 @@ import java.util.stream.IntStream;
  * - Automatic inclusion of table DDL or entity definitions in context
  * - Conversation history support for iterative query refinement
  * - Audit trail of all AI interactions via AIWizardHistory entity
+ * - Non-blocking generation: the LLM call runs on AIWizardRequestExecutor and the result
+ *   is pushed back to the browser via Vaadin @Push, with a Cancel button while in progress
+ * - Streaming: partial output is rendered in the script editor as tokens arrive
+ * - Provider failover: the template's fallback connection answers when the primary fails
+ * - Parallel context fetching: definitions and history are loaded concurrently on the worker,
+ *   with per-stage timings logged
+ * - Validation: generated queries are prepared and explained, failures are repaired by the model
+ * - Guardrail: unbounded queries get suggested filters and a row cap, and are confirmed before save
  *
  * Usage:
  * 1. Open a report in edit mode
@@ -57,6 +94,8 @@ import java.util.stream.IntStream;
 @ViewDescriptor(path = "ext-report-detail-view.xml")
 public class ExtReportDetailView extends ReportDetailView {
 
+    private static final Logger log = LoggerFactory.getLogger(ExtReportDetailView.class);
+
     // ==================== Service Injections ====================
 
     /** Service to retrieve list of available JPA entities for JPQL queries */
@@ -91,6 +130,54 @@ public class ExtReportDetailView extends ReportDetailView {
     @Autowired
     private DataManager dataManager;
 
+    /** Bounded executor running LLM calls off the Vaadin request thread */
+    @Autowired
+    private AIWizardRequestExecutor aiWizardRequestExecutor;
+
+    /** Assembles the prompt within the provider's token budget */
+    @Autowired
+    private AIWizardPromptBuilder aiWizardPromptBuilder;
+
+    /** Resolves the template's primary/fallback providers and hedging policy */
+    @Autowired
+    private AIWizardProviderRouter aiWizardProviderRouter;
+
+    /** Records per-stage timings of wizard requests */
+    @Autowired
+    private AIWizardMetrics aiWizardMetrics;
+
+    /** Suggests the tables or entities relevant to the prompt */
+    @Autowired
+    private AIWizardSchemaRetrievalService aiWizardSchemaRetrievalService;
+
+    /** Adds the tables or entities connecting the selection */
+    @Autowired
+    private AIWizardJoinPathService aiWizardJoinPathService;
+
+    /** Loads previous interactions used as conversation context */
+    @Autowired
+    private AIWizardHistoryService aiWizardHistoryService;
+
+    /** Fills token usage and estimated cost on history rows */
+    @Autowired
+    private AIWizardUsageService aiWizardUsageService;
+
+    /** Per-user and per-provider rate limits and daily quotas, shown in the dialog */
+    @Autowired
+    private AIWizardRateLimiter aiWizardRateLimiter;
+
+    /** Prepares/EXPLAINs generated queries and requests repairs of failing ones */
+    @Autowired
+    private AIWizardQueryValidator aiWizardQueryValidator;
+
+    /** Detects unbounded generated queries, suggests filters and row caps */
+    @Autowired
+    private AIWizardQueryGuard aiWizardQueryGuard;
+
+    /** Provides the current user for quota display */
+    @Autowired
+    private CurrentAuthentication currentAuthentication;
+
     // ==================== View Components ====================
 
     /** Text field displaying the current data band code/name */
@@ -101,9 +188,28 @@ public class ExtReportDetailView extends ReportDetailView {
     @ViewComponent
     private JmixSelect<DataSetType> singleDataSetTypeField;
 
-    /** Code editor containing the data band query script */
+    /** Data sets of the selected band; the code editor edits the current one */
+    @ViewComponent
+    private CollectionPropertyContainer<DataSet> dataSetsDc;
+
+    /** Button opening the AI Wizard dialog, disabled while a request is in progress */
+    @ViewComponent
+    private JmixButton aiWizardBtn;
+
+    /** Button cancelling the in-progress AI Wizard request, visible only while one is running */
     @ViewComponent
-    private CodeEditor dataSetScriptCodeEditor;
+    private JmixButton aiWizardCancelBtn;
+
+    // ==================== State ====================
+
+    /** The in-progress AI Wizard request (generation and validation), or null when idle */
+    private CompletableFuture<Repaired> pendingAIWizardRequest;
+
+    /** Data sets that received AI Wizard output in this view, checked for unbounded queries before save */
+    private final Set<UUID> aiGeneratedDataSetIds = new HashSet<>();
+
+    /** Set while a save confirmed despite unbounded queries is resumed */
+    private boolean unboundedQueriesConfirmed;
 
     // ==================== Event Handlers ====================
 
@@ -116,8 +222,9 @@ public class ExtReportDetailView extends ReportDetailView {
      * 4. Optionally include previous interactions from history
      * 5. Generate or modify the data band query using AI
      *
-     * The generated query is written directly to the dataSetScriptCodeEditor
-     * and the interaction is saved to AIWizardHistory for audit and future reference.
+     * The generated query is written to the script of the data set selected when the request
+     * was sent (edited in the dataSetScriptCodeEditor), and the interaction is saved to
+     * AIWizardHistory for audit and future reference.
      *
      * @param event the button click event
      */
@@ -175,12 +282,29 @@ public class ExtReportDetailView extends ReportDetailView {
         twinColumn.setLabel("Select Items");
         twinColumn.setItems(Collections.emptyList());
 
+        // Items currently offered in the twin column, for matching suggestions
+        List<String> availableItems = new ArrayList<>();
+
         // Text area for user to enter or modify their prompt
         JmixTextArea promptField = uiComponents.create(JmixTextArea.class);
         promptField.setLabel("Prompt");
         promptField.setWidth("100%");
         promptField.setHeight("150px");
 
+        // Button selecting the tables/entities relevant to the prompt in the twin column
+        JmixButton suggestItemsBtn = uiComponents.create(JmixButton.class);
+        suggestItemsBtn.setText("Suggest Items from Prompt");
+        suggestItemsBtn.addClickListener(e -> {
+            List<String> suggested = suggestItems(templateComboBox.getValue(), promptField.getValue(), availableItems);
+            if (suggested.isEmpty()) {
+                notifications.create("No matching items found for the prompt")
+                        .withType(Notifications.Type.WARNING)
+                        .show();
+                return;
+            }
+            twinColumn.setValue(new LinkedHashSet<>(suggested));
+        });
+
         // ComboBox for selecting how many previous interactions to include in context
         // Useful for iterative refinement but be careful of token limits
         ComboBox<Integer> historyDepthComboBox = new ComboBox<>("History Depth");
@@ -188,6 +312,12 @@ public class ExtReportDetailView extends ReportDetailView {
         historyDepthComboBox.setValue(0); // Default: no history
         historyDepthComboBox.setWidth("100%");
 
+        // Remaining rate limit and daily quota of the current user
+        Span quotaInfo = new Span(formatQuota(
+                aiWizardRateLimiter.getQuotaStatus(currentAuthentication.getUser().getUsername())));
+        quotaInfo.getStyle().set("font-size", "var(--lumo-font-size-s)");
+        quotaInfo.getStyle().set("color", "var(--lumo-secondary-text-color)");
+
         // -------------------- Template Selection Handler --------------------
         // When user selects a template, populate the twin column with appropriate items
         // and set default prompt text based on operation type
@@ -197,6 +327,7 @@ public class ExtReportDetailView extends ReportDetailView {
 
             // Handle null selection - clear all dependent fields
             if (selectedTemplate == null) {
+                availableItems.clear();
                 twinColumn.setItems(Collections.emptyList());
                 twinColumn.setLabel("Select Items");
                 twinColumn.clear();
@@ -206,17 +337,20 @@ public class ExtReportDetailView extends ReportDetailView {
 
             // Clear previous selection to avoid mixing tables and entities
             twinColumn.clear();
+            availableItems.clear();
 
             // Populate twin column based on dataset type
             DataSetType dataSetType = selectedTemplate.getDatasetType();
             if (dataSetType == DataSetType.SQL) {
                 // For SQL templates, show database table names
                 List<String> tableNames = aiWizardTableListService.getAllTableNames();
+                availableItems.addAll(tableNames);
                 twinColumn.setItems(tableNames);
                 twinColumn.setLabel("Select Tables");
             } else if (dataSetType == DataSetType.JPQL) {
                 // For JPQL templates, show JPA entity names
                 List<String> entityNames = aiWizardEntityListService.getAllEntityNames();
+                availableItems.addAll(entityNames);
                 twinColumn.setItems(entityNames);
                 twinColumn.setLabel("Select Entities");
             }
@@ -238,17 +372,28 @@ public class ExtReportDetailView extends ReportDetailView {
         content.setPadding(false);
         content.setSpacing(true);
         content.setWidth("600px");
-        content.add(templateComboBox, twinColumn, promptField, historyDepthComboBox);
+        content.add(templateComboBox, twinColumn, promptField, suggestItemsBtn, historyDepthComboBox, quotaInfo);
 
         dialogs.createOptionDialog()
                 .withHeader("AI Wizard")
                 .withContent(content)
                 .withActions(
                         // OK button handler - builds context and calls AI service
+                        // Without a selection, the items relevant to the prompt are selected automatically
                         new DialogAction(DialogAction.Type.OK).withHandler(e -> {
+                            Collection<String> selectedItems = twinColumn.getValue();
+                            if (selectedItems == null || selectedItems.isEmpty()) {
+                                selectedItems = suggestItems(templateComboBox.getValue(),
+                                        promptField.getValue(), availableItems);
+                                if (!selectedItems.isEmpty()) {
+                                    notifications.create("Using " + String.join(", ", selectedItems))
+                                            .withType(Notifications.Type.DEFAULT)
+                                            .show();
+                                }
+                            }
                             processAIWizardRequest(
                                     templateComboBox.getValue(),
-                                    twinColumn.getValue(),
+                                    selectedItems,
                                     promptField.getValue(),
                                     historyDepthComboBox.getValue()
                             );
@@ -259,6 +404,112 @@ public class ExtReportDetailView extends ReportDetailView {
                 .open();
     }
 
+    /**
+     * Returns the tables (SQL) or entities (JPQL) relevant to the prompt: best matches first,
+     * followed by their foreign-key neighbours.
+     *
+     * @param template       the selected prompt template
+     * @param prompt         the user's prompt text
+     * @param availableItems items offered in the twin column; suggestions are mapped to their spelling
+     * @return suggested items, empty if no template is selected or nothing matched
+     */
+    private List<String> suggestItems(AIWizardTemplate template, String prompt, List<String> availableItems) {
+        if (template == null || prompt == null || prompt.isBlank()) {
+            return List.of();
+        }
+        AIWizardSchemaRetrievalService.Suggestion suggestion = template.getDatasetType() == DataSetType.SQL
+                ? aiWizardSchemaRetrievalService.suggestTables(prompt)
+                : aiWizardSchemaRetrievalService.suggestEntities(prompt);
+
+        // Table names may differ in case between the metadata listing and the index
+        Map<String, String> itemsByName = new LinkedHashMap<>();
+        for (String item : availableItems) {
+            itemsByName.putIfAbsent(item.toUpperCase(Locale.ROOT), item);
+        }
+        return suggestion.items().stream()
+                .map(item -> itemsByName.get(item.toUpperCase(Locale.ROOT)))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Handles click on the Cancel button shown while an AI Wizard request is running.
+     * Interrupts the background LLM call; its result, if it still arrives, is discarded.
+     *
+     * @param event the button click event
+     */
+    @Subscribe("aiWizardCancelBtn")
+    public void onAiWizardCancelBtnClick(final ClickEvent<JmixButton> event) {
+        if (pendingAIWizardRequest != null && pendingAIWizardRequest.cancel(true)) {
+            notifications.create("AI Wizard request cancelled")
+                    .withType(Notifications.Type.DEFAULT)
+                    .show();
+        }
+        setAIWizardRunning(false);
+    }
+
+    /**
+     * Warns before saving a report whose AI generated data sets are unbounded or exceed the
+     * estimated row threshold. The queries are explained again, as they may have been edited
+     * since generation. Saving continues only when confirmed.
+     *
+     * @param event the before save event
+     */
+    @Subscribe
+    public void onBeforeSave(final BeforeSaveEvent event) {
+        if (unboundedQueriesConfirmed || aiGeneratedDataSetIds.isEmpty() || !aiWizardQueryGuard.isEnabled()) {
+            return;
+        }
+        List<String> warnings = new ArrayList<>();
+        for (BandDefinition band : getEditedEntity().getBands()) {
+            for (DataSet dataSet : band.getDataSets()) {
+                if (aiGeneratedDataSetIds.contains(dataSet.getId())) {
+                    Assessment assessment = aiWizardQueryGuard.check(dataSet.getType(), dataSet.getText());
+                    if (assessment.needsAttention()) {
+                        warnings.add(band.getName() + " / " + dataSet.getName() + ": " + assessment.reason());
+                    }
+                }
+            }
+        }
+        if (warnings.isEmpty()) {
+            return;
+        }
+
+        event.preventSave();
+        VerticalLayout content = new VerticalLayout();
+        content.setPadding(false);
+        content.add(new Span("These data sets may load too many rows into the report engine:"));
+        warnings.forEach(warning -> content.add(new Span(warning)));
+        dialogs.createOptionDialog()
+                .withHeader("Unbounded report queries")
+                .withContent(content)
+                .withActions(
+                        new DialogAction(DialogAction.Type.YES).withText("Save anyway").withHandler(e -> {
+                            unboundedQueriesConfirmed = true;
+                            try {
+                                event.resume();
+                            } finally {
+                                unboundedQueriesConfirmed = false;
+                            }
+                        }),
+                        new DialogAction(DialogAction.Type.NO).withText("Keep editing")
+                )
+                .open();
+    }
+
+    /**
+     * Cancels any in-progress AI Wizard request when the view is closed,
+     * so the worker thread and the user's in-flight slot are released.
+     *
+     * @param event the after close event
+     */
+    @Subscribe
+    public void onAfterClose(final AfterCloseEvent event) {
+        if (pendingAIWizardRequest != null) {
+            pendingAIWizardRequest.cancel(true);
+        }
+    }
+
     // ==================== AI Processing Methods ====================
 
     /**
@@ -302,195 +553,481 @@ public class ExtReportDetailView extends ReportDetailView {
             return;
         }
 
+        // The result is written to this data set, even if the user selects another band
+        // or data set while the request is running
+        final DataSet targetDataSet = dataSetsDc.getItemOrNull();
+        if (targetDataSet == null) {
+            notifications.create("Please select a data set")
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
         // -------- Build System Instruction --------
         // contextPrefix from template serves as the system instruction
         // guiding the AI's behavior and response style
 
         String systemInstruction = selectedTemplate.getContextPrefix();
 
-        // -------- Build User Prompt --------
-        // User prompt = definitions + history + current script (if modify) + user input
+        // For MODIFY operation, the current script is part of the prompt.
+        // It is read here on the UI thread; everything else is done by the worker.
+        // Store original value for history audit trail
+        String originalValue = null;
+        AIWizardOperation operation = selectedTemplate.getOperation();
+        if (operation == AIWizardOperation.MODIFY) {
+            String currentScript = targetDataSet.getText();
+            if (currentScript != null && !currentScript.isEmpty()) {
+                originalValue = currentScript;
+            }
+        }
+        final String finalOriginalValue = originalValue;
+        final List<String> items = selectedItems != null ? new ArrayList<>(selectedItems) : List.of();
+
+        // -------- Build Prompt and Call Unified AI Service (asynchronously) --------
+        // Context fetching, prompt assembly and the LLM round trip run on AIWizardRequestExecutor
+        // so the servlet thread is released; results are pushed back to the browser
+        // through UI.access() and @Push.
+
+        final UI ui = UI.getCurrent();
+        final String scriptBefore = targetDataSet.getText();
+        // Templates may opt out of the response cache (e.g. when variety of answers is wanted)
+        final boolean useCache = !Boolean.FALSE.equals(selectedTemplate.getCacheEnabled());
+        // Primary connection with the template's (or global) fallback for failover
+        final AIWizardProviderRouter.Route route = aiWizardProviderRouter.routeFor(selectedTemplate);
+
+        // Partial output is streamed into the data set script as it arrives,
+        // throttled so that a fast token stream does not flood the browser with pushes
+        final Consumer<String> onChunk = AIWizardPush.throttledStream(ui,
+                partialResult -> onAIWizardPartialResult(targetDataSet, partialResult));
+        // The full user prompt without system instruction, stored in the history
+        final AtomicReference<String> fullUserPrompt = new AtomicReference<>();
+
+        try {
+            pendingAIWizardRequest = aiWizardRequestExecutor.submit(() -> {
+                AIWizardPromptBuilder.BuiltPrompt builtPrompt = buildAIWizardPrompt(selectedTemplate, items,
+                        historyDepth, systemInstruction, finalOriginalValue, prompt);
+                fullUserPrompt.set(builtPrompt.userPrompt());
+                AIWizardPush.access(ui, () -> onAIWizardPromptBuilt(builtPrompt));
+
+                long llmStart = System.nanoTime();
+                Generation generation = unifiedAIService.generateContentStream(builtPrompt.userPrompt(),
+                        systemInstruction, route, useCache, onChunk);
+                aiWizardMetrics.recordStage("llm", selectedTemplate.getName(),
+                        Duration.ofNanos(System.nanoTime() - llmStart));
+                // Prepare/EXPLAIN the answer; parse errors go back to the model for a few repair rounds
+                long validationStart = System.nanoTime();
+                Repaired repaired = aiWizardQueryValidator.validateAndRepair(dataSetType, generation,
+                        builtPrompt.userPrompt(), systemInstruction, route, useCache);
+                aiWizardMetrics.recordStage("validation", selectedTemplate.getName(),
+                        Duration.ofNanos(System.nanoTime() - validationStart));
+                return repaired;
+            });
+        } catch (IllegalStateException ex) {
+            notifications.create(ex.getMessage())
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
+        setAIWizardRunning(true);
+        notifications.create("AI Wizard is generating the query...")
+                .withType(Notifications.Type.DEFAULT)
+                .show();
 
-        StringBuilder userPrompt = new StringBuilder();
+        final CompletableFuture<Repaired> request = pendingAIWizardRequest;
+        request.whenComplete((repaired, error) ->
+                AIWizardPush.access(ui, () -> onAIWizardRequestCompleted(request, selectedTemplate, targetDataSet,
+                        finalOriginalValue, scriptBefore, fullUserPrompt.get(), repaired, error)));
+    }
 
-        // 1. Add table DDL or entity definitions based on dataset type
-        if (selectedItems != null && !selectedItems.isEmpty()) {
+    /**
+     * Builds the user prompt of a request: definitions + history + current script (if modify) + user input,
+     * assembled by AIWizardPromptBuilder within the provider's token budget.
+     * Runs on the AIWizardRequestExecutor worker, never on the UI thread. Definitions and history
+     * are fetched concurrently on the context pool and joined before the prompt is assembled.
+     *
+     * @param template          the selected prompt template
+     * @param selectedItems     the selected tables (SQL) or entities (JPQL)
+     * @param historyDepth      number of previous interactions to include in context
+     * @param systemInstruction the template's system instruction
+     * @param originalValue     the current script for MODIFY operations, or null
+     * @param prompt            the user's prompt text
+     * @return the assembled prompt
+     * @throws IllegalStateException if a context stage failed
+     */
+    private AIWizardPromptBuilder.BuiltPrompt buildAIWizardPrompt(AIWizardTemplate template,
+                                                                 List<String> selectedItems,
+                                                                 Integer historyDepth,
+                                                                 String systemInstruction,
+                                                                 String originalValue,
+                                                                 String prompt) {
+        DataSetType dataSetType = template.getDatasetType();
+        long contextStart = System.nanoTime();
+
+        // 1. Fetch table DDL or entity definitions based on dataset type,
+        // including the tables (entities) that connect the selection, rendered with keys only
+        CompletableFuture<StageResult<Map<String, AIWizardTableDDLDefinitionService.TableDDLDefinition>>> tablesFuture = null;
+        Map<String, CompletableFuture<StageResult<AIWizardEntityDefinitionService.EntityDefinition>>> entityFutures = null;
+        Set<String> joinItems = new LinkedHashSet<>();
+        if (!selectedItems.isEmpty()) {
             if (dataSetType == DataSetType.SQL) {
-                // Fetch and append DDL for each selected table
-                for (String tableName : selectedItems) {
-                    String ddl = aiWizardTableDDLDefinitionService.getTableDDLAsString(tableName);
-                    userPrompt.append("=== ").append(tableName).append(" ===\n");
-                    userPrompt.append(ddl).append("\n\n");
-                }
+                joinItems.addAll(aiWizardJoinPathService.findConnectingTables(selectedItems));
+                // Fetch DDL for all selected tables in one metadata pass
+                List<String> tableNames = new ArrayList<>(selectedItems);
+                tableNames.addAll(joinItems);
+                tablesFuture = aiWizardRequestExecutor.fork("tables",
+                        () -> aiWizardTableDDLDefinitionService.getTableDDLDefinitions(tableNames));
             } else if (dataSetType == DataSetType.JPQL) {
-                // Fetch and append metadata for each selected entity
-                for (String entityName : selectedItems) {
-                    String definition = aiWizardEntityDefinitionService.getEntityDefinitionAsString(entityName);
-                    userPrompt.append("=== ").append(entityName).append(" ===\n");
-                    userPrompt.append(definition).append("\n\n");
+                joinItems.addAll(aiWizardJoinPathService.findConnectingEntities(selectedItems));
+                List<String> entityNames = new ArrayList<>(selectedItems);
+                entityNames.addAll(joinItems);
+                entityFutures = new LinkedHashMap<>();
+                for (String entityName : entityNames) {
+                    entityFutures.put(entityName, aiWizardRequestExecutor.fork("entity " + entityName,
+                            () -> aiWizardEntityDefinitionService.getEntityDefinition(entityName)));
                 }
             }
         }
 
-        // 2. Add previous interactions from history if requested
+        // 2. Load previous interactions from history if requested
         // Provides conversation continuity for iterative refinement
+        // Only truncated prompt/response values are read, not the history rows' LOBs
+        CompletableFuture<StageResult<List<AIWizardHistoryService.Interaction>>> historyFuture = null;
         if (historyDepth != null && historyDepth > 0) {
-            List<AIWizardHistory> historyList = dataManager.load(AIWizardHistory.class)
-                    .query("select e from AIWizardHistory e " +
-                            "where e.aiWizardPromptTemplate = :template " +
-                            "order by e.createdDate desc")
-                    .parameter("template", selectedTemplate)
-                    .maxResults(historyDepth)
-                    .list();
-
-            if (!historyList.isEmpty()) {
-                userPrompt.append("=== Previous Interactions ===\n");
-                // Reverse to show oldest first (chronological order)
-                for (int i = historyList.size() - 1; i >= 0; i--) {
-                    AIWizardHistory history = historyList.get(i);
-                    userPrompt.append("--- Interaction ").append(historyList.size() - i).append(" ---\n");
-                    if (history.getPrompt() != null) {
-                        userPrompt.append("Prompt: ").append(history.getPrompt()).append("\n");
-                    }
-                    if (history.getResponse() != null) {
-                        userPrompt.append("Response: ").append(history.getResponse()).append("\n");
-                    }
-                    userPrompt.append("\n");
-                }
-                userPrompt.append("\n");
-            }
+            historyFuture = aiWizardRequestExecutor.fork("history",
+                    () -> aiWizardHistoryService.loadRecentInteractions(template, historyDepth));
         }
 
-        // 3. For MODIFY operation, include the current script in context
-        // Store original value for history audit trail
-        String originalValue = null;
-        AIWizardOperation operation = selectedTemplate.getOperation();
-        if (operation == AIWizardOperation.MODIFY) {
-            String currentScript = dataSetScriptCodeEditor.getValue();
-            if (currentScript != null && !currentScript.isEmpty()) {
-                originalValue = currentScript;
-                userPrompt.append("=== Current Script ===\n");
-                userPrompt.append(currentScript).append("\n\n");
+        // Join all stages; wall time is roughly the slowest fetch rather than their sum
+        List<StageResult<?>> stages = new ArrayList<>();
+        Map<String, AIWizardTableDDLDefinitionService.TableDDLDefinition> tableDefinitions = null;
+        Map<String, AIWizardEntityDefinitionService.EntityDefinition> entityDefinitions = null;
+        List<AIWizardHistoryService.Interaction> historyList = Collections.emptyList();
+        try {
+            if (tablesFuture != null) {
+                tableDefinitions = joinStage(tablesFuture, stages);
             }
+            if (entityFutures != null) {
+                entityDefinitions = new LinkedHashMap<>();
+                for (Map.Entry<String, CompletableFuture<StageResult<AIWizardEntityDefinitionService.EntityDefinition>>> entry
+                        : entityFutures.entrySet()) {
+                    entityDefinitions.put(entry.getKey(), joinStage(entry.getValue(), stages));
+                }
+            }
+            if (historyFuture != null) {
+                historyList = joinStage(historyFuture, stages);
+            }
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            throw new IllegalStateException("Failed to build AI Wizard context: " + cause.getMessage(), cause);
         }
+        long fetchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - contextStart);
+        long promptStart = System.nanoTime();
+
+        // 3. Assemble definitions, history, script and the user's prompt within the token budget
+        AIWizardPromptBuilder.BuiltPrompt builtPrompt = aiWizardPromptBuilder.build(new AIWizardPromptBuilder.PromptRequest(
+                template.getConnection(),
+                systemInstruction,
+                tableDefinitions,
+                entityDefinitions,
+                joinItems,
+                template.getSchemaFormat(),
+                historyList,
+                originalValue,
+                prompt));
+
+        long promptMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - promptStart);
+        log.info("AI Wizard context for template '{}': fetch {} ms [{}], prompt assembly {} ms",
+                template.getName(), fetchMillis,
+                stages.stream()
+                        .map(stage -> stage.stage() + "=" + stage.millis() + "ms")
+                        .collect(Collectors.joining(", ")),
+                promptMillis);
+        recordStageMetrics(template.getName(), stages, promptMillis);
+        return builtPrompt;
+    }
 
-        // 4. Add the user's prompt at the end
-        if (prompt != null && !prompt.isEmpty()) {
-            userPrompt.append(prompt);
+    /**
+     * Reports the size of the assembled prompt and any context trimming.
+     * Runs on the UI thread via UI.access().
+     *
+     * @param builtPrompt the prompt sent to the model
+     */
+    private void onAIWizardPromptBuilt(AIWizardPromptBuilder.BuiltPrompt builtPrompt) {
+        if (pendingAIWizardRequest == null) {
+            return;
         }
+        notifications.create("Prompt assembled: ~" + builtPrompt.estimatedTokens()
+                        + " of " + builtPrompt.tokenBudget() + " prompt tokens")
+                .withType(Notifications.Type.DEFAULT)
+                .show();
+        if (!builtPrompt.adjustments().isEmpty() || builtPrompt.overBudget()) {
+            notifications.create("Prompt context reduced: "
+                            + String.join("; ", builtPrompt.adjustments()))
+                    .withType(builtPrompt.overBudget() ? Notifications.Type.WARNING : Notifications.Type.DEFAULT)
+                    .show();
+        }
+    }
 
-        // Store for history - the full user prompt without system instruction
-        final String fullUserPrompt = userPrompt.toString();
-        final String finalOriginalValue = originalValue;
-
-        // -------- Call Unified AI Service --------
+    /**
+     * Shows streamed partial output in the target data set's script; the code editor follows
+     * while that data set is selected. Runs on the UI thread via UI.access().
+     *
+     * @param dataSet       the data set the request was sent for
+     * @param partialResult the response received so far
+     */
+    private void onAIWizardPartialResult(DataSet dataSet, String partialResult) {
+        if (pendingAIWizardRequest != null) {
+            dataSet.setText(UnifiedAIService.stripCodeBlockFormatting(partialResult));
+        }
+    }
 
-        String result;
-        try {
-            if (systemInstruction != null && !systemInstruction.isBlank()) {
-                // Call with system instruction (contextPrefix)
-                result = unifiedAIService.generateContent(
-                        fullUserPrompt,
-                        systemInstruction,
-                        connection
-                );
-            } else {
-                // Call without system instruction
-                result = unifiedAIService.generateContent(
-                        fullUserPrompt,
-                        connection
-                );
+    /**
+     * Applies the result of a finished AI Wizard request. Runs on the UI thread via UI.access().
+     * Results of cancelled or superseded requests are ignored.
+     *
+     * @param request        the completed request future
+     * @param template       the prompt template used
+     * @param dataSet        the data set the request was sent for, receives the result
+     * @param originalValue  the original script value (for MODIFY operations)
+     * @param scriptBefore   the data set script before streaming started, restored on failure
+     * @param fullUserPrompt the full prompt sent to the AI
+     * @param repaired       the validated AI response with its usage, or null on failure
+     * @param error          the failure cause, or null on success
+     */
+    private void onAIWizardRequestCompleted(CompletableFuture<Repaired> request,
+                                            AIWizardTemplate template,
+                                            DataSet dataSet,
+                                            String originalValue,
+                                            String scriptBefore,
+                                            String fullUserPrompt,
+                                            Repaired repaired,
+                                            Throwable error) {
+        if (request != pendingAIWizardRequest) {
+            return;  // superseded by a newer request
+        }
+        pendingAIWizardRequest = null;
+        setAIWizardRunning(false);
+
+        if (error != null) {
+            // Discard partially streamed output
+            dataSet.setText(scriptBefore);
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof AIWizardRateLimitException) {
+                notifications.create(cause.getMessage())
+                        .withType(Notifications.Type.WARNING)
+                        .show();
+            } else if (!(cause instanceof CancellationException)) {
+                notifications.create("AI generation failed: " + cause.getMessage())
+                        .withType(Notifications.Type.ERROR)
+                        .show();
             }
-        } catch (Exception ex) {
-            notifications.create("AI generation failed: " + ex.getMessage())
-                    .withType(Notifications.Type.ERROR)
-                    .show();
             return;
         }
 
         // -------- Process and Apply Result --------
 
-        if (result != null) {
+        Generation generation = repaired != null ? repaired.generation() : null;
+        if (generation != null && generation.text() != null) {
             // Strip markdown code block formatting (```sql, ```, etc.)
-            result = stripCodeBlockFormatting(result);
+            String result = UnifiedAIService.stripCodeBlockFormatting(generation.text());
 
-            // Apply the generated/modified query to the code editor
-            dataSetScriptCodeEditor.setValue(result);
+            // Apply the generated/modified query to the data set the request was sent for
+            dataSet.setText(result);
+            aiGeneratedDataSetIds.add(dataSet.getId());
 
             // Save interaction to AIWizardHistory for audit and future reference
-            saveToHistory(selectedTemplate, finalOriginalValue, fullUserPrompt, result);
+            long saveStart = System.nanoTime();
+            saveToHistory(template, dataSet, originalValue, fullUserPrompt, result, generation);
+            aiWizardMetrics.recordStage("history-save", template.getName(), Duration.ofNanos(System.nanoTime() - saveStart));
+
+            showValidation(repaired);
+            if (repaired.validation().valid()) {
+                checkUnboundedQuery(template.getDatasetType(), dataSet, result, repaired.validation());
+            }
+        }
+    }
+
+    /**
+     * Offers the guardrail's remedies for an unbounded result: suggested filters and a row cap.
+     * With aiwizard.guard.inject-row-cap the row cap is added without asking.
+     *
+     * @param dataSetType the data set type of the result
+     * @param dataSet     the data set the result was applied to
+     * @param script      the applied result
+     * @param validation  the validation of the result, with its plan
+     */
+    private void checkUnboundedQuery(DataSetType dataSetType, DataSet dataSet, String script, Validation validation) {
+        Assessment assessment = aiWizardQueryGuard.assess(dataSetType, script, validation);
+        if (!assessment.needsAttention()) {
+            return;
+        }
+        if (aiWizardQueryGuard.isInjectRowCap() && assessment.cappedScript() != null) {
+            dataSet.setText(assessment.cappedScript());
+            notifications.create("Row cap of " + assessment.rowCap() + " added to the generated query: "
+                            + assessment.reason())
+                    .withType(Notifications.Type.WARNING)
+                    .show();
+            return;
+        }
+
+        VerticalLayout content = new VerticalLayout();
+        content.setPadding(false);
+        content.add(new Span("The generated query may load too many rows into the report engine: "
+                + assessment.reason() + "."));
+        if (!assessment.suggestedPredicates().isEmpty()) {
+            content.add(new Span("Consider filtering by a report parameter:"));
+            assessment.suggestedPredicates().forEach(predicate -> content.add(new Span(predicate)));
+        }
+
+        List<DialogAction> actions = new ArrayList<>();
+        if (assessment.cappedScript() != null) {
+            actions.add(new DialogAction(DialogAction.Type.YES)
+                    .withText("Add row cap (" + assessment.rowCap() + ")")
+                    .withHandler(e -> dataSet.setText(assessment.cappedScript())));
+        }
+        actions.add(new DialogAction(DialogAction.Type.CLOSE).withText("Keep query"));
+        dialogs.createOptionDialog()
+                .withHeader("Unbounded query")
+                .withContent(content)
+                .withActions(actions.toArray(new DialogAction[0]))
+                .open();
+    }
 
-            notifications.create("AI assistance completed successfully")
-                    .withType(Notifications.Type.SUCCESS)
+    /**
+     * Reports the validation of an applied result: the remaining error if the repair rounds
+     * did not fix the query, otherwise the plan estimate, as a warning when the plan scans whole tables.
+     *
+     * @param repaired the validated result
+     */
+    private void showValidation(Repaired repaired) {
+        Validation validation = repaired.validation();
+        String repairs = repaired.repairRounds() == 0 ? ""
+                : " after " + repaired.repairRounds() + " repair round" + (repaired.repairRounds() == 1 ? "" : "s");
+        if (!validation.valid()) {
+            notifications.create("Generated query failed validation" + repairs + ": " + validation.error())
+                    .withType(Notifications.Type.ERROR)
+                    .show();
+            return;
+        }
+        if (validation.planAvailable()) {
+            log.debug("AI Wizard query plan:\n{}", validation.plan());
+        }
+        if (!validation.fullScans().isEmpty()) {
+            notifications.create("AI assistance completed" + repairs + ", but the query plan reads whole tables: "
+                            + validation.summary())
+                    .withType(Notifications.Type.WARNING)
                     .show();
+            return;
+        }
+        notifications.create("AI assistance completed successfully" + repairs
+                        + (validation.planAvailable() ? ". Query plan: " + validation.summary() : ""))
+                .withType(Notifications.Type.SUCCESS)
+                .show();
+    }
+
+    /**
+     * Formats a user's remaining rate limit and daily quotas for the AI Wizard dialog.
+     *
+     * @param quota the user's quota status
+     * @return one-line quota description
+     */
+    private String formatQuota(AIWizardRateLimiter.QuotaStatus quota) {
+        if (!quota.enabled()) {
+            return "AI requests are not rate limited";
+        }
+        List<String> parts = new ArrayList<>();
+        if (quota.requestsPerMinute() > 0) {
+            parts.add(quota.requestsAvailable() + " of " + quota.requestsPerMinute() + " requests this minute");
+        }
+        if (quota.dailyRequestQuota() > 0) {
+            parts.add(Math.max(0, quota.dailyRequestQuota() - quota.dailyRequestsUsed()) + " of "
+                    + quota.dailyRequestQuota() + " requests today");
+        }
+        if (quota.dailyTokenQuota() > 0) {
+            parts.add(Math.max(0, quota.dailyTokenQuota() - quota.dailyTokensUsed()) + " of "
+                    + quota.dailyTokenQuota() + " tokens today");
+        }
+        return parts.isEmpty() ? "AI requests are not rate limited" : "Remaining: " + String.join(", ", parts);
+    }
+
+    /**
+     * Toggles the AI Wizard buttons between idle and running state.
+     *
+     * @param running true while a request is in progress
+     */
+    private void setAIWizardRunning(boolean running) {
+        aiWizardBtn.setEnabled(!running);
+        aiWizardCancelBtn.setVisible(running);
+    }
+
+    /**
+     * Records the context stages of a request: the slowest definition fetch as "schema",
+     * the history load as "history" and the prompt assembly as "prompt".
+     *
+     * @param template     the template name
+     * @param stages       the joined context stages
+     * @param promptMillis prompt assembly duration
+     */
+    private void recordStageMetrics(String template, List<StageResult<?>> stages, long promptMillis) {
+        long schemaMillis = -1;
+        for (StageResult<?> stage : stages) {
+            if ("history".equals(stage.stage())) {
+                aiWizardMetrics.recordStage("history", template, Duration.ofMillis(stage.millis()));
+            } else {
+                schemaMillis = Math.max(schemaMillis, stage.millis());
+            }
+        }
+        if (schemaMillis >= 0) {
+            aiWizardMetrics.recordStage("schema", template, Duration.ofMillis(schemaMillis));
         }
+        aiWizardMetrics.recordStage("prompt", template, Duration.ofMillis(promptMillis));
+    }
+
+    /**
+     * Waits for a forked context stage and records its timing.
+     *
+     * @param future the forked stage
+     * @param stages collected stage results, for the timing log
+     * @return the stage value
+     * @throws CompletionException if the stage failed
+     */
+    private <T> T joinStage(CompletableFuture<StageResult<T>> future,
+                            List<StageResult<?>> stages) {
+        StageResult<T> result = future.join();
+        stages.add(result);
+        return result.value();
     }
 
     /**
      * Saves the AI interaction to AIWizardHistory for audit purposes.
      * Records the template used, original value (for modifications),
-     * the full prompt sent, and the AI response received.
+     * the full prompt sent, the AI response received, and the provider,
+     * token usage, latency and estimated cost of the call.
      *
      * @param template      the prompt template used
+     * @param dataSet       the data set the response was generated for
      * @param originalValue the original script value (for MODIFY operations)
      * @param prompt        the full prompt sent to the AI
      * @param response      the AI-generated response
+     * @param generation    the provider call that produced the response
      */
     private void saveToHistory(AIWizardTemplate template,
+                               DataSet dataSet,
                                String originalValue,
                                String prompt,
-                               String response) {
+                               String response,
+                               Generation generation) {
         AIWizardHistory history = dataManager.create(AIWizardHistory.class);
         history.setAiWizardPromptTemplate(template);
+        history.setDataSetId(dataSet.getId());
         history.setOriginalValue(originalValue);
         history.setPrompt(prompt);
         history.setResponse(response);
+        aiWizardUsageService.applyUsage(history, generation);
         dataManager.save(history);
     }
-
-    // ==================== Utility Methods ====================
-
-    /**
-     * Strips markdown code block formatting from LLM responses.
-     * LLMs often wrap code in markdown fences like:
-     *
-     * ```sql
-     * SELECT * FROM table
-     * ```
-     *
-     * This method removes the opening fence (```sql, ```jpql, ```groovy, etc.)
-     * and the closing fence (```) to extract clean code suitable for
-     * direct insertion into the code editor.
-     *
-     * @param text The raw LLM response potentially containing markdown formatting
-     * @return Clean code without markdown code block wrappers,
-     *         or original text if no formatting found
-     */
-    private String stripCodeBlockFormatting(String text) {
-        if (text == null || text.isBlank()) {
-            return text;
-        }
-
-        String result = text.trim();
-
-        // Remove opening code fence with optional language identifier
-        // Matches patterns like: ```sql, ```jpql, ```groovy, ```java, ``` (plain)
-        if (result.startsWith("```")) {
-            int firstNewline = result.indexOf('\n');
-            if (firstNewline != -1) {
-                // Remove everything from start to first newline (inclusive)
-                result = result.substring(firstNewline + 1);
-            } else {
-                // No newline found - edge case, just remove the opening fence using regex
-                result = result.replaceFirst("^```\\w*\\s*", "");
-            }
-        }
-
-        // Remove closing code fence if present at the end
-        if (result.endsWith("```")) {
-            result = result.substring(0, result.length() - 3);
-        }
-
-        return result.trim();
-    }
-}
\ No newline at end of file
+}
@@ -26,7 +26,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * View for testing AI Wizard prompt templates.
@@ -56,6 +58,10 @@ public class PromptTemplateSampleView extends StandardView {
     @Autowired
     private AIWizardTableDDLDefinitionService aiWizardTableDDLDefinitionService;
 
+    /** Assembles the prompt within the provider's token budget */
+    @Autowired
+    private AIWizardPromptBuilder aiWizardPromptBuilder;
+
     /** Jmix dialogs utility for creating option dialogs */
     @Autowired
     private Dialogs dialogs;
@@ -236,29 +242,34 @@ public class PromptTemplateSampleView extends StandardView {
                                 context.append(contextPrefix).append("\n\n");
                             }
 
-                            // 2. Add table DDL or entity definitions based on dataset type
+                            // 2. Fetch table DDL or entity definitions based on dataset type
+                            Map<String, AIWizardTableDDLDefinitionService.TableDDLDefinition> tableDefinitions = null;
+                            Map<String, AIWizardEntityDefinitionService.EntityDefinition> entityDefinitions = null;
                             if (selectedItems != null && !selectedItems.isEmpty()) {
                                 if (dataSetType == DataSetType.SQL) {
-                                    // Fetch and append DDL for each selected table
-                                    for (String tableName : selectedItems) {
-                                        String ddl = aiWizardTableDDLDefinitionService.getTableDDLAsString(tableName);
-                                        context.append("=== ").append(tableName).append(" ===\n");
-                                        context.append(ddl).append("\n\n");
-                                    }
+                                    // Fetch DDL for all selected tables in one metadata pass
+                                    tableDefinitions = aiWizardTableDDLDefinitionService.getTableDDLDefinitions(selectedItems);
                                 } else if (dataSetType == DataSetType.JPQL) {
-                                    // Fetch and append metadata for each selected entity
+                                    entityDefinitions = new LinkedHashMap<>();
                                     for (String entityName : selectedItems) {
-                                        String definition = aiWizardEntityDefinitionService.getEntityDefinitionAsString(entityName);
-                                        context.append("=== ").append(entityName).append(" ===\n");
-                                        context.append(definition).append("\n\n");
+                                        entityDefinitions.put(entityName, aiWizardEntityDefinitionService.getEntityDefinition(entityName));
                                     }
                                 }
                             }
 
-                            // 3. Add the user's prompt at the end
-                            if (prompt != null && !prompt.isEmpty()) {
-                                context.append(prompt);
-                            }
+                            // 3. Add definitions and the user's prompt, assembled within the token budget
+                            // (the context prefix is counted against the budget as well)
+                            AIWizardPromptBuilder.BuiltPrompt builtPrompt = aiWizardPromptBuilder.build(new AIWizardPromptBuilder.PromptRequest(
+                                    selectedTemplate.getConnection(),
+                                    contextPrefix,
+                                    tableDefinitions,
+                                    entityDefinitions,
+                                    null,
+                                    selectedTemplate.getSchemaFormat(),
+                                    null,
+                                    null,
+                                    prompt));
+                            context.append(builtPrompt.userPrompt());
 
                             // Display the constructed context for debugging/transparency
                             contextField.setValue(context.toString());
@@ -290,9 +301,15 @@ public class PromptTemplateSampleView extends StandardView {
                                 responseField.setValue(result);
                             }
 
-                            notifications.create("Context built successfully")
+                            notifications.create("Context built successfully (~" + builtPrompt.estimatedTokens()
+                                            + " of " + builtPrompt.tokenBudget() + " tokens)")
                                     .withType(Notifications.Type.SUCCESS)
                                     .show();
+                            if (!builtPrompt.adjustments().isEmpty()) {
+                                notifications.create("Prompt context reduced: " + String.join("; ", builtPrompt.adjustments()))
+                                        .withType(builtPrompt.overBudget() ? Notifications.Type.WARNING : Notifications.Type.DEFAULT)
+                                        .show();
+                            }
                         }),
                         // Cancel button - closes dialog without action
                         new DialogAction(DialogAction.Type.CANCEL)
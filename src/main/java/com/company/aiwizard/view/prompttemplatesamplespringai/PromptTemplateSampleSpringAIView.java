@@ -26,7 +26,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Route(value = "prompt-template-sample-spring-ai-view", layout = MainView.class)
 @ViewController(id = "PromptTemplateSampleSpringAIView")
@@ -71,6 +73,10 @@ public class PromptTemplateSampleSpringAIView extends StandardView {
     @Autowired
     private UnifiedAIService unifiedAIService;
 
+    /** Assembles the prompt within the provider's token budget */
+    @Autowired
+    private AIWizardPromptBuilder aiWizardPromptBuilder;
+
     // ==================== View Components ====================
 
     /** Text area displaying the constructed context (definitions + prompt) */
@@ -235,33 +241,36 @@ public class PromptTemplateSampleSpringAIView extends StandardView {
                             String systemInstruction = selectedTemplate.getContextPrefix();
 
                             // -------- Build User Prompt --------
-                            // User prompt = table/entity definitions + user's input
+                            // User prompt = table/entity definitions + user's input,
+                            // assembled by AIWizardPromptBuilder within the provider's token budget
 
-                            StringBuilder userPrompt = new StringBuilder();
-
-                            // 1. Add table DDL or entity definitions based on dataset type
+                            // 1. Fetch table DDL or entity definitions based on dataset type
+                            Map<String, AIWizardTableDDLDefinitionService.TableDDLDefinition> tableDefinitions = null;
+                            Map<String, AIWizardEntityDefinitionService.EntityDefinition> entityDefinitions = null;
                             if (selectedItems != null && !selectedItems.isEmpty()) {
                                 if (dataSetType == DataSetType.SQL) {
-                                    // Fetch and append DDL for each selected table
-                                    for (String tableName : selectedItems) {
-                                        String ddl = aiWizardTableDDLDefinitionService.getTableDDLAsString(tableName);
-                                        userPrompt.append("=== ").append(tableName).append(" ===\n");
-                                        userPrompt.append(ddl).append("\n\n");
-                                    }
+                                    // Fetch DDL for all selected tables in one metadata pass
+                                    tableDefinitions = aiWizardTableDDLDefinitionService.getTableDDLDefinitions(selectedItems);
                                 } else if (dataSetType == DataSetType.JPQL) {
-                                    // Fetch and append metadata for each selected entity
+                                    entityDefinitions = new LinkedHashMap<>();
                                     for (String entityName : selectedItems) {
-                                        String definition = aiWizardEntityDefinitionService.getEntityDefinitionAsString(entityName);
-                                        userPrompt.append("=== ").append(entityName).append(" ===\n");
-                                        userPrompt.append(definition).append("\n\n");
+                                        entityDefinitions.put(entityName, aiWizardEntityDefinitionService.getEntityDefinition(entityName));
                                     }
                                 }
                             }
 
-                            // 2. Add the user's prompt at the end
-                            if (prompt != null && !prompt.isEmpty()) {
-                                userPrompt.append(prompt);
-                            }
+                            // 2. Assemble definitions and the user's prompt within the token budget
+                            AIWizardPromptBuilder.BuiltPrompt builtPrompt = aiWizardPromptBuilder.build(new AIWizardPromptBuilder.PromptRequest(
+                                    connection,
+                                    systemInstruction,
+                                    tableDefinitions,
+                                    entityDefinitions,
+                                    null,
+                                    selectedTemplate.getSchemaFormat(),
+                                    null,
+                                    null,
+                                    prompt));
+                            String userPrompt = builtPrompt.userPrompt();
 
                             // Display the constructed context for debugging/transparency
                             // Shows both system instruction and user prompt
@@ -270,7 +279,11 @@ public class PromptTemplateSampleSpringAIView extends StandardView {
                                 displayContext.append("=== SYSTEM INSTRUCTION ===\n");
                                 displayContext.append(systemInstruction).append("\n\n");
                             }
-                            displayContext.append("=== USER PROMPT ===\n");
+                            displayContext.append("=== USER PROMPT (~").append(builtPrompt.estimatedTokens())
+                                    .append(" of ").append(builtPrompt.tokenBudget()).append(" tokens) ===\n");
+                            if (!builtPrompt.adjustments().isEmpty()) {
+                                displayContext.append("Reduced: ").append(String.join("; ", builtPrompt.adjustments())).append("\n\n");
+                            }
                             displayContext.append(userPrompt);
                             contextField.setValue(displayContext.toString());
 
@@ -279,20 +292,14 @@ public class PromptTemplateSampleSpringAIView extends StandardView {
                             String result = null;
 
                             try {
-                                if (systemInstruction != null && !systemInstruction.isBlank()) {
-                                    // Call with system instruction (contextPrefix)
-                                    result = unifiedAIService.generateContent(
-                                            userPrompt.toString(),
-                                            systemInstruction,
-                                            connection
-                                    );
-                                } else {
-                                    // Call without system instruction
-                                    result = unifiedAIService.generateContent(
-                                            userPrompt.toString(),
-                                            connection
-                                    );
-                                }
+                                // System instruction (contextPrefix) is applied when present;
+                                // the template decides whether cached responses may be reused
+                                result = unifiedAIService.generateContent(
+                                        userPrompt,
+                                        systemInstruction,
+                                        connection,
+                                        !Boolean.FALSE.equals(selectedTemplate.getCacheEnabled())
+                                );
                             } catch (Exception ex) {
                                 notifications.create("AI generation failed: " + ex.getMessage())
                                         .withType(Notifications.Type.ERROR)
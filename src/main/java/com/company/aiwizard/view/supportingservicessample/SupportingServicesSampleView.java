@@ -3,6 +3,7 @@ package com.company.aiwizard.view.supportingservicessample;
 
 import com.company.aiwizard.service.AIWizardEntityDefinitionService;
 import com.company.aiwizard.service.AIWizardEntityListService;
+import com.company.aiwizard.service.AIWizardSchemaSnapshotService;
 import com.company.aiwizard.service.AIWizardTableDDLDefinitionService;
 import com.company.aiwizard.service.AIWizardTableListService;
 import com.company.aiwizard.view.main.MainView;
@@ -33,6 +34,8 @@ public class SupportingServicesSampleView extends StandardView {
     @Autowired
     private AIWizardTableDDLDefinitionService aIWizardTableDDLDefinitionService;
     @Autowired
+    private AIWizardSchemaSnapshotService aIWizardSchemaSnapshotService;
+    @Autowired
     private Dialogs dialogs;
     @Autowired
     private UiComponents uiComponents;
@@ -104,11 +107,12 @@ public class SupportingServicesSampleView extends StandardView {
                             Collection<String> selectedTables = twinColumn.getValue();
                             if (selectedTables != null && !selectedTables.isEmpty()) {
                                 StringBuilder sb = new StringBuilder();
-                                for (String tableName : selectedTables) {
-                                    String ddl = aIWizardTableDDLDefinitionService.getTableDDLAsString(tableName);
-                                    sb.append("=== ").append(tableName).append(" ===\n");
-                                    sb.append(ddl).append("\n\n");
-                                }
+                                aIWizardTableDDLDefinitionService.getTableDDLDefinitions(selectedTables)
+                                        .forEach((tableName, definition) -> {
+                                            String ddl = aIWizardTableDDLDefinitionService.getTableDDLAsString(definition);
+                                            sb.append("=== ").append(tableName).append(" ===\n");
+                                            sb.append(ddl).append("\n\n");
+                                        });
                                 responseField.setValue(sb.toString());
                             }
                         }),
@@ -136,11 +140,12 @@ public class SupportingServicesSampleView extends StandardView {
                             Collection<String> selectedTables = twinColumn.getValue();
                             if (selectedTables != null && !selectedTables.isEmpty()) {
                                 StringBuilder sb = new StringBuilder();
-                                for (String tableName : selectedTables) {
-                                    String metadata = aIWizardTableDDLDefinitionService.getTableMetadataAsString(tableName);
-                                    sb.append("=== ").append(tableName).append(" ===\n");
-                                    sb.append(metadata).append("\n\n");
-                                }
+                                aIWizardTableDDLDefinitionService.getTableDDLDefinitions(selectedTables)
+                                        .forEach((tableName, definition) -> {
+                                            String metadata = aIWizardTableDDLDefinitionService.getTableMetadataAsString(definition);
+                                            sb.append("=== ").append(tableName).append(" ===\n");
+                                            sb.append(metadata).append("\n\n");
+                                        });
                                 responseField.setValue(sb.toString());
                             }
                         }),
@@ -149,4 +154,30 @@ public class SupportingServicesSampleView extends StandardView {
                 .open();
     }
 
-}
\ No newline at end of file
+    @Subscribe(id = "schemaSnapshotStatusBtn", subject = "clickListener")
+    public void onSchemaSnapshotStatusBtnClick(final ClickEvent<JmixButton> event) {
+        showSchemaSnapshotStatus(aIWizardSchemaSnapshotService.getStatus());
+    }
+
+    @Subscribe(id = "schemaSnapshotRefreshBtn", subject = "clickListener")
+    public void onSchemaSnapshotRefreshBtnClick(final ClickEvent<JmixButton> event) {
+        aIWizardSchemaSnapshotService.refresh();
+        showSchemaSnapshotStatus(aIWizardSchemaSnapshotService.getStatus());
+    }
+
+    private void showSchemaSnapshotStatus(AIWizardSchemaSnapshotService.SnapshotStatus status) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Enabled: ").append(status.enabled()).append("\n");
+        sb.append("Loaded: ").append(status.loaded()).append("\n");
+        if (status.loaded()) {
+            sb.append("Version: ").append(status.version()).append("\n");
+            sb.append("Tables: ").append(status.tableCount()).append("\n");
+            sb.append("Loaded at: ").append(status.loadedAt()).append("\n");
+            sb.append("Age: ").append(status.age().toSeconds()).append(" s\n");
+            sb.append("Load time: ").append(status.loadMillis()).append(" ms\n");
+            sb.append("Stale: ").append(status.stale()).append("\n");
+        }
+        responseField.setValue(sb.toString());
+    }
+
+}
@@ -1,9 +1,12 @@
 package com.company.aiwizard.view.unifiedaisample;
 
 import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.service.AIWizardRequestExecutor;
 import com.company.aiwizard.service.UnifiedAIService;
+import com.company.aiwizard.view.AIWizardPush;
 import com.company.aiwizard.view.main.MainView;
 import com.vaadin.flow.component.ClickEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.notification.NotificationVariant;
@@ -15,6 +18,8 @@ import io.jmix.flowui.view.*;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Unified AI Sample View demonstrating Spring AI integration in Jmix.
@@ -24,6 +29,7 @@ import java.util.List;
  * - Provider selection dropdown (only shows configured providers)
  * - Optional system instruction for guiding AI behavior
  * - Prompt input and response display
+ * - Streaming: the response is rendered as it arrives, pushed to the browser via @Push (throttled)
  */
 @Route(value = "unified-ai-sample-view", layout = MainView.class)
 @ViewController(id = "UnifiedAISampleView")
@@ -34,6 +40,10 @@ public class UnifiedAISampleView extends StandardView {
     @Autowired
     private UnifiedAIService unifiedAiService;
 
+    /** Bounded executor running LLM calls off the Vaadin request thread. */
+    @Autowired
+    private AIWizardRequestExecutor aiWizardRequestExecutor;
+
     /** Jmix Messages service for enum localization. */
     @Autowired
     private Messages messages;
@@ -89,7 +99,7 @@ public class UnifiedAISampleView extends StandardView {
 
     /**
      * Handles the Generate button click.
-     * Validates input, calls the AI service, and displays the response.
+     * Validates input, calls the AI service in the background, and streams the response.
      *
      * @param event the button click event
      */
@@ -115,21 +125,31 @@ public class UnifiedAISampleView extends StandardView {
         generateBtn.setEnabled(false);
         responseField.setValue("Generating response with " + messages.getMessage(provider) + "...");
 
+        UI ui = UI.getCurrent();
+        // Partial output is pushed to the browser as it arrives, throttled like the report AI Wizard
+        Consumer<String> onChunk = AIWizardPush.throttledStream(ui, responseField::setValue);
+
         try {
-            // Call AI service with or without system instruction
-            String result;
-            if (systemInstruction != null && !systemInstruction.isBlank()) {
-                result = unifiedAiService.generateContent(prompt, systemInstruction, provider);
-            } else {
-                result = unifiedAiService.generateContent(prompt, provider);
-            }
-            responseField.setValue(result);
+            // Stream the response on a background thread
+            aiWizardRequestExecutor.submit(() ->
+                            unifiedAiService.generateContentStream(prompt, systemInstruction, provider, onChunk))
+                    .whenComplete((result, error) -> AIWizardPush.access(ui, () -> {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause()
+                                    : error;
+                            // Display error in response field and show notification
+                            responseField.setValue("Error: " + cause.getMessage());
+                            showError("Generation failed: " + cause.getMessage());
+                        } else {
+                            responseField.setValue(result);
+                        }
+                        // Re-enable button regardless of success/failure
+                        generateBtn.setEnabled(true);
+                    }));
         } catch (Exception e) {
-            // Display error in response field and show notification
             responseField.setValue("Error: " + e.getMessage());
             showError("Generation failed: " + e.getMessage());
-        } finally {
-            // Re-enable button regardless of success/failure
             generateBtn.setEnabled(true);
         }
     }
@@ -0,0 +1,180 @@
+package com.company.aiwizard;
+
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PrimaryKeyInfo;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.PropertyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ColumnDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.ForeignKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.PrimaryKeyDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sample CUSTOMER / PRODUCT / CUSTOMER_ORDER model shared by the AI Wizard unit tests.
+ * Definitions mirror what the introspection services return for the sample Liquibase schema;
+ * further tables are built with an ID primary key and a foreign key per referenced table.
+ */
+public final class AIWizardSampleSchema {
+
+    private AIWizardSampleSchema() {
+    }
+
+    // ==================== Tables ====================
+
+    public static TableDDLDefinition customer() {
+        return table("CUSTOMER", List.of(
+                column("ID", "UUID", Types.OTHER, 16, null, false, 1),
+                column("NAME", "VARCHAR", Types.VARCHAR, 255, null, false, 2),
+                column("EMAIL", "VARCHAR", Types.VARCHAR, 255, null, true, 3),
+                column("CITY", "VARCHAR", Types.VARCHAR, 255, null, true, 4)
+        ), List.of(), List.of(primaryKeyIndex("CUSTOMER")));
+    }
+
+    public static TableDDLDefinition product() {
+        return table("PRODUCT", List.of(
+                column("ID", "UUID", Types.OTHER, 16, null, false, 1),
+                column("NAME", "VARCHAR", Types.VARCHAR, 255, null, false, 2),
+                column("PRICE", "DECIMAL", Types.DECIMAL, 19, 2, false, 3),
+                column("CATEGORY", "VARCHAR", Types.VARCHAR, 255, null, true, 4)
+        ), List.of(), List.of(primaryKeyIndex("PRODUCT")));
+    }
+
+    public static TableDDLDefinition customerOrder() {
+        return table("CUSTOMER_ORDER", List.of(
+                column("ID", "UUID", Types.OTHER, 16, null, false, 1),
+                column("ORDER_NUMBER", "VARCHAR", Types.VARCHAR, 255, null, false, 2),
+                column("CUSTOMER_ID", "UUID", Types.OTHER, 16, null, false, 3),
+                column("PRODUCT_ID", "UUID", Types.OTHER, 16, null, false, 4),
+                column("QUANTITY", "INTEGER", Types.INTEGER, 32, 0, false, 5),
+                column("TOTAL_AMOUNT", "DECIMAL", Types.DECIMAL, 19, 2, true, 6),
+                column("ORDER_DATE", "DATE", Types.DATE, 10, null, false, 7)
+        ), List.of(
+                foreignKey("CUSTOMER_ORDER", "CUSTOMER"),
+                foreignKey("CUSTOMER_ORDER", "PRODUCT")
+        ), List.of(
+                primaryKeyIndex("CUSTOMER_ORDER"),
+                new IndexDefinition("IDX_CUSTOMER_ORDER_ON_CUSTOMER", List.of("CUSTOMER_ID"), false, "A"),
+                new IndexDefinition("IDX_CUSTOMER_ORDER_ON_PRODUCT", List.of("PRODUCT_ID"), false, "A")
+        ));
+    }
+
+    /**
+     * Builds a table with a UUID primary key ID, nullable VARCHAR(255) columns and a
+     * mandatory {@code <REFERENCE>_ID} foreign key column per referenced table.
+     */
+    public static TableDDLDefinition table(String name, List<String> columnNames, String... references) {
+        List<ColumnDefinition> columns = new ArrayList<>();
+        columns.add(column("ID", "UUID", Types.OTHER, 16, null, false, 1));
+        for (String columnName : columnNames) {
+            columns.add(column(columnName, "VARCHAR", Types.VARCHAR, 255, null, true, columns.size() + 1));
+        }
+        List<ForeignKeyDefinition> foreignKeys = new ArrayList<>();
+        for (String reference : references) {
+            columns.add(column(reference + "_ID", "UUID", Types.OTHER, 16, null, false, columns.size() + 1));
+            foreignKeys.add(foreignKey(name, reference));
+        }
+        return table(name, columns, foreignKeys, List.of());
+    }
+
+    /**
+     * Builds a table with the primary key on ID. The lists are used as given.
+     */
+    public static TableDDLDefinition table(String name, List<ColumnDefinition> columns,
+                                           List<ForeignKeyDefinition> foreignKeys, List<IndexDefinition> indexes) {
+        return new TableDDLDefinition("PUBLIC", "PUBLIC", name, columns,
+                new PrimaryKeyDefinition("PK_" + name, List.of("ID")), foreignKeys, indexes, List.of());
+    }
+
+    public static ColumnDefinition column(String name, String type, int dataType, Integer size, Integer digits,
+                                          boolean nullable, int position) {
+        return new ColumnDefinition(name, type, dataType, size, digits, nullable, null, position, null, false);
+    }
+
+    /**
+     * Foreign key from {@code <REFERENCE>_ID} of a table to the ID of the referenced table.
+     */
+    public static ForeignKeyDefinition foreignKey(String table, String reference) {
+        return new ForeignKeyDefinition("FK_" + table + "_ON_" + reference, reference + "_ID",
+                "PUBLIC", reference, "ID", "NO ACTION", "NO ACTION");
+    }
+
+    /**
+     * Definitions keyed by table name, in the given order.
+     */
+    public static Map<String, TableDDLDefinition> tables(TableDDLDefinition... tables) {
+        Map<String, TableDDLDefinition> map = new LinkedHashMap<>();
+        for (TableDDLDefinition table : tables) {
+            map.put(table.tableName(), table);
+        }
+        return map;
+    }
+
+    private static IndexDefinition primaryKeyIndex(String table) {
+        return new IndexDefinition("SYS_IDX_PK_" + table, List.of("ID"), true, "A");
+    }
+
+    // ==================== Entities ====================
+
+    public static EntityDefinition customerEntity() {
+        return entity("Customer", "CUSTOMER", List.of(
+                idProperty(),
+                property("city", "String", "CITY", false, null, null),
+                property("email", "String", "EMAIL", false, null, null),
+                property("name", "String", "NAME", true, null, null)
+        ));
+    }
+
+    public static EntityDefinition productEntity() {
+        return entity("Product", "PRODUCT", List.of(
+                property("category", "String", "CATEGORY", false, null, null),
+                idProperty(),
+                property("name", "String", "NAME", true, null, null),
+                property("price", "BigDecimal", "PRICE", true, null, null)
+        ));
+    }
+
+    public static EntityDefinition customerOrderEntity() {
+        return entity("CustomerOrder", "CUSTOMER_ORDER", List.of(
+                property("customer", "Customer", "CUSTOMER_ID", true, "ManyToOne", "Customer"),
+                idProperty(),
+                property("orderDate", "LocalDate", "ORDER_DATE", true, null, null),
+                property("orderNumber", "String", "ORDER_NUMBER", true, null, null),
+                property("product", "Product", "PRODUCT_ID", true, "ManyToOne", "Product"),
+                property("quantity", "Integer", "QUANTITY", true, null, null),
+                property("totalAmount", "BigDecimal", "TOTAL_AMOUNT", false, null, null)
+        ));
+    }
+
+    private static EntityDefinition entity(String name, String table, List<PropertyDefinition> properties) {
+        return new EntityDefinition(name, name, "com.company.aiwizard.entity." + name, table, null,
+                true, false, false, false,
+                new PrimaryKeyInfo("id", "UUID", "ID", false),
+                properties,
+                List.of("@JmixEntity", "@Table", "@Entity"),
+                null);
+    }
+
+    private static PropertyDefinition idProperty() {
+        return new PropertyDefinition("id", "UUID", "DATATYPE", "ID", null, 255, 0, 0, true, false,
+                null, null, null, null, null, null, null, List.of("@JmixGeneratedValue"));
+    }
+
+    private static PropertyDefinition property(String name, String javaType, String column, boolean mandatory,
+                                               String relationType, String relatedEntity) {
+        boolean association = relationType != null;
+        return new PropertyDefinition(name, javaType, association ? "ASSOCIATION" : "DATATYPE", column, null,
+                association ? null : 255, association ? null : 0, association ? null : 0,
+                mandatory, false,
+                relationType, relatedEntity, null,
+                association ? "LAZY" : null,
+                association ? List.of() : null,
+                null, null,
+                List.of());
+    }
+}
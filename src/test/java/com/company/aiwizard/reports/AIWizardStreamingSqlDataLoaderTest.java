@@ -0,0 +1,154 @@
+package com.company.aiwizard.reports;
+
+import com.company.aiwizard.service.AIWizardHistoryService;
+import io.jmix.reports.entity.DataSet;
+import io.jmix.reports.yarg.exception.DataLoadingException;
+import io.jmix.reports.yarg.loaders.ReportDataLoader;
+import io.jmix.reports.yarg.loaders.factory.ReportLoaderFactory;
+import io.jmix.reports.yarg.structure.BandData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compact band rows, size estimates and the memory ceiling, against an in-memory HSQLDB
+ * with a CUSTOMER table of three rows.
+ */
+public class AIWizardStreamingSqlDataLoaderTest {
+
+    private static final String URL = "jdbc:hsqldb:mem:aiwizard_streaming";
+
+    private AIWizardStreamingSqlDataLoader loader;
+    private AIWizardHistoryService historyService;
+    private ReportDataLoader delegate;
+
+    private Connection keepAlive;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "SA", "");
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("create table CUSTOMER (ID integer primary key, NAME varchar(50))");
+            statement.execute("insert into CUSTOMER values (1, 'a'), (2, 'b'), (3, 'c')");
+        }
+
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> DriverManager.getConnection(URL, "SA", ""));
+        historyService = mock(AIWizardHistoryService.class);
+        delegate = mock(ReportDataLoader.class);
+        loader = new AIWizardStreamingSqlDataLoader(dataSource, mock(ReportLoaderFactory.class), historyService);
+        ReflectionTestUtils.setField(loader, "delegate", delegate);
+        ReflectionTestUtils.setField(loader, "fetchSize", 2);
+        ReflectionTestUtils.setField(loader, "memoryCeiling", DataSize.ofMegabytes(1));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("drop schema public cascade");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    void test_generatedDataSetIsReadIntoCompactRows() {
+        DataSet dataSet = dataSet("select ID, NAME from CUSTOMER order by ID");
+        when(historyService.isGeneratedDataSet(dataSet.getId())).thenReturn(true);
+
+        List<Map<String, Object>> rows = loader.loadData(dataSet, new BandData("Root"), Map.of());
+
+        assertThat(rows).hasSize(3);
+        assertThat(rows.get(0)).isInstanceOf(AIWizardStreamingSqlDataLoader.CompactRow.class);
+        assertThat(rows.get(0).get("NAME")).isEqualTo("a");
+        assertThat(rows.get(2).get("ID")).isEqualTo(3);
+        verify(delegate, never()).loadData(any(), any(), any());
+
+        // Remembered: the history is not queried again
+        loader.loadData(dataSet, new BandData("Root"), Map.of());
+        verify(historyService, times(1)).isGeneratedDataSet(dataSet.getId());
+    }
+
+    @Test
+    void test_otherDataSetsGoToOriginalLoader() {
+        DataSet dataSet = dataSet("select ID, NAME from CUSTOMER");
+        when(historyService.isGeneratedDataSet(dataSet.getId())).thenReturn(false);
+        when(delegate.loadData(any(), any(), any())).thenReturn(List.of());
+
+        assertThat(loader.loadData(dataSet, new BandData("Root"), Map.of())).isEmpty();
+        verify(delegate).loadData(any(), any(), any());
+
+        // Unless every SQL data set is handled
+        ReflectionTestUtils.setField(loader, "allSqlDataSets", true);
+        assertThat(loader.loadData(dataSet, new BandData("Root"), Map.of())).hasSize(3);
+    }
+
+    @Test
+    void test_memoryCeilingFailsBandWithDataSetName() {
+        ReflectionTestUtils.setField(loader, "allSqlDataSets", true);
+        ReflectionTestUtils.setField(loader, "memoryCeiling", DataSize.ofBytes(200));
+        DataSet dataSet = dataSet("select ID, NAME from CUSTOMER");
+
+        assertThatThrownBy(() -> loader.loadData(dataSet, new BandData("Root"), Map.of()))
+                .isInstanceOf(DataLoadingException.class)
+                .hasStackTraceContaining("Data set [Customers] exceeded the memory ceiling");
+    }
+
+    @Test
+    void test_compactRowPutsKnownColumnsInPlace() {
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        columns.put("ID", 0);
+        columns.put("NAME", 1);
+        columns.put("name", 1);  // case-sensitive synonym of the same column
+        AIWizardStreamingSqlDataLoader.CompactRow row =
+                new AIWizardStreamingSqlDataLoader.CompactRow(columns, new Object[]{1, "a"});
+
+        assertThat(row.get("name")).isEqualTo("a");
+        assertThat(row.put("NAME", "b")).isEqualTo("a");
+        assertThat(row.get("name")).isEqualTo("b");
+        assertThat(row.containsKey("TOTAL")).isFalse();
+
+        row.put("TOTAL", 10);
+        assertThat(row.get("TOTAL")).isEqualTo(10);
+        assertThat(row.containsKey("TOTAL")).isTrue();
+        assertThat(row).containsEntry("ID", 1).containsEntry("NAME", "b").containsEntry("TOTAL", 10);
+        assertThat(row.size()).isEqualTo(4);
+    }
+
+    @Test
+    void test_estimateSize() {
+        assertThat(AIWizardStreamingSqlDataLoader.estimateSize(null)).isZero();
+        assertThat(AIWizardStreamingSqlDataLoader.estimateSize("abcd")).isEqualTo(48);
+        assertThat(AIWizardStreamingSqlDataLoader.estimateSize(new byte[100])).isEqualTo(116);
+        assertThat(AIWizardStreamingSqlDataLoader.estimateSize(BigDecimal.ONE)).isEqualTo(64);
+        assertThat(AIWizardStreamingSqlDataLoader.estimateSize(42L)).isEqualTo(24);
+    }
+
+    private DataSet dataSet(String script) {
+        DataSet dataSet = new DataSet();
+        dataSet.setId(UUID.randomUUID());
+        dataSet.setName("Customers");
+        dataSet.setText(script);
+        return dataSet;
+    }
+}
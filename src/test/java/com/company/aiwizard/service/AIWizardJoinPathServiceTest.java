@@ -0,0 +1,98 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardSchemaSnapshotService.SnapshotStatus;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.company.aiwizard.AIWizardSampleSchema.customer;
+import static com.company.aiwizard.AIWizardSampleSchema.customerOrder;
+import static com.company.aiwizard.AIWizardSampleSchema.product;
+import static com.company.aiwizard.AIWizardSampleSchema.table;
+import static com.company.aiwizard.AIWizardSampleSchema.tables;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Join paths on the sample model (AIWizardSampleSchema) extended with a shipment chain:
+ * CUSTOMER <- CUSTOMER_ORDER -> PRODUCT, SHIPMENT -> CUSTOMER_ORDER, TRACKING_EVENT -> SHIPMENT,
+ * plus an unconnected AUDIT_LOG table.
+ */
+public class AIWizardJoinPathServiceTest {
+
+    private AIWizardJoinPathService service;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, TableDDLDefinition> tables = tables(
+                customer(),
+                product(),
+                customerOrder(),
+                table("SHIPMENT", List.of("CARRIER"), "CUSTOMER_ORDER"),
+                table("TRACKING_EVENT", List.of("STATUS"), "SHIPMENT"),
+                table("AUDIT_LOG", List.of("MESSAGE")));
+
+        AIWizardTableListService tableListService = mock(AIWizardTableListService.class);
+        when(tableListService.getAllTableNames()).thenReturn(List.copyOf(tables.keySet()));
+        AIWizardTableDDLDefinitionService tableDDLDefinitionService = mock(AIWizardTableDDLDefinitionService.class);
+        when(tableDDLDefinitionService.getTableDDLDefinitions(any())).thenReturn(tables);
+        AIWizardSchemaSnapshotService schemaSnapshotService = mock(AIWizardSchemaSnapshotService.class);
+        when(schemaSnapshotService.getStatus())
+                .thenReturn(new SnapshotStatus(true, true, tables.size(), null, null, 0, 1, false));
+
+        service = new AIWizardJoinPathService(tableListService, tableDDLDefinitionService,
+                schemaSnapshotService, null, null);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxHops", 3);
+        ReflectionTestUtils.setField(service, "maxItems", 5);
+    }
+
+    @Test
+    void test_addsJoinTableBetweenSelectedTables() {
+        assertThat(service.findConnectingTables(List.of("customer", "PRODUCT")))
+                .containsExactly("CUSTOMER_ORDER");
+    }
+
+    @Test
+    void test_addsWholePathForDistantTables() {
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "TRACKING_EVENT")))
+                .containsExactlyInAnyOrder("CUSTOMER_ORDER", "SHIPMENT");
+    }
+
+    @Test
+    void test_connectedSelectionAddsNothing() {
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "CUSTOMER_ORDER", "PRODUCT"))).isEmpty();
+    }
+
+    @Test
+    void test_sharedPathAddedOnce() {
+        // PRODUCT and TRACKING_EVENT both attach through CUSTOMER_ORDER
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "PRODUCT", "TRACKING_EVENT")))
+                .containsExactlyInAnyOrder("CUSTOMER_ORDER", "SHIPMENT");
+    }
+
+    @Test
+    void test_unconnectedOrDistantTablesIgnored() {
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "AUDIT_LOG"))).isEmpty();
+
+        ReflectionTestUtils.setField(service, "maxHops", 2);
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "TRACKING_EVENT"))).isEmpty();
+    }
+
+    @Test
+    void test_onlyWholePathsWithinMaxItems() {
+        ReflectionTestUtils.setField(service, "maxItems", 1);
+
+        // CUSTOMER -> TRACKING_EVENT needs two tables: none are added rather than a cut path
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "TRACKING_EVENT"))).isEmpty();
+        // PRODUCT fits, the path on to TRACKING_EVENT does not
+        assertThat(service.findConnectingTables(List.of("CUSTOMER", "PRODUCT", "TRACKING_EVENT")))
+                .containsExactly("CUSTOMER_ORDER");
+    }
+}
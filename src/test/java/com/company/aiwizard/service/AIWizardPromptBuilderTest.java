@@ -0,0 +1,157 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardSchemaFormat;
+import com.company.aiwizard.service.AIWizardHistoryService.Interaction;
+import com.company.aiwizard.service.AIWizardPromptBuilder.BuiltPrompt;
+import com.company.aiwizard.service.AIWizardPromptBuilder.PromptRequest;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.company.aiwizard.AIWizardSampleSchema.customer;
+import static com.company.aiwizard.AIWizardSampleSchema.customerOrder;
+import static com.company.aiwizard.AIWizardSampleSchema.product;
+import static com.company.aiwizard.AIWizardSampleSchema.table;
+import static com.company.aiwizard.AIWizardSampleSchema.tables;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prompt assembly on the sample CUSTOMER / PRODUCT / CUSTOMER_ORDER model (AIWizardSampleSchema)
+ * plus an unrelated AUDIT_LOG table, in the compact format. One character counts as one token, so budgets
+ * can be read as prompt lengths.
+ */
+public class AIWizardPromptBuilderTest {
+
+    private AIWizardPromptBuilder builder;
+
+    @BeforeEach
+    void setUp() {
+        AIWizardSchemaFormatter formatter = new AIWizardSchemaFormatter(
+                new AIWizardTableDDLDefinitionService(null, null),
+                new AIWizardEntityDefinitionService(null, null));
+        builder = new AIWizardPromptBuilder(formatter, null);
+        ReflectionTestUtils.setField(builder, "openAiTokenBudget", 100_000);
+        ReflectionTestUtils.setField(builder, "geminiTokenBudget", 100_000);
+        ReflectionTestUtils.setField(builder, "charsPerToken", 1.0);
+    }
+
+    @Test
+    void test_linkedItemsRenderedWithKeysOnly() {
+        BuiltPrompt built = builder.build(request(AIWizardConnection.OPENAI,
+                tables(customer(), product(), customerOrder()), null,
+                List.of(), "Products bought by each customer"));
+
+        assertThat(built.userPrompt())
+                .contains("CUSTOMER(ID:UUID pk, NAME:VARCHAR(255)!, EMAIL:VARCHAR(255), CITY:VARCHAR(255))")
+                .contains("PRODUCT(ID:UUID pk, NAME:VARCHAR(255)!, PRICE:DECIMAL(19,2)!, CATEGORY:VARCHAR(255))")
+                .contains("CUSTOMER_ORDER(ID:UUID pk, CUSTOMER_ID:UUID! ->CUSTOMER.ID, PRODUCT_ID:UUID! ->PRODUCT.ID)")
+                .doesNotContain("QUANTITY")
+                .endsWith("Products bought by each customer");
+        assertThat(built.adjustments()).containsExactly("CUSTOMER_ORDER: key columns only");
+        assertThat(built.overBudget()).isFalse();
+    }
+
+    @Test
+    void test_joinItemsRenderedWithKeysOnly() {
+        BuiltPrompt built = builder.build(request(AIWizardConnection.OPENAI,
+                tables(customer(), product(), customerOrder()), Set.of("CUSTOMER_ORDER"),
+                List.of(), "Products bought by each customer"));
+
+        assertThat(built.userPrompt())
+                .contains("CUSTOMER(ID:UUID pk, NAME:VARCHAR(255)!, EMAIL:VARCHAR(255), CITY:VARCHAR(255))")
+                .contains("PRODUCT(ID:UUID pk, NAME:VARCHAR(255)!, PRICE:DECIMAL(19,2)!, CATEGORY:VARCHAR(255))")
+                .contains("CUSTOMER_ORDER(ID:UUID pk, CUSTOMER_ID:UUID! ->CUSTOMER.ID, PRODUCT_ID:UUID! ->PRODUCT.ID)")
+                .doesNotContain("QUANTITY")
+                .endsWith("Products bought by each customer");
+        assertThat(built.adjustments()).containsExactly("CUSTOMER_ORDER: key columns only");
+        assertThat(built.overBudget()).isFalse();
+    }
+
+    @Test
+    void test_trimmingOrder() {
+        ReflectionTestUtils.setField(builder, "openAiTokenBudget", 1);
+
+        BuiltPrompt built = builder.build(request(AIWizardConnection.OPENAI,
+                tables(customer(), customerOrder(), auditLog()), null,
+                List.of(interaction("first"), interaction("second")), "List customer names"));
+
+        assertThat(built.adjustments()).containsExactly(
+                "CUSTOMER_ORDER: key columns only",          // Linked to the focus item: keys only up front
+                "AUDIT_LOG: key columns only",               // 1. Unlinked non-focus items
+                "history: dropped 2 of 2 interactions",      // 2. Previous interactions
+                "CUSTOMER: unreferenced columns dropped",    // 3. Focus items pruned
+                "AUDIT_LOG: omitted",                        // 4. Non-focus items, least related first
+                "CUSTOMER_ORDER: omitted",
+                "CUSTOMER: key columns only");               // 5. Focus items to keys
+        assertThat(built.userPrompt())
+                .startsWith("CUSTOMER(ID:UUID pk)\n")
+                .doesNotContain("AUDIT_LOG")
+                .doesNotContain("CUSTOMER_ORDER")
+                .doesNotContain("Previous Interactions")
+                .endsWith("List customer names");
+    }
+
+    @Test
+    void test_trimmingStopsWithinBudget() {
+        ReflectionTestUtils.setField(builder, "geminiTokenBudget", 3000);
+
+        BuiltPrompt built = builder.build(request(AIWizardConnection.GEMINI,
+                tables(customer(), customerOrder(), auditLog()), null,
+                List.of(interaction("older" + "x".repeat(2000)), interaction("newer" + "y".repeat(2000))),
+                "List customer names"));
+
+        assertThat(built.adjustments()).containsExactly(
+                "CUSTOMER_ORDER: key columns only",
+                "AUDIT_LOG: key columns only",
+                "history: dropped 1 of 2 interactions");
+        assertThat(built.userPrompt())
+                .contains("CUSTOMER(ID:UUID pk, NAME:VARCHAR(255)!, EMAIL:VARCHAR(255), CITY:VARCHAR(255))")
+                .contains("newer")
+                .doesNotContain("older");
+        assertThat(built.tokenBudget()).isEqualTo(3000);
+        assertThat(built.estimatedTokens()).isLessThanOrEqualTo(3000);
+        assertThat(built.overBudget()).isFalse();
+    }
+
+    @Test
+    void test_overBudgetWhenUserPromptAloneExceedsBudget() {
+        ReflectionTestUtils.setField(builder, "openAiTokenBudget", 10);
+
+        BuiltPrompt built = builder.build(request(AIWizardConnection.OPENAI, null, null, List.of(),
+                "A user prompt that is never trimmed"));
+
+        assertThat(built.userPrompt()).isEqualTo("A user prompt that is never trimmed");
+        assertThat(built.estimatedTokens()).isEqualTo(35);
+        assertThat(built.overBudget()).isTrue();
+        assertThat(built.adjustments()).isEmpty();
+    }
+
+    @Test
+    void test_estimateTokensRoundsUp() {
+        ReflectionTestUtils.setField(builder, "charsPerToken", 3.5);
+
+        assertThat(builder.estimateTokens(null)).isZero();
+        assertThat(builder.estimateTokens("abcdefg")).isEqualTo(2);
+        assertThat(builder.estimateTokens("abcdefgh")).isEqualTo(3);
+    }
+
+    private PromptRequest request(AIWizardConnection connection, Map<String, TableDDLDefinition> tables,
+                                  Set<String> joinItems, List<Interaction> history, String userPrompt) {
+        return new PromptRequest(connection, null, tables, null, joinItems, AIWizardSchemaFormat.COMPACT,
+                history, null, userPrompt);
+    }
+
+    private Interaction interaction(String prompt) {
+        return new Interaction(null, prompt, "SELECT 1");
+    }
+
+    private TableDDLDefinition auditLog() {
+        return table("AUDIT_LOG", List.of("MESSAGE"));
+    }
+}
@@ -0,0 +1,278 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.service.AIWizardProviderRouter.BreakerState;
+import com.company.aiwizard.service.AIWizardProviderRouter.Route;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Routing tests against local stub HTTP servers standing in for the OpenAI and Gemini
+ * (OpenAI-compatible) chat completion endpoints.
+ */
+public class AIWizardProviderRouterTest {
+
+    private static final Route ROUTE = new Route(AIWizardConnection.OPENAI, AIWizardConnection.GEMINI, false, null);
+    private static final Route HEDGED_ROUTE = new Route(AIWizardConnection.OPENAI, AIWizardConnection.GEMINI, true, null);
+
+    private StubProvider openAi;
+    private StubProvider gemini;
+    private AIWizardProviderRouter router;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        openAi = new StubProvider("SELECT 'openai'");
+        gemini = new StubProvider("SELECT 'gemini'");
+
+        meterRegistry = new SimpleMeterRegistry();
+        router = new AIWizardProviderRouter(new AIWizardMetrics(meterRegistry));
+        ReflectionTestUtils.setField(router, "defaultFallback", "");
+        ReflectionTestUtils.setField(router, "timeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(router, "poolSize", 4);
+        ReflectionTestUtils.setField(router, "queueCapacity", 4);
+        ReflectionTestUtils.setField(router, "hedgingEnabled", false);
+        ReflectionTestUtils.setField(router, "hedgingInitialDelay", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(router, "hedgingMinSamples", 20);
+        ReflectionTestUtils.setField(router, "breakerWindowSize", 10);
+        ReflectionTestUtils.setField(router, "breakerMinimumCalls", 2);
+        ReflectionTestUtils.setField(router, "breakerFailureRateThreshold", 50);
+        ReflectionTestUtils.setField(router, "breakerOpenDuration", Duration.ofMinutes(1));
+        ReflectionTestUtils.invokeMethod(router, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(router, "destroy");
+        openAi.stop();
+        gemini.stop();
+    }
+
+    @Test
+    void test_primaryAnswers() {
+        String result = router.execute(ROUTE, this::call);
+
+        assertThat(result).isEqualTo("SELECT 'openai'");
+        assertThat(gemini.requests.get()).isZero();
+    }
+
+    @Test
+    void test_failsOverOnError() {
+        openAi.status = 500;
+
+        String result = router.execute(ROUTE, this::call);
+
+        assertThat(result).isEqualTo("SELECT 'gemini'");
+        assertThat(openAi.requests.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("aiwizard.llm.retries", "provider", "GEMINI", "reason", "failover").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void test_failsOverOnTimeout() {
+        ReflectionTestUtils.setField(router, "timeout", Duration.ofMillis(300));
+        openAi.delayMillis = 3000;
+
+        long start = System.currentTimeMillis();
+        String result = router.execute(ROUTE, this::call);
+
+        assertThat(result).isEqualTo("SELECT 'gemini'");
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+    }
+
+    @Test
+    void test_hedgedRequestFirstAnswerWins() {
+        openAi.delayMillis = 3000;
+
+        long start = System.currentTimeMillis();
+        String result = router.execute(HEDGED_ROUTE, this::call);
+
+        assertThat(result).isEqualTo("SELECT 'gemini'");
+        assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+        assertThat(openAi.requests.get()).isEqualTo(1);
+        assertThat(gemini.requests.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("aiwizard.llm.retries", "provider", "GEMINI", "reason", "hedge").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void test_hedgingNotTriggeredWhenPrimaryIsFast() {
+        String result = router.execute(HEDGED_ROUTE, this::call);
+
+        assertThat(result).isEqualTo("SELECT 'openai'");
+        assertThat(gemini.requests.get()).isZero();
+    }
+
+    @Test
+    void test_circuitBreakerOpensOnErrorRate() {
+        openAi.status = 500;
+
+        router.execute(ROUTE, this::call);
+        router.execute(ROUTE, this::call);
+        assertThat(router.getBreakerStates().get(AIWizardConnection.OPENAI)).isEqualTo(BreakerState.OPEN);
+
+        // Open breaker: the primary is skipped without a request
+        assertThat(router.execute(ROUTE, this::call)).isEqualTo("SELECT 'gemini'");
+        assertThat(openAi.requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    void test_allProvidersFailing() {
+        openAi.status = 500;
+        gemini.status = 503;
+
+        assertThatThrownBy(() -> router.execute(ROUTE, this::call)).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> router.execute(ROUTE, this::call)).isInstanceOf(RuntimeException.class);
+        // Both breakers are open now
+        assertThatThrownBy(() -> router.execute(ROUTE, this::call))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("circuit breakers are open");
+    }
+
+    @Test
+    void test_attemptsQueuedBehindSaturatedPoolAreNotProviderFailures() throws InterruptedException {
+        ReflectionTestUtils.setField(router, "timeout", Duration.ofMillis(300));
+        CountDownLatch release = occupyPool(1);
+        try {
+            // Both attempts time out in the queue; the breakers must not count them
+            assertThatThrownBy(() -> router.execute(ROUTE, this::call))
+                    .hasMessageContaining("No AI provider answered");
+            assertThatThrownBy(() -> router.execute(ROUTE, this::call))
+                    .hasMessageContaining("No AI provider answered");
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(openAi.requests.get()).isZero();
+        assertThat(gemini.requests.get()).isZero();
+        assertThat(router.getBreakerStates().get(AIWizardConnection.OPENAI)).isEqualTo(BreakerState.CLOSED);
+        assertThat(router.getBreakerStates().get(AIWizardConnection.GEMINI)).isEqualTo(BreakerState.CLOSED);
+    }
+
+    @Test
+    void test_fullQueueRejectsRequest() throws InterruptedException {
+        CountDownLatch release = occupyPool(1);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(router, "executor");
+        executor.submit(() -> {});  // fills the only queue slot
+        try {
+            assertThatThrownBy(() -> router.execute(ROUTE, this::call))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("busy");
+        } finally {
+            release.countDown();
+        }
+        assertThat(router.getBreakerStates().get(AIWizardConnection.OPENAI)).isEqualTo(BreakerState.CLOSED);
+    }
+
+    /**
+     * Restarts the router with the given pool size and a single queue slot and blocks every
+     * pool thread until the returned latch is released.
+     */
+    private CountDownLatch occupyPool(int poolSize) throws InterruptedException {
+        ReflectionTestUtils.invokeMethod(router, "destroy");
+        ReflectionTestUtils.setField(router, "poolSize", poolSize);
+        ReflectionTestUtils.setField(router, "queueCapacity", 1);
+        ReflectionTestUtils.invokeMethod(router, "init");
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(router, "executor");
+        CountDownLatch started = new CountDownLatch(poolSize);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < poolSize; i++) {
+            executor.submit(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            });
+        }
+        started.await();
+        return release;
+    }
+
+    private String call(AIWizardConnection provider) {
+        StubProvider stub = provider == AIWizardConnection.OPENAI ? openAi : gemini;
+        return stub.client.prompt().user("Create a query").call().content();
+    }
+
+    /**
+     * Minimal OpenAI-compatible chat completions endpoint with configurable status and delay.
+     */
+    private static class StubProvider {
+
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final ChatClient client;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile int status = 200;
+        private volatile long delayMillis;
+
+        StubProvider(String answer) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.setExecutor(executor);
+            server.createContext("/v1/chat/completions", exchange -> {
+                requests.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String body = status == 200
+                        ? "{\"id\":\"stub\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"stub\","
+                        + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                        + answer.replace("'", "\\u0027") + "\"},\"finish_reason\":\"stop\"}],"
+                        + "\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}"
+                        : "{\"error\":{\"message\":\"stub failure\"}}";
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                try {
+                    exchange.sendResponseHeaders(status, bytes.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(bytes);
+                    }
+                } catch (IOException e) {
+                    // client cancelled the request (losing hedged attempt)
+                }
+            });
+            server.start();
+
+            OpenAiApi api = OpenAiApi.builder()
+                    .apiKey("stub")
+                    .baseUrl("http://localhost:" + server.getAddress().getPort())
+                    .build();
+            OpenAiChatModel model = OpenAiChatModel.builder()
+                    .openAiApi(api)
+                    .defaultOptions(OpenAiChatOptions.builder().model("stub").build())
+                    .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                    .build();
+            client = ChatClient.builder(model).build();
+        }
+
+        void stop() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
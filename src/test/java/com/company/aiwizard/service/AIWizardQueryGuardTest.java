@@ -0,0 +1,111 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardQueryGuard.Assessment;
+import com.company.aiwizard.service.AIWizardQueryGuard.QueryShape;
+import com.company.aiwizard.service.AIWizardQueryValidator.Validation;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import io.jmix.reports.entity.DataSetType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Types;
+import java.util.List;
+
+import static com.company.aiwizard.AIWizardSampleSchema.column;
+import static com.company.aiwizard.AIWizardSampleSchema.table;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Query shapes and assessments over CUSTOMER_ORDER (ID primary key, CUSTOMER_ID and
+ * CREATED_DATE indexed, AMOUNT), with plans as the validator reports them for HSQLDB.
+ */
+public class AIWizardQueryGuardTest {
+
+    private AIWizardQueryGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        AIWizardTableDDLDefinitionService tableDDLDefinitionService = mock(AIWizardTableDDLDefinitionService.class);
+        when(tableDDLDefinitionService.getTableDDLDefinition("CUSTOMER_ORDER")).thenReturn(customerOrder());
+
+        guard = new AIWizardQueryGuard(null, tableDDLDefinitionService, null);
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        ReflectionTestUtils.setField(guard, "maxEstimatedRows", 100000L);
+        ReflectionTestUtils.setField(guard, "rowCap", 10000);
+        ReflectionTestUtils.setField(guard, "databaseProduct", "HSQL Database Engine");
+    }
+
+    @Test
+    void test_analyzesTopLevelClausesOnly() {
+        QueryShape shape = AIWizardQueryGuard.analyze(
+                "select o.ID, (select max(AMOUNT) from CUSTOMER_ORDER where ID = o.ID) from CUSTOMER_ORDER o"
+                        + " join CUSTOMER c on c.ID = o.CUSTOMER_ID -- where filtered later");
+        assertThat(shape.filtered()).isFalse();
+        assertThat(shape.rowCapped()).isFalse();
+        assertThat(shape.tables()).containsExactly("CUSTOMER_ORDER", "CUSTOMER");
+
+        assertThat(AIWizardQueryGuard.analyze("select count(*), sum(AMOUNT) from CUSTOMER_ORDER").singleRow()).isTrue();
+        assertThat(AIWizardQueryGuard.analyze("select CUSTOMER_ID, count(*) from CUSTOMER_ORDER group by CUSTOMER_ID")
+                .singleRow()).isFalse();
+        assertThat(AIWizardQueryGuard.analyze("select * from CUSTOMER_ORDER fetch first 10 rows only").rowCapped())
+                .isTrue();
+    }
+
+    @Test
+    void test_unboundedScanGetsPredicateAndRowCap() {
+        String script = "select ID, AMOUNT from CUSTOMER_ORDER;";
+        Assessment assessment = guard.assess(DataSetType.SQL, script, plan(2_000_000L, "CUSTOMER_ORDER"));
+
+        assertThat(assessment.unbounded()).isTrue();
+        assertThat(assessment.overThreshold()).isTrue();
+        assertThat(assessment.suggestedPredicates())
+                .containsExactly("CUSTOMER_ORDER: CREATED_DATE >= ${createdDateFrom}");
+        assertThat(assessment.cappedScript()).isEqualTo("select ID, AMOUNT from CUSTOMER_ORDER\nLIMIT 10000");
+    }
+
+    @Test
+    void test_filteredQueryUnderThresholdIsBounded() {
+        Assessment assessment = guard.assess(DataSetType.SQL,
+                "select ID from CUSTOMER_ORDER where AMOUNT > ${minAmount}", plan(5000L, "CUSTOMER_ORDER"));
+
+        assertThat(assessment.needsAttention()).isFalse();
+    }
+
+    @Test
+    void test_jpqlIsReportedButNotCapped() {
+        Assessment assessment = guard.assess(DataSetType.JPQL, "select o from CustomerOrder o",
+                plan(null));
+
+        assertThat(assessment.unbounded()).isTrue();
+        assertThat(assessment.cappedScript()).isNull();
+    }
+
+    @Test
+    void test_rowCapSyntaxFollowsDatabase() {
+        assertThat(AIWizardQueryGuard.appendRowCap("select * from T", "Oracle", 5))
+                .isEqualTo("select * from T\nFETCH FIRST 5 ROWS ONLY");
+        assertThat(AIWizardQueryGuard.appendRowCap("select * from T", "Microsoft SQL Server", 5)).isNull();
+        assertThat(AIWizardQueryGuard.appendRowCap("select * from T order by ID", "Microsoft SQL Server", 5))
+                .isEqualTo("select * from T order by ID\nOFFSET 0 ROWS FETCH NEXT 5 ROWS ONLY");
+    }
+
+    private Validation plan(Long rows, String... fullScans) {
+        return new Validation(true, true, null, null, "", null, rows, List.of(fullScans));
+    }
+
+    private TableDDLDefinition customerOrder() {
+        return table("CUSTOMER_ORDER",
+                List.of(column("ID", "INTEGER", Types.INTEGER, null, null, true, 1),
+                        column("CUSTOMER_ID", "INTEGER", Types.INTEGER, null, null, true, 2),
+                        column("AMOUNT", "INTEGER", Types.INTEGER, null, null, true, 3),
+                        column("CREATED_DATE", "TIMESTAMP", Types.TIMESTAMP, null, null, true, 4)),
+                List.of(),
+                List.of(new IndexDefinition("PK_CUSTOMER_ORDER", List.of("ID"), true, "A"),
+                        new IndexDefinition("IDX_CUSTOMER_ORDER_CUSTOMER", List.of("CUSTOMER_ID"), false, "A"),
+                        new IndexDefinition("IDX_CUSTOMER_ORDER_CREATED", List.of("CREATED_DATE"), false, "A")));
+    }
+}
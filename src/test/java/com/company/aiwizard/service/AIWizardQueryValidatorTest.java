@@ -0,0 +1,108 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardQueryValidator.Validation;
+import io.jmix.reports.entity.DataSetType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * SQL validation against an in-memory HSQLDB with CUSTOMER (two rows) and CUSTOMER_ORDER
+ * referencing it, plus plan parsing of PostgreSQL and MySQL EXPLAIN output.
+ */
+public class AIWizardQueryValidatorTest {
+
+    private static final String URL = "jdbc:hsqldb:mem:aiwizard_validator";
+
+    private AIWizardQueryValidator validator;
+
+    private Connection keepAlive;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "SA", "");
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("create table CUSTOMER (ID integer primary key, NAME varchar(50))");
+            statement.execute("create table CUSTOMER_ORDER (ID integer primary key, CUSTOMER_ID integer,"
+                    + " AMOUNT integer, foreign key (CUSTOMER_ID) references CUSTOMER (ID))");
+            statement.execute("insert into CUSTOMER values (1, 'a'), (2, 'b')");
+        }
+
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> DriverManager.getConnection(URL, "SA", ""));
+        validator = new AIWizardQueryValidator(dataSource, null, null);
+        ReflectionTestUtils.setField(validator, "enabled", true);
+        ReflectionTestUtils.setField(validator, "maxRepairRounds", 2);
+        ReflectionTestUtils.setField(validator, "timeoutSeconds", 10);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("drop schema public cascade");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    void test_reportsFullScanOfUnfilteredTable() {
+        Validation validation = validator.validate(DataSetType.SQL, "select NAME from CUSTOMER;");
+
+        assertThat(validation.valid()).isTrue();
+        assertThat(validation.planAvailable()).isTrue();
+        assertThat(validation.fullScans()).containsExactly("CUSTOMER");
+        assertThat(validation.estimatedRows()).isEqualTo(2L);
+    }
+
+    @Test
+    void test_keyLookupWithReportParameterIsNotAFullScan() {
+        Validation validation = validator.validate(DataSetType.SQL,
+                "select c.NAME, o.AMOUNT from CUSTOMER c join CUSTOMER_ORDER o on o.CUSTOMER_ID = c.ID"
+                        + " where c.ID = ${customer}");
+
+        assertThat(validation.valid()).isTrue();
+        assertThat(validation.fullScans()).doesNotContain("CUSTOMER");
+    }
+
+    @Test
+    void test_unknownTableFailsWithDatabaseMessage() {
+        Validation validation = validator.validate(DataSetType.SQL, "select * from CUSTOMERS");
+
+        assertThat(validation.valid()).isFalse();
+        assertThat(validation.error()).contains("CUSTOMERS");
+    }
+
+    @Test
+    void test_rejectsStatementsOtherThanASingleQuery() {
+        assertThat(validator.validate(DataSetType.SQL, "delete from CUSTOMER").valid()).isFalse();
+        assertThat(validator.validate(DataSetType.SQL, "select 1 from CUSTOMER; drop table CUSTOMER").valid())
+                .isFalse();
+        assertThat(validator.validate(DataSetType.SQL, "-- names\nselect ';' from CUSTOMER").valid()).isTrue();
+    }
+
+    @Test
+    void test_parsesPostgresAndMysqlPlans() {
+        Validation postgres = AIWizardQueryValidator.parsePlan("PostgreSQL", "select ...",
+                "Hash Join  (cost=1.04..38.61 rows=2550 width=36)\n"
+                        + "  ->  Seq Scan on customer_order o  (cost=0.00..30.40 rows=2040 width=8)\n"
+                        + "  ->  Hash  (cost=1.02..1.02 rows=2 width=32)\n");
+        assertThat(postgres.cost()).isEqualTo(38.61);
+        assertThat(postgres.estimatedRows()).isEqualTo(2550L);
+        assertThat(postgres.fullScans()).containsExactly("customer_order");
+
+        Validation mysql = AIWizardQueryValidator.parsePlan("MySQL", "select ...",
+                "id=1 table=o type=ALL key=null rows=120000\nid=1 table=c type=eq_ref key=PRIMARY rows=1\n");
+        assertThat(mysql.fullScans()).containsExactly("o");
+        assertThat(mysql.estimatedRows()).isEqualTo(120000L);
+    }
+}
@@ -0,0 +1,189 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import io.jmix.core.DataManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the token buckets and daily quotas, on a manually advanced clock.
+ */
+public class AIWizardRateLimiterTest {
+
+    private MutableClock clock;
+    private AIWizardRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        // No history rows for the day
+        DataManager dataManager = mock(DataManager.class, RETURNS_DEEP_STUBS);
+        when(dataManager.unconstrained().loadValues(anyString())
+                .properties(any(String[].class))
+                .parameter(anyString(), any())
+                .parameter(anyString(), any())
+                .list())
+                .thenReturn(List.of());
+
+        clock = new MutableClock(Instant.parse("2026-10-16T10:00:00Z"));
+        limiter = new AIWizardRateLimiter(dataManager, null, clock);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "maxWait", Duration.ZERO);
+        ReflectionTestUtils.setField(limiter, "userRequestsPerMinute", 2L);
+        ReflectionTestUtils.setField(limiter, "userDailyRequests", 0L);
+        ReflectionTestUtils.setField(limiter, "userDailyTokens", 0L);
+        ReflectionTestUtils.setField(limiter, "providerRequestsPerMinute", 0L);
+        ReflectionTestUtils.setField(limiter, "providerTokensPerMinute", 0L);
+    }
+
+    @Test
+    void test_userBurstThenRejectedUntilRefill() {
+        limiter.acquireUser("alice", 100);
+        limiter.acquireUser("alice", 100);
+
+        assertThatThrownBy(() -> limiter.acquireUser("alice", 100))
+                .isInstanceOf(AIWizardRateLimitException.class)
+                .satisfies(e -> assertThat(((AIWizardRateLimitException) e).getRetryAfter())
+                        .isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30)));
+
+        // Other users have their own bucket
+        limiter.acquireUser("bob", 100);
+
+        // 2 per minute: one request is available again after 30 s
+        clock.advance(Duration.ofSeconds(30));
+        limiter.acquireUser("alice", 100);
+        assertThat(limiter.getQuotaStatus("alice").requestsAvailable()).isZero();
+    }
+
+    @Test
+    void test_requestQueuedWithinMaxWait() {
+        ReflectionTestUtils.setField(limiter, "userRequestsPerMinute", 600L);
+        ReflectionTestUtils.setField(limiter, "providerTokensPerMinute", 6000L);
+        ReflectionTestUtils.setField(limiter, "maxWait", Duration.ofSeconds(1));
+
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 6000);
+
+        // 100 tokens per second: 30 tokens are available after 300 ms
+        long start = System.nanoTime();
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 30);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isBetween(Duration.ofMillis(250), Duration.ofMillis(900));
+
+        // Other providers are not affected
+        start = System.nanoTime();
+        limiter.acquireProvider(AIWizardConnection.GEMINI, 6000);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+
+        // More than a second of debt is rejected
+        assertThatThrownBy(() -> limiter.acquireProvider(AIWizardConnection.OPENAI, 200))
+                .isInstanceOf(AIWizardRateLimitException.class);
+    }
+
+    @Test
+    void test_actualUsageCorrectsReservation() {
+        ReflectionTestUtils.setField(limiter, "providerTokensPerMinute", 1000L);
+
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 100);
+        // The call used far more than estimated: the bucket is in debt
+        limiter.recordUsage(null, AIWizardConnection.OPENAI, 100, 1500);
+
+        assertThatThrownBy(() -> limiter.acquireProvider(AIWizardConnection.OPENAI, 100))
+                .isInstanceOf(AIWizardRateLimitException.class);
+        clock.advance(Duration.ofSeconds(42));
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 100);
+    }
+
+    @Test
+    void test_failedCallReturnsReservedTokens() {
+        ReflectionTestUtils.setField(limiter, "providerTokensPerMinute", 1000L);
+
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 800);
+        limiter.releaseProvider(AIWizardConnection.OPENAI, 800);
+
+        limiter.acquireProvider(AIWizardConnection.OPENAI, 800);
+        assertThatThrownBy(() -> limiter.acquireProvider(AIWizardConnection.OPENAI, 800))
+                .isInstanceOf(AIWizardRateLimitException.class);
+    }
+
+    @Test
+    void test_requestRejectedByMinuteLimitDoesNotUseDailyQuota() {
+        ReflectionTestUtils.setField(limiter, "userRequestsPerMinute", 1L);
+        ReflectionTestUtils.setField(limiter, "userDailyRequests", 5L);
+
+        limiter.acquireUser("alice", 100);
+        assertThatThrownBy(() -> limiter.acquireUser("alice", 100))
+                .isInstanceOf(AIWizardRateLimitException.class)
+                .hasMessageContaining("per minute");
+
+        assertThat(limiter.getQuotaStatus("alice").dailyRequestsUsed()).isEqualTo(1);
+    }
+
+    @Test
+    void test_dailyQuotasResetAtMidnight() {
+        ReflectionTestUtils.setField(limiter, "userRequestsPerMinute", 0L);
+        ReflectionTestUtils.setField(limiter, "userDailyRequests", 3L);
+        ReflectionTestUtils.setField(limiter, "userDailyTokens", 1000L);
+
+        limiter.acquireUser("alice", 100);
+        limiter.recordUsage("alice", AIWizardConnection.OPENAI, 100, 900);
+
+        assertThatThrownBy(() -> limiter.acquireUser("alice", 200))
+                .isInstanceOf(AIWizardRateLimitException.class)
+                .hasMessageContaining("token quota");
+        limiter.acquireUser("alice", 50);
+        limiter.acquireUser("alice", 50);
+        assertThatThrownBy(() -> limiter.acquireUser("alice", 50))
+                .isInstanceOf(AIWizardRateLimitException.class)
+                .hasMessageContaining("request quota");
+
+        AIWizardRateLimiter.QuotaStatus status = limiter.getQuotaStatus("alice");
+        assertThat(status.dailyRequestsUsed()).isEqualTo(3);
+        assertThat(status.dailyTokensUsed()).isEqualTo(900);
+
+        clock.advance(Duration.ofHours(14));
+        limiter.acquireUser("alice", 200);
+        assertThat(limiter.getQuotaStatus("alice").dailyRequestsUsed()).isEqualTo(1);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
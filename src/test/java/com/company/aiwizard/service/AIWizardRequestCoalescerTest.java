@@ -0,0 +1,186 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for single-flight sharing of identical calls in flight.
+ */
+public class AIWizardRequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AIWizardRequestCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new AIWizardRequestCoalescer(new AIWizardMetrics(meterRegistry));
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void test_identicalRequestsShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        Future<AIWizardRequestCoalescer.Shared<String>> leader = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "SELECT 1";
+                }));
+        waitUntilInFlight(1);
+
+        Future<AIWizardRequestCoalescer.Shared<String>> follower = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> {
+                    calls.incrementAndGet();
+                    return "SELECT 2";
+                }));
+        waitUntilCoalesced(1);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(new AIWizardRequestCoalescer.Shared<>("SELECT 1", false));
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(new AIWizardRequestCoalescer.Shared<>("SELECT 1", true));
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(coalescer.getInFlightCount()).isZero();
+
+        // Nothing is kept after completion
+        assertThat(coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> "SELECT 3").value())
+                .isEqualTo("SELECT 3");
+    }
+
+    @Test
+    void test_followerReceivesStreamedTextSoFarAndRest() throws Exception {
+        CountDownLatch attached = new CountDownLatch(1);
+        StringBuilder leaderText = new StringBuilder();
+        StringBuilder followerText = new StringBuilder();
+
+        Future<?> leader = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.GEMINI, "k", leaderText::append, chunks -> {
+                    chunks.accept("SELECT ");
+                    await(attached);
+                    chunks.accept("1");
+                    return "SELECT 1";
+                }));
+        waitUntilInFlight(1);
+
+        Future<?> follower = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.GEMINI, "k", followerText::append, chunks -> "unused"));
+        waitUntilCoalesced(1);
+        attached.countDown();
+
+        leader.get(5, TimeUnit.SECONDS);
+        follower.get(5, TimeUnit.SECONDS);
+        assertThat(leaderText.toString()).isEqualTo("SELECT 1");
+        assertThat(followerText.toString()).isEqualTo("SELECT 1");
+    }
+
+    @Test
+    void test_failureIsSharedAndCancellationIsNot() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> leader = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> {
+                    await(release);
+                    throw new IllegalStateException("provider down");
+                }));
+        waitUntilInFlight(1);
+        Future<?> follower = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> "unused"));
+        waitUntilCoalesced(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+
+        // A cancelled leader: the follower makes the call itself
+        CountDownLatch cancel = new CountDownLatch(1);
+        Future<?> cancelled = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k2", null, chunks -> {
+                    await(cancel);
+                    throw new CancellationException("cancelled by user");
+                }));
+        waitUntilInFlight(1);
+        Future<AIWizardRequestCoalescer.Shared<String>> retried = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k2", null, chunks -> "SELECT 1"));
+        waitUntilCoalesced(2);
+        cancel.countDown();
+
+        assertThat(retried.get(5, TimeUnit.SECONDS)).isEqualTo(new AIWizardRequestCoalescer.Shared<>("SELECT 1", false));
+        assertThatThrownBy(() -> cancelled.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    void test_rateLimitOfLeaderIsNotShared() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> limited = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> {
+                    await(release);
+                    throw new AIWizardRateLimitException("Daily AI request quota is used up", Duration.ofHours(1));
+                }));
+        waitUntilInFlight(1);
+        Future<AIWizardRequestCoalescer.Shared<String>> other = executor.submit(() ->
+                coalescer.execute(AIWizardConnection.OPENAI, "k", null, chunks -> "SELECT 1"));
+        waitUntilCoalesced(1);
+        release.countDown();
+
+        // The other request makes the call itself instead of failing with the leader's quota
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo(new AIWizardRequestCoalescer.Shared<>("SELECT 1", false));
+        assertThatThrownBy(() -> limited.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(AIWizardRateLimitException.class);
+    }
+
+    private void waitUntilInFlight(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && coalescer.getInFlightCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(coalescer.getInFlightCount()).isEqualTo(count);
+    }
+
+    private void waitUntilCoalesced(double count) throws InterruptedException {
+        for (int i = 0; i < 500 && coalesced() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(coalesced()).isEqualTo(count);
+        // Let the follower block on the leader's result
+        Thread.sleep(50);
+    }
+
+    private double coalesced() {
+        return meterRegistry.find("aiwizard.llm.coalesced").counters().stream()
+                .mapToDouble(c -> c.count())
+                .sum();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.entity.AIWizardResponseCacheEntry;
+import io.jmix.core.DataManager;
+import io.jmix.core.TimeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the response cache key, the in-memory tier and the persistent tier,
+ * on a manually advanced time source.
+ */
+public class AIWizardResponseCacheTest {
+
+    private static final Instant START = Instant.parse("2026-10-16T10:00:00Z");
+
+    private Instant now;
+    private DataManager dataManager;
+    private AIWizardResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = START;
+        TimeSource timeSource = mock(TimeSource.class);
+        when(timeSource.currentTimeMillis()).thenAnswer(invocation -> now.toEpochMilli());
+        when(timeSource.now()).thenAnswer(invocation -> ZonedDateTime.ofInstant(now, ZoneOffset.UTC));
+
+        dataManager = mock(DataManager.class, RETURNS_DEEP_STUBS);
+        cache = new AIWizardResponseCache(dataManager, timeSource);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cache, "persistent", false);
+    }
+
+    @Test
+    void test_keyIsStableForIdenticalRequests() {
+        String first = AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o-mini", 0.1, "system", "prompt");
+        String second = AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o-mini", 0.1, "system", "prompt");
+
+        assertThat(first).isEqualTo(second).hasSize(64);
+    }
+
+    @Test
+    void test_keyDependsOnEveryField() {
+        String base = AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o-mini", 0.1, "system", "prompt");
+
+        assertThat(AIWizardResponseCache.key(AIWizardConnection.GEMINI, "gpt-4o-mini", 0.1, "system", "prompt"))
+                .isNotEqualTo(base);
+        assertThat(AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o", 0.1, "system", "prompt"))
+                .isNotEqualTo(base);
+        assertThat(AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o-mini", 0.7, "system", "prompt"))
+                .isNotEqualTo(base);
+        assertThat(AIWizardResponseCache.key(AIWizardConnection.OPENAI, "gpt-4o-mini", 0.1, null, "prompt"))
+                .isNotEqualTo(base);
+    }
+
+    @Test
+    void test_keyDoesNotCollideWhenTextMovesBetweenFields() {
+        String first = AIWizardResponseCache.key(AIWizardConnection.OPENAI, "m", null, "ab", "c");
+        String second = AIWizardResponseCache.key(AIWizardConnection.OPENAI, "m", null, "a", "bc");
+
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void test_leastRecentlyUsedEntryEvictedAtSizeLimit() {
+        cache.put("a", AIWizardConnection.OPENAI, "m", "A");
+        cache.put("b", AIWizardConnection.OPENAI, "m", "B");
+        assertThat(cache.get("a")).contains("A");  // b is now the least recently used
+
+        cache.put("c", AIWizardConnection.OPENAI, "m", "C");
+
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(cache.get("a")).contains("A");
+        assertThat(cache.get("c")).contains("C");
+        assertThat(cache.getStats().evictions()).isEqualTo(1);
+        assertThat(cache.getStats().size()).isEqualTo(2);
+    }
+
+    @Test
+    void test_entryExpiresAfterTtl() {
+        cache.put("a", AIWizardConnection.OPENAI, "m", "A");
+
+        now = START.plus(Duration.ofMinutes(59));
+        assertThat(cache.get("a")).contains("A");
+
+        now = START.plus(Duration.ofHours(1));
+        assertThat(cache.get("a")).isEmpty();
+        assertThat(cache.getStats().size()).isZero();
+        assertThat(cache.getStats().hits()).isEqualTo(1);
+        assertThat(cache.getStats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    void test_persistentHitIsPromotedToMemory() {
+        ReflectionTestUtils.setField(cache, "persistent", true);
+        AIWizardResponseCacheEntry entry = new AIWizardResponseCacheEntry();
+        entry.setCacheKey("a");
+        entry.setResponse("A");
+        entry.setExpiresAt(OffsetDateTime.ofInstant(START.plus(Duration.ofMinutes(30)), ZoneOffset.UTC));
+        when(dataManager.unconstrained().load(AIWizardResponseCacheEntry.class)
+                .query(anyString())
+                .parameter(anyString(), any())
+                .optional())
+                .thenReturn(Optional.of(entry));
+
+        assertThat(cache.get("a")).contains("A");
+        assertThat(cache.get("a")).contains("A");
+
+        // The second lookup is served from memory, with the stored expiry
+        assertThat(cache.getStats().persistentHits()).isEqualTo(1);
+        assertThat(cache.getStats().hits()).isEqualTo(2);
+        assertThat(cache.getStats().size()).isEqualTo(1);
+
+        now = START.plus(Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(cache, "persistent", false);
+        assertThat(cache.get("a")).isEmpty();
+    }
+
+    @Test
+    void test_purgeExpiredDropsExpiredEntriesOfBothTiers() {
+        cache.put("a", AIWizardConnection.OPENAI, "m", "A");
+        now = START.plus(Duration.ofMinutes(30));
+        cache.put("b", AIWizardConnection.OPENAI, "m", "B");
+
+        ReflectionTestUtils.setField(cache, "persistent", true);
+        List<AIWizardResponseCacheEntry> expired = List.of(new AIWizardResponseCacheEntry());
+        when(dataManager.unconstrained().load(AIWizardResponseCacheEntry.class)
+                .query(anyString())
+                .parameter(anyString(), any())
+                .list())
+                .thenReturn(expired);
+
+        now = START.plus(Duration.ofHours(1));
+        cache.purgeExpired();
+
+        assertThat(cache.getStats().size()).isEqualTo(1);
+        verify(dataManager.unconstrained()).remove(expired);
+        ReflectionTestUtils.setField(cache, "persistent", false);
+        assertThat(cache.get("b")).contains("B");
+    }
+}
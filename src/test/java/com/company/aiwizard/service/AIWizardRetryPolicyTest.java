@@ -0,0 +1,190 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardConnection;
+import com.company.aiwizard.service.AIWizardRetryPolicy.ErrorClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for error classification, Retry-After handling and the retry budget.
+ */
+public class AIWizardRetryPolicyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AIWizardRetryPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        policy = new AIWizardRetryPolicy(new AIWizardMetrics(meterRegistry));
+        ReflectionTestUtils.setField(policy, "enabled", true);
+        ReflectionTestUtils.setField(policy, "maxAttempts", 3);
+        ReflectionTestUtils.setField(policy, "initialBackoff", Duration.ofMillis(20));
+        ReflectionTestUtils.setField(policy, "maxBackoff", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(policy, "multiplier", 2.0);
+        ReflectionTestUtils.setField(policy, "deadline", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(policy, "budgetRatio", 0.1);
+        ReflectionTestUtils.setField(policy, "budgetMinRetries", 10);
+    }
+
+    @Test
+    void test_classifiesByStatusAndType() {
+        assertThat(AIWizardRetryPolicy.classify(status(HttpStatus.TOO_MANY_REQUESTS, null)))
+                .isEqualTo(ErrorClass.RATE_LIMITED);
+        assertThat(AIWizardRetryPolicy.classify(status(HttpStatus.SERVICE_UNAVAILABLE, null)))
+                .isEqualTo(ErrorClass.SERVER);
+        assertThat(AIWizardRetryPolicy.classify(status(HttpStatus.BAD_REQUEST, null)))
+                .isEqualTo(ErrorClass.CLIENT);
+        assertThat(AIWizardRetryPolicy.classify(status(HttpStatus.UNAUTHORIZED, null)))
+                .isEqualTo(ErrorClass.CLIENT);
+        assertThat(AIWizardRetryPolicy.classify(new ResourceAccessException("timeout", new IOException())))
+                .isEqualTo(ErrorClass.NETWORK);
+        assertThat(AIWizardRetryPolicy.classify(new NonTransientAiException("429 - {\"error\":\"quota\"}")))
+                .isEqualTo(ErrorClass.RATE_LIMITED);
+        assertThat(AIWizardRetryPolicy.classify(
+                new RuntimeException("Failed", status(HttpStatus.BAD_GATEWAY, null))))
+                .isEqualTo(ErrorClass.SERVER);
+        assertThat(AIWizardRetryPolicy.classify(new AIWizardRateLimitException("local", Duration.ZERO)))
+                .isEqualTo(ErrorClass.NON_RETRYABLE);
+    }
+
+    @Test
+    void test_parsesRetryAfter() {
+        assertThat(AIWizardRetryPolicy.retryAfter(status(HttpStatus.TOO_MANY_REQUESTS, "7")))
+                .isEqualTo(Duration.ofSeconds(7));
+
+        String date = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        assertThat(AIWizardRetryPolicy.retryAfter(status(HttpStatus.SERVICE_UNAVAILABLE, date)))
+                .isBetween(Duration.ofSeconds(28), Duration.ofSeconds(30));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("retry-after-ms", "250");
+        headers.add(HttpHeaders.RETRY_AFTER, "1");
+        assertThat(AIWizardRetryPolicy.retryAfter(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS,
+                "Too Many Requests", headers, new byte[0], null)))
+                .isEqualTo(Duration.ofMillis(250));
+
+        assertThat(AIWizardRetryPolicy.retryAfter(status(HttpStatus.TOO_MANY_REQUESTS, null))).isNull();
+    }
+
+    @Test
+    void test_retriesTransientFailures() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.execute(AIWizardConnection.OPENAI, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw status(HttpStatus.SERVICE_UNAVAILABLE, null);
+            }
+            return "SELECT 1";
+        });
+
+        assertThat(result).isEqualTo("SELECT 1");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(meterRegistry.counter("aiwizard.llm.retries", "provider", "OPENAI", "reason", "retry").count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void test_doesNotRetryClientErrors() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute(AIWizardConnection.OPENAI, () -> {
+            calls.incrementAndGet();
+            throw status(HttpStatus.BAD_REQUEST, null);
+        })).isInstanceOf(HttpClientErrorException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void test_honorsRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+
+        long start = System.nanoTime();
+        policy.execute(AIWizardConnection.OPENAI, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw status(HttpStatus.TOO_MANY_REQUESTS, "0.5");
+            }
+            return "SELECT 1";
+        });
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(450));
+
+        // Longer than the maximum backoff: fail now instead of retrying early
+        calls.set(0);
+        assertThatThrownBy(() -> policy.execute(AIWizardConnection.OPENAI, () -> {
+            calls.incrementAndGet();
+            throw status(HttpStatus.TOO_MANY_REQUESTS, "60");
+        })).isInstanceOf(HttpClientErrorException.class);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void test_retryBudgetLimitsRetries() {
+        ReflectionTestUtils.setField(policy, "budgetRatio", 0.0);
+        ReflectionTestUtils.setField(policy, "budgetMinRetries", 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> policy.execute(AIWizardConnection.GEMINI, () -> {
+                calls.incrementAndGet();
+                throw status(HttpStatus.SERVICE_UNAVAILABLE, null);
+            })).isInstanceOf(HttpServerErrorException.class);
+        }
+
+        // 3 first attempts + 2 retries allowed by the budget
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    void test_streamRetriedOnlyBeforeFirstElement() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        List<String> chunks = policy.retryStream(AIWizardConnection.OPENAI, () ->
+                        subscriptions.incrementAndGet() == 1
+                                ? Flux.<String>error(status(HttpStatus.SERVICE_UNAVAILABLE, null))
+                                : Flux.just("SELECT", " 1"))
+                .collectList()
+                .block();
+        assertThat(chunks).containsExactly("SELECT", " 1");
+        assertThat(subscriptions.get()).isEqualTo(2);
+
+        subscriptions.set(0);
+        assertThatThrownBy(() -> policy.retryStream(AIWizardConnection.OPENAI, () -> {
+                    subscriptions.incrementAndGet();
+                    return Flux.concat(Flux.just("SELECT"),
+                            Flux.<String>error(status(HttpStatus.SERVICE_UNAVAILABLE, null)));
+                })
+                .blockLast())
+                .isInstanceOf(HttpServerErrorException.class);
+        assertThat(subscriptions.get()).isEqualTo(1);
+    }
+
+    private static RuntimeException status(HttpStatus status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.add(HttpHeaders.RETRY_AFTER, retryAfter);
+        }
+        return status.is4xxClientError()
+                ? HttpClientErrorException.create(status, status.getReasonPhrase(), headers, new byte[0], null)
+                : HttpServerErrorException.create(status, status.getReasonPhrase(), headers, new byte[0], null);
+    }
+}
@@ -0,0 +1,98 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.entity.AIWizardSchemaFormat;
+import com.company.aiwizard.service.AIWizardEntityDefinitionService.EntityDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.company.aiwizard.AIWizardSampleSchema.customer;
+import static com.company.aiwizard.AIWizardSampleSchema.customerEntity;
+import static com.company.aiwizard.AIWizardSampleSchema.customerOrder;
+import static com.company.aiwizard.AIWizardSampleSchema.customerOrderEntity;
+import static com.company.aiwizard.AIWizardSampleSchema.product;
+import static com.company.aiwizard.AIWizardSampleSchema.productEntity;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Size benchmark of the schema formats on the sample CUSTOMER / PRODUCT / CUSTOMER_ORDER model
+ * (AIWizardSampleSchema).
+ * Sizes are measured as the definitions appear in the prompt (verbose blocks carry a name header).
+ */
+public class AIWizardSchemaFormatterTest {
+
+    private final AIWizardSchemaFormatter formatter = new AIWizardSchemaFormatter(
+            new AIWizardTableDDLDefinitionService(null, null),
+            new AIWizardEntityDefinitionService(null, null));
+
+    @Test
+    void test_compactTableFormatHalvesPromptSize() {
+        int verbose = tablesPromptSize(AIWizardSchemaFormat.VERBOSE);
+        int compact = tablesPromptSize(AIWizardSchemaFormat.COMPACT);
+        int json = tablesPromptSize(AIWizardSchemaFormat.JSON);
+
+        assertThat(compact).isLessThanOrEqualTo(verbose / 2);
+        assertThat(json).isLessThan(verbose);
+    }
+
+    @Test
+    void test_compactEntityFormatHalvesPromptSize() {
+        int verbose = entitiesPromptSize(AIWizardSchemaFormat.VERBOSE);
+        int compact = entitiesPromptSize(AIWizardSchemaFormat.COMPACT);
+        int json = entitiesPromptSize(AIWizardSchemaFormat.JSON);
+
+        assertThat(compact).isLessThanOrEqualTo(verbose / 2);
+        assertThat(json).isLessThanOrEqualTo(verbose / 2);
+    }
+
+    @Test
+    void test_compactFormatKeepsKeysAndReferences() {
+        String compact = formatter.formatTable(customerOrder(), AIWizardSchemaFormat.COMPACT);
+
+        assertThat(compact)
+                .startsWith("CUSTOMER_ORDER(")
+                .contains("ID:UUID pk")
+                .contains("CUSTOMER_ID:UUID! ->CUSTOMER.ID")
+                .contains("PRODUCT_ID:UUID! ->PRODUCT.ID")
+                .contains("TOTAL_AMOUNT:DECIMAL(19,2)")
+                .doesNotContain("IDX_");
+
+        String json = formatter.formatTable(customerOrder(), AIWizardSchemaFormat.JSON);
+        assertThat(json)
+                .startsWith("{\"table\":\"CUSTOMER_ORDER\"")
+                .contains("\"fk\":{\"CUSTOMER_ID\":\"CUSTOMER.ID\",\"PRODUCT_ID\":\"PRODUCT.ID\"}");
+
+        String entity = formatter.formatEntity(customerOrderEntity(), AIWizardSchemaFormat.COMPACT);
+        assertThat(entity)
+                .startsWith("CustomerOrder(")
+                .contains("customer:Customer! ->Customer")
+                .contains("id:UUID pk");
+    }
+
+    // ==================== Prompt size ====================
+
+    private int tablesPromptSize(AIWizardSchemaFormat format) {
+        StringBuilder prompt = new StringBuilder();
+        for (TableDDLDefinition table : List.of(customer(), product(), customerOrder())) {
+            appendBlock(prompt, table.tableName(), formatter.formatTable(table, format), format);
+        }
+        return prompt.length();
+    }
+
+    private int entitiesPromptSize(AIWizardSchemaFormat format) {
+        StringBuilder prompt = new StringBuilder();
+        for (EntityDefinition entity : List.of(customerEntity(), productEntity(), customerOrderEntity())) {
+            appendBlock(prompt, entity.name(), formatter.formatEntity(entity, format), format);
+        }
+        return prompt.length();
+    }
+
+    private void appendBlock(StringBuilder prompt, String name, String text, AIWizardSchemaFormat format) {
+        if (formatter.isSelfDescribing(format)) {
+            prompt.append(text).append("\n");
+        } else {
+            prompt.append("=== ").append(name).append(" ===\n").append(text).append("\n\n");
+        }
+    }
+}
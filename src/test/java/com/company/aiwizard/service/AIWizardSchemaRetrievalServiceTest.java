@@ -0,0 +1,98 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardSchemaSnapshotService.SnapshotStatus;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.company.aiwizard.AIWizardSampleSchema.customer;
+import static com.company.aiwizard.AIWizardSampleSchema.customerOrder;
+import static com.company.aiwizard.AIWizardSampleSchema.product;
+import static com.company.aiwizard.AIWizardSampleSchema.table;
+import static com.company.aiwizard.AIWizardSampleSchema.tables;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Table suggestions on the sample CUSTOMER / PRODUCT / CUSTOMER_ORDER model (AIWizardSampleSchema)
+ * plus unrelated framework tables.
+ */
+public class AIWizardSchemaRetrievalServiceTest {
+
+    private AIWizardTableDDLDefinitionService tableDDLDefinitionService;
+    private AIWizardSchemaSnapshotService schemaSnapshotService;
+    private AIWizardSchemaRetrievalService service;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, TableDDLDefinition> tables = tables(
+                customer(),
+                product(),
+                customerOrder(),
+                table("SEC_USER_SUBSTITUTION", List.of("USERNAME", "SUBSTITUTED_USERNAME", "START_DATE", "END_DATE")),
+                table("REPORT_REPORT", List.of("NAME", "CODE", "DESCRIPTION", "XML")));
+
+        AIWizardTableListService tableListService = mock(AIWizardTableListService.class);
+        when(tableListService.getAllTableNames()).thenReturn(List.copyOf(tables.keySet()));
+        tableDDLDefinitionService = mock(AIWizardTableDDLDefinitionService.class);
+        when(tableDDLDefinitionService.getTableDDLDefinitions(any())).thenReturn(tables);
+        schemaSnapshotService = mock(AIWizardSchemaSnapshotService.class);
+        when(schemaSnapshotService.getStatus()).thenReturn(status(1));
+
+        service = new AIWizardSchemaRetrievalService(tableListService, tableDDLDefinitionService,
+                schemaSnapshotService, null, null);
+        ReflectionTestUtils.setField(service, "topK", 5);
+        ReflectionTestUtils.setField(service, "minRelativeScore", 0.25);
+        ReflectionTestUtils.setField(service, "maxNeighbours", 5);
+    }
+
+    @Test
+    void test_promptTermsMatchTableNamesAndColumns() {
+        AIWizardSchemaRetrievalService.Suggestion suggestion =
+                service.suggestTables("Total amount of orders per customer city");
+
+        assertThat(suggestion.matches()).startsWith("CUSTOMER_ORDER", "CUSTOMER")
+                .doesNotContain("SEC_USER_SUBSTITUTION", "REPORT_REPORT");
+        assertThat(suggestion.neighbours()).containsExactly("PRODUCT");
+    }
+
+    @Test
+    void test_foreignKeyNeighboursAddJoinTable() {
+        AIWizardSchemaRetrievalService.Suggestion suggestion =
+                service.suggestTables("Products bought by each customer with price");
+
+        assertThat(suggestion.matches()).contains("CUSTOMER", "PRODUCT");
+        assertThat(suggestion.items()).contains("CUSTOMER_ORDER");
+    }
+
+    @Test
+    void test_unrelatedPromptSuggestsNothing() {
+        AIWizardSchemaRetrievalService.Suggestion suggestion =
+                service.suggestTables("Create new report data band query based on this definitions.");
+
+        assertThat(suggestion.items()).isEmpty();
+    }
+
+    @Test
+    void test_indexRebuiltOnlyWhenSnapshotChanges() {
+        service.suggestTables("customer");
+        service.suggestTables("product");
+        verify(tableDDLDefinitionService, times(1)).getTableDDLDefinitions(any());
+
+        when(schemaSnapshotService.getStatus()).thenReturn(status(2));
+        service.suggestTables("customer");
+        verify(tableDDLDefinitionService, times(2)).getTableDDLDefinitions(any());
+    }
+
+    private SnapshotStatus status(long version) {
+        return new SnapshotStatus(true, true, 5, null, null, 0, version, false);
+    }
+}
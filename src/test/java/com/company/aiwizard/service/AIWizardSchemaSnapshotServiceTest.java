@@ -0,0 +1,81 @@
+package com.company.aiwizard.service;
+
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.IndexDefinition;
+import com.company.aiwizard.service.AIWizardTableDDLDefinitionService.TableDDLDefinition;
+import io.jmix.core.TimeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Types;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.company.aiwizard.AIWizardSampleSchema.column;
+import static com.company.aiwizard.AIWizardSampleSchema.table;
+import static com.company.aiwizard.AIWizardSampleSchema.tables;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Snapshot lookups on a schema with the quoted tables "Orders" and "ORDERS" (differing only in case)
+ * and an unquoted CUSTOMER table.
+ */
+public class AIWizardSchemaSnapshotServiceTest {
+
+    private AIWizardSchemaSnapshotService snapshotService;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, TableDDLDefinition> tables = tables(
+                introspectedTable("Orders"),
+                introspectedTable("ORDERS"),
+                introspectedTable("CUSTOMER"));
+
+        AIWizardSchemaIntrospector introspector = mock(AIWizardSchemaIntrospector.class);
+        when(introspector.loadAllTables()).thenReturn(tables);
+        TimeSource timeSource = mock(TimeSource.class);
+        when(timeSource.now()).thenReturn(ZonedDateTime.now());
+
+        snapshotService = new AIWizardSchemaSnapshotService(introspector, timeSource);
+        ReflectionTestUtils.setField(snapshotService, "enabled", true);
+    }
+
+    @Test
+    void test_tablesDifferingOnlyInCaseAreKeptApart() {
+        assertThat(snapshotService.findTable("Orders")).map(TableDDLDefinition::tableName).contains("Orders");
+        assertThat(snapshotService.findTable("ORDERS")).map(TableDDLDefinition::tableName).contains("ORDERS");
+        assertThat(snapshotService.findTable("orders")).isEmpty();  // Ambiguous
+        assertThat(snapshotService.getStatus().tableCount()).isEqualTo(3);
+    }
+
+    @Test
+    void test_unambiguousNameMatchesCaseInsensitively() {
+        assertThat(snapshotService.findTable("customer")).map(TableDDLDefinition::tableName).contains("CUSTOMER");
+        assertThat(snapshotService.findTable("PRODUCT")).isEmpty();
+    }
+
+    @Test
+    void test_definitionsAreImmutable() {
+        TableDDLDefinition definition = snapshotService.findTable("CUSTOMER").orElseThrow();
+
+        assertThatThrownBy(() -> definition.columns().clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> definition.indexes().get(0).columns().add("NAME"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(definition.indexes().get(0).columns()).containsExactly("ID", null);
+    }
+
+    private TableDDLDefinition introspectedTable(String name) {
+        // Index columns are built incrementally by the introspector; null stands for an expression column
+        IndexDefinition index = new IndexDefinition("IDX_" + name, new ArrayList<>(Arrays.asList("ID", null)),
+                false, "A");
+        return table(name, new ArrayList<>(List.of(column("ID", "UUID", Types.OTHER, null, null, false, 1))),
+                new ArrayList<>(), new ArrayList<>(List.of(index)));
+    }
+}